@@ -0,0 +1,207 @@
+package me.xeyo.ivi.benchmark;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.FastJsonMapper;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+import me.xeyo.ivi.core.javalin.handler.media.MediaHandler;
+import me.xeyo.ivi.core.javalin.handler.nav.NavigationHandler;
+import me.xeyo.ivi.core.javalin.handler.poi.PoiHandler;
+import me.xeyo.ivi.core.javalin.handler.radio.RadioHandler;
+import me.xeyo.ivi.core.javalin.handler.settings.AppSettingsHandler;
+import me.xeyo.ivi.core.nav.RoutingIndexBuilder;
+
+/**
+ * Sends the same GET requests with query parameters over HTTP and through the bridge router, as the page does inside
+ * CEF, and fails if any status or body differs or an answer is not what the page relies on. Exits with 1 on a
+ * failure:
+ * <pre>
+ * java -cp target/benchmarks.jar me.xeyo.ivi.benchmark.BridgeQueryCheck
+ * </pre>
+ * The radio catalog, the media library, the routing index and the settings file are small temporary files; no POI
+ * pack is installed, so those routes answer from their parameter handling alone, which is what differs between
+ * transports.
+ */
+public final class BridgeQueryCheck {
+
+    private static final int TRACKS = 260;
+    private static final int ARTISTS = 13;
+
+    private static final List<Case> CASES = List.of(
+            // Search as you type from the radio tile: every keystroke searches, only an empty box lists favorites.
+            new Case("/api/radio/search?q=jaz&limit=20", "matches the typed prefix",
+                    body -> "jaz".equals(body.getString("query")) && hasStation(body, "jazz-1")),
+            new Case("/api/radio/search?q=Radio%20Jazz&limit=1", "honours the limit",
+                    body -> body.getJSONArray("results").size() == 1),
+            new Case("/api/radio/search?q=rock+fm&limit=2&limit=9", "decodes + and keeps the first limit",
+                    body -> "rock fm".equals(body.getString("query")) && body.getJSONArray("results").size() <= 2),
+            new Case("/api/radio/search?limit=x&q=jazz", "rejects a bad limit", body -> !body.getBooleanValue("success")),
+            new Case("/api/radio/search?q=", "lists favorites for an empty box", body -> body.getJSONArray("results").isEmpty()),
+            // The library as the home page loads it, then paging, order and filtering.
+            new Case("/api/media/tracks?sort=artist&limit=200", "returns a page of 200 by artist",
+                    body -> body.getJSONArray("tracks").size() == 200 && sortedBy(body, "artist", false)),
+            new Case("/api/media/tracks?offset=10&limit=5&sort=title&order=desc", "pages in descending title order",
+                    body -> body.getIntValue("offset") == 10 && body.getJSONArray("tracks").size() == 5 && sortedBy(body, "title", true)),
+            new Case("/api/media/tracks?q=artist%2007&limit=500", "filters by the query",
+                    body -> body.getIntValue("total") == TRACKS / ARTISTS && body.getJSONArray("tracks").stream()
+                            .allMatch(track -> "Artist 07".equals(((JSONObject) track).getString("artist")))),
+            new Case("/api/media/tracks?sort=nope", "rejects an unknown sort", body -> !body.getBooleanValue("success")),
+            // Route planning from the map: a double click plans from the default position to the clicked point.
+            new Case("/api/nav/route?from=52.52,13.4&to=52.523001,13.409998", "plans the route",
+                    body -> body.getJSONObject("route") != null && body.getJSONObject("route").getLongValue("distanceMeters") > 0),
+            new Case("/api/nav/route?from=52.52%2C13.40&to=52.5230%2C13.4050", "decodes escaped commas",
+                    body -> body.getJSONObject("route") != null),
+            new Case("/api/nav/route?from=52.517,13.4&to=52.523,13.41", "reports a one-way street as unreachable",
+                    body -> "No route between start and destination".equals(body.getString("error"))),
+            new Case("/api/nav/route?from=52.52,13.40&to=48.13,11.58", "reports a destination off the map",
+                    body -> "Destination is not near a road".equals(body.getString("error"))),
+            new Case("/api/nav/route?from=52.52,13.40", "asks for both ends", body -> !body.getBooleanValue("success")),
+            new Case("/api/poi/nearby?lat=52.5&lon=13.4&k=3", null, null),
+            new Case("/api/poi/within?bbox=13.3,52.4,13.5,52.6&limit=10", null, null),
+            // Fixed settings paths must not be taken for a key.
+            new Case("/api/app/settings/themes", "lists the themes rather than a setting named themes",
+                    body -> body.getJSONArray("themes") != null && body.containsKey("current")));
+
+    private BridgeQueryCheck() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Path directory = Files.createTempDirectory("ivi-bridge-check");
+        final Path catalog = directory.resolve("stations.csv");
+        Files.writeString(catalog, """
+                id,name,genre,country,frequency,url
+                jazz-1,Radio Jazz,jazz,DE,101.1,http://example.invalid/jazz
+                rock-1,Rock FM,rock,DE,98.5,http://example.invalid/rock
+                rock-2,Classic Rock Radio,rock;classic,AT,,http://example.invalid/classic
+                """);
+        System.setProperty("ivi.radio.catalog", catalog.toString());
+        System.setProperty("ivi.radio.favorites", directory.resolve("favorites.json").toString());
+        final Path music = Files.createDirectory(directory.resolve("music"));
+        for (int i = 0; i < TRACKS; i++) {
+            Files.write(music.resolve(String.format("track-%03d.mp3", i)),
+                    id3v1(String.format("Song %03d", i), String.format("Artist %02d", i % ARTISTS)));
+        }
+        System.setProperty("ivi.media.dirs", music.toString());
+        System.setProperty("ivi.media.index", directory.resolve("media-index.bin").toString());
+        final Path roads = directory.resolve("roads.osm");
+        // A street from the start to the destination, and a one-way street that only leads away from the start.
+        Files.writeString(roads, """
+                <osm version="0.6">
+                  <node id="1" lat="52.5200" lon="13.4000"/>
+                  <node id="2" lat="52.5200" lon="13.4050"/>
+                  <node id="3" lat="52.5230" lon="13.4050"/>
+                  <node id="4" lat="52.5230" lon="13.4100"/>
+                  <node id="5" lat="52.5170" lon="13.4000"/>
+                  <way id="100"><nd ref="1"/><nd ref="2"/><nd ref="3"/><nd ref="4"/><tag k="highway" v="residential"/></way>
+                  <way id="101"><nd ref="1"/><nd ref="5"/><tag k="highway" v="residential"/><tag k="oneway" v="yes"/></way>
+                </osm>
+                """);
+        final Path routingIndex = directory.resolve("routing.ivirt");
+        RoutingIndexBuilder.main(new String[]{roads.toString(), routingIndex.toString()});
+        System.setProperty("ivi.nav.index", routingIndex.toString());
+        System.setProperty("ivi.poi.pack", directory.resolve("poi.ivipoi").toString());
+        System.setProperty("ivi.settings.file", directory.resolve("ivi_settings.json").toString());
+        RadioHandler.getRadioService().start();
+        MediaHandler.getMediaLibrary().start();
+        while (!MediaHandler.getMediaLibrary().isReady()) Thread.sleep(10);
+
+        final List<JavalinHandler> handlers = List.of(new RadioHandler(), new MediaHandler(), new NavigationHandler(), new PoiHandler(),
+                new AppSettingsHandler());
+        final var router = new BridgeRouter();
+        final Javalin javalin = Javalin.create(config -> {
+            config.showJavalinBanner = false;
+            config.jsonMapper(new FastJsonMapper());
+        });
+        for (final JavalinHandler handler : handlers) {
+            handler.addHandler(javalin, null);
+            handler.addBridgeRoutes(router);
+        }
+        javalin.start(0);
+
+        int failures = 0;
+        try (final HttpClient client = HttpClient.newHttpClient()) {
+            for (final Case check : CASES) {
+                final HttpResponse<String> http = client.send(HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + javalin.port() + check.url())).build(),
+                        HttpResponse.BodyHandlers.ofString());
+                final ApiResponse bridge = router.dispatch("GET", check.url(), null, null);
+                final JSONObject httpBody = withoutTimings(JSON.parseObject(http.body()));
+                final JSONObject bridgeBody = withoutTimings(JSON.parseObject(bridge.bodyJson()));
+
+                String failure = null;
+                if (http.statusCode() != bridge.getStatus() || !Objects.equals(httpBody, bridgeBody)) {
+                    failure = "differs\n  http:   " + http.statusCode() + " " + http.body() + "\n  bridge: " + bridge.getStatus() + " " + bridge.bodyJson();
+                } else if (check.expected() != null && !check.expected().test(bridgeBody)) {
+                    failure = "expected a response that " + check.expectation() + "\n  got:    " + bridge.getStatus() + " " + bridge.bodyJson();
+                }
+                System.out.println((failure == null ? "ok      " : "FAILED  ") + http.statusCode() + " " + check.url()
+                        + (failure != null ? ": " + failure : check.expectation() != null ? " (" + check.expectation() + ")" : ""));
+                if (failure != null) failures++;
+            }
+        } finally {
+            javalin.stop();
+        }
+
+        System.out.println(failures == 0 ? "Bridge and HTTP agree on " + CASES.size() + " requests" : failures + " of " + CASES.size() + " requests failed");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /**
+     * A file holding only an ID3v1 tag, which is all the library needs to list a track.
+     */
+    private static byte[] id3v1(final String title, final String artist) {
+        final byte[] tag = new byte[128];
+        System.arraycopy("TAG".getBytes(StandardCharsets.ISO_8859_1), 0, tag, 0, 3);
+        final byte[] titleBytes = title.getBytes(StandardCharsets.ISO_8859_1);
+        final byte[] artistBytes = artist.getBytes(StandardCharsets.ISO_8859_1);
+        System.arraycopy(titleBytes, 0, tag, 3, Math.min(30, titleBytes.length));
+        System.arraycopy(artistBytes, 0, tag, 33, Math.min(30, artistBytes.length));
+        return tag;
+    }
+
+    private static boolean sortedBy(final JSONObject body, final String field, final boolean descending) {
+        final JSONArray tracks = body.getJSONArray("tracks");
+        for (int i = 1; i < tracks.size(); i++) {
+            final int order = tracks.getJSONObject(i - 1).getString(field).compareToIgnoreCase(tracks.getJSONObject(i).getString(field));
+            if (descending ? order < 0 : order > 0) return false;
+        }
+        return true;
+    }
+
+    private static boolean hasStation(final JSONObject body, final String id) {
+        final JSONArray results = body.getJSONArray("results");
+        for (int i = 0; i < results.size(); i++) {
+            if (id.equals(results.getJSONObject(i).getString("id"))) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Drops the measured query time of route responses, which differs between any two requests.
+     */
+    private static JSONObject withoutTimings(final JSONObject body) {
+        if (body != null && body.get("route") instanceof JSONObject route) route.remove("queryMicros");
+        return body;
+    }
+
+    /**
+     * A request as the page sends it; besides being answered alike on both transports, the answer must pass
+     * {@code expected} when given.
+     */
+    private record Case(String url, String expectation, Predicate<JSONObject> expected) {
+    }
+
+}
@@ -0,0 +1,82 @@
+package me.xeyo.ivi.benchmark;
+
+import io.javalin.Javalin;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import me.xeyo.ivi.core.javalin.FastJsonMapper;
+import me.xeyo.ivi.core.javalin.RouteClass;
+import me.xeyo.ivi.core.javalin.ServerExecution;
+import me.xeyo.ivi.core.javalin.handler.settings.AppSettingsHandler;
+import me.xeyo.ivi.core.metrics.RequestMetrics;
+import me.xeyo.ivi.core.utils.FanOut;
+
+/**
+ * Javalin configured like the application, serving only {@link AppSettingsHandler} on an ephemeral port, with or
+ * without the request metrics hooks. Threads and route class limits follow the {@code ivi.server.*} properties, as in
+ * the application.
+ * <p>
+ * Two routes stand in for handlers that block: {@code GET /bench/io?ms=} sleeps like a blocking file or HTTP call in
+ * the I/O class, {@code GET /bench/gather?n=&ms=} gathers {@code n} such calls through {@link FanOut}.
+ * <p>
+ * The settings file lives in a temporary directory, so runs never touch the real {@code ivi_settings.json}; create the
+ * server before anything else loads {@link AppSettingsHandler}.
+ */
+final class EmbeddedSettingsServer implements AutoCloseable {
+
+    private final Path directory;
+    private final Javalin javalin;
+
+    EmbeddedSettingsServer(final boolean metrics) throws Exception {
+        this.directory = Files.createTempDirectory("ivi-bench-settings");
+        System.setProperty("ivi.settings.file", this.directory.resolve("ivi_settings.json").toString());
+
+        final ServerExecution execution = ServerExecution.fromSystemProperties();
+        this.javalin = Javalin.create(config -> {
+            config.showJavalinBanner = false;
+            config.jsonMapper(new FastJsonMapper());
+            execution.configure(config);
+        });
+        if (metrics) new RequestMetrics().install(this.javalin);
+        execution.install(this.javalin);
+
+        this.javalin.get("/bench/io", ctx -> {
+            Thread.sleep(ctx.queryParamAsClass("ms", Integer.class).getOrDefault(20));
+            ctx.result("ok");
+        }, RouteClass.IO);
+        this.javalin.get("/bench/gather", ctx -> {
+            final int sources = ctx.queryParamAsClass("n", Integer.class).getOrDefault(4);
+            final int millis = ctx.queryParamAsClass("ms", Integer.class).getOrDefault(20);
+            final List<Callable<Integer>> calls = new ArrayList<>();
+            for (int i = 0; i < sources; i++) {
+                final int source = i;
+                calls.add(() -> {
+                    Thread.sleep(millis);
+                    return source;
+                });
+            }
+            ctx.result(String.valueOf(FanOut.all(Duration.ofSeconds(5), calls).size()));
+        }, RouteClass.IO);
+        // Without a display the fullscreen setting is only stored, which is all the routes need here.
+        new AppSettingsHandler().addHandler(this.javalin, null);
+        this.javalin.start(0);
+    }
+
+    String baseUrl() {
+        return "http://127.0.0.1:" + this.javalin.port();
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.javalin.stop();
+        AppSettingsHandler.getSettingsStore().close();
+        try (final var files = Files.walk(this.directory)) {
+            files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(path -> path.toFile().delete());
+        }
+    }
+
+}
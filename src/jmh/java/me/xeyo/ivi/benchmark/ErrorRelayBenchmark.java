@@ -0,0 +1,86 @@
+package me.xeyo.ivi.benchmark;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import me.xeyo.ivi.core.error.ExceptionJournal;
+import me.xeyo.ivi.core.javalin.handler.error.ErrorRelay;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Serializing the error journal the way {@code GET /errors} streams it, for a journal holding {@code entries}
+ * distinct errors. The route pages at most 1000 entries per request; the larger sizes measure how serialization
+ * scales when a journal is configured that large ({@code ivi.errors.capacity}).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ErrorRelayBenchmark {
+
+    @Param({"10", "1000", "100000"})
+    public int entries;
+
+    private ExceptionJournal journal;
+    private List<ExceptionJournal.Change> changes;
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream(1024 * 1024);
+
+    @Setup
+    public void fillJournal() {
+        this.journal = new ExceptionJournal(this.entries);
+        for (int i = 0; i < this.entries; i++) {
+            this.journal.record(syntheticException(i));
+        }
+        this.changes = this.journal.changesSince(-1, Integer.MAX_VALUE);
+    }
+
+    /**
+     * A distinct fingerprint per index: the line numbers of the frames differ.
+     */
+    private static Exception syntheticException(final int index) {
+        final var exception = new IllegalStateException("Synthetic failure #" + index + " while reading /api/weather");
+        final var stackTrace = new StackTraceElement[12];
+        for (int frame = 0; frame < stackTrace.length; frame++) {
+            stackTrace[frame] = new StackTraceElement("me.xeyo.ivi.core.bench.Frame" + frame, "call" + frame,
+                    "Frame" + frame + ".java", frame == 0 ? index + 1 : 40 + frame);
+        }
+        exception.setStackTrace(stackTrace);
+        return exception;
+    }
+
+    @Benchmark
+    public int write() throws IOException {
+        this.output.reset();
+        try (final var buffered = new BufferedOutputStream(this.output, 8192)) {
+            ErrorRelay.writeErrors(buffered, this.changes);
+        }
+        return this.output.size();
+    }
+
+    /**
+     * Includes collecting and sorting the changes, as a request with {@code since=-1} does.
+     */
+    @Benchmark
+    public int collectAndWrite() throws IOException {
+        this.output.reset();
+        try (final var buffered = new BufferedOutputStream(this.output, 8192)) {
+            ErrorRelay.writeErrors(buffered, this.journal.changesSince(-1, Integer.MAX_VALUE));
+        }
+        return this.output.size();
+    }
+
+}
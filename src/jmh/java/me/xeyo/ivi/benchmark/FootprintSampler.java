@@ -0,0 +1,77 @@
+package me.xeyo.ivi.benchmark;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Samples this JVM's threads, heap and resident memory every 100 ms while a load run is measured. The load
+ * generator's own clients run in the same JVM on virtual threads, so they add only a constant few carrier threads to
+ * what the server uses.
+ */
+final class FootprintSampler {
+
+    private static final Path PROC_STATUS = Path.of("/proc/self/status");
+
+    private final Thread thread;
+    private volatile boolean running = true;
+    private long maxHeapUsed;
+    private long maxResident = -1;
+    private int maxThreads;
+
+    FootprintSampler() {
+        ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+        this.thread = Thread.ofPlatform().daemon().name("footprint-sampler").start(this::sample);
+    }
+
+    private void sample() {
+        final var memory = ManagementFactory.getMemoryMXBean();
+        final var threads = ManagementFactory.getThreadMXBean();
+        while (this.running) {
+            this.maxHeapUsed = Math.max(this.maxHeapUsed, memory.getHeapMemoryUsage().getUsed());
+            this.maxResident = Math.max(this.maxResident, residentBytes());
+            this.maxThreads = Math.max(this.maxThreads, threads.getThreadCount());
+            try {
+                Thread.sleep(100);
+            } catch (final InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    JSONObject stop() throws InterruptedException {
+        this.running = false;
+        this.thread.interrupt();
+        this.thread.join();
+
+        final var json = new JSONObject();
+        json.put("threads", System.getProperty("ivi.server.threads", "platform").toLowerCase(Locale.ROOT));
+        json.put("maxLiveThreads", this.maxThreads);
+        json.put("peakThreads", ManagementFactory.getThreadMXBean().getPeakThreadCount());
+        json.put("maxHeapUsedBytes", this.maxHeapUsed);
+        json.put("maxResidentBytes", this.maxResident);
+        json.put("gcCollections", ManagementFactory.getGarbageCollectorMXBeans().stream()
+                .mapToLong(collector -> Math.max(0, collector.getCollectionCount())).sum());
+        return json;
+    }
+
+    /**
+     * VmRSS from procfs, or -1 where there is none.
+     */
+    private static long residentBytes() {
+        try {
+            for (final String line : Files.readAllLines(PROC_STATUS)) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6).trim().split("\\s+")[0]) * 1024;
+                }
+            }
+        } catch (final IOException | RuntimeException e) {
+            // Not Linux.
+        }
+        return -1;
+    }
+
+}
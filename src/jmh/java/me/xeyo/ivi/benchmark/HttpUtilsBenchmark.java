@@ -0,0 +1,115 @@
+package me.xeyo.ivi.benchmark;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import me.xeyo.ivi.core.utils.HttpUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * {@link HttpUtils} against a local stub that answers like a weather API: a forecast document that must not be
+ * stored, so every call goes over the (loopback) network, and one that may be cached for an hour.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpUtilsBenchmark {
+
+    private static final int FAN_OUT = 8;
+
+    private HttpServer server;
+    private String uncachedUrl;
+    private String cachedUrl;
+    private List<String> fanOutUrls;
+
+    @Setup(Level.Trial)
+    public void startStub() throws IOException {
+        final byte[] forecast = forecastDocument().toJSONString().getBytes(StandardCharsets.UTF_8);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        this.server.createContext("/forecast", exchange -> respond(exchange, forecast, "no-store"));
+        this.server.createContext("/cached", exchange -> respond(exchange, forecast, "max-age=3600"));
+        this.server.start();
+
+        final String base = "http://127.0.0.1:" + this.server.getAddress().getPort();
+        this.uncachedUrl = base + "/forecast";
+        this.cachedUrl = base + "/cached";
+        this.fanOutUrls = new ArrayList<>(FAN_OUT);
+        for (int i = 0; i < FAN_OUT; i++) {
+            this.fanOutUrls.add(base + "/forecast?hour=" + i);
+        }
+        HttpUtils.clearCache();
+    }
+
+    @TearDown(Level.Trial)
+    public void stopStub() {
+        this.server.stop(0);
+        System.out.println("[BENCH] HttpUtils stats: " + HttpUtils.getStats());
+    }
+
+    private static void respond(final HttpExchange exchange, final byte[] body, final String cacheControl) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.getResponseHeaders().set("Cache-Control", cacheControl);
+        exchange.sendResponseHeaders(200, body.length);
+        try (final var output = exchange.getResponseBody()) {
+            output.write(body);
+        }
+    }
+
+    @Benchmark
+    public JSONObject fetch() throws Exception {
+        return HttpUtils.getJsonObject(this.uncachedUrl);
+    }
+
+    @Benchmark
+    public JSONObject cacheHit() throws Exception {
+        return HttpUtils.getJsonObject(this.cachedUrl);
+    }
+
+    @Benchmark
+    public List<JSONObject> fanOut() {
+        return HttpUtils.getAllJsonObjects(this.fanOutUrls).join();
+    }
+
+    private static JSONObject forecastDocument() {
+        final var hourly = new JSONArray();
+        for (int hour = 0; hour < 48; hour++) {
+            final var entry = new JSONObject();
+            entry.put("time", 1_760_000_000L + hour * 3600L);
+            entry.put("temperature", 12.5 + Math.sin(hour / 4.0) * 6);
+            entry.put("precipitation", hour % 5 == 0 ? 0.4 : 0.0);
+            entry.put("weatherCode", hour % 3);
+            hourly.add(entry);
+        }
+        final var document = new JSONObject();
+        document.put("latitude", 53.55);
+        document.put("longitude", 9.99);
+        document.put("timezone", "Europe/Berlin");
+        document.put("hourly", hourly);
+        return document;
+    }
+
+}
@@ -0,0 +1,106 @@
+package me.xeyo.ivi.benchmark;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import me.xeyo.ivi.core.javalin.FastJsonMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writing a response body the way Javalin's Jackson mapper did, through {@link FastJsonMapper}, and from a
+ * pre-encoded copy. {@code settings} is the document of {@code GET /api/app/settings}, {@code stations} a full page
+ * of radio search results. Run with {@code -prof gc} to compare the allocation per response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonResponseBenchmark {
+
+    @Param({"settings", "stations"})
+    public String document;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream(64 * 1024);
+
+    private JSONObject body;
+    private byte[] encodedBody;
+
+    @Setup
+    public void setUp() {
+        this.body = "settings".equals(this.document) ? settingsDocument() : stationsDocument();
+        this.encodedBody = FastJsonMapper.encode(this.body);
+    }
+
+    @Benchmark
+    public int jackson() throws IOException {
+        this.output.reset();
+        this.objectMapper.writeValue(this.output, this.body);
+        return this.output.size();
+    }
+
+    @Benchmark
+    public int fastjson() {
+        this.output.reset();
+        FastJsonMapper.writeTo(this.output, this.body);
+        return this.output.size();
+    }
+
+    @Benchmark
+    public int preEncoded() {
+        this.output.reset();
+        this.output.writeBytes(this.encodedBody);
+        return this.output.size();
+    }
+
+    private static JSONObject settingsDocument() {
+        final var settings = new JSONObject();
+        settings.put("theme", "dark");
+        settings.put("fullscreen", false);
+        settings.put("notifications", true);
+
+        final var body = new JSONObject();
+        body.put("success", true);
+        body.put("settings", settings);
+        body.put("availableThemes", JSONArray.of("dark", "orange"));
+        return body;
+    }
+
+    private static JSONObject stationsDocument() {
+        final var results = new JSONArray();
+        for (int i = 0; i < 50; i++) {
+            final var station = new JSONObject();
+            station.put("id", Integer.toHexString(0x5f3759df + i * 7919));
+            station.put("name", "Station " + i + " Hamburg");
+            station.put("genre", i % 2 == 0 ? "pop" : "news");
+            station.put("country", "DE");
+            station.put("frequencyMhz", 87.5 + i * 0.4);
+            station.put("streamUrl", "http://streams.example.org/station-" + i + ".mp3");
+            station.put("favorite", i < 3);
+            station.put("score", 1.0 - i * 0.01);
+            results.add(station);
+        }
+
+        final var body = new JSONObject();
+        body.put("success", true);
+        body.put("query", "ham");
+        body.put("results", results);
+        return body;
+    }
+
+}
@@ -0,0 +1,200 @@
+package me.xeyo.ivi.benchmark;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONWriter;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Closed-loop load against one route: {@code concurrency} clients each send the next request as soon as the previous
+ * one is answered, for {@code duration} seconds after a warmup. Every latency is kept, so the percentiles are exact.
+ * The report is printed as JSON and optionally written to a file, so runs of different releases can be diffed.
+ * <p>
+ * Without {@code --url} an embedded server (see {@link EmbeddedSettingsServer}) is started and {@code --path} (default
+ * {@code /api/app/settings}) is loaded, with request metrics recording unless {@code --metrics false}. The report then
+ * also shows the server side: peak threads, heap and resident memory sampled during the run.
+ * <pre>
+ * java -cp target/benchmarks.jar me.xeyo.ivi.benchmark.LoadGenerator --concurrency 16 --duration 20 --out load.json
+ * java -Divi.server.threads=virtual -cp target/benchmarks.jar me.xeyo.ivi.benchmark.LoadGenerator --path /bench/io?ms=50 \
+ *     --concurrency 200
+ * java -cp target/benchmarks.jar me.xeyo.ivi.benchmark.LoadGenerator --url http://127.0.0.1:7070/api/app/settings/theme \
+ *     --method PUT --body '{"value":"dark"}'
+ * </pre>
+ */
+public final class LoadGenerator {
+
+    private LoadGenerator() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Map<String, String> options = parseOptions(args);
+        final int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "8"));
+        final int warmupSeconds = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        final int durationSeconds = Integer.parseInt(options.getOrDefault("duration", "15"));
+        final String method = options.getOrDefault("method", "GET").toUpperCase();
+        final String body = options.get("body");
+
+        EmbeddedSettingsServer embedded = null;
+        String url = options.get("url");
+        if (url == null) {
+            embedded = new EmbeddedSettingsServer(Boolean.parseBoolean(options.getOrDefault("metrics", "true")));
+            url = embedded.baseUrl() + options.getOrDefault("path", "/api/app/settings");
+        }
+
+        final var publisher = body != null ? HttpRequest.BodyPublishers.ofString(body) : HttpRequest.BodyPublishers.noBody();
+        final var request = HttpRequest.newBuilder(URI.create(url)).method(method, publisher).header("Content-Type", "application/json").build();
+
+        try (final var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build()) {
+            System.out.println("[LOAD] " + method + " " + url + ", " + concurrency + " clients, warmup " + warmupSeconds + " s");
+            run(client, request, concurrency, TimeUnit.SECONDS.toNanos(warmupSeconds));
+            System.out.println("[LOAD] Measuring for " + durationSeconds + " s");
+            final var footprint = embedded != null ? new FootprintSampler() : null;
+            final long start = System.nanoTime();
+            final List<Worker> workers = run(client, request, concurrency, TimeUnit.SECONDS.toNanos(durationSeconds));
+            final long elapsed = System.nanoTime() - start;
+
+            final JSONObject report = report(method, url, concurrency, elapsed, workers);
+            if (footprint != null) report.put("server", footprint.stop());
+            final String json = report.toJSONString(JSONWriter.Feature.PrettyFormat);
+            System.out.println(json);
+            if (options.containsKey("out")) {
+                Files.writeString(Path.of(options.get("out")), json, StandardCharsets.UTF_8);
+            }
+        } finally {
+            if (embedded != null) embedded.close();
+        }
+    }
+
+    private static List<Worker> run(final HttpClient client, final HttpRequest request, final int concurrency, final long durationNanos) throws Exception {
+        final long deadline = System.nanoTime() + durationNanos;
+        final List<Worker> workers = new ArrayList<>(concurrency);
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final List<Future<?>> futures = new ArrayList<>(concurrency);
+            for (int i = 0; i < concurrency; i++) {
+                final var worker = new Worker(client, request, deadline);
+                workers.add(worker);
+                futures.add(executor.submit(worker));
+            }
+            for (final Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return workers;
+    }
+
+    private static JSONObject report(final String method, final String url, final int concurrency, final long elapsedNanos, final List<Worker> workers) {
+        int total = 0;
+        long errors = 0;
+        final Map<Integer, Long> statuses = new TreeMap<>();
+        for (final Worker worker : workers) {
+            total += worker.count;
+            errors += worker.errors;
+            worker.statuses.forEach((status, count) -> statuses.merge(status, count, Long::sum));
+        }
+
+        final long[] latencies = new long[total];
+        int offset = 0;
+        for (final Worker worker : workers) {
+            System.arraycopy(worker.latencies, 0, latencies, offset, worker.count);
+            offset += worker.count;
+        }
+        Arrays.sort(latencies);
+
+        final var latency = new JSONObject();
+        latency.put("mean", total == 0 ? 0 : Arrays.stream(latencies).average().orElse(0) / 1000.0);
+        latency.put("p50", percentileMicros(latencies, 50));
+        latency.put("p90", percentileMicros(latencies, 90));
+        latency.put("p99", percentileMicros(latencies, 99));
+        latency.put("p999", percentileMicros(latencies, 99.9));
+        latency.put("max", total == 0 ? 0 : latencies[total - 1] / 1000.0);
+
+        final var report = new JSONObject();
+        report.put("method", method);
+        report.put("url", url);
+        report.put("concurrency", concurrency);
+        report.put("durationSeconds", elapsedNanos / 1e9);
+        report.put("requests", total);
+        report.put("errors", errors);
+        report.put("throughputPerSecond", Math.round(total / (elapsedNanos / 1e9)));
+        report.put("latencyMicros", latency);
+        // Keyed by the status as text: fastjson2 writes integer map keys unquoted, which JSON parsers reject.
+        final var statusCounts = new JSONObject();
+        statuses.forEach((status, count) -> statusCounts.put(String.valueOf(status), count));
+        report.put("statuses", statusCounts);
+        report.put("javaVersion", Runtime.version().toString());
+        report.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        return report;
+    }
+
+    private static double percentileMicros(final long[] sorted, final double percentile) {
+        if (sorted.length == 0) return 0;
+        final int rank = (int) Math.ceil(sorted.length * percentile / 100.0);
+        return sorted[Math.max(0, Math.min(sorted.length, rank) - 1)] / 1000.0;
+    }
+
+    private static Map<String, String> parseOptions(final String[] args) {
+        final Map<String, String> options = new LinkedHashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (!args[i].startsWith("--") || i + 1 >= args.length) {
+                throw new IllegalArgumentException("Expected --option value pairs, got: " + String.join(" ", args));
+            }
+            options.put(args[i].substring(2), args[++i]);
+        }
+        return options;
+    }
+
+    private static final class Worker implements Runnable {
+
+        private final HttpClient client;
+        private final HttpRequest request;
+        private final long deadline;
+        private final Map<Integer, Long> statuses = new TreeMap<>();
+        private long[] latencies = new long[1 << 14];
+        private int count;
+        private long errors;
+
+        private Worker(final HttpClient client, final HttpRequest request, final long deadline) {
+            this.client = client;
+            this.request = request;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public void run() {
+            while (System.nanoTime() - this.deadline < 0) {
+                final long start = System.nanoTime();
+                try {
+                    final HttpResponse<Void> response = this.client.send(this.request, HttpResponse.BodyHandlers.discarding());
+                    this.record(System.nanoTime() - start);
+                    this.statuses.merge(response.statusCode(), 1L, Long::sum);
+                    if (response.statusCode() >= 400) this.errors++;
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (final Exception e) {
+                    this.errors++;
+                }
+            }
+        }
+
+        private void record(final long nanos) {
+            if (this.count == this.latencies.length) this.latencies = Arrays.copyOf(this.latencies, this.count * 2);
+            this.latencies[this.count++] = nanos;
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+package me.xeyo.ivi.benchmark;
+
+import java.util.concurrent.TimeUnit;
+import me.xeyo.ivi.core.metrics.LatencyHistogram;
+import me.xeyo.ivi.core.metrics.RequestMetrics;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What recording one request costs on the request path, alone and with four threads recording into the same series
+ * as concurrent requests to one route do. {@link SettingsServerBenchmark} measures the same with the HTTP round trip
+ * around it. Run with {@code -prof gc} to confirm recording does not allocate.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MetricsRecordingBenchmark {
+
+    private final RequestMetrics metrics = new RequestMetrics();
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private long sample;
+
+    @Setup
+    public void createSeries() {
+        this.metrics.record(RequestMetrics.Transport.HTTP, "GET", "/api/app/settings", 200, 1);
+    }
+
+    private long nextSample() {
+        // Spread over the buckets a local request usually lands in.
+        return 40_000 + (++this.sample & 0xffff) * 8;
+    }
+
+    @Benchmark
+    public void histogram() {
+        this.histogram.record(this.nextSample());
+    }
+
+    @Benchmark
+    public void request() {
+        this.metrics.record(RequestMetrics.Transport.HTTP, "GET", "/api/app/settings", 200, this.nextSample());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void requestContended() {
+        this.metrics.record(RequestMetrics.Transport.HTTP, "GET", "/api/app/settings", 200, 150_000);
+    }
+
+}
@@ -0,0 +1,102 @@
+package me.xeyo.ivi.benchmark;
+
+import com.alibaba.fastjson2.JSONObject;
+import com.alibaba.fastjson2.JSONWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs the same {@link LoadGenerator} scenario against the embedded server once on platform and once on virtual
+ * threads, each in a fresh JVM so neither run's threads or heap leak into the other, and writes both reports side
+ * by side, keyed by scenario path. Arguments are passed to the load generator. Without {@code --path} two scenarios
+ * run: 200 clients on a route that blocks for 50 ms, a blocking I/O handler under a burst of requests, and 100
+ * clients on a route that gathers four such 30 ms calls through {@link me.xeyo.ivi.core.utils.FanOut}:
+ * <pre>
+ * java -cp target/benchmarks.jar me.xeyo.ivi.benchmark.ServerModeComparison --out modes.json
+ * java -cp target/benchmarks.jar me.xeyo.ivi.benchmark.ServerModeComparison --path /bench/gather?n=4&amp;ms=30 --concurrency 100
+ * </pre>
+ * Child JVMs get {@code ivi.server.ioConcurrency=256}, so the route class limit does not cap either mode, and the
+ * heap limit of {@code -Xmx} (default 256m), as on the head unit.
+ */
+public final class ServerModeComparison {
+
+    private ServerModeComparison() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final List<String> loadArgs = new ArrayList<>();
+        String out = null;
+        String heap = "256m";
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            switch (args[i]) {
+                case "--out" -> out = args[i + 1];
+                case "--heap" -> heap = args[i + 1];
+                default -> {
+                    loadArgs.add(args[i]);
+                    loadArgs.add(args[i + 1]);
+                }
+            }
+        }
+        final List<List<String>> scenarios = new ArrayList<>();
+        if (loadArgs.contains("--path")) {
+            scenarios.add(withDefault(loadArgs, "--concurrency", "200"));
+        } else {
+            scenarios.add(withDefault(scenario(loadArgs, "/bench/io?ms=50"), "--concurrency", "200"));
+            scenarios.add(withDefault(scenario(loadArgs, "/bench/gather?n=4&ms=30"), "--concurrency", "100"));
+        }
+
+        final var comparison = new JSONObject();
+        for (final List<String> scenario : scenarios) {
+            final var modes = new JSONObject();
+            for (final String mode : new String[]{"platform", "virtual"}) {
+                modes.put(mode, runMode(mode, heap, scenario));
+            }
+            comparison.put(scenario.get(scenario.indexOf("--path") + 1), modes);
+        }
+
+        final String json = comparison.toJSONString(JSONWriter.Feature.PrettyFormat);
+        System.out.println(json);
+        if (out != null) Files.writeString(Path.of(out), json, StandardCharsets.UTF_8);
+    }
+
+    private static List<String> scenario(final List<String> loadArgs, final String path) {
+        final List<String> scenario = new ArrayList<>(loadArgs);
+        scenario.addAll(List.of("--path", path));
+        return scenario;
+    }
+
+    private static List<String> withDefault(final List<String> loadArgs, final String option, final String value) {
+        final List<String> scenario = new ArrayList<>(loadArgs);
+        if (!scenario.contains(option)) scenario.addAll(List.of(option, value));
+        return scenario;
+    }
+
+    private static JSONObject runMode(final String mode, final String heap, final List<String> loadArgs) throws IOException, InterruptedException {
+        final Path report = Files.createTempFile("ivi-load-" + mode, ".json");
+        try {
+            final List<String> command = new ArrayList<>();
+            command.add(ProcessHandle.current().info().command().orElse("java"));
+            command.add("-Xmx" + heap);
+            command.add("-Divi.server.threads=" + mode);
+            command.add("-Divi.server.ioConcurrency=256");
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(LoadGenerator.class.getName());
+            command.addAll(loadArgs);
+            command.add("--out");
+            command.add(report.toString());
+
+            System.out.println("[LOAD] Running " + mode + " threads");
+            final int exit = new ProcessBuilder(command).inheritIO().start().waitFor();
+            if (exit != 0) throw new IllegalStateException("Load run on " + mode + " threads exited with " + exit);
+            return JSONObject.parseObject(Files.readString(report));
+        } finally {
+            Files.deleteIfExists(report);
+        }
+    }
+
+}
@@ -0,0 +1,72 @@
+package me.xeyo.ivi.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import me.xeyo.ivi.core.settings.SettingsStore;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The settings file cycle: a change written through the store's writer (atomic replace, including the fsync) and
+ * the file read back the way it is read at startup.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SettingsPersistenceBenchmark {
+
+    private Path directory;
+    private Path file;
+    private SettingsStore store;
+    private boolean dark;
+
+    @Setup
+    public void createStore() throws IOException {
+        this.directory = Files.createTempDirectory("ivi-bench-store");
+        this.file = this.directory.resolve("ivi_settings.json");
+        this.store = new SettingsStore(this.file, 0, Map.of("theme", "dark", "fullscreen", false, "notifications", true));
+        this.store.flush();
+    }
+
+    @TearDown
+    public void deleteStore() throws IOException {
+        this.store.close();
+        Files.deleteIfExists(this.file);
+        Files.deleteIfExists(this.directory);
+    }
+
+    @Benchmark
+    public long save() {
+        this.dark = !this.dark;
+        this.store.put("theme", this.dark ? "dark" : "orange");
+        this.store.flush();
+        return this.store.getDiskWriteCount().get();
+    }
+
+    @Benchmark
+    public int load() {
+        return SettingsStore.loadFromFile(this.file, key -> true).size();
+    }
+
+    @Benchmark
+    public int saveAndLoad() {
+        this.save();
+        return this.load();
+    }
+
+}
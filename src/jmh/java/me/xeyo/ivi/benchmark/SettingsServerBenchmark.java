@@ -0,0 +1,95 @@
+package me.xeyo.ivi.benchmark;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round trips to the settings routes over loopback HTTP, the way the page issues them: reading all settings and
+ * switching the theme. Measures the whole request including Jetty, routing and JSON, but not the debounced disk
+ * write that follows a change. {@code metrics} compares the round trip with and without request metrics recording.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SettingsServerBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Server {
+
+        @Param({"true", "false"})
+        public boolean metrics;
+
+        private EmbeddedSettingsServer server;
+        private HttpClient client;
+        private HttpRequest getAll;
+        private HttpRequest putDark;
+        private HttpRequest putOrange;
+
+        @Setup(Level.Trial)
+        public void start() throws Exception {
+            this.server = new EmbeddedSettingsServer(this.metrics);
+            this.client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+            this.getAll = HttpRequest.newBuilder(URI.create(this.server.baseUrl() + "/api/app/settings")).GET().build();
+            this.putDark = this.putTheme("dark");
+            this.putOrange = this.putTheme("orange");
+        }
+
+        private HttpRequest putTheme(final String theme) {
+            return HttpRequest.newBuilder(URI.create(this.server.baseUrl() + "/api/app/settings/theme"))
+                    .PUT(HttpRequest.BodyPublishers.ofString("{\"value\":\"" + theme + "\"}"))
+                    .header("Content-Type", "application/json")
+                    .build();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() throws IOException {
+            this.client.close();
+            this.server.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Toggle {
+        private boolean dark;
+    }
+
+    @Benchmark
+    public int getAllSettings(final Server server) throws Exception {
+        return send(server, server.getAll).length;
+    }
+
+    /**
+     * Alternates the theme so every request is a real change that bumps the settings version.
+     */
+    @Benchmark
+    public int putTheme(final Server server, final Toggle toggle) throws Exception {
+        toggle.dark = !toggle.dark;
+        return send(server, toggle.dark ? server.putDark : server.putOrange).length;
+    }
+
+    private static byte[] send(final Server server, final HttpRequest request) throws Exception {
+        final HttpResponse<byte[]> response = server.client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) throw new IllegalStateException("HTTP " + response.statusCode() + " for " + request.uri());
+        return response.body();
+    }
+
+}
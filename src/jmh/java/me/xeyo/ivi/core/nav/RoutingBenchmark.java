@@ -0,0 +1,133 @@
+package me.xeyo.ivi.core.nav;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import me.xeyo.ivi.core.utils.SampleStats;
+
+/**
+ * Measures the routing pipeline on a region extract: import and contraction time, index size on disk, load time,
+ * and the latency distribution of random point-to-point queries. A sample of queries is also checked against a
+ * plain Dijkstra search on the road graph, so a fast but wrong hierarchy does not go unnoticed.
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar me.xeyo.ivi.core.nav.RoutingBenchmark <extract.osm[.gz]> [queries] [seed]}
+ */
+public final class RoutingBenchmark {
+
+    private static final int VERIFIED_QUERIES = 50;
+
+    private RoutingBenchmark() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: RoutingBenchmark <extract.osm[.gz]> [queries] [seed]");
+            System.exit(2);
+        }
+        final Path extract = Paths.get(args[0]);
+        final int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        final long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+
+        final Path indexFile = Files.createTempFile("ivi-routing", ".ivirt");
+        try {
+            long start = System.nanoTime();
+            final RoadGraph graph = OsmGraphImporter.read(extract);
+            final long importMillis = RoutingIndexBuilder.elapsedMillis(start);
+
+            start = System.nanoTime();
+            ContractionHierarchy.build(graph).write(indexFile);
+            final long buildMillis = RoutingIndexBuilder.elapsedMillis(start);
+
+            start = System.nanoTime();
+            final RoutingIndex index = RoutingIndex.read(indexFile);
+            final long loadMillis = RoutingIndexBuilder.elapsedMillis(start);
+
+            System.out.println("[NAV] Graph: " + graph.nodeCount + " nodes, " + graph.edgeCount() + " road edges");
+            System.out.println("[NAV] Import: " + importMillis + " ms, contraction and write: " + buildMillis
+                    + " ms, load: " + loadMillis + " ms");
+            System.out.println("[NAV] Index: " + Files.size(indexFile) + " bytes, " + index.edgeCount()
+                    + " hierarchy edges, " + index.shortcutCount() + " shortcuts");
+            if (graph.nodeCount < 2) return;
+
+            final var random = new Random(seed);
+            final RoutingIndex.Query query = index.new Query();
+            final var dijkstra = new Dijkstra(graph);
+            final var latency = new SampleStats();
+            final var settled = new SampleStats();
+            int unreachable = 0;
+            int mismatches = 0;
+
+            // Warm up the JIT on a separate run so the measured distribution reflects steady state.
+            for (int i = 0; i < Math.min(1000, queryCount); i++) {
+                query.shortestPath(random.nextInt(graph.nodeCount), random.nextInt(graph.nodeCount));
+            }
+
+            for (int i = 0; i < queryCount; i++) {
+                final int source = random.nextInt(graph.nodeCount);
+                final int target = random.nextInt(graph.nodeCount);
+                final long queryStart = System.nanoTime();
+                final RoutingIndex.ShortestPath path = query.shortestPath(source, target);
+                latency.record(System.nanoTime() - queryStart);
+                settled.record(query.settledNodes);
+                if (path == null) unreachable++;
+            }
+
+            // Checked apart from the timed loop, whose cache behaviour Dijkstra would disturb.
+            for (int i = 0; i < Math.min(VERIFIED_QUERIES, queryCount); i++) {
+                final int source = random.nextInt(graph.nodeCount);
+                final int target = random.nextInt(graph.nodeCount);
+                final RoutingIndex.ShortestPath path = query.shortestPath(source, target);
+                if (dijkstra.travelMillis(source, target) != (path == null ? -1 : path.travelMillis())) mismatches++;
+            }
+
+            System.out.println("[NAV] Queries: " + queryCount + ", unreachable: " + unreachable + ", mismatches against Dijkstra: "
+                    + mismatches + "/" + Math.min(VERIFIED_QUERIES, queryCount));
+            System.out.println("[NAV] Query latency (us): " + latency.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+            System.out.println("[NAV] Settled nodes: " + settled.toJson(1));
+        } finally {
+            Files.deleteIfExists(indexFile);
+        }
+    }
+
+    /**
+     * Plain Dijkstra on the road graph, as the reference the hierarchy must agree with.
+     */
+    private static final class Dijkstra {
+
+        private final RoadGraph graph;
+        private final IndexedMinHeap heap;
+        private final long[] distance;
+
+        Dijkstra(final RoadGraph graph) {
+            this.graph = graph;
+            this.heap = new IndexedMinHeap(graph.nodeCount);
+            this.distance = new long[graph.nodeCount];
+        }
+
+        long travelMillis(final int source, final int target) {
+            Arrays.fill(this.distance, Long.MAX_VALUE);
+            this.heap.clear();
+            this.distance[source] = 0;
+            this.heap.set(source, 0);
+            while (!this.heap.isEmpty()) {
+                final long current = this.heap.peekKey();
+                final int node = this.heap.pop();
+                if (node == target) return current;
+                for (int edge = this.graph.firstEdge[node]; edge < this.graph.firstEdge[node + 1]; edge++) {
+                    final int next = this.graph.edgeTarget[edge];
+                    final long candidate = current + this.graph.edgeWeight[edge];
+                    if (candidate < this.distance[next]) {
+                        this.distance[next] = candidate;
+                        this.heap.set(next, candidate);
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+
+}
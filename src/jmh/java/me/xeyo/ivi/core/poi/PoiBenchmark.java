@@ -0,0 +1,184 @@
+package me.xeyo.ivi.core.poi;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import me.xeyo.ivi.core.nav.Geo;
+import me.xeyo.ivi.core.utils.SampleStats;
+
+/**
+ * Measures the POI index on a synthetic dataset: points clustered around towns over a country-sized area plus a
+ * uniform background, with a realistic mix of categories. Reports build time, pack size, the Java heap the opened
+ * pack costs, and the latency of nearest, filtered nearest and box searches. A sample of filtered nearest searches is
+ * checked against a linear scan.
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar me.xeyo.ivi.core.poi.PoiBenchmark [points] [queries] [seed]}
+ */
+public final class PoiBenchmark {
+
+    private static final int VERIFIED_QUERIES = 50;
+    private static final double MIN_LATITUDE = 47.3;
+    private static final double MAX_LATITUDE = 55.0;
+    private static final double MIN_LONGITUDE = 5.9;
+    private static final double MAX_LONGITUDE = 15.0;
+
+    private PoiBenchmark() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final int pointCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        final int queryCount = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        final long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        final var random = new Random(seed);
+
+        final int[] latitudes = new int[pointCount];
+        final int[] longitudes = new int[pointCount];
+        final int[] categories = new int[pointCount];
+        final double[][] towns = new double[Math.max(1, pointCount / 5000)][];
+        for (int i = 0; i < towns.length; i++) {
+            towns[i] = randomPosition(random);
+        }
+        final var writer = new PoiPackWriter();
+        for (int i = 0; i < pointCount; i++) {
+            final double[] position;
+            if (random.nextInt(10) < 7) {
+                final double[] town = towns[random.nextInt(towns.length)];
+                position = new double[]{town[0] + random.nextGaussian() * 0.03, town[1] + random.nextGaussian() * 0.05};
+            } else {
+                position = randomPosition(random);
+            }
+            final PoiCategory category = randomCategory(random);
+            writer.add(position[0], position[1], category, category.getKey() + " " + i);
+            latitudes[i] = Geo.toE7(position[0]);
+            longitudes[i] = Geo.toE7(position[1]);
+            categories[i] = category.ordinal();
+        }
+
+        final Path packFile = Files.createTempFile("ivi-poi", ".ivipoi");
+        try {
+            long start = System.nanoTime();
+            final long packBytes = writer.write(packFile, PoiPack.DEFAULT_NODE_SIZE);
+            final long buildMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+            final long heapBefore = usedHeap();
+            start = System.nanoTime();
+            try (final PoiPack pack = PoiPack.open(packFile)) {
+                final long openMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+                final long heapAfter = usedHeap();
+
+                System.out.println("[POI] Points: " + pointCount + ", build: " + buildMillis + " ms, open: " + openMicros + " us");
+                System.out.println("[POI] Pack: " + packBytes + " bytes (" + packBytes / Math.max(1, pointCount)
+                        + " per point) mapped off-heap, heap cost of opening: " + Math.max(0, heapAfter - heapBefore) + " bytes");
+
+                final var query = new PoiPack.Query();
+                final int filter = PoiCategory.FUEL.mask() | PoiCategory.CHARGING.mask();
+                for (int i = 0; i < Math.min(10_000, queryCount); i++) {
+                    final double[] position = randomPosition(random);
+                    pack.nearest(query, Geo.toE7(position[0]), Geo.toE7(position[1]), 10, PoiCategory.ALL, 0);
+                    pack.nearest(query, Geo.toE7(position[0]), Geo.toE7(position[1]), 5, filter, 20_000);
+                }
+
+                final var nearest = new SampleStats();
+                final var filtered = new SampleStats();
+                final var within = new SampleStats();
+                long withinResults = 0;
+                for (int i = 0; i < queryCount; i++) {
+                    final double[] position = randomPosition(random);
+                    final int latitude = Geo.toE7(position[0]);
+                    final int longitude = Geo.toE7(position[1]);
+
+                    long queryStart = System.nanoTime();
+                    pack.nearest(query, latitude, longitude, 10, PoiCategory.ALL, 0);
+                    nearest.record(System.nanoTime() - queryStart);
+
+                    queryStart = System.nanoTime();
+                    pack.nearest(query, latitude, longitude, 5, filter, 20_000);
+                    filtered.record(System.nanoTime() - queryStart);
+
+                    // Roughly 2 by 2 km around the position.
+                    queryStart = System.nanoTime();
+                    pack.within(query, latitude - 90_000, longitude - 140_000, latitude + 90_000, longitude + 140_000,
+                            PoiService.MAX_WITHIN, PoiCategory.ALL);
+                    within.record(System.nanoTime() - queryStart);
+                    withinResults += query.size();
+                }
+
+                int mismatches = 0;
+                for (int i = 0; i < Math.min(VERIFIED_QUERIES, queryCount); i++) {
+                    final double[] position = randomPosition(random);
+                    final int latitude = Geo.toE7(position[0]);
+                    final int longitude = Geo.toE7(position[1]);
+                    pack.nearest(query, latitude, longitude, 5, filter, 20_000);
+                    final double[] expected = linearScan(latitudes, longitudes, categories, latitude, longitude, 5, filter, 20_000);
+                    if (expected.length != query.size()) {
+                        mismatches++;
+                        continue;
+                    }
+                    for (int j = 0; j < expected.length; j++) {
+                        if (Math.abs(expected[j] - query.meters(j)) > 0.01) {
+                            mismatches++;
+                            break;
+                        }
+                    }
+                }
+
+                System.out.println("[POI] Queries: " + queryCount + ", mismatches against a linear scan: " + mismatches
+                        + "/" + Math.min(VERIFIED_QUERIES, queryCount));
+                System.out.println("[POI] Nearest 10 (us): " + nearest.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+                System.out.println("[POI] Nearest 5 fuel or charging within 20 km (us): " + filtered.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+                System.out.println("[POI] Within 2 km box (us): " + within.toJson(TimeUnit.MICROSECONDS.toNanos(1))
+                        + ", average results: " + withinResults / Math.max(1, queryCount));
+            }
+        } finally {
+            Files.deleteIfExists(packFile);
+        }
+    }
+
+    private static double[] randomPosition(final Random random) {
+        return new double[]{
+                MIN_LATITUDE + random.nextDouble() * (MAX_LATITUDE - MIN_LATITUDE),
+                MIN_LONGITUDE + random.nextDouble() * (MAX_LONGITUDE - MIN_LONGITUDE)
+        };
+    }
+
+    /**
+     * Parking and food dominate real datasets; fuel and charging are a few percent each.
+     */
+    private static PoiCategory randomCategory(final Random random) {
+        final int roll = random.nextInt(100);
+        if (roll < 4) return PoiCategory.FUEL;
+        if (roll < 7) return PoiCategory.CHARGING;
+        if (roll < 30) return PoiCategory.PARKING;
+        final PoiCategory[] categories = PoiCategory.values();
+        return categories[3 + random.nextInt(categories.length - 3)];
+    }
+
+    private static double[] linearScan(final int[] latitudes, final int[] longitudes, final int[] categories,
+                                       final int latitude, final int longitude, final int limit, final int mask,
+                                       final double maxMeters) {
+        final double scaleX = PoiPack.METERS_PER_E7 * Math.cos(Math.toRadians(latitude / Geo.E7));
+        final double scaleY = PoiPack.METERS_PER_E7;
+        final double[] distances = new double[latitudes.length];
+        int count = 0;
+        for (int i = 0; i < latitudes.length; i++) {
+            if ((mask & (1 << categories[i])) == 0) continue;
+            final double dx = (longitudes[i] - (double) longitude) * scaleX;
+            final double dy = (latitudes[i] - (double) latitude) * scaleY;
+            final double meters = Math.sqrt(dx * dx + dy * dy);
+            if (meters <= maxMeters) distances[count++] = meters;
+        }
+        final double[] sorted = Arrays.copyOf(distances, count);
+        Arrays.sort(sorted);
+        return Arrays.copyOf(sorted, Math.min(limit, count));
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+}
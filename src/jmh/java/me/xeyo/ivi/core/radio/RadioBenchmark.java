@@ -0,0 +1,186 @@
+package me.xeyo.ivi.core.radio;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import me.xeyo.ivi.core.utils.SampleStats;
+
+/**
+ * Measures the station search the way the radio tile uses it: loads a catalog, reports load and index time and the
+ * index size, then types station names one keystroke at a time, with and without typos, and reports the latency of
+ * each keystroke's search.
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar me.xeyo.ivi.core.radio.RadioBenchmark [catalog.csv | stationCount] [names] [seed]};
+ * without a catalog file a synthetic one with the given number of stations (default 50000) is generated.
+ */
+public final class RadioBenchmark {
+
+    private static final String[] PREFIXES = {"Radio", "FM", "Classic", "Hit", "Antenne", "Rádio", "Star", "Kiss",
+            "Energy", "Sunshine", "Smooth", "Capital", "Heart", "Nostalgie", "Virgin", "Jazz", "Radio Maria", "Free"};
+    private static final String[] SUFFIXES = {"FM", "Radio", "Live", "Hits", "Plus", "One", "2", "Classics", "Lounge",
+            "Talk", "News", "Country", "Rock", "Dance", "80s", "90s"};
+    private static final String[] GENRES = {"pop", "rock", "jazz", "classical", "news", "talk", "dance", "electronic",
+            "hip hop", "country", "oldies", "80s", "90s", "chillout", "ambient", "metal", "folk", "latin", "reggae",
+            "soul", "blues", "top 40", "sports", "religious", "world music"};
+    private static final String[] COUNTRIES = {"Germany", "France", "United Kingdom", "Italy", "Spain", "Poland",
+            "Netherlands", "Austria", "Switzerland", "Czechia", "Sweden", "Brazil", "United States", "Canada", "Greece",
+            "Portugal", "Türkiye", "Romania", "Hungary", "Belgium"};
+    private static final String[] SYLLABLES = {"ber", "lin", "mun", "ich", "ham", "burg", "kö", "ln", "wien", "pra",
+            "ha", "lyon", "mar", "seil", "le", "ro", "ma", "mi", "la", "no", "ma", "drid", "kra", "ków", "sto", "ck",
+            "holm", "por", "to", "zü", "rich", "bre", "men", "dres", "den", "ath", "ens", "gen", "ova", "sa", "lz"};
+
+    private RadioBenchmark() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final String source = args.length > 0 ? args[0] : "50000";
+        final int names = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        final long seed = args.length > 2 ? Long.parseLong(args[2]) : 42;
+        final var random = new Random(seed);
+
+        Path catalog = Paths.get(source);
+        boolean generated = false;
+        if (!Files.isRegularFile(catalog)) {
+            catalog = Files.createTempFile("ivi-radio-benchmark", ".csv");
+            generated = true;
+            writeSyntheticCatalog(catalog, Integer.parseInt(source), random);
+        }
+
+        try {
+            final long heapBefore = usedHeap();
+            final long loadStart = System.nanoTime();
+            final List<RadioStation> stations = RadioCatalog.load(catalog);
+            final long loadNanos = System.nanoTime() - loadStart;
+            final long heapWithStations = usedHeap();
+            final long indexStart = System.nanoTime();
+            final StationIndex index = StationIndex.build(stations);
+            final long indexNanos = System.nanoTime() - indexStart;
+            final long heapWithIndex = usedHeap();
+
+            System.out.println("[RADIO] " + stations.size() + " stations from " + (generated ? "a synthetic catalog" : catalog)
+                    + ", " + Files.size(catalog) / 1024 + " KiB");
+            System.out.println("[RADIO] Load " + TimeUnit.NANOSECONDS.toMillis(loadNanos) + " ms, index "
+                    + TimeUnit.NANOSECONDS.toMillis(indexNanos) + " ms");
+            System.out.println("[RADIO] Index: " + index.getTermCount() + " terms, " + index.getPostingCount() + " postings, "
+                    + index.getTrigramCount() + " trigrams, " + index.getIndexBytes() / 1024 + " KiB in arrays ("
+                    + (heapWithIndex - heapWithStations) / 1024 + " KiB measured), stations "
+                    + (heapWithStations - heapBefore) / 1024 + " KiB measured, search state "
+                    + index.getSearchBytes() / 1024 + " KiB per concurrent search");
+
+            final BitSet favorites = new BitSet(stations.size());
+            for (int i = 0; i < 20 && !stations.isEmpty(); i++) favorites.set(random.nextInt(stations.size()));
+            final StationIndex.Search search = index.newSearch();
+
+            // Warm up, then measure.
+            typeNames(index, search, stations, favorites, new Random(seed + 1), Math.min(names, 500), new SampleStats(),
+                    new SampleStats(), new long[2]);
+            final var exact = new SampleStats();
+            final var typos = new SampleStats();
+            final long[] found = new long[2];
+            typeNames(index, search, stations, favorites, random, names, exact, typos, found);
+
+            final long micros = TimeUnit.MICROSECONDS.toNanos(1);
+            System.out.println("[RADIO] Keystrokes typed correctly (us): " + exact.toJson(micros));
+            System.out.println("[RADIO] Keystrokes with a typo (us): " + typos.toJson(micros));
+            System.out.println("[RADIO] Station in the top 10 after its full name: " + found[0] + "/" + names
+                    + " typed correctly, " + found[1] + "/" + names + " with a typo");
+        } finally {
+            if (generated) Files.deleteIfExists(catalog);
+        }
+    }
+
+    /**
+     * Types each picked station's name once as is and once with a typo, searching after every keystroke like the
+     * page does.
+     */
+    private static void typeNames(final StationIndex index, final StationIndex.Search search, final List<RadioStation> stations,
+                                  final BitSet favorites, final Random random, final int names, final SampleStats exact,
+                                  final SampleStats typos, final long[] found) {
+        if (stations.isEmpty()) return;
+        for (int n = 0; n < names; n++) {
+            final int station = random.nextInt(stations.size());
+            final String name = stations.get(station).name();
+            found[0] += type(index, search, stations, name, station, favorites, exact) ? 1 : 0;
+            found[1] += type(index, search, stations, withTypo(name, random), station, favorites, typos) ? 1 : 0;
+        }
+    }
+
+    private static boolean type(final StationIndex index, final StationIndex.Search search, final List<RadioStation> stations,
+                                final String text, final int station, final BitSet favorites, final SampleStats latency) {
+        for (int length = 1; length <= text.length(); length++) {
+            final long start = System.nanoTime();
+            index.search(search, text.substring(0, length), 10, favorites);
+            latency.record(System.nanoTime() - start);
+        }
+        // Names are not unique; another station of the same name counts as found.
+        final String name = stations.get(station).name();
+        for (int i = 0; i < search.size(); i++) {
+            if (search.station(i) == station || stations.get(search.station(i)).name().equals(name)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Swaps two adjacent letters or drops, doubles or replaces one in a word of four letters or more.
+     */
+    private static String withTypo(final String text, final Random random) {
+        final String[] words = text.split(" ");
+        int word = random.nextInt(words.length);
+        for (int i = 0; i < words.length && words[word].length() < 4; i++) word = (word + 1) % words.length;
+        final String target = words[word];
+        if (target.length() < 4) return text;
+        final int at = 1 + random.nextInt(target.length() - 2);
+        final String changed = switch (random.nextInt(4)) {
+            case 0 -> target.substring(0, at) + target.charAt(at + 1) + target.charAt(at) + target.substring(at + 2);
+            case 1 -> target.substring(0, at) + target.substring(at + 1);
+            case 2 -> target.substring(0, at) + target.charAt(at) + target.substring(at);
+            default -> target.substring(0, at) + (char) ('a' + random.nextInt(26)) + target.substring(at + 1);
+        };
+        words[word] = changed;
+        return String.join(" ", words);
+    }
+
+    private static void writeSyntheticCatalog(final Path file, final int count, final Random random) throws IOException {
+        try (final BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("name,genre,country,frequency,url\n");
+            for (int i = 0; i < count; i++) {
+                final String place = place(random);
+                final String name = switch (random.nextInt(4)) {
+                    case 0 -> PREFIXES[random.nextInt(PREFIXES.length)] + " " + place;
+                    case 1 -> place + " " + SUFFIXES[random.nextInt(SUFFIXES.length)];
+                    case 2 -> PREFIXES[random.nextInt(PREFIXES.length)] + " " + place + " " + SUFFIXES[random.nextInt(SUFFIXES.length)];
+                    default -> PREFIXES[random.nextInt(PREFIXES.length)] + " " + SUFFIXES[random.nextInt(SUFFIXES.length)];
+                };
+                final String genre = GENRES[random.nextInt(GENRES.length)]
+                        + (random.nextBoolean() ? ";" + GENRES[random.nextInt(GENRES.length)] : "");
+                final String frequency = random.nextInt(3) == 0 ? ""
+                        : String.format(Locale.ROOT, "%.1f", 87.5 + random.nextInt(206) / 10.0);
+                writer.write('"' + name + "\"," + genre + ',' + COUNTRIES[random.nextInt(COUNTRIES.length)] + ','
+                        + frequency + ",https://stream.example/" + i + '\n');
+            }
+        }
+    }
+
+    private static String place(final Random random) {
+        final var place = new StringBuilder();
+        final int syllables = 2 + random.nextInt(2);
+        for (int i = 0; i < syllables; i++) place.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        place.setCharAt(0, Character.toUpperCase(place.charAt(0)));
+        return place.toString();
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+}
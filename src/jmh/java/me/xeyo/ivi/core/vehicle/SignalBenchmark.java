@@ -0,0 +1,95 @@
+package me.xeyo.ivi.core.vehicle;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import me.xeyo.ivi.core.utils.SampleStats;
+
+/**
+ * Measures the signal bus under sustained load: one producer thread per signal publishes as fast as it can, or at a
+ * fixed rate, while the frame thread drains the rings at the display rate and a subscriber receives every frame.
+ * Reports the ingest rate, the bytes allocated on the producer threads (expected to be zero), dropped samples, frame
+ * sizes and the delay from the newest sample in a frame to its delivery.
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar me.xeyo.ivi.core.vehicle.SignalBenchmark [seconds] [frameRate] [ringCapacity]
+ * [samplesPerSecondPerSignal]}; a rate of 0 (default) means unpaced.
+ */
+public final class SignalBenchmark {
+
+    private SignalBenchmark() {
+    }
+
+    public static void main(final String[] args) throws InterruptedException {
+        final int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        final int frameRate = args.length > 1 ? Integer.parseInt(args[1]) : 60;
+        final int ringCapacity = args.length > 2 ? Integer.parseInt(args[2]) : 4096;
+        final long ratePerSignal = args.length > 3 ? Long.parseLong(args[3]) : 0;
+
+        final var bus = new SignalBus(ringCapacity, frameRate);
+        final var frameBytes = new SampleStats();
+        final var frames = new AtomicLong();
+        bus.subscribe((frame, written) -> {
+            frames.incrementAndGet();
+            frameBytes.record(frame.remaining());
+            written.accept(null);
+        });
+
+        final VehicleSignal[] signals = VehicleSignal.values();
+        final long[] published = new long[signals.length];
+        final long[] allocated = new long[signals.length];
+        final var done = new CountDownLatch(signals.length);
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        for (int i = 0; i < signals.length; i++) {
+            final int index = i;
+            final var producer = new Thread(() -> {
+                final VehicleSignal signal = signals[index];
+                final var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+                final long before = threads.getCurrentThreadAllocatedBytes();
+                final long start = System.nanoTime();
+                long count = 0;
+                double value = 0;
+                long now;
+                while ((now = System.nanoTime()) < deadline) {
+                    // Publishes in batches so the clock and deadline checks stay off the measured path; a paced
+                    // producer publishes the samples that are due and then sleeps for a millisecond.
+                    final long batch = ratePerSignal > 0 ? (now - start) * ratePerSignal / 1_000_000_000 - count : 1024;
+                    for (long j = 0; j < batch; j++) {
+                        value += 0.01;
+                        bus.publish(signal, now, value);
+                    }
+                    count += Math.max(0, batch);
+                    if (ratePerSignal > 0) LockSupport.parkNanos(1_000_000);
+                }
+                allocated[index] = threads.getCurrentThreadAllocatedBytes() - before;
+                published[index] = count;
+                done.countDown();
+            }, "signal-producer-" + signals[i].getKey());
+            producer.start();
+        }
+        done.await();
+        Thread.sleep(2 * 1000L / frameRate);
+
+        long totalPublished = 0;
+        long totalAllocated = 0;
+        for (int i = 0; i < signals.length; i++) {
+            totalPublished += published[i];
+            totalAllocated += allocated[i];
+        }
+        final var stats = bus.getStats();
+        bus.close();
+
+        System.out.println("[VEHICLE] " + signals.length + " producers for " + seconds + " s, "
+                + (ratePerSignal > 0 ? ratePerSignal + " samples per second each" : "unpaced") + ", ring capacity "
+                + ringCapacity + ", " + frameRate + " frames per second");
+        System.out.println("[VEHICLE] Ingested " + totalPublished + " samples, " + totalPublished / seconds
+                + " per second, dropped " + stats.get("droppedSamples") + " between frames");
+        System.out.println("[VEHICLE] Allocated on producer threads: " + totalAllocated + " bytes ("
+                + String.format("%.6f", (double) totalAllocated / Math.max(1, totalPublished)) + " per sample)");
+        System.out.println("[VEHICLE] Frames delivered: " + frames.get() + ", bytes: " + frameBytes.toJson(1));
+        System.out.println("[VEHICLE] Frame build (us): " + stats.get("frameMicros"));
+        System.out.println("[VEHICLE] Newest sample to delivery (us): " + stats.get("sampleToSendMicros"));
+    }
+
+}
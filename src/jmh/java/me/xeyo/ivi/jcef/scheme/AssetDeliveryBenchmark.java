@@ -0,0 +1,143 @@
+package me.xeyo.ivi.jcef.scheme;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import me.xeyo.ivi.core.utils.SampleStats;
+import org.cef.callback.CefCallback;
+import org.cef.misc.IntRef;
+
+/**
+ * Measures the Java side of the home page's first paint in both asset modes, without a browser: the startup work
+ * each mode does before the frame is created (building the bundle, or extracting the icon font and warming the page
+ * cache) and the time to hand the page's render-blocking assets to CEF on every load (through
+ * {@link AssetResourceHandler} in 64 KiB chunks, as CEF reads them, or from the filesystem).
+ * <p>
+ * The render-blocking assets are the stylesheets and scripts linked from {@code home/index.html} plus the solid
+ * icon font. Runs on a temporary copy of {@code web/}, so nothing is extracted into the working tree.
+ * <p>
+ * Usage: {@code java -cp target/benchmarks.jar me.xeyo.ivi.jcef.scheme.AssetDeliveryBenchmark [webRoot] [loads]}
+ */
+public final class AssetDeliveryBenchmark {
+
+    private static final Pattern LINK = Pattern.compile("(?:href|src)=['\"]([^'\"]+\\.(?:css|js))['\"]");
+    private static final int CHUNK_BYTES = 64 * 1024;
+
+    private static final CefCallback NO_CALLBACK = new CefCallback() {
+        @Override
+        public void Continue() {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private AssetDeliveryBenchmark() {
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final Path source = Paths.get(args.length > 0 ? args[0] : "web");
+        final int loads = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        final Path webRoot = Files.createTempDirectory("ivi-assets");
+        try {
+            copyTree(source, webRoot);
+            final List<String> blocking = renderBlocking(webRoot);
+            System.out.println("[ASSETS] Render-blocking assets of home/index.html: " + blocking);
+
+            long start = System.nanoTime();
+            final AssetBundle bundle = AssetBundle.build(webRoot);
+            System.out.println("[ASSETS] Scheme mode startup: bundle built in " + (System.nanoTime() - start) / 1000 + " us");
+
+            start = System.nanoTime();
+            AssetBundle.extractVendored(webRoot);
+            final long firstExtract = System.nanoTime() - start;
+            start = System.nanoTime();
+            AssetBundle.extractVendored(webRoot);
+            final long laterExtract = System.nanoTime() - start;
+            start = System.nanoTime();
+            final long warmedBytes = readAll(webRoot, blocking);
+            System.out.println("[ASSETS] Filesystem mode startup: icon font extracted in " + firstExtract / 1000
+                    + " us on the first start, checked in " + laterExtract / 1000 + " us later, "
+                    + warmedBytes / 1024 + " KiB warmed in " + (System.nanoTime() - start) / 1000 + " us");
+
+            for (final String path : blocking) {
+                if (bundle.get(path) == null) throw new IllegalStateException("Not in the bundle: " + path);
+                if (!Files.isRegularFile(webRoot.resolve(path))) throw new IllegalStateException("Not on disk: " + path);
+            }
+
+            final var scheme = new SampleStats();
+            final var filesystem = new SampleStats();
+            final byte[] chunk = new byte[CHUNK_BYTES];
+            long sink = 0;
+            for (int i = 0; i < loads; i++) {
+                start = System.nanoTime();
+                sink += serve(bundle, blocking, chunk);
+                scheme.record(System.nanoTime() - start);
+
+                start = System.nanoTime();
+                sink += readAll(webRoot, blocking);
+                filesystem.record(System.nanoTime() - start);
+            }
+            System.out.println("[ASSETS] Per page load over " + loads + " loads (us): scheme " + scheme.toJson(1000)
+                    + ", filesystem " + filesystem.toJson(1000) + " (" + sink / loads / 1024 + " KiB per load)");
+        } finally {
+            try (final Stream<Path> files = Files.walk(webRoot)) {
+                files.sorted((a, b) -> b.getNameCount() - a.getNameCount()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+
+    private static long serve(final AssetBundle bundle, final List<String> paths, final byte[] chunk) {
+        long bytes = 0;
+        for (final String path : paths) {
+            final var handler = new AssetResourceHandler(bundle.get(path));
+            handler.processRequest(null, NO_CALLBACK);
+            final var read = new IntRef();
+            while (handler.readResponse(chunk, chunk.length, read, NO_CALLBACK)) {
+                bytes += read.get();
+            }
+        }
+        return bytes;
+    }
+
+    private static long readAll(final Path webRoot, final List<String> paths) throws IOException {
+        long bytes = 0;
+        for (final String path : paths) {
+            bytes += Files.readAllBytes(webRoot.resolve(path)).length;
+        }
+        return bytes;
+    }
+
+    private static List<String> renderBlocking(final Path webRoot) throws IOException {
+        final List<String> paths = new ArrayList<>();
+        paths.add("home/index.html");
+        final Matcher links = LINK.matcher(Files.readString(webRoot.resolve("home/index.html")));
+        while (links.find()) {
+            paths.add(Paths.get("home").resolve(links.group(1)).normalize().toString().replace('\\', '/'));
+        }
+        paths.add("vendor/font-awesome/webfonts/fa-solid-900.woff2");
+        return paths;
+    }
+
+    private static void copyTree(final Path source, final Path target) throws IOException {
+        try (final Stream<Path> files = Files.walk(source)) {
+            for (final Path file : (Iterable<Path>) files::iterator) {
+                final Path copy = target.resolve(source.relativize(file).toString());
+                if (Files.isDirectory(file)) {
+                    Files.createDirectories(copy);
+                } else {
+                    Files.copy(file, copy);
+                }
+            }
+        }
+    }
+
+}
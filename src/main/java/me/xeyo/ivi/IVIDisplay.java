@@ -1,13 +1,40 @@
 package me.xeyo.ivi;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
 import lombok.Getter;
+import me.xeyo.ivi.boot.StartupPipeline;
 import me.xeyo.ivi.core.error.InternalExceptionTracker;
 import me.xeyo.ivi.core.javalin.JavalinInternalServer;
+import me.xeyo.ivi.core.javalin.handler.maps.MapTileHandler;
+import me.xeyo.ivi.core.javalin.handler.media.AlbumArtHandler;
+import me.xeyo.ivi.core.javalin.handler.media.MediaHandler;
+import me.xeyo.ivi.core.javalin.handler.poi.PoiHandler;
+import me.xeyo.ivi.core.javalin.handler.settings.AppSettingsHandler;
+import me.xeyo.ivi.core.javalin.handler.radio.RadioHandler;
+import me.xeyo.ivi.core.javalin.handler.vehicle.VehicleHandler;
+import me.xeyo.ivi.core.javalin.handler.weather.WeatherHandler;
+import me.xeyo.ivi.jcef.CefQueryBridge;
 import me.xeyo.ivi.jcef.JCEFFrame;
+import me.xeyo.ivi.jcef.scheme.AssetBundle;
+import me.xeyo.ivi.jcef.scheme.AssetSchemeHandlerFactory;
+import org.cef.CefApp;
 
 public class IVIDisplay {
 
+    private static final String LOADING_PAGE = "/web/load/loading.html";
+    private static final String HOME_PAGE = "/web/home/index.html";
+    private static final String WEB_ROOT = "/web";
+    private static final long LOADING_PAGE_TIMEOUT_MS = 5000;
+    private static final boolean ASSET_SCHEME_ENABLED = Boolean.parseBoolean(System.getProperty("ivi.assets.scheme", "true"));
+    private static final boolean OFF_SCREEN_RENDERING = Boolean.parseBoolean(System.getProperty("ivi.cef.osr", "false"));
+
     private static IVIDisplay INSTANCE;
 
     @Getter
@@ -18,45 +45,167 @@ public class IVIDisplay {
 
     private final JavalinInternalServer javalinInternalServer;
 
-    private final boolean startFullscreen;
+    @Getter
+    private CefQueryBridge cefQueryBridge;
 
-    public IVIDisplay(boolean startFullscreen){
-        this.startFullscreen = startFullscreen;
+    @Getter
+    private final StartupPipeline startupPipeline;
+
+    public IVIDisplay(){
         this.internalExceptionTracker = new InternalExceptionTracker();
         this.javalinInternalServer = new JavalinInternalServer();
+        this.startupPipeline = new StartupPipeline();
 
         INSTANCE = this;
-
-        System.out.println("[IVI] Fullscreen mode: " + startFullscreen);
     }
 
+    /**
+     * Starts the application as a dependency graph: settings, route registration and the Javalin bind run
+     * next to CEF extraction/initialization and building the asset bundle. The home page replaces the loading
+     * page once the server is up and the loading page has actually finished loading.
+     * <p>
+     * With {@code -Divi.assets.scheme=false} pages are loaded from the filesystem as before, after the vendored icon
+     * font is extracted to {@code web/vendor/} and the home page directory is read once to warm the page cache,
+     * which is useful to compare first paint between the two.
+     * <p>
+     * With {@code -Divi.cef.osr=true} the browser renders off-screen (see {@link JCEFFrame#initializeCefApp}).
+     */
     public void run() throws Exception {
-        this.javalinInternalServer.registerHandlers(this);
-        this.javalinInternalServer.start(7070);
-
-        JCEFFrame.initializeCefApp();
-
-        this.jcefFrame = new JCEFFrame("about:blank", false, false, this.startFullscreen);
-        this.displayPage("/web/load/loading.html");
-
-        Thread.sleep(1000);
-
-        this.displayPage("/web/home/index.html");
+        final var pipeline = this.startupPipeline;
+
+        final CompletableFuture<Boolean> settings = pipeline.phase("settings-load", () -> {
+            final Object fullscreen = AppSettingsHandler.getSettingsStore().get("fullscreen");
+            final boolean startFullscreen = fullscreen instanceof Boolean && (Boolean) fullscreen;
+            System.out.println("[IVI] Fullscreen mode: " + startFullscreen);
+            return startFullscreen;
+        });
+        final CompletableFuture<CefApp> cefApp = pipeline.phase("cef-init", () -> JCEFFrame.initializeCefApp(OFF_SCREEN_RENDERING));
+        final CompletableFuture<AssetBundle> assets = ASSET_SCHEME_ENABLED
+                ? pipeline.phase("asset-bundle", () -> AssetBundle.build(Paths.get("").toAbsolutePath().resolve(WEB_ROOT.substring(1))))
+                : pipeline.phase("home-warmup", () -> {
+                    AssetBundle.extractVendored(Paths.get("").toAbsolutePath().resolve(WEB_ROOT.substring(1)));
+                    this.warmUpPage(HOME_PAGE);
+                    return null;
+                });
+        pipeline.phase("media-index", () -> MediaHandler.getMediaLibrary().start());
+        pipeline.phase("radio-catalog", () -> RadioHandler.getRadioService().start());
+        final CompletableFuture<Void> routes = pipeline.phase("routes-register", () -> {
+            this.javalinInternalServer.registerHandlers(this);
+        }, settings);
+        final CompletableFuture<Void> server = pipeline.phase("javalin-bind", () -> {
+            this.javalinInternalServer.start(7070);
+        }, routes);
+        final CompletableFuture<JCEFFrame> frame = pipeline.phase("frame-create", () -> {
+            final var createdFrame = new JCEFFrame(cefApp.join(), assets.join(), "about:blank", OFF_SCREEN_RENDERING, false, settings.join());
+            this.cefQueryBridge = new CefQueryBridge(this.javalinInternalServer.getBridgeRouter());
+            createdFrame.getMessageRouter().addHandler(this.cefQueryBridge, true);
+            this.jcefFrame = createdFrame;
+            return createdFrame;
+        }, cefApp, assets, settings, routes);
+        final CompletableFuture<Void> loadingShown = frame.thenCompose(createdFrame -> {
+            final var loaded = this.awaitPageLoad(LOADING_PAGE);
+            this.displayPage(LOADING_PAGE);
+            return loaded.thenRun(() -> pipeline.milestone("loading-page-shown"))
+                    .completeOnTimeout(null, LOADING_PAGE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        });
+        final CompletableFuture<Void> homeShown = CompletableFuture.allOf(server, loadingShown).thenCompose(ignored -> {
+            final var loaded = this.awaitPageLoad(HOME_PAGE);
+            this.displayPage(HOME_PAGE);
+            return loaded.thenRun(() -> pipeline.milestone("time-to-interactive"));
+        });
+
+        try {
+            frame.join();
+        } catch (final CompletionException e) {
+            throw unwrap(e);
+        }
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            AppSettingsHandler.getSettingsStore().close();
+            WeatherHandler.getWeatherService().close();
+            MediaHandler.getMediaLibrary().close();
+            AlbumArtHandler.getAlbumArtService().close();
+            MapTileHandler.getTileService().close();
+            PoiHandler.getPoiService().close();
+            VehicleHandler.getSignalBus().close();
+            if (InternalExceptionTracker.getPersistentErrorLog() != null) {
+                InternalExceptionTracker.getPersistentErrorLog().force();
+            }
             this.javalinInternalServer.stop();
+            if (this.cefQueryBridge != null) this.cefQueryBridge.close();
+            if (this.jcefFrame.getOsrCompositor() != null) this.jcefFrame.getOsrCompositor().close();
             this.jcefFrame.getBrowser().close(true);
             this.jcefFrame.getCefApp().dispose();
         }));
 
+        homeShown.whenComplete((ignored, error) -> {
+            if (error != null) {
+                InternalExceptionTracker.handleException(unwrap(new CompletionException(error)));
+            }
+            pipeline.shutdown();
+        });
     }
 
     public void displayPage(final String pagePath){
+        this.jcefFrame.getBrowser().loadURL(pageUrl(pagePath));
+    }
+
+    /**
+     * Maps a page under {@code /web} to the URL it is loaded from: {@code ivi://app/...} out of the asset bundle,
+     * or the absolute filesystem path when the scheme is disabled.
+     */
+    public static String pageUrl(final String pagePath) {
+        if (ASSET_SCHEME_ENABLED && pagePath.startsWith(WEB_ROOT + "/")) {
+            return AssetSchemeHandlerFactory.ORIGIN + pagePath.substring(WEB_ROOT.length());
+        }
         final var relativePath = Paths.get("");
-        this.jcefFrame.getBrowser().loadURL(relativePath.toAbsolutePath() + pagePath);
+        return relativePath.toAbsolutePath() + pagePath;
+    }
+
+    public static boolean isAssetSchemeEnabled() {
+        return ASSET_SCHEME_ENABLED;
+    }
+
+    /**
+     * Completes once the main frame has finished loading {@code pagePath}. Register before loading the page.
+     */
+    private CompletableFuture<Void> awaitPageLoad(final String pagePath) {
+        final var loaded = new CompletableFuture<Void>();
+        final var pageUrl = pageUrl(pagePath);
+        final BiConsumer<String, Integer> listener = (url, status) -> {
+            if (url != null && (url.equals(pageUrl) || url.endsWith(pagePath))) loaded.complete(null);
+        };
+        this.jcefFrame.addPageLoadListener(listener);
+        return loaded.whenComplete((ignored, error) -> this.jcefFrame.removePageLoadListener(listener));
+    }
+
+    /**
+     * Reads the page, the shared and the vendored assets once so the first real load is served from the OS page
+     * cache.
+     */
+    private void warmUpPage(final String pagePath) throws Exception {
+        final var pageDirectory = Paths.get(pageUrl(pagePath)).getParent();
+        final var commonDirectory = pageDirectory.resolveSibling("common");
+        final var vendorDirectory = pageDirectory.resolveSibling("vendor");
+        for (final Path directory : new Path[]{pageDirectory, commonDirectory, vendorDirectory}) {
+            if (!Files.isDirectory(directory)) continue;
+            try (final Stream<Path> files = Files.walk(directory)) {
+                for (final Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                    Files.readAllBytes(file);
+                }
+            }
+        }
+    }
+
+    private static Exception unwrap(final CompletionException e) {
+        Throwable cause = e;
+        while ((cause instanceof CompletionException) && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof Exception ? (Exception) cause : e;
     }
 
     public static IVIDisplay getInstance() {
         return INSTANCE;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,126 @@
+package me.xeyo.ivi.boot;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs startup as a graph of named phases. A phase starts as soon as all of its dependencies have completed,
+ * so independent phases run in parallel, and the wall-clock window of every phase is recorded relative to
+ * the start of the pipeline. Milestones mark points in time that are not phases, such as the home page
+ * becoming interactive.
+ */
+public class StartupPipeline {
+
+    private final long startNanos = System.nanoTime();
+    private final long jvmStartMillis = ManagementFactory.getRuntimeMXBean().getStartTime();
+    private final long pipelineStartMillis = System.currentTimeMillis();
+
+    private final List<Timing> timings = new ArrayList<>();
+    private final Map<String, Object> reports = new ConcurrentHashMap<>();
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        final var thread = new Thread(runnable, "ivi-boot-" + this.threadCounter.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public <T> CompletableFuture<T> phase(final String name, final Callable<T> work, final CompletableFuture<?>... dependencies) {
+        return CompletableFuture.allOf(dependencies).thenApplyAsync(ignored -> {
+            final long phaseStart = System.nanoTime();
+            try {
+                return work.call();
+            } catch (final Exception e) {
+                System.err.println("[BOOT] Phase " + name + " failed: " + e.getMessage());
+                throw new CompletionException(e);
+            } finally {
+                this.record(name, "phase", phaseStart, System.nanoTime());
+            }
+        }, this.executor);
+    }
+
+    public CompletableFuture<Void> phase(final String name, final PhaseRunnable work, final CompletableFuture<?>... dependencies) {
+        return this.phase(name, () -> {
+            work.run();
+            return null;
+        }, dependencies);
+    }
+
+    /**
+     * Records a point in time measured from the start of the pipeline.
+     */
+    public void milestone(final String name) {
+        final long now = System.nanoTime();
+        this.record(name, "milestone", now, now);
+    }
+
+    /**
+     * Stores a value measured outside the pipeline, such as the renderer's paint timings, next to the timings.
+     */
+    public void report(final String name, final Object value) {
+        this.reports.put(name, value);
+        System.out.println("[BOOT] " + name + ": " + value);
+    }
+
+    public void shutdown() {
+        this.executor.shutdown();
+    }
+
+    private void record(final String name, final String kind, final long phaseStart, final long phaseEnd) {
+        final var timing = new Timing(name, kind,
+                TimeUnit.NANOSECONDS.toMillis(phaseStart - this.startNanos),
+                TimeUnit.NANOSECONDS.toMillis(phaseEnd - this.startNanos));
+        synchronized (this.timings) {
+            this.timings.add(timing);
+        }
+
+        if ("phase".equals(kind)) {
+            System.out.println("[BOOT] Phase " + name + " took " + (timing.endMillis - timing.startMillis) + " ms (+" + timing.startMillis + " ms)");
+        } else {
+            System.out.println("[BOOT] " + name + " at +" + timing.endMillis + " ms");
+        }
+    }
+
+    public JSONObject getTimings() {
+        final var phases = new JSONArray();
+        synchronized (this.timings) {
+            for (final Timing timing : this.timings) {
+                final var entry = new JSONObject();
+                entry.put("name", timing.name);
+                entry.put("kind", timing.kind);
+                entry.put("startMillis", timing.startMillis);
+                entry.put("endMillis", timing.endMillis);
+                entry.put("durationMillis", timing.endMillis - timing.startMillis);
+                phases.add(entry);
+            }
+        }
+
+        final var result = new JSONObject();
+        result.put("jvmToPipelineMillis", this.pipelineStartMillis - this.jvmStartMillis);
+        result.put("timings", phases);
+        result.put("reports", new JSONObject(this.reports));
+        return result;
+    }
+
+    @FunctionalInterface
+    public interface PhaseRunnable {
+
+        void run() throws Exception;
+
+    }
+
+    private record Timing(String name, String kind, long startMillis, long endMillis) {
+    }
+
+}
@@ -0,0 +1,38 @@
+package me.xeyo.ivi.core.bridge;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.util.Map;
+import lombok.Getter;
+
+public final class BridgeRequest {
+
+    @Getter
+    private final String method;
+
+    @Getter
+    private final String path;
+
+    private final Map<String, String> pathParams;
+
+    @Getter
+    private final String body;
+
+    private final JSONObject query;
+
+    BridgeRequest(final String method, final String path, final Map<String, String> pathParams, final String body, final JSONObject query) {
+        this.method = method;
+        this.path = path;
+        this.pathParams = pathParams;
+        this.body = body;
+        this.query = query != null ? query : new JSONObject();
+    }
+
+    public String pathParam(final String name) {
+        return this.pathParams.get(name);
+    }
+
+    public String queryParam(final String name) {
+        return this.query.getString(name);
+    }
+
+}
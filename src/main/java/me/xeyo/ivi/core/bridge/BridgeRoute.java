@@ -0,0 +1,10 @@
+package me.xeyo.ivi.core.bridge;
+
+import me.xeyo.ivi.core.javalin.ApiResponse;
+
+@FunctionalInterface
+public interface BridgeRoute {
+
+    ApiResponse handle(BridgeRequest request) throws Exception;
+
+}
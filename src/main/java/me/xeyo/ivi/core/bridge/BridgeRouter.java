@@ -0,0 +1,196 @@
+package me.xeyo.ivi.core.bridge;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.RouteClass;
+import me.xeyo.ivi.core.javalin.ServerExecution;
+import me.xeyo.ivi.core.metrics.RequestMetrics;
+
+/**
+ * Route table for requests that arrive through the in-process CEF query bridge instead of HTTP.
+ * Handlers register the same route logic they hand to Javalin, with the same {@code {param}} path syntax,
+ * and routes are matched in registration order just like Javalin does.
+ * <p>
+ * A query string on the request path is decoded the way Javalin decodes it, so {@link BridgeRequest#queryParam}
+ * returns what {@code ctx.queryParam} would for the same URL; entries of an explicit {@code query} object win.
+ * Routes registered with a {@link RouteClass} share that class's concurrency limit with their HTTP twins.
+ */
+public class BridgeRouter {
+
+    private final List<Route> routes = new ArrayList<>();
+    private final List<StreamRoute> streamRoutes = new ArrayList<>();
+
+    private volatile RequestMetrics requestMetrics;
+    private volatile ServerExecution serverExecution;
+
+    /**
+     * Records the latency of every dispatched request from now on.
+     */
+    public void setRequestMetrics(final RequestMetrics requestMetrics) {
+        this.requestMetrics = requestMetrics;
+    }
+
+    /**
+     * Admits requests of classed routes through the limits of {@code serverExecution} from now on.
+     */
+    public void setServerExecution(final ServerExecution serverExecution) {
+        this.serverExecution = serverExecution;
+    }
+
+    public void get(final String path, final BridgeRoute route) {
+        this.get(path, route, null);
+    }
+
+    public void get(final String path, final BridgeRoute route, final RouteClass routeClass) {
+        this.routes.add(new Route("GET", path, PathPattern.compile(path), route, routeClass));
+    }
+
+    public void put(final String path, final BridgeRoute route) {
+        this.put(path, route, null);
+    }
+
+    public void put(final String path, final BridgeRoute route, final RouteClass routeClass) {
+        this.routes.add(new Route("PUT", path, PathPattern.compile(path), route, routeClass));
+    }
+
+    public void patch(final String path, final BridgeRoute route) {
+        this.routes.add(new Route("PATCH", path, PathPattern.compile(path), route, null));
+    }
+
+    public void post(final String path, final BridgeRoute route) {
+        this.routes.add(new Route("POST", path, PathPattern.compile(path), route, null));
+    }
+
+    public void stream(final String path, final BridgeStream stream) {
+        this.streamRoutes.add(new StreamRoute(PathPattern.compile(path), stream));
+    }
+
+    public ApiResponse dispatch(final String method, final String url, final String body, final JSONObject query) throws Exception {
+        final long start = System.nanoTime();
+        final int queryStart = url.indexOf('?');
+        final String path = queryStart >= 0 ? url.substring(0, queryStart) : url;
+        final JSONObject queryParams = queryStart >= 0 ? parseQuery(url.substring(queryStart + 1), query) : query;
+        for (final Route route : this.routes) {
+            if (!route.method.equalsIgnoreCase(method)) continue;
+
+            final Map<String, String> pathParams = route.pattern.match(path);
+            if (pathParams != null) {
+                int status = 500;
+                final ServerExecution execution = route.routeClass != null ? this.serverExecution : null;
+                if (execution != null && !execution.acquire(route.routeClass)) {
+                    this.record(route.method, route.path, 503, start);
+                    return ApiResponse.error(503, "Server busy, try again");
+                }
+                try {
+                    final ApiResponse response = route.handler.handle(new BridgeRequest(method, path, pathParams, body, queryParams));
+                    status = response.getStatus();
+                    return response;
+                } finally {
+                    if (execution != null) execution.release(route.routeClass);
+                    this.record(route.method, route.path, status, start);
+                }
+            }
+        }
+        this.record(RequestMetrics.methodLabel(method), RequestMetrics.UNMATCHED_ROUTE, 404, start);
+        return ApiResponse.error(404, "No bridge route for " + method + " " + path);
+    }
+
+    private void record(final String method, final String route, final int status, final long start) {
+        final RequestMetrics metrics = this.requestMetrics;
+        if (metrics != null) metrics.record(RequestMetrics.Transport.BRIDGE, method, route, status, System.nanoTime() - start);
+    }
+
+    /**
+     * Opens a persistent subscription. Returns {@code null} if no stream is registered for {@code path}.
+     */
+    public BridgeStream.Subscription subscribe(final String url, final JSONObject query, final BridgeStream.Sink sink) throws Exception {
+        final int queryStart = url.indexOf('?');
+        final String path = queryStart >= 0 ? url.substring(0, queryStart) : url;
+        final JSONObject queryParams = queryStart >= 0 ? parseQuery(url.substring(queryStart + 1), query) : query;
+        for (final StreamRoute route : this.streamRoutes) {
+            final Map<String, String> pathParams = route.pattern.match(path);
+            if (pathParams != null) {
+                return route.stream.subscribe(new BridgeRequest("SUBSCRIBE", path, pathParams, null, queryParams), sink);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Decodes {@code a=1&b=x%20y} like Javalin: {@code +} is a space, a key without {@code =} has an empty value and
+     * the first of repeated keys is the one returned.
+     */
+    private static JSONObject parseQuery(final String queryString, final JSONObject explicit) {
+        final var params = new JSONObject();
+        int from = 0;
+        while (from <= queryString.length()) {
+            int to = queryString.indexOf('&', from);
+            if (to < 0) to = queryString.length();
+            if (to > from) {
+                final int equals = queryString.indexOf('=', from);
+                final boolean hasValue = equals >= 0 && equals < to;
+                final String key = decode(queryString.substring(from, hasValue ? equals : to));
+                if (!key.isEmpty()) params.putIfAbsent(key, hasValue ? decode(queryString.substring(equals + 1, to)) : "");
+            }
+            from = to + 1;
+        }
+        if (explicit != null) params.putAll(explicit);
+        return params;
+    }
+
+    private static String decode(final String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8);
+        } catch (final IllegalArgumentException e) {
+            // A stray '%' is kept as it was written rather than failing the request.
+            return value;
+        }
+    }
+
+    private record Route(String method, String path, PathPattern pattern, BridgeRoute handler, RouteClass routeClass) {
+    }
+
+    private record StreamRoute(PathPattern pattern, BridgeStream stream) {
+    }
+
+    private static final class PathPattern {
+
+        private final String[] segments;
+
+        private PathPattern(final String[] segments) {
+            this.segments = segments;
+        }
+
+        private static PathPattern compile(final String path) {
+            return new PathPattern(split(path));
+        }
+
+        private static String[] split(final String path) {
+            final var trimmed = path.replaceAll("^/+|/+$", "");
+            return trimmed.isEmpty() ? new String[0] : trimmed.split("/");
+        }
+
+        private Map<String, String> match(final String path) {
+            final String[] requestSegments = split(path);
+            if (requestSegments.length != this.segments.length) return null;
+
+            final Map<String, String> params = new HashMap<>();
+            for (int i = 0; i < this.segments.length; i++) {
+                final var segment = this.segments[i];
+                if (segment.startsWith("{") && segment.endsWith("}")) {
+                    params.put(segment.substring(1, segment.length() - 1), requestSegments[i]);
+                } else if (!segment.equals(requestSegments[i])) {
+                    return null;
+                }
+            }
+            return params;
+        }
+    }
+
+}
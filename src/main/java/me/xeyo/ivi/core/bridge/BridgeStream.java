@@ -0,0 +1,26 @@
+package me.xeyo.ivi.core.bridge;
+
+/**
+ * Server push over a persistent CEF query: every message handed to the {@link Sink} is delivered to the
+ * page as another success callback of the same query, until the page cancels it.
+ */
+@FunctionalInterface
+public interface BridgeStream {
+
+    Subscription subscribe(BridgeRequest request, Sink sink) throws Exception;
+
+    @FunctionalInterface
+    interface Sink {
+
+        void send(String message);
+
+    }
+
+    @FunctionalInterface
+    interface Subscription {
+
+        void cancel();
+
+    }
+
+}
@@ -0,0 +1,150 @@
+package me.xeyo.ivi.core.error;
+
+import com.alibaba.fastjson2.JSON;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+
+/**
+ * Compact, deduplicated entry of the {@link ExceptionJournal}. It keeps the rendered stack of the first
+ * occurrence and no reference to the {@link Throwable} itself, so the exception graph can be collected.
+ */
+public final class ErrorRecord {
+
+    static final int MAX_STACK_FRAMES = 64;
+
+    private static final int IDLE = 0;
+    private static final int SEEN = 1;
+    private static final int EVICTED = 2;
+
+    @Getter
+    private final long fingerprint;
+
+    @Getter
+    private final String type;
+
+    @Getter
+    private final String cause;
+
+    @Getter
+    private final String[] stacktrace;
+
+    @Getter
+    private final long firstSeen;
+
+    @Getter
+    private volatile String message;
+
+    @Getter
+    private volatile long lastSeen;
+
+    private final AtomicLong count = new AtomicLong(1);
+
+    /**
+     * Clock state in the journal: {@code SEEN} after an occurrence until the hand passes, {@code EVICTED} once the
+     * hand has taken the slot. A new record starts as seen.
+     */
+    private final AtomicInteger state = new AtomicInteger(SEEN);
+
+    private volatile byte[] stacktraceJson;
+
+    ErrorRecord(final Throwable throwable, final long fingerprint, final long time) {
+        this.fingerprint = fingerprint;
+        this.type = throwable.getClass().getName();
+        this.cause = describeCause(throwable.getCause());
+        this.stacktrace = renderStack(throwable.getStackTrace());
+        this.firstSeen = time;
+        this.message = throwable.getMessage();
+        this.lastSeen = time;
+    }
+
+    /**
+     * Counts another occurrence unless the record has already been evicted, in which case nothing changes and the
+     * caller records the exception again as new.
+     */
+    boolean recordOccurrence(final Throwable throwable, final long time) {
+        while (true) {
+            final int current = this.state.get();
+            if (current == EVICTED) return false;
+            if (current == SEEN || this.state.compareAndSet(IDLE, SEEN)) break;
+        }
+        this.count.incrementAndGet();
+        this.message = throwable.getMessage();
+        this.lastSeen = time;
+        return true;
+    }
+
+    /**
+     * Called by the journal's clock hand: evicts the record if it was not seen since the hand last passed,
+     * otherwise clears the mark and keeps it for another turn.
+     */
+    boolean isEvicted() {
+        return this.state.get() == EVICTED;
+    }
+
+    boolean evict() {
+        if (this.state.compareAndSet(IDLE, EVICTED)) return true;
+        this.state.compareAndSet(SEEN, IDLE);
+        return false;
+    }
+
+    public long getCount() {
+        return this.count.get();
+    }
+
+    /**
+     * The stack trace encoded as a UTF-8 JSON array. It never changes after the first occurrence, so it is
+     * encoded on first use and the same bytes are written for every later request.
+     */
+    public byte[] getStacktraceJson() {
+        byte[] json = this.stacktraceJson;
+        if (json == null) {
+            json = JSON.toJSONBytes(this.stacktrace);
+            this.stacktraceJson = json;
+        }
+        return json;
+    }
+
+    /**
+     * Rough retained size in bytes: object headers and fields plus the character data of every string,
+     * assuming compact (Latin-1) strings.
+     */
+    long estimateFootprintBytes() {
+        long bytes = 96 + 16 + 16L + 4L * this.stacktrace.length;
+        bytes += stringBytes(this.type) + stringBytes(this.cause) + stringBytes(this.message);
+        for (final String frame : this.stacktrace) {
+            bytes += stringBytes(frame);
+        }
+        final byte[] json = this.stacktraceJson;
+        if (json != null) bytes += 16 + json.length;
+        return bytes;
+    }
+
+    private static long stringBytes(final String value) {
+        return value == null ? 0 : 24 + 16 + value.length();
+    }
+
+    private static String describeCause(final Throwable cause) {
+        if (cause == null) return null;
+        return cause.getMessage() == null ? cause.getClass().getName() : cause.getClass().getName() + ": " + cause.getMessage();
+    }
+
+    private static String[] renderStack(final StackTraceElement[] elements) {
+        final int frames = Math.min(elements.length, MAX_STACK_FRAMES);
+        final var rendered = new String[elements.length > MAX_STACK_FRAMES ? frames + 1 : frames];
+        final var builder = new StringBuilder(128);
+        for (int i = 0; i < frames; i++) {
+            final StackTraceElement element = elements[i];
+            builder.setLength(0);
+            builder.append(element.getClassLoaderName()).append(" -> ")
+                    .append(element.getClassName()).append('.').append(element.getMethodName())
+                    .append('(').append(element.getFileName()).append(':').append(element.getLineNumber()).append(')');
+            rendered[i] = builder.toString();
+        }
+        if (elements.length > MAX_STACK_FRAMES) {
+            rendered[frames] = "... " + (elements.length - MAX_STACK_FRAMES) + " more";
+        }
+        return rendered;
+    }
+
+}
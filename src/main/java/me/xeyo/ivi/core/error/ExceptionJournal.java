@@ -0,0 +1,235 @@
+package me.xeyo.ivi.core.error;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import lombok.Getter;
+
+/**
+ * Fixed-capacity set of {@link ErrorRecord}s, one per stack-trace fingerprint. Recording an exception that is
+ * already known finds its record through a fingerprint index and only bumps its counters. A new fingerprint takes a
+ * free slot or, once the journal is full, a victim picked by a clock hand: records seen since the hand last passed
+ * get a second chance, so an error that keeps recurring stays while older one-off errors make room. Nothing takes a
+ * lock; slots are claimed with compare-and-set and the hand advances by one slot per step.
+ * <p>
+ * Every occurrence is also pushed onto a change log, a singly linked list whose head carries the newest sequence.
+ * {@link #changesSince} walks it from the head and stops at the first entry at or below the caller's sequence, so a
+ * poll costs the number of new occurrences and not the capacity. Superseded and evicted entries are unlinked once
+ * per {@code capacity} occurrences, which keeps the log at most about twice the capacity.
+ */
+public class ExceptionJournal {
+
+    @Getter
+    private final int capacity;
+
+    private final AtomicReferenceArray<ErrorRecord> slots;
+    private final Map<Long, ErrorRecord> recordsByFingerprint = new ConcurrentHashMap<>();
+    private final AtomicReference<Entry> head = new AtomicReference<>();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final AtomicLong hand = new AtomicLong();
+    private final AtomicInteger size = new AtomicInteger();
+
+    @Getter
+    private final AtomicLong recordedCount = new AtomicLong();
+
+    @Getter
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    public ExceptionJournal(final int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.slots = new AtomicReferenceArray<>(capacity);
+    }
+
+    public ErrorRecord record(final Throwable throwable) {
+        final long fingerprint = fingerprint(throwable);
+        final long now = System.currentTimeMillis();
+        this.recordedCount.incrementAndGet();
+
+        while (true) {
+            final ErrorRecord existing = this.recordsByFingerprint.get(fingerprint);
+            if (existing != null) {
+                if (existing.recordOccurrence(throwable, now)) {
+                    this.log(existing);
+                    return existing;
+                }
+                // Evicted between the lookup and the occurrence, which was not counted: record it as new.
+                this.recordsByFingerprint.remove(fingerprint, existing);
+                continue;
+            }
+
+            final var record = new ErrorRecord(throwable, fingerprint, now);
+            if (this.recordsByFingerprint.putIfAbsent(fingerprint, record) == null) {
+                this.place(record);
+                this.log(record);
+                return record;
+            }
+        }
+    }
+
+    /**
+     * Moves the clock hand until it finds an empty slot or a record that was not seen since the hand last passed,
+     * clearing the seen mark of every record it passes over. At most two turns of the hand, and one or two steps
+     * when errors repeat far more often than new ones appear.
+     */
+    private void place(final ErrorRecord record) {
+        while (true) {
+            final int index = (int) (this.hand.getAndIncrement() % this.capacity);
+            final ErrorRecord current = this.slots.get(index);
+            if (current == null) {
+                if (this.slots.compareAndSet(index, null, record)) {
+                    this.size.incrementAndGet();
+                    return;
+                }
+            } else if (current.evict()) {
+                // Only the thread that evicted the record may replace it, so a plain write is enough.
+                this.slots.set(index, record);
+                this.recordsByFingerprint.remove(current.getFingerprint(), current);
+                this.evictedCount.incrementAndGet();
+                return;
+            }
+        }
+    }
+
+    private void log(final ErrorRecord record) {
+        while (true) {
+            final Entry current = this.head.get();
+            final var entry = new Entry(current == null ? 1 : current.sequence + 1, record, current);
+            if (this.head.compareAndSet(current, entry)) {
+                if (entry.sequence % this.capacity == 0) this.compact();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Unlinks every entry whose record has a newer entry or was evicted. Only the links behind the head change,
+     * and an unlinked entry keeps its own link, so concurrent walks and pushes are unaffected. Skipped if another
+     * thread is already compacting.
+     */
+    private void compact() {
+        if (!this.compacting.compareAndSet(false, true)) return;
+        try {
+            final Set<ErrorRecord> seen = new HashSet<>();
+            Entry kept = this.head.get();
+            seen.add(kept.record);
+            for (Entry entry = kept.next; entry != null; entry = entry.next) {
+                if (entry.record.isEvicted() || !seen.add(entry.record)) {
+                    kept.next = entry.next;
+                } else {
+                    kept = entry;
+                }
+            }
+        } finally {
+            this.compacting.set(false);
+        }
+    }
+
+    /**
+     * Returns the records currently in the journal, oldest change first.
+     */
+    public List<ErrorRecord> snapshot() {
+        final List<ErrorRecord> records = new ArrayList<>();
+        for (final Change change : this.changesSince(-1, Integer.MAX_VALUE)) {
+            records.add(change.record());
+        }
+        return records;
+    }
+
+    /**
+     * Returns at most {@code limit} records changed after sequence {@code since}, oldest change first, each with
+     * the sequence of its newest occurrence. Only the log entries newer than {@code since} are visited; records that
+     * did not change are neither copied nor rendered.
+     */
+    public List<Change> changesSince(final long since, final int limit) {
+        final List<Change> changes = new ArrayList<>();
+        final Set<ErrorRecord> seen = new HashSet<>();
+        for (Entry entry = this.head.get(); entry != null && entry.sequence > since; entry = entry.next) {
+            if (!entry.record.isEvicted() && seen.add(entry.record)) changes.add(new Change(entry.sequence, entry.record));
+        }
+        Collections.reverse(changes);
+        return changes.size() > limit ? changes.subList(0, limit) : changes;
+    }
+
+    /**
+     * Monotonic counter bumped by every recorded occurrence, usable as a change marker.
+     */
+    public long getSequence() {
+        final Entry current = this.head.get();
+        return current == null ? 0 : current.sequence;
+    }
+
+    public long estimateFootprintBytes() {
+        // Slots and fingerprint index, plus a log of up to one entry per record and the occurrences since compaction.
+        long bytes = 16 + 16 + 4L * this.capacity + 2L * 32 * this.capacity;
+        for (int i = 0; i < this.capacity; i++) {
+            final ErrorRecord record = this.slots.get(i);
+            if (record != null) bytes += record.estimateFootprintBytes();
+        }
+        return bytes;
+    }
+
+    public JSONObject getStats() {
+        final var stats = new JSONObject();
+        stats.put("capacity", this.capacity);
+        stats.put("size", this.size.get());
+        stats.put("recorded", this.recordedCount.get());
+        stats.put("evicted", this.evictedCount.get());
+        stats.put("footprintBytes", this.estimateFootprintBytes());
+        return stats;
+    }
+
+    /**
+     * FNV-1a hash over the exception type and the class, method and line of every frame, repeated for each
+     * cause. Messages are left out on purpose: they often carry values that differ between occurrences.
+     */
+    static long fingerprint(final Throwable throwable) {
+        long hash = 0xcbf29ce484222325L;
+        Throwable current = throwable;
+        for (int depth = 0; current != null && depth < 8; depth++, current = current.getCause()) {
+            hash = mix(hash, current.getClass().getName());
+            for (final StackTraceElement element : current.getStackTrace()) {
+                hash = mix(hash, element.getClassName());
+                hash = mix(hash, element.getMethodName());
+                hash = (hash ^ element.getLineNumber()) * 0x100000001b3L;
+            }
+            if (current.getCause() == current) break;
+        }
+        return hash;
+    }
+
+    private static long mix(long hash, final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            hash = (hash ^ value.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public record Change(long sequence, ErrorRecord record) {
+    }
+
+    private static final class Entry {
+
+        private final long sequence;
+        private final ErrorRecord record;
+        private volatile Entry next;
+
+        private Entry(final long sequence, final ErrorRecord record, final Entry next) {
+            this.sequence = sequence;
+            this.record = record;
+            this.next = next;
+        }
+
+    }
+
+}
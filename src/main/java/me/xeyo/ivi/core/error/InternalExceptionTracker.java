@@ -1,13 +1,25 @@
 package me.xeyo.ivi.core.error;
 
-import java.util.HashMap;
+import com.alibaba.fastjson2.JSONObject;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Paths;
 import lombok.Getter;
 import me.xeyo.ivi.IVIDisplay;
 
 public class InternalExceptionTracker {
 
+    private static final int JOURNAL_CAPACITY = Integer.getInteger("ivi.errors.capacity", 256);
+    private static final String ERROR_LOG_DIRECTORY = System.getProperty("ivi.errors.logDir", "error-log");
+    private static final int ERROR_LOG_SEGMENT_BYTES = Integer.getInteger("ivi.errors.segmentBytes", 1024 * 1024);
+    private static final int ERROR_LOG_MAX_SEGMENTS = Integer.getInteger("ivi.errors.maxSegments", 8);
+
+    private static final long BOOT_ID = ManagementFactory.getRuntimeMXBean().getStartTime();
+
     @Getter
-    private static final HashMap<Long, Throwable> throwableHashMap = new HashMap<>();
+    private static final ExceptionJournal exceptionJournal = new ExceptionJournal(JOURNAL_CAPACITY);
+
+    @Getter
+    private static final PersistentErrorLog persistentErrorLog = openPersistentErrorLog();
 
     public static void showErrors(){
         IVIDisplay.getInstance().displayPage("/web/error/errorPage.html");
@@ -16,7 +28,38 @@ public class InternalExceptionTracker {
     public static void handleException(final Exception exception){
         System.err.println("Exception handled -> " + exception.getMessage());
         exception.printStackTrace();
-        throwableHashMap.put(System.currentTimeMillis(),exception);
+        final ErrorRecord record = exceptionJournal.record(exception);
+        persist(record);
+    }
+
+    /**
+     * Appends the occurrence to the on-disk log. The stack trace is only written with the first occurrence of
+     * a fingerprint in this boot; repeats refer to it by fingerprint.
+     */
+    private static void persist(final ErrorRecord record) {
+        if (persistentErrorLog == null) return;
+
+        final var entry = new JSONObject();
+        entry.put("boot", BOOT_ID);
+        entry.put("time", record.getLastSeen());
+        entry.put("fingerprint", Long.toHexString(record.getFingerprint()));
+        entry.put("type", record.getType());
+        entry.put("message", record.getMessage());
+        entry.put("count", record.getCount());
+        if (record.getCount() == 1) {
+            entry.put("cause", record.getCause());
+            entry.put("stacktrace", record.getStacktrace());
+        }
+        persistentErrorLog.append(entry);
+    }
+
+    private static PersistentErrorLog openPersistentErrorLog() {
+        try {
+            return new PersistentErrorLog(Paths.get(ERROR_LOG_DIRECTORY), ERROR_LOG_SEGMENT_BYTES, ERROR_LOG_MAX_SEGMENTS);
+        } catch (final Exception e) {
+            System.err.println("[ERRORS] Persistent error log disabled: " + e.getMessage());
+            return null;
+        }
     }
 
-}
\ No newline at end of file
+}
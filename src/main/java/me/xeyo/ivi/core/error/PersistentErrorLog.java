@@ -0,0 +1,305 @@
+package me.xeyo.ivi.core.error;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only error log that survives restarts. Records go into preallocated, memory-mapped segment files,
+ * so an append is a CRC plus a few buffer writes and never a system call; the kernel writes the pages back.
+ * <p>
+ * Record layout: {@code magic:int, length:int, crc32:int, payload:byte[length]}. The magic is written last,
+ * so a record torn by a power loss has no magic or a CRC mismatch. On open, the newest segment is scanned to
+ * the first invalid record, everything behind it is zeroed and appending continues from there. When a record
+ * does not fit the current segment a new one is started and segments beyond {@code maxSegments} are deleted.
+ * <p>
+ * Only the newest segment is ever written. The others are sealed, so each is mapped and scanned once and then kept
+ * with the offsets of its records; together with the offsets appended to the current segment this lets
+ * {@link #readRecent} read just the records it returns.
+ */
+public class PersistentErrorLog {
+
+    private static final int RECORD_MAGIC = 0x49564945;
+    private static final int HEADER_BYTES = 12;
+    private static final String SEGMENT_PREFIX = "errors-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int segmentBytes;
+    private final int maxSegments;
+
+    private final ArrayDeque<Path> segments = new ArrayDeque<>();
+    private final CRC32 crc = new CRC32();
+    private MappedByteBuffer current;
+    private long currentSegmentIndex;
+    private int[] currentOffsets = new int[64];
+    private int currentRecords;
+    private final Map<Path, SealedSegment> sealed = new HashMap<>();
+
+    private long appendCount;
+    private long appendNanos;
+    private long maxAppendNanos;
+    private final long recoveryNanos;
+    private final int recoveredRecords;
+    private final int truncatedBytes;
+
+    public PersistentErrorLog(final Path directory, final int segmentBytes, final int maxSegments) throws IOException {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = Math.max(1, maxSegments);
+
+        final long start = System.nanoTime();
+        Files.createDirectories(directory);
+        try (final Stream<Path> files = Files.list(directory)) {
+            files.filter(file -> {
+                final var name = file.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted(Comparator.comparing(Path::toString)).forEach(this.segments::add);
+        }
+
+        if (this.segments.isEmpty()) {
+            this.openNewSegment(1);
+            this.recoveredRecords = 0;
+            this.truncatedBytes = 0;
+        } else {
+            final Path newest = this.segments.peekLast();
+            this.currentSegmentIndex = segmentIndexOf(newest);
+            this.current = map(newest, this.segmentBytes);
+
+            final int validEnd = scan(this.current, (payload, offset) -> this.addCurrentOffset(offset));
+            this.truncatedBytes = zeroTail(this.current, validEnd);
+            this.current.position(validEnd);
+            this.recoveredRecords = countRecords();
+        }
+        this.recoveryNanos = System.nanoTime() - start;
+
+        System.out.println("[ERRORS] Error log opened in " + TimeUnit.NANOSECONDS.toMillis(this.recoveryNanos) + " ms, "
+                + this.recoveredRecords + " records in " + this.segments.size() + " segments"
+                + (this.truncatedBytes > 0 ? ", dropped a torn tail of " + this.truncatedBytes + " bytes" : ""));
+    }
+
+    public synchronized void append(final JSONObject entry) {
+        final long start = System.nanoTime();
+        final byte[] payload = entry.toJSONString().getBytes(StandardCharsets.UTF_8);
+        if (HEADER_BYTES + payload.length > this.segmentBytes) {
+            System.err.println("[ERRORS] Error log entry of " + payload.length + " bytes does not fit a segment, skipped");
+            return;
+        }
+
+        try {
+            if (this.current.remaining() < HEADER_BYTES + payload.length) {
+                this.rotate();
+            }
+        } catch (final IOException e) {
+            // Logging through InternalExceptionTracker would come straight back here.
+            System.err.println("[ERRORS] Failed to rotate error log: " + e.getMessage());
+            return;
+        }
+
+        this.crc.reset();
+        this.crc.update(payload);
+
+        final int recordStart = this.current.position();
+        this.current.putInt(recordStart + 4, payload.length);
+        this.current.putInt(recordStart + 8, (int) this.crc.getValue());
+        this.current.put(recordStart + HEADER_BYTES, payload);
+        this.current.putInt(recordStart, RECORD_MAGIC);
+        this.current.position(recordStart + HEADER_BYTES + payload.length);
+        this.addCurrentOffset(recordStart);
+
+        final long elapsed = System.nanoTime() - start;
+        this.appendCount++;
+        this.appendNanos += elapsed;
+        this.maxAppendNanos = Math.max(this.maxAppendNanos, elapsed);
+    }
+
+    /**
+     * Reads the newest {@code limit} entries of all segments, oldest first. Walks back from the newest record and
+     * decodes only the records it returns.
+     */
+    public synchronized List<JSONObject> readRecent(final int limit) {
+        final ArrayDeque<JSONObject> entries = new ArrayDeque<>();
+        this.readBackwards(this.current, this.currentOffsets, this.currentRecords, entries, limit);
+        final Iterator<Path> older = this.segments.descendingIterator();
+        older.next();
+        while (older.hasNext() && entries.size() < limit) {
+            final Path segment = older.next();
+            try {
+                final SealedSegment sealedSegment = this.sealed(segment);
+                this.readBackwards(sealedSegment.buffer(), sealedSegment.offsets(), sealedSegment.offsets().length, entries, limit);
+            } catch (final IOException e) {
+                System.err.println("[ERRORS] Failed to read error log segment " + segment + ": " + e.getMessage());
+            }
+        }
+        return new ArrayList<>(entries);
+    }
+
+    private void readBackwards(final MappedByteBuffer buffer, final int[] offsets, final int records,
+                               final ArrayDeque<JSONObject> entries, final int limit) {
+        for (int i = records - 1; i >= 0 && entries.size() < limit; i--) {
+            final byte[] payload = new byte[buffer.getInt(offsets[i] + 4)];
+            buffer.get(offsets[i] + HEADER_BYTES, payload);
+            try {
+                entries.addFirst(JSONObject.parseObject(new String(payload, StandardCharsets.UTF_8)));
+            } catch (final Exception e) {
+                System.err.println("[ERRORS] Skipping unreadable error log entry: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * The mapping and record offsets of a segment that is no longer written, built on first use.
+     */
+    private SealedSegment sealed(final Path segment) throws IOException {
+        SealedSegment sealedSegment = this.sealed.get(segment);
+        if (sealedSegment == null) {
+            final MappedByteBuffer buffer = map(segment, this.segmentBytes);
+            final int[][] offsets = {new int[64]};
+            final int[] count = {0};
+            scan(buffer, (payload, offset) -> {
+                if (count[0] == offsets[0].length) offsets[0] = Arrays.copyOf(offsets[0], count[0] * 2);
+                offsets[0][count[0]++] = offset;
+            });
+            sealedSegment = new SealedSegment(buffer, Arrays.copyOf(offsets[0], count[0]));
+            this.sealed.put(segment, sealedSegment);
+        }
+        return sealedSegment;
+    }
+
+    private void addCurrentOffset(final int offset) {
+        if (this.currentRecords == this.currentOffsets.length) {
+            this.currentOffsets = Arrays.copyOf(this.currentOffsets, this.currentRecords * 2);
+        }
+        this.currentOffsets[this.currentRecords++] = offset;
+    }
+
+    /**
+     * Asks the kernel to write the dirty pages of the current segment to disk now.
+     */
+    public synchronized void force() {
+        this.current.force();
+    }
+
+    public synchronized JSONObject getStats() {
+        final var stats = new JSONObject();
+        stats.put("directory", this.directory.toAbsolutePath().toString());
+        stats.put("segments", this.segments.size());
+        stats.put("sealedSegmentsIndexed", this.sealed.size());
+        stats.put("segmentBytes", this.segmentBytes);
+        stats.put("currentSegmentUsedBytes", this.current.position());
+        stats.put("recoveryMicros", TimeUnit.NANOSECONDS.toMicros(this.recoveryNanos));
+        stats.put("recoveredRecords", this.recoveredRecords);
+        stats.put("truncatedBytes", this.truncatedBytes);
+        stats.put("appends", this.appendCount);
+        stats.put("averageAppendNanos", this.appendCount == 0 ? 0 : this.appendNanos / this.appendCount);
+        stats.put("maxAppendNanos", this.maxAppendNanos);
+        return stats;
+    }
+
+    private void rotate() throws IOException {
+        this.current.force();
+        this.openNewSegment(this.currentSegmentIndex + 1);
+        while (this.segments.size() > this.maxSegments) {
+            final Path oldest = this.segments.pollFirst();
+            this.sealed.remove(oldest);
+            try {
+                Files.deleteIfExists(oldest);
+            } catch (final IOException e) {
+                System.err.println("[ERRORS] Failed to delete old error log segment " + oldest + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void openNewSegment(final long index) throws IOException {
+        final Path segment = this.directory.resolve(String.format("%s%012d%s", SEGMENT_PREFIX, index, SEGMENT_SUFFIX));
+        this.current = map(segment, this.segmentBytes);
+        this.currentSegmentIndex = index;
+        this.currentRecords = 0;
+        this.segments.addLast(segment);
+    }
+
+    private int countRecords() throws IOException {
+        int count = this.currentRecords;
+        for (final Path segment : this.segments) {
+            if (!segment.equals(this.segments.peekLast())) count += this.sealed(segment).offsets().length;
+        }
+        return count;
+    }
+
+    private static MappedByteBuffer map(final Path segment, final int segmentBytes) throws IOException {
+        try (final var file = new RandomAccessFile(segment.toFile(), "rw")) {
+            if (file.length() < segmentBytes) {
+                file.setLength(segmentBytes);
+            }
+            // The mapping stays valid after the channel is closed.
+            return file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, segmentBytes);
+        }
+    }
+
+    /**
+     * Walks the valid records from the start of {@code buffer}, passing each payload and its record offset to
+     * {@code consumer}, and returns the offset of the first byte after the last valid record.
+     */
+    private static int scan(final MappedByteBuffer buffer, final ObjIntConsumer<byte[]> consumer) {
+        final var crc = new CRC32();
+        final int limit = buffer.capacity();
+        int offset = 0;
+        while (offset + HEADER_BYTES <= limit) {
+            if (buffer.getInt(offset) != RECORD_MAGIC) break;
+
+            final int length = buffer.getInt(offset + 4);
+            if (length <= 0 || offset + HEADER_BYTES + length > limit) break;
+
+            final byte[] payload = new byte[length];
+            buffer.get(offset + HEADER_BYTES, payload);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(offset + 8)) break;
+
+            consumer.accept(payload, offset);
+            offset += HEADER_BYTES + length;
+        }
+        return offset;
+    }
+
+    private static int zeroTail(final MappedByteBuffer buffer, final int from) {
+        int dirtyEnd = from;
+        for (int i = from; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) dirtyEnd = i + 1;
+        }
+        for (int i = from; i < dirtyEnd; i++) {
+            buffer.put(i, (byte) 0);
+        }
+        return dirtyEnd - from;
+    }
+
+    private static long segmentIndexOf(final Path segment) {
+        final var name = segment.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private record SealedSegment(MappedByteBuffer buffer, int[] offsets) {
+    }
+
+}
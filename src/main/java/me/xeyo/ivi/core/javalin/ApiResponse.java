@@ -0,0 +1,71 @@
+package me.xeyo.ivi.core.javalin;
+
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.http.ContentType;
+import io.javalin.http.Context;
+import java.nio.charset.StandardCharsets;
+import lombok.Getter;
+
+/**
+ * Transport independent result of a route: the same instance is written to a Javalin {@link Context}
+ * or handed back to the page through the CEF query bridge.
+ * <p>
+ * A response can be encoded up front with {@link #encoded}, for documents that are served many times between
+ * changes (see {@link CachedResponse}); its body must not be modified afterwards.
+ */
+public final class ApiResponse {
+
+    @Getter
+    private final int status;
+
+    @Getter
+    private final JSONObject body;
+
+    // The body as written, or null to encode it on every write.
+    private final byte[] encodedBody;
+
+    private ApiResponse(final int status, final JSONObject body, final byte[] encodedBody) {
+        this.status = status;
+        this.body = body;
+        this.encodedBody = encodedBody;
+    }
+
+    public static ApiResponse ok(final JSONObject body) {
+        return new ApiResponse(200, body, null);
+    }
+
+    public static ApiResponse of(final int status, final JSONObject body) {
+        return new ApiResponse(status, body, null);
+    }
+
+    public static ApiResponse encoded(final int status, final JSONObject body) {
+        return new ApiResponse(status, body, FastJsonMapper.encode(body));
+    }
+
+    public static ApiResponse error(final int status, final String error) {
+        final var body = new JSONObject();
+        body.put("success", false);
+        body.put("error", error);
+        return new ApiResponse(status, body, null);
+    }
+
+    public void writeTo(final Context ctx) {
+        ctx.status(this.status);
+        ctx.contentType(ContentType.JSON);
+        if (this.encodedBody != null) {
+            ctx.result(this.encodedBody);
+        } else {
+            FastJsonMapper.writeTo(ctx.outputStream(), this.body);
+        }
+    }
+
+    /**
+     * The body as JSON text, for transports that carry strings.
+     */
+    public String bodyJson() {
+        return this.encodedBody != null
+                ? new String(this.encodedBody, StandardCharsets.UTF_8)
+                : FastJsonMapper.toJson(this.body);
+    }
+
+}
@@ -0,0 +1,48 @@
+package me.xeyo.ivi.core.javalin;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A read-mostly response kept pre-encoded between changes of the state it shows. The caller passes the version of
+ * that state with every request; the document is built and encoded again only when the version differs from the
+ * cached one, so every mutation that bumps the version invalidates it without further bookkeeping.
+ */
+public final class CachedResponse {
+
+    private volatile Entry entry;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public ApiResponse get(final long version, final Supplier<JSONObject> body) {
+        final Entry current = this.entry;
+        if (current != null && current.version == version) {
+            this.hits.incrementAndGet();
+            return current.response;
+        }
+        this.misses.incrementAndGet();
+        // Two requests racing on a new version both encode it; either result is correct.
+        final ApiResponse response = ApiResponse.encoded(200, body.get());
+        this.entry = new Entry(version, response);
+        return response;
+    }
+
+    public void invalidate() {
+        this.entry = null;
+    }
+
+    public JSONObject getStats() {
+        final var stats = new JSONObject();
+        stats.put("hits", this.hits.get());
+        stats.put("misses", this.misses.get());
+        final Entry current = this.entry;
+        stats.put("version", current != null ? current.version : -1);
+        return stats;
+    }
+
+    private record Entry(long version, ApiResponse response) {
+    }
+
+}
@@ -0,0 +1,94 @@
+package me.xeyo.ivi.core.javalin;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONWriter;
+import io.javalin.json.JsonMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Javalin's JSON mapper on fastjson2, the library the handlers already build their responses with, so a response is
+ * no longer built in one library and serialized by reflection in another.
+ * <p>
+ * Routes answer through {@link ApiResponse#writeTo}, which writes from fastjson2's pooled buffer straight to
+ * {@code ctx.outputStream()}. {@code ctx.json(...)} is different: Javalin asks {@link #toJsonStream} for an
+ * {@link InputStream}, so that path encodes the whole document into a byte array first, and
+ * {@link #writeToOutputStream} only streams element by element for a {@link Stream}.
+ * <p>
+ * Null values in objects are written as {@code null}, as Javalin's Jackson mapper did, so the pages see the same
+ * documents as before.
+ */
+public final class FastJsonMapper implements JsonMapper {
+
+    public static final JSONWriter.Feature[] WRITE_FEATURES = {JSONWriter.Feature.WriteMapNullValue};
+
+    /**
+     * Encodes {@code value} the way every response is written.
+     */
+    public static byte[] encode(final Object value) {
+        return JSON.toJSONBytes(value, WRITE_FEATURES);
+    }
+
+    public static String toJson(final Object value) {
+        return JSON.toJSONString(value, WRITE_FEATURES);
+    }
+
+    public static void writeTo(final OutputStream output, final Object value) {
+        JSON.writeTo(output, value, WRITE_FEATURES);
+    }
+
+    @Override
+    public String toJsonString(final Object obj, final Type type) {
+        return obj instanceof String string ? string : toJson(obj);
+    }
+
+    /**
+     * Encodes the whole document up front; see the class comment for the path that does not.
+     */
+    @Override
+    public InputStream toJsonStream(final Object obj, final Type type) {
+        return new ByteArrayInputStream(obj instanceof String string ? string.getBytes(StandardCharsets.UTF_8) : encode(obj));
+    }
+
+    /**
+     * Writes the stream as a JSON array one element at a time, without collecting it first.
+     */
+    @Override
+    public void writeToOutputStream(final Stream<?> stream, final OutputStream outputStream) {
+        try {
+            outputStream.write('[');
+            final Iterator<?> elements = stream.iterator();
+            while (elements.hasNext()) {
+                writeTo(outputStream, elements.next());
+                if (elements.hasNext()) outputStream.write(',');
+            }
+            outputStream.write(']');
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Override
+    public <T> T fromJsonString(final String json, final Type targetType) {
+        return JSON.parseObject(json, targetType);
+    }
+
+    @Override
+    public <T> T fromJsonStream(final InputStream json, final Type targetType) {
+        try {
+            return JSON.parseObject(json.readAllBytes(), targetType);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
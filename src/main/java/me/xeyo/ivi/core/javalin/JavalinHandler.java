@@ -2,9 +2,16 @@ package me.xeyo.ivi.core.javalin;
 
 import io.javalin.Javalin;
 import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
 
 public abstract class JavalinHandler {
 
     public abstract void addHandler(final Javalin javalin, final IVIDisplay rootApp) throws Exception;
 
+    /**
+     * Registers the routes that should also be reachable in-process through the CEF query bridge.
+     */
+    public void addBridgeRoutes(final BridgeRouter router) throws Exception {
+    }
+
 }
\ No newline at end of file
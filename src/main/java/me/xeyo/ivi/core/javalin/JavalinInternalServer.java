@@ -6,28 +6,75 @@ import io.javalin.plugin.bundled.CorsPluginConfig;
 import io.javalin.websocket.WsCloseStatus;
 import java.util.ArrayList;
 import java.util.List;
+import lombok.Getter;
 import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
 import me.xeyo.ivi.core.error.InternalExceptionTracker;
 import me.xeyo.ivi.core.javalin.handler.error.ErrorRelay;
+import me.xeyo.ivi.core.javalin.handler.maps.MapTileHandler;
+import me.xeyo.ivi.core.javalin.handler.media.AlbumArtHandler;
+import me.xeyo.ivi.core.javalin.handler.media.MediaHandler;
+import me.xeyo.ivi.core.javalin.handler.media.MediaStreamHandler;
+import me.xeyo.ivi.core.javalin.handler.media.PlaybackHandler;
+import me.xeyo.ivi.core.javalin.handler.nav.NavigationHandler;
+import me.xeyo.ivi.core.javalin.handler.poi.PoiHandler;
+import me.xeyo.ivi.core.javalin.handler.radio.RadioHandler;
 import me.xeyo.ivi.core.javalin.handler.settings.AppSettingsHandler;
+import me.xeyo.ivi.core.javalin.handler.settings.SettingsStreamHandler;
+import me.xeyo.ivi.core.javalin.handler.system.MetricsHandler;
+import me.xeyo.ivi.core.javalin.handler.system.RenderHandler;
+import me.xeyo.ivi.core.javalin.handler.system.StartupHandler;
+import me.xeyo.ivi.core.javalin.handler.vehicle.VehicleHandler;
+import me.xeyo.ivi.core.javalin.handler.weather.WeatherHandler;
 
 public class JavalinInternalServer {
 
+    @Getter
+    private static final ServerExecution serverExecution = ServerExecution.fromSystemProperties();
+
     private final Javalin javalin;
 
+    @Getter
+    private final BridgeRouter bridgeRouter = new BridgeRouter();
+
     private final List<JavalinHandler> handlers = new ArrayList<>();
 
     {
         this.handlers.add(new ErrorRelay());
+        this.handlers.add(new SettingsStreamHandler());
         this.handlers.add(new AppSettingsHandler());
+        this.handlers.add(new StartupHandler());
+        this.handlers.add(new MetricsHandler());
+        this.handlers.add(new RenderHandler());
+        this.handlers.add(new WeatherHandler());
+        this.handlers.add(new MediaHandler());
+        this.handlers.add(new MediaStreamHandler());
+        this.handlers.add(new PlaybackHandler());
+        this.handlers.add(new AlbumArtHandler());
+        this.handlers.add(new MapTileHandler());
+        this.handlers.add(new NavigationHandler());
+        this.handlers.add(new PoiHandler());
+        this.handlers.add(new VehicleHandler());
+        this.handlers.add(new RadioHandler());
     }
 
     public JavalinInternalServer(){
         this.javalin = Javalin.create(config -> {
             config.jetty.defaultPort = 7070;
+            config.jsonMapper(new FastJsonMapper());
+            serverExecution.configure(config);
             config.bundledPlugins.enableCors(cors -> cors.addRule(CorsPluginConfig.CorsRule::anyHost));
         });
 
+        if (MetricsHandler.isEnabled()) {
+            MetricsHandler.getRequestMetrics().install(this.javalin);
+            this.bridgeRouter.setRequestMetrics(MetricsHandler.getRequestMetrics());
+        }
+        // After the metrics hooks, so time spent waiting for a slot counts towards the request latency.
+        serverExecution.install(this.javalin);
+        this.bridgeRouter.setServerExecution(serverExecution);
+        System.out.println("[SERVER] Handling requests on " + serverExecution.getMode().name().toLowerCase() + " threads");
+
         this.javalin.exception(Exception.class, (e,ctx) -> {
             InternalExceptionTracker.handleException(e);
             ctx.status(HttpStatus.INTERNAL_SERVER_ERROR);
@@ -49,6 +96,7 @@ public class JavalinInternalServer {
         this.handlers.forEach(handler -> {
             try {
                 handler.addHandler(this.javalin, rootApp);
+                handler.addBridgeRoutes(this.bridgeRouter);
             }catch(final Exception e){
                 InternalExceptionTracker.handleException(e);
             }
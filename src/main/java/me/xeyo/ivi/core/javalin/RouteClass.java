@@ -0,0 +1,19 @@
+package me.xeyo.ivi.core.javalin;
+
+import io.javalin.security.RouteRole;
+
+/**
+ * What a route mostly waits on, given as a role when the route is registered. Each class has its own concurrency
+ * limit (see {@link ServerExecution}); routes registered without one are not limited, which suits cheap in-memory
+ * routes and long-lived streams that would hold a slot for minutes.
+ */
+public enum RouteClass implements RouteRole {
+    /**
+     * Blocks on disk or network: tile and cover art reads, file writes, outbound HTTP.
+     */
+    IO,
+    /**
+     * Keeps a core busy: route planning, index searches.
+     */
+    CPU
+}
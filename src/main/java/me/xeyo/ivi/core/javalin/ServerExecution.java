@@ -0,0 +1,186 @@
+package me.xeyo.ivi.core.javalin;
+
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import io.javalin.config.JavalinConfig;
+import io.javalin.http.Header;
+import io.javalin.security.RouteRole;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import me.xeyo.ivi.core.metrics.PrometheusWriter;
+import me.xeyo.ivi.core.utils.SampleStats;
+
+/**
+ * How the embedded server runs handlers, read from system properties:
+ * <ul>
+ *     <li>{@code ivi.server.threads}: {@code platform} (default) keeps Jetty's pooled platform threads, {@code virtual}
+ *     runs every request on its own virtual thread, so a handler blocked on a file or socket costs a few hundred bytes
+ *     of stack instead of a platform thread.</li>
+ *     <li>{@code ivi.server.ioConcurrency} (default 32) and {@code ivi.server.cpuConcurrency} (default: available
+ *     processors): how many requests of each {@link RouteClass} run at once. Further requests wait up to
+ *     {@code ivi.server.queueTimeoutMs} (default 5000) for a slot and are then answered with 503.</li>
+ * </ul>
+ * The limits matter most in virtual mode, where nothing else bounds how many requests run at once. Bridge requests
+ * of classed routes go through the same limits (see {@link #acquire}), so a page cannot get around them by asking
+ * in-process.
+ */
+public final class ServerExecution {
+
+    private static final String PERMIT_ATTRIBUTE = "ivi.execution.permit";
+
+    public enum Mode {
+        PLATFORM, VIRTUAL
+    }
+
+    @Getter
+    private final Mode mode;
+    private final long queueTimeoutMillis;
+    private final Map<RouteClass, Limit> limits = new EnumMap<>(RouteClass.class);
+
+    public ServerExecution(final Mode mode, final int ioConcurrency, final int cpuConcurrency, final long queueTimeoutMillis) {
+        this.mode = mode;
+        this.queueTimeoutMillis = queueTimeoutMillis;
+        this.limits.put(RouteClass.IO, new Limit(ioConcurrency));
+        this.limits.put(RouteClass.CPU, new Limit(cpuConcurrency));
+    }
+
+    public static ServerExecution fromSystemProperties() {
+        final String threads = System.getProperty("ivi.server.threads", "platform").trim().toUpperCase(Locale.ROOT);
+        Mode mode;
+        try {
+            mode = Mode.valueOf(threads);
+        } catch (final IllegalArgumentException e) {
+            System.err.println("[SERVER] Unknown ivi.server.threads '" + threads.toLowerCase(Locale.ROOT) + "', using platform threads");
+            mode = Mode.PLATFORM;
+        }
+        return new ServerExecution(mode,
+                Math.max(1, Integer.getInteger("ivi.server.ioConcurrency", 32)),
+                cpuConcurrency(),
+                Long.getLong("ivi.server.queueTimeoutMs", 5000L));
+    }
+
+    /**
+     * The {@link RouteClass#CPU} limit, which is also how many searches need working state at once.
+     */
+    public static int cpuConcurrency() {
+        return Math.max(1, Integer.getInteger("ivi.server.cpuConcurrency", Runtime.getRuntime().availableProcessors()));
+    }
+
+    public void configure(final JavalinConfig config) {
+        config.useVirtualThreads = this.mode == Mode.VIRTUAL;
+    }
+
+    /**
+     * Admits requests of classed routes through their class limit; the slot is given back once the after-handlers
+     * run, which also happens when the handler failed.
+     */
+    public void install(final Javalin javalin) {
+        javalin.beforeMatched(ctx -> {
+            final Limit limit = this.limitOf(ctx.routeRoles());
+            if (limit == null) return;
+            if (limit.acquire(this.queueTimeoutMillis)) {
+                ctx.attribute(PERMIT_ATTRIBUTE, limit);
+            } else {
+                ctx.header(Header.RETRY_AFTER, "1");
+                ApiResponse.error(503, "Server busy, try again").writeTo(ctx);
+                ctx.skipRemainingHandlers();
+            }
+        });
+        javalin.after(ctx -> {
+            final Limit limit = ctx.attribute(PERMIT_ATTRIBUTE);
+            if (limit != null) limit.release();
+        });
+    }
+
+    /**
+     * Waits for a slot of {@code routeClass} like an HTTP request would; false if none freed up in time. A granted
+     * slot must be given back with {@link #release}.
+     */
+    public boolean acquire(final RouteClass routeClass) throws InterruptedException {
+        return this.limits.get(routeClass).acquire(this.queueTimeoutMillis);
+    }
+
+    public void release(final RouteClass routeClass) {
+        this.limits.get(routeClass).release();
+    }
+
+    private Limit limitOf(final Iterable<RouteRole> roles) {
+        for (final RouteRole role : roles) {
+            if (role instanceof RouteClass routeClass) return this.limits.get(routeClass);
+        }
+        return null;
+    }
+
+    public JSONObject getStats() {
+        final var stats = new JSONObject();
+        stats.put("mode", this.mode.name().toLowerCase(Locale.ROOT));
+        stats.put("queueTimeoutMillis", this.queueTimeoutMillis);
+        this.limits.forEach((routeClass, limit) -> stats.put(routeClass.name().toLowerCase(Locale.ROOT), limit.toJson()));
+        return stats;
+    }
+
+    public void writePrometheus(final PrometheusWriter writer) {
+        writer.family("ivi_route_class_active", "gauge", "Requests running per route class.");
+        this.limits.forEach((routeClass, limit) -> writer.sample("ivi_route_class_active", limit.active(), "class", label(routeClass)));
+        writer.family("ivi_route_class_waiting", "gauge", "Requests waiting for a slot per route class.");
+        this.limits.forEach((routeClass, limit) -> writer.sample("ivi_route_class_waiting", limit.semaphore.getQueueLength(), "class", label(routeClass)));
+        writer.family("ivi_route_class_rejected_total", "counter", "Requests answered with 503 because no slot freed up in time.");
+        this.limits.forEach((routeClass, limit) -> writer.sample("ivi_route_class_rejected_total", limit.rejected.get(), "class", label(routeClass)));
+    }
+
+    private static String label(final RouteClass routeClass) {
+        return routeClass.name().toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Limit {
+
+        private final int permits;
+        private final Semaphore semaphore;
+        private final AtomicLong admitted = new AtomicLong();
+        private final AtomicLong rejected = new AtomicLong();
+        private final SampleStats waitNanos = new SampleStats();
+
+        private Limit(final int permits) {
+            this.permits = permits;
+            this.semaphore = new Semaphore(permits, true);
+        }
+
+        private boolean acquire(final long timeoutMillis) throws InterruptedException {
+            // Unlike tryAcquire(), a zero timeout does not overtake requests that are already waiting.
+            if (this.semaphore.tryAcquire(0, TimeUnit.MILLISECONDS)) {
+                this.admitted.incrementAndGet();
+                return true;
+            }
+            final long start = System.nanoTime();
+            final boolean acquired = this.semaphore.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+            this.waitNanos.record(System.nanoTime() - start);
+            (acquired ? this.admitted : this.rejected).incrementAndGet();
+            return acquired;
+        }
+
+        private void release() {
+            this.semaphore.release();
+        }
+
+        private int active() {
+            return this.permits - this.semaphore.availablePermits();
+        }
+
+        private JSONObject toJson() {
+            final var json = new JSONObject();
+            json.put("limit", this.permits);
+            json.put("active", this.active());
+            json.put("waiting", this.semaphore.getQueueLength());
+            json.put("admitted", this.admitted.get());
+            json.put("rejected", this.rejected.get());
+            json.put("waitMicros", this.waitNanos.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+            return json;
+        }
+    }
+
+}
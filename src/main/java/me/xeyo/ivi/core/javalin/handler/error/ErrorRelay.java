@@ -1,61 +1,121 @@
 package me.xeyo.ivi.core.javalin.handler.error;
 
-import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSON;
 import com.alibaba.fastjson2.JSONObject;
 import io.javalin.Javalin;
 import io.javalin.http.ContentType;
-import java.nio.file.Paths;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
 import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.error.ErrorRecord;
+import me.xeyo.ivi.core.error.ExceptionJournal;
 import me.xeyo.ivi.core.error.InternalExceptionTracker;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.FastJsonMapper;
 import me.xeyo.ivi.core.javalin.JavalinHandler;
-import org.jetbrains.annotations.NotNull;
+import me.xeyo.ivi.core.javalin.RouteClass;
 
 public class ErrorRelay extends JavalinHandler {
 
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final String NEXT_SINCE_HEADER = "X-Next-Since";
+    private static final byte[] STACKTRACE_FIELD = ",\"stacktrace\":".getBytes(StandardCharsets.UTF_8);
+
     @Override
     public void addHandler(final Javalin javalin, final IVIDisplay rootApp) throws Exception {
         javalin.get("/errors",ctx -> {
-            final var errors = new JSONArray();
-
-            InternalExceptionTracker.getThrowableHashMap().forEach((time, throwable) -> {
-                final var error = new JSONObject();
-
-                error.put("time", time);
-                error.put("type", throwable.getClass().getName());
-                error.put("message", throwable.getMessage());
-                error.put("cause", throwable.getCause());
-
-                final var stacktrace = getElements(throwable);
-                error.put("stacktrace",stacktrace);
+            final var journal = InternalExceptionTracker.getExceptionJournal();
+            final long since = parseLong(ctx.queryParam("since"), -1L);
+            final int limit = (int) Math.max(1, Math.min(parseLong(ctx.queryParam("limit"), DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE));
 
-                errors.add(error);
-            });
+            final var etag = "W/\"" + journal.getSequence() + "-" + since + "-" + limit + "\"";
+            ctx.header(Header.ETAG, etag);
+            ctx.header(Header.ACCESS_CONTROL_EXPOSE_HEADERS, Header.ETAG + ", " + NEXT_SINCE_HEADER);
+            if (etag.equals(ctx.header(Header.IF_NONE_MATCH))) {
+                ctx.status(HttpStatus.NOT_MODIFIED);
+                return;
+            }
 
+            final List<ExceptionJournal.Change> changes = journal.changesSince(since, limit);
+            final long nextSince = changes.isEmpty() ? since : changes.get(changes.size() - 1).sequence();
+            ctx.header(NEXT_SINCE_HEADER, String.valueOf(nextSince));
             ctx.contentType(ContentType.JSON);
-            ctx.result(errors.toString());
             ctx.status(200);
-        });
 
-        javalin.get("/errorSummary", ctx -> {
-            final var path =  Paths.get("");
-            ctx.redirect(path.toAbsolutePath() + "/error/errorDetails.html");
+            try (final var output = new BufferedOutputStream(ctx.outputStream(), 8192)) {
+                writeErrors(output, changes);
+            }
         });
 
+        javalin.get("/errors/stats", ctx -> ApiResponse.ok(InternalExceptionTracker.getExceptionJournal().getStats()).writeTo(ctx));
+
+        javalin.get("/errors/history", ctx -> {
+            final var errorLog = InternalExceptionTracker.getPersistentErrorLog();
+            final var response = new JSONObject();
+            if (errorLog == null) {
+                response.put("available", false);
+            } else {
+                final int limit = (int) Math.max(1, Math.min(parseLong(ctx.queryParam("limit"), DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE));
+                response.put("available", true);
+                response.put("errors", errorLog.readRecent(limit));
+                response.put("stats", errorLog.getStats());
+            }
+            ApiResponse.ok(response).writeTo(ctx);
+        }, RouteClass.IO);
+
+        javalin.get("/errorSummary", ctx -> ctx.redirect(IVIDisplay.pageUrl("/web/error/errorDetails.html")));
+
         javalin.get("/reboot",ctx -> {
+            final var errorLog = InternalExceptionTracker.getPersistentErrorLog();
+            if (errorLog != null) errorLog.force();
             System.exit(0);
         });
     }
 
-    private static @NotNull JSONArray getElements(final Throwable throwable) {
-        final var stacktrace = new JSONArray();
-        for(final StackTraceElement element : throwable.getStackTrace()){
-            stacktrace.add(String.format("%s -> %s.%s(%s:%s)",
-                    element.getClassLoaderName(),
-                    element.getClassName(),
-                    element.getMethodName(),
-                    element.getFileName(),
-                    element.getLineNumber()));
+    /**
+     * Streams the page as a JSON array. Everything but the stack trace is encoded per request because count,
+     * last-seen time and message change with every occurrence; the stack trace is spliced in from the bytes
+     * cached on the record.
+     */
+    public static void writeErrors(final OutputStream output, final List<ExceptionJournal.Change> changes) throws IOException {
+        output.write('[');
+        for (int i = 0; i < changes.size(); i++) {
+            if (i > 0) output.write(',');
+
+            final ExceptionJournal.Change change = changes.get(i);
+            final ErrorRecord record = change.record();
+            final var error = new JSONObject();
+
+            error.put("sequence", change.sequence());
+            error.put("time", record.getLastSeen());
+            error.put("firstSeen", record.getFirstSeen());
+            error.put("count", record.getCount());
+            error.put("fingerprint", Long.toHexString(record.getFingerprint()));
+            error.put("type", record.getType());
+            error.put("message", record.getMessage());
+            error.put("cause", record.getCause());
+
+            final byte[] head = JSON.toJSONBytes(error, FastJsonMapper.WRITE_FEATURES);
+            output.write(head, 0, head.length - 1);
+            output.write(STACKTRACE_FIELD);
+            output.write(record.getStacktraceJson());
+            output.write('}');
+        }
+        output.write(']');
+    }
+
+    private static long parseLong(final String value, final long defaultValue) {
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (final NumberFormatException e) {
+            return defaultValue;
         }
-        return stacktrace;
     }
 }
\ No newline at end of file
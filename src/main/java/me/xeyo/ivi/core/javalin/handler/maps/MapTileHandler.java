@@ -0,0 +1,147 @@
+package me.xeyo.ivi.core.javalin.handler.maps;
+
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import lombok.Getter;
+import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+import me.xeyo.ivi.core.javalin.RouteClass;
+import me.xeyo.ivi.core.maps.TilePack;
+import me.xeyo.ivi.core.maps.TileService;
+import org.eclipse.jetty.server.HttpOutput;
+
+/**
+ * Serves offline map tiles from the installed tile pack. Tile bodies are handed to Jetty as the buffer the pack or
+ * the hot set returned, without copying them into the response. The page reports its viewport so the tiles it is
+ * about to need are warmed before it asks for them.
+ */
+public class MapTileHandler extends JavalinHandler {
+
+    @Getter
+    private static final TileService tileService = TileService.fromSystemProperties();
+
+    @Override
+    public void addHandler(final Javalin javalin, final IVIDisplay rootApp) throws Exception {
+        // Registered before the tile route so these paths are not read as tile coordinates.
+        javalin.get("/api/maps/tiles/stats", ctx -> this.getStats().writeTo(ctx));
+        javalin.get("/api/maps/tiles/info", ctx -> this.getInfo().writeTo(ctx));
+        javalin.get("/api/maps/tiles/{z}/{x}/{y}", this::tile, RouteClass.IO);
+        javalin.post("/api/maps/viewport", ctx -> this.viewport(ctx.body()).writeTo(ctx));
+    }
+
+    @Override
+    public void addBridgeRoutes(final BridgeRouter router) {
+        router.get("/api/maps/tiles/stats", request -> this.getStats());
+        router.get("/api/maps/tiles/info", request -> this.getInfo());
+        router.post("/api/maps/viewport", request -> this.viewport(request.getBody()));
+    }
+
+    private void tile(final Context ctx) throws IOException {
+        final long start = System.nanoTime();
+        final int zoom;
+        final int x;
+        final int y;
+        try {
+            zoom = Integer.parseInt(ctx.pathParam("z"));
+            x = Integer.parseInt(ctx.pathParam("x"));
+            final String row = ctx.pathParam("y");
+            final int dot = row.indexOf('.');
+            y = Integer.parseInt(dot >= 0 ? row.substring(0, dot) : row);
+        } catch (final NumberFormatException e) {
+            ApiResponse.error(400, "Invalid tile coordinates").writeTo(ctx);
+            return;
+        }
+
+        final ByteBuffer tile = tileService.getTile(zoom, x, y);
+        if (tile == null) {
+            ApiResponse.error(404, tileService.isAvailable() ? "Tile not found" : "No tile pack installed").writeTo(ctx);
+            return;
+        }
+
+        final TilePack pack = tileService.getPack();
+        final var etag = "\"" + Long.toHexString(pack.getLastModified()) + "-" + Long.toHexString(TilePack.keyOf(zoom, x, y)) + "\"";
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.CACHE_CONTROL, "public, max-age=86400");
+        if (etag.equals(ctx.header(Header.IF_NONE_MATCH))) {
+            ctx.status(HttpStatus.NOT_MODIFIED);
+            tileService.recordServed(System.nanoTime() - start, 0);
+            return;
+        }
+
+        final int length = tile.remaining();
+        ctx.contentType(pack.getFormat().getContentType());
+        if (pack.getFormat() == TilePack.Format.PBF && length > 1
+                && (tile.get(tile.position()) & 0xFF) == 0x1F && (tile.get(tile.position() + 1) & 0xFF) == 0x8B) {
+            // Vector tiles are usually stored gzipped.
+            ctx.header(Header.CONTENT_ENCODING, "gzip");
+        }
+        ctx.header(Header.CONTENT_LENGTH, Integer.toString(length));
+
+        final OutputStream output = ctx.res().getOutputStream();
+        if (output instanceof HttpOutput httpOutput) {
+            httpOutput.write(tile);
+        } else {
+            Channels.newChannel(output).write(tile);
+        }
+        output.flush();
+        tileService.recordServed(System.nanoTime() - start, length);
+    }
+
+    private ApiResponse viewport(final String body) {
+        final JSONObject request;
+        try {
+            request = JSONObject.parseObject(body);
+        } catch (final Exception e) {
+            return ApiResponse.error(400, "Invalid JSON body");
+        }
+        if (request == null || !request.containsKey("lat") || !request.containsKey("lon") || !request.containsKey("zoom")) {
+            return ApiResponse.error(400, "Missing lat, lon or zoom");
+        }
+
+        final Double heading = request.getDouble("heading");
+        tileService.onViewport(request.getDoubleValue("lat"), request.getDoubleValue("lon"), request.getIntValue("zoom"),
+                heading != null ? heading : Double.NaN,
+                request.getIntValue("width", 1024), request.getIntValue("height", 600));
+
+        final var response = new JSONObject();
+        response.put("success", true);
+        return ApiResponse.ok(response);
+    }
+
+    private ApiResponse getInfo() {
+        final TilePack pack = tileService.getPack();
+        final var info = new JSONObject();
+        info.put("available", pack != null);
+        if (pack != null) {
+            info.put("format", pack.getFormat().getExtension());
+            info.put("contentType", pack.getFormat().getContentType());
+            info.put("tileCount", pack.getTileCount());
+            info.put("minZoom", pack.getMinZoom());
+            info.put("maxZoom", pack.getMaxZoom());
+        }
+        info.put("defaultLat", Double.parseDouble(System.getProperty("ivi.weather.lat", "52.5200")));
+        info.put("defaultLon", Double.parseDouble(System.getProperty("ivi.weather.lon", "13.4050")));
+
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("info", info);
+        return ApiResponse.ok(response);
+    }
+
+    private ApiResponse getStats() {
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("stats", tileService.getStats());
+        return ApiResponse.ok(response);
+    }
+
+}
@@ -0,0 +1,92 @@
+package me.xeyo.ivi.core.javalin.handler.media;
+
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+import lombok.Getter;
+import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.error.InternalExceptionTracker;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+import me.xeyo.ivi.core.javalin.RouteClass;
+import me.xeyo.ivi.core.media.AlbumArtService;
+import me.xeyo.ivi.core.media.MediaTrack;
+
+/**
+ * Serves cover art thumbnails. The URL names a track, whose art can change, so responses are revalidated on every
+ * use; the ETag is the content hash of the source image plus the size, and an unchanged thumbnail is answered with
+ * 304. The request thread is released while a thumbnail is being decoded.
+ */
+public class AlbumArtHandler extends JavalinHandler {
+
+    @Getter
+    private static final AlbumArtService albumArtService = AlbumArtService.fromSystemProperties();
+
+    @Override
+    public void addHandler(final Javalin javalin, final IVIDisplay rootApp) throws Exception {
+        // Registered before the art route so the stats path is not read as a track id.
+        javalin.get("/api/media/art/stats", ctx -> this.getStats().writeTo(ctx));
+        javalin.get("/api/media/art/{id}", this::art, RouteClass.IO);
+    }
+
+    @Override
+    public void addBridgeRoutes(final BridgeRouter router) {
+        router.get("/api/media/art/stats", request -> this.getStats());
+    }
+
+    private void art(final Context ctx) {
+        final MediaTrack track;
+        final int size;
+        try {
+            track = MediaHandler.getMediaLibrary().getTrack(Long.parseLong(ctx.pathParam("id")));
+            final String sizeParam = ctx.queryParam("size");
+            size = sizeParam != null ? Integer.parseInt(sizeParam) : albumArtService.getSizes().stream().reduce(0, Math::max);
+        } catch (final NumberFormatException e) {
+            ApiResponse.error(400, "Invalid track id or size").writeTo(ctx);
+            return;
+        }
+        if (!albumArtService.getSizes().contains(size)) {
+            ApiResponse.error(400, "size must be one of " + albumArtService.getSizes()).writeTo(ctx);
+            return;
+        }
+        if (track == null) {
+            ApiResponse.error(404, "Track not found").writeTo(ctx);
+            return;
+        }
+
+        ctx.future(() -> albumArtService.getThumbnail(track, size).handle((thumbnail, error) -> {
+            if (error != null) {
+                InternalExceptionTracker.handleException(error instanceof Exception e ? e : new RuntimeException(error));
+                ApiResponse.error(500, "Failed to load cover art").writeTo(ctx);
+            } else if (thumbnail == null) {
+                ApiResponse.error(404, "Track has no cover art").writeTo(ctx);
+            } else {
+                writeThumbnail(ctx, thumbnail);
+            }
+            return null;
+        }));
+    }
+
+    private static void writeThumbnail(final Context ctx, final AlbumArtService.Thumbnail thumbnail) {
+        final var etag = "\"" + thumbnail.key() + "\"";
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.CACHE_CONTROL, "no-cache");
+        if (etag.equals(ctx.header(Header.IF_NONE_MATCH))) {
+            ctx.status(HttpStatus.NOT_MODIFIED);
+            return;
+        }
+        ctx.contentType("image/jpeg");
+        ctx.result(thumbnail.bytes());
+    }
+
+    private ApiResponse getStats() {
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("stats", albumArtService.getStats());
+        return ApiResponse.ok(response);
+    }
+
+}
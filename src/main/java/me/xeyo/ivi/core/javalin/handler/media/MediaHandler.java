@@ -0,0 +1,93 @@
+package me.xeyo.ivi.core.javalin.handler.media;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import lombok.Getter;
+import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+import me.xeyo.ivi.core.media.MediaLibrary;
+import me.xeyo.ivi.core.media.MediaTrack;
+
+public class MediaHandler extends JavalinHandler {
+
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    @Getter
+    private static final MediaLibrary mediaLibrary = MediaLibrary.fromSystemProperties();
+
+    @Override
+    public void addHandler(final Javalin javalin, final IVIDisplay rootApp) throws Exception {
+        javalin.get("/api/media/stats", ctx -> this.getStats().writeTo(ctx));
+        javalin.get("/api/media/tracks", ctx -> this.getTracks(ctx.queryParam("offset"), ctx.queryParam("limit"),
+                ctx.queryParam("sort"), ctx.queryParam("order"), ctx.queryParam("q")).writeTo(ctx));
+        javalin.get("/api/media/tracks/{id}", ctx -> this.getTrack(ctx.pathParam("id")).writeTo(ctx));
+    }
+
+    @Override
+    public void addBridgeRoutes(final BridgeRouter router) {
+        router.get("/api/media/stats", request -> this.getStats());
+        router.get("/api/media/tracks", request -> this.getTracks(request.queryParam("offset"), request.queryParam("limit"),
+                request.queryParam("sort"), request.queryParam("order"), request.queryParam("q")));
+        router.get("/api/media/tracks/{id}", request -> this.getTrack(request.pathParam("id")));
+    }
+
+    private ApiResponse getTracks(final String offsetParam, final String limitParam, final String sortParam,
+                                  final String orderParam, final String query) {
+        final int offset;
+        final int limit;
+        try {
+            offset = offsetParam != null ? Math.max(0, Integer.parseInt(offsetParam)) : 0;
+            limit = limitParam != null ? Math.max(1, Math.min(Integer.parseInt(limitParam), MAX_PAGE_SIZE)) : DEFAULT_PAGE_SIZE;
+        } catch (final NumberFormatException e) {
+            return ApiResponse.error(400, "Invalid offset or limit");
+        }
+
+        final MediaLibrary.SortOrder sort = MediaLibrary.SortOrder.parse(sortParam);
+        if (sort == null) {
+            return ApiResponse.error(400, "Unknown sort: " + sortParam);
+        }
+        final boolean descending = "desc".equalsIgnoreCase(orderParam);
+
+        final MediaLibrary.Page page = mediaLibrary.page(sort, descending, offset, limit, query);
+        final var tracks = new JSONArray(page.tracks().size());
+        page.tracks().forEach(track -> tracks.add(track.toJson()));
+
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("ready", mediaLibrary.isReady());
+        response.put("total", page.total());
+        response.put("offset", offset);
+        response.put("limit", limit);
+        response.put("tracks", tracks);
+        return ApiResponse.ok(response);
+    }
+
+    private ApiResponse getTrack(final String idParam) {
+        final MediaTrack track;
+        try {
+            track = mediaLibrary.getTrack(Long.parseLong(idParam));
+        } catch (final NumberFormatException e) {
+            return ApiResponse.error(400, "Invalid track id");
+        }
+        if (track == null) {
+            return ApiResponse.error(404, "Track not found");
+        }
+
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("track", track.toJson());
+        return ApiResponse.ok(response);
+    }
+
+    private ApiResponse getStats() {
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("stats", mediaLibrary.getStats());
+        return ApiResponse.ok(response);
+    }
+
+}
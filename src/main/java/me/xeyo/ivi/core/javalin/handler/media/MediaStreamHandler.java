@@ -0,0 +1,304 @@
+package me.xeyo.ivi.core.javalin.handler.media;
+
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import io.javalin.http.HttpStatus;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+import me.xeyo.ivi.core.media.MediaTrack;
+import me.xeyo.ivi.core.media.ReadAheadCache;
+import me.xeyo.ivi.core.utils.SampleStats;
+import org.eclipse.jetty.server.HttpOutput;
+
+/**
+ * Streams library files to the {@code <audio>} element with single-range {@code Range} support, so seeking
+ * only transfers the bytes it needs. The requested range is memory mapped and handed to Jetty as direct buffer
+ * slices, which go to the socket without passing through a heap array; if the response is not backed by Jetty,
+ * {@link FileChannel#transferTo} is used instead. When the playback queue has read the head of the track ahead,
+ * the first bytes come from that buffer. Responses carry a strong ETag and Last-Modified for
+ * conditional requests, and the number of concurrent streams is capped.
+ */
+public class MediaStreamHandler extends JavalinHandler {
+
+    private static final int MAX_STREAMS = Integer.getInteger("ivi.media.maxStreams", 4);
+    private static final int CHUNK_BYTES = 256 * 1024;
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+    private static final Map<String, String> CONTENT_TYPES = Map.of(
+            "mp3", "audio/mpeg",
+            "flac", "audio/flac",
+            "ogg", "audio/ogg",
+            "oga", "audio/ogg",
+            "opus", "audio/ogg",
+            "m4a", "audio/mp4",
+            "mp4", "audio/mp4",
+            "aac", "audio/mp4"
+    );
+
+    private static final Semaphore streamPermits = new Semaphore(MAX_STREAMS);
+    private static final com.sun.management.ThreadMXBean threadBean = ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+            && bean.isThreadAllocatedMemorySupported() ? bean : null;
+
+    private static final AtomicLong streams = new AtomicLong();
+    private static final AtomicLong rejected = new AtomicLong();
+    private static final AtomicLong notModified = new AtomicLong();
+    private static final AtomicLong rangeRequests = new AtomicLong();
+    private static final AtomicLong bytesSent = new AtomicLong();
+    private static final AtomicLong zeroCopyStreams = new AtomicLong();
+    private static final SampleStats seekLatency = new SampleStats();
+    private static final SampleStats allocatedBytes = new SampleStats();
+
+    @Override
+    public void addHandler(final Javalin javalin, final IVIDisplay rootApp) throws Exception {
+        // Registered before the stream route so the stats path is not read as a track id.
+        javalin.get("/api/media/stream/stats", ctx -> getStats().writeTo(ctx));
+        javalin.get("/api/media/stream/{id}", ctx -> this.stream(ctx, true));
+        javalin.head("/api/media/stream/{id}", ctx -> this.stream(ctx, false));
+    }
+
+    private void stream(final Context ctx, final boolean sendBody) throws IOException {
+        final long start = System.nanoTime();
+        final MediaTrack track;
+        try {
+            track = MediaHandler.getMediaLibrary().getTrack(Long.parseLong(ctx.pathParam("id")));
+        } catch (final NumberFormatException e) {
+            ApiResponse.error(400, "Invalid track id").writeTo(ctx);
+            return;
+        }
+        if (track == null) {
+            ApiResponse.error(404, "Track not found").writeTo(ctx);
+            return;
+        }
+
+        final Path file = Path.of(track.path());
+        if (!Files.isRegularFile(file)) {
+            ApiResponse.error(404, "Track file is missing").writeTo(ctx);
+            return;
+        }
+
+        if (sendBody && !streamPermits.tryAcquire()) {
+            rejected.incrementAndGet();
+            ctx.header("Retry-After", "1");
+            ApiResponse.error(503, "Too many concurrent streams").writeTo(ctx);
+            return;
+        }
+        try {
+            this.respond(ctx, track, file, sendBody, start);
+        } finally {
+            if (sendBody) streamPermits.release();
+        }
+    }
+
+    private void respond(final Context ctx, final MediaTrack track, final Path file, final boolean sendBody,
+                         final long start) throws IOException {
+        final long size = Files.size(file);
+        final long lastModified = Files.getLastModifiedTime(file).toMillis();
+        final var etag = "\"" + Long.toHexString(track.id()) + "-" + Long.toHexString(size) + "-" + Long.toHexString(lastModified) + "\"";
+
+        ctx.header(Header.ACCEPT_RANGES, "bytes");
+        ctx.header(Header.ETAG, etag);
+        ctx.header(Header.LAST_MODIFIED, HTTP_DATE.format(Instant.ofEpochMilli(lastModified)));
+        ctx.header(Header.CACHE_CONTROL, "no-cache");
+        ctx.header(Header.ACCESS_CONTROL_EXPOSE_HEADERS, "Content-Range, Content-Length, ETag");
+
+        if (isNotModified(ctx, etag, lastModified)) {
+            notModified.incrementAndGet();
+            ctx.status(HttpStatus.NOT_MODIFIED);
+            return;
+        }
+
+        long rangeStart = 0;
+        long rangeEnd = size - 1;
+        final String range = ctx.header(Header.RANGE);
+        final String ifRange = ctx.header("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            final long[] parsed = parseRange(range, size);
+            if (parsed == null) {
+                ctx.header(Header.CONTENT_RANGE, "bytes */" + size);
+                ctx.status(HttpStatus.RANGE_NOT_SATISFIABLE);
+                return;
+            }
+            if (parsed.length == 2) {
+                rangeStart = parsed[0];
+                rangeEnd = parsed[1];
+                rangeRequests.incrementAndGet();
+                ctx.status(HttpStatus.PARTIAL_CONTENT);
+                ctx.header(Header.CONTENT_RANGE, "bytes " + rangeStart + "-" + rangeEnd + "/" + size);
+            }
+        }
+
+        final long length = Math.max(0, rangeEnd - rangeStart + 1);
+        ctx.contentType(CONTENT_TYPES.getOrDefault(track.format(), "application/octet-stream"));
+        ctx.header(Header.CONTENT_LENGTH, Long.toString(length));
+        if (!sendBody || length == 0) return;
+
+        final long allocatedBefore = threadBean != null ? threadBean.getCurrentThreadAllocatedBytes() : 0;
+        streams.incrementAndGet();
+
+        // The head of the next queued track may already be in memory.
+        final ReadAheadCache readAhead = PlaybackHandler.getReadAheadCache();
+        final ByteBuffer cachedHead = readAhead.get(track.id(), size, lastModified);
+        final ByteBuffer head = cachedHead != null && rangeStart < cachedHead.limit()
+                ? cachedHead.slice((int) rangeStart, (int) Math.min(length, cachedHead.limit() - rangeStart))
+                : null;
+        PlaybackHandler.getPlaybackQueue().onStreamStarted(track.id(), head != null);
+
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final OutputStream output = ctx.res().getOutputStream();
+            final long seekStart = rangeStart > 0 ? start : 0;
+            final long headLength = head != null ? head.remaining() : 0;
+            if (head != null) {
+                if (output instanceof HttpOutput httpOutput) {
+                    httpOutput.write(head);
+                } else {
+                    Channels.newChannel(output).write(head);
+                }
+                output.flush();
+                readAhead.recordServed(headLength);
+                bytesSent.addAndGet(headLength);
+                if (seekStart != 0) seekLatency.record(System.nanoTime() - seekStart);
+            }
+
+            final long fileStart = rangeStart + headLength;
+            final long fileLength = length - headLength;
+            final long fileSeekStart = head != null ? 0 : seekStart;
+            if (fileLength > 0) {
+                if (output instanceof HttpOutput httpOutput) {
+                    zeroCopyStreams.incrementAndGet();
+                    this.writeMapped(channel, httpOutput, fileStart, fileLength, fileSeekStart);
+                } else {
+                    this.writeTransferred(channel, output, fileStart, fileLength, fileSeekStart);
+                }
+            }
+        } catch (final IOException e) {
+            // The audio element drops connections all the time when it seeks or buffers ahead.
+        } finally {
+            if (threadBean != null) {
+                allocatedBytes.record(threadBean.getCurrentThreadAllocatedBytes() - allocatedBefore);
+            }
+        }
+    }
+
+    private void writeMapped(final FileChannel channel, final HttpOutput output, final long position, final long length,
+                             final long seekStartNanos) throws IOException {
+        long written = 0;
+        while (written < length) {
+            final long regionLength = Math.min(length - written, Integer.MAX_VALUE);
+            final ByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position + written, regionLength);
+            for (int offset = 0; offset < regionLength; offset += CHUNK_BYTES) {
+                final int chunk = (int) Math.min(CHUNK_BYTES, regionLength - offset);
+                output.write(region.slice(offset, chunk));
+                bytesSent.addAndGet(chunk);
+                if (seekStartNanos != 0 && written == 0 && offset == 0) {
+                    output.flush();
+                    seekLatency.record(System.nanoTime() - seekStartNanos);
+                }
+            }
+            written += regionLength;
+        }
+    }
+
+    private void writeTransferred(final FileChannel channel, final OutputStream output, final long position, final long length,
+                                  final long seekStartNanos) throws IOException {
+        final WritableByteChannel target = Channels.newChannel(output);
+        long written = 0;
+        while (written < length) {
+            final long sent = channel.transferTo(position + written, Math.min(CHUNK_BYTES, length - written), target);
+            if (sent <= 0) break;
+            if (seekStartNanos != 0 && written == 0) {
+                output.flush();
+                seekLatency.record(System.nanoTime() - seekStartNanos);
+            }
+            written += sent;
+            bytesSent.addAndGet(sent);
+        }
+    }
+
+    private static boolean isNotModified(final Context ctx, final String etag, final long lastModified) {
+        final String ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch != null) {
+            for (final String candidate : ifNoneMatch.split(",")) {
+                final var trimmed = candidate.trim();
+                if (trimmed.equals("*") || trimmed.equals(etag) || trimmed.equals("W/" + etag)) return true;
+            }
+            return false;
+        }
+
+        final String ifModifiedSince = ctx.header(Header.IF_MODIFIED_SINCE);
+        if (ifModifiedSince == null) return false;
+        try {
+            final long since = Instant.from(HTTP_DATE.parse(ifModifiedSince)).toEpochMilli();
+            return lastModified / 1000 <= since / 1000;
+        } catch (final DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Parses a single byte range. Returns {@code {start, end}}, an empty array when the header should be ignored
+     * (multiple ranges or another unit, answered with the whole file) or {@code null} when it cannot be satisfied.
+     */
+    static long[] parseRange(final String header, final long size) {
+        if (!header.startsWith("bytes=") || header.indexOf(',') >= 0) return new long[0];
+        final var spec = header.substring("bytes=".length()).trim();
+        final int dash = spec.indexOf('-');
+        if (dash < 0) return new long[0];
+
+        try {
+            final var first = spec.substring(0, dash).trim();
+            final var last = spec.substring(dash + 1).trim();
+            if (first.isEmpty()) {
+                final long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) return null;
+                return new long[]{Math.max(0, size - suffix), size - 1};
+            }
+
+            final long start = Long.parseLong(first);
+            final long end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+            if (start >= size || end < start) return null;
+            return new long[]{start, end};
+        } catch (final NumberFormatException e) {
+            return new long[0];
+        }
+    }
+
+    static ApiResponse getStats() {
+        final var stats = new JSONObject();
+        stats.put("maxStreams", MAX_STREAMS);
+        stats.put("activeStreams", MAX_STREAMS - streamPermits.availablePermits());
+        stats.put("streams", streams.get());
+        stats.put("zeroCopyStreams", zeroCopyStreams.get());
+        stats.put("rejected", rejected.get());
+        stats.put("notModified", notModified.get());
+        stats.put("rangeRequests", rangeRequests.get());
+        stats.put("bytesSent", bytesSent.get());
+        stats.put("seekLatencyMicros", seekLatency.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+        stats.put("heapAllocatedBytesPerStream", threadBean != null ? allocatedBytes.toJson(1) : null);
+
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("stats", stats);
+        return ApiResponse.ok(response);
+    }
+
+}
@@ -0,0 +1,154 @@
+package me.xeyo.ivi.core.javalin.handler.media;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import java.util.ArrayList;
+import java.util.List;
+import lombok.Getter;
+import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+import me.xeyo.ivi.core.media.PlaybackQueue;
+import me.xeyo.ivi.core.media.ReadAheadCache;
+
+public class PlaybackHandler extends JavalinHandler {
+
+    @Getter
+    private static final ReadAheadCache readAheadCache = ReadAheadCache.fromSystemProperties();
+
+    @Getter
+    private static final PlaybackQueue playbackQueue = new PlaybackQueue(MediaHandler.getMediaLibrary(), readAheadCache,
+            Long.getLong("ivi.media.prefetchLeadMs", 20000));
+
+    @Override
+    public void addHandler(final Javalin javalin, final IVIDisplay rootApp) throws Exception {
+        javalin.get("/api/media/queue", ctx -> this.getQueue().writeTo(ctx));
+        javalin.put("/api/media/queue", ctx -> this.setQueue(ctx.body()).writeTo(ctx));
+        javalin.patch("/api/media/queue", ctx -> this.setMode(ctx.body()).writeTo(ctx));
+        javalin.post("/api/media/queue/next", ctx -> this.next(ctx.body()).writeTo(ctx));
+        javalin.post("/api/media/queue/previous", ctx -> this.previous().writeTo(ctx));
+        javalin.post("/api/media/queue/jump", ctx -> this.jump(ctx.body()).writeTo(ctx));
+        javalin.post("/api/media/queue/progress", ctx -> this.progress(ctx.body()).writeTo(ctx));
+        javalin.post("/api/media/queue/latency", ctx -> this.latency(ctx.body()).writeTo(ctx));
+        javalin.get("/api/media/queue/stats", ctx -> this.getStats().writeTo(ctx));
+    }
+
+    @Override
+    public void addBridgeRoutes(final BridgeRouter router) {
+        router.get("/api/media/queue", request -> this.getQueue());
+        router.put("/api/media/queue", request -> this.setQueue(request.getBody()));
+        router.patch("/api/media/queue", request -> this.setMode(request.getBody()));
+        router.post("/api/media/queue/next", request -> this.next(request.getBody()));
+        router.post("/api/media/queue/previous", request -> this.previous());
+        router.post("/api/media/queue/jump", request -> this.jump(request.getBody()));
+        router.post("/api/media/queue/progress", request -> this.progress(request.getBody()));
+        router.post("/api/media/queue/latency", request -> this.latency(request.getBody()));
+        router.get("/api/media/queue/stats", request -> this.getStats());
+    }
+
+    private ApiResponse getQueue() {
+        return queueResponse(playbackQueue.getState());
+    }
+
+    private ApiResponse setQueue(final String body) {
+        final JSONObject request = parseBody(body);
+        final JSONArray ids = request != null ? request.getJSONArray("trackIds") : null;
+        if (ids == null) {
+            return ApiResponse.error(400, "Missing trackIds");
+        }
+
+        final List<Long> trackIds = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            final Long id = ids.getLong(i);
+            if (id != null) trackIds.add(id);
+        }
+        return queueResponse(playbackQueue.setQueue(trackIds, request.getIntValue("index")));
+    }
+
+    private ApiResponse setMode(final String body) {
+        final JSONObject request = parseBody(body);
+        if (request == null) {
+            return ApiResponse.error(400, "Invalid JSON body");
+        }
+
+        PlaybackQueue.RepeatMode repeat = null;
+        if (request.containsKey("repeat")) {
+            repeat = PlaybackQueue.RepeatMode.parse(request.getString("repeat"));
+            if (repeat == null) {
+                return ApiResponse.error(400, "repeat must be off, all or one");
+            }
+        }
+        return queueResponse(playbackQueue.setMode(request.getBoolean("shuffle"), repeat));
+    }
+
+    private ApiResponse next(final String body) {
+        final JSONObject request = parseBody(body);
+        return queueResponse(playbackQueue.next(request != null && request.getBooleanValue("automatic")));
+    }
+
+    private ApiResponse previous() {
+        return queueResponse(playbackQueue.previous());
+    }
+
+    private ApiResponse jump(final String body) {
+        final JSONObject request = parseBody(body);
+        if (request == null || !request.containsKey("index")) {
+            return ApiResponse.error(400, "Missing index");
+        }
+        final JSONObject state = playbackQueue.jumpTo(request.getIntValue("index"));
+        if (state == null) {
+            return ApiResponse.error(400, "Index out of range");
+        }
+        return queueResponse(state);
+    }
+
+    private ApiResponse progress(final String body) {
+        final JSONObject request = parseBody(body);
+        if (request == null) {
+            return ApiResponse.error(400, "Invalid JSON body");
+        }
+        playbackQueue.reportProgress(request.getLongValue("positionMillis"), request.getLongValue("durationMillis"));
+        return success();
+    }
+
+    private ApiResponse latency(final String body) {
+        final JSONObject request = parseBody(body);
+        if (request == null || !request.containsKey("millis")) {
+            return ApiResponse.error(400, "Missing millis");
+        }
+        playbackQueue.reportPlayingLatency(request.getLongValue("millis"), request.getBooleanValue("prefetched"));
+        return success();
+    }
+
+    private ApiResponse getStats() {
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("stats", playbackQueue.getStats());
+        return ApiResponse.ok(response);
+    }
+
+    private static ApiResponse queueResponse(final JSONObject state) {
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("queue", state);
+        return ApiResponse.ok(response);
+    }
+
+    private static ApiResponse success() {
+        final var response = new JSONObject();
+        response.put("success", true);
+        return ApiResponse.ok(response);
+    }
+
+    private static JSONObject parseBody(final String body) {
+        if (body == null || body.isBlank()) return new JSONObject();
+        try {
+            return JSONObject.parseObject(body);
+        } catch (final Exception e) {
+            return null;
+        }
+    }
+
+}
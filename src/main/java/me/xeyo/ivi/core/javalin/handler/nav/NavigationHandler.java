@@ -0,0 +1,81 @@
+package me.xeyo.ivi.core.javalin.handler.nav;
+
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import lombok.Getter;
+import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+import me.xeyo.ivi.core.javalin.RouteClass;
+import me.xeyo.ivi.core.nav.RoutingService;
+
+/**
+ * Offline route planning between two coordinates, answered from the routing index installed next to the tile pack.
+ */
+public class NavigationHandler extends JavalinHandler {
+
+    @Getter
+    private static final RoutingService routingService = RoutingService.fromSystemProperties();
+
+    @Override
+    public void addHandler(final Javalin javalin, final IVIDisplay rootApp) throws Exception {
+        javalin.get("/api/nav/stats", ctx -> this.getStats().writeTo(ctx));
+        javalin.get("/api/nav/route", ctx -> this.route(ctx.queryParam("from"), ctx.queryParam("to")).writeTo(ctx), RouteClass.CPU);
+    }
+
+    @Override
+    public void addBridgeRoutes(final BridgeRouter router) {
+        router.get("/api/nav/stats", request -> this.getStats());
+        router.get("/api/nav/route", request -> this.route(request.queryParam("from"), request.queryParam("to")), RouteClass.CPU);
+    }
+
+    /**
+     * Plans a route; both ends are given as {@code lat,lon}.
+     */
+    private ApiResponse route(final String from, final String to) {
+        final double[] start = parseCoordinate(from);
+        final double[] destination = parseCoordinate(to);
+        if (start == null || destination == null) {
+            return ApiResponse.error(400, "Expected from and to as lat,lon");
+        }
+
+        final JSONObject route = routingService.route(start[0], start[1], destination[0], destination[1]);
+        final String failure = route.getString("failure");
+        if (failure != null) {
+            return ApiResponse.error(failure.equals("unavailable") ? 503 : 404, switch (failure) {
+                case "unavailable" -> "No routing index installed";
+                case "start-not-near-road" -> "Start is not near a road";
+                case "destination-not-near-road" -> "Destination is not near a road";
+                default -> "No route between start and destination";
+            });
+        }
+
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("route", route);
+        return ApiResponse.ok(response);
+    }
+
+    private ApiResponse getStats() {
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("stats", routingService.getStats());
+        return ApiResponse.ok(response);
+    }
+
+    private static double[] parseCoordinate(final String value) {
+        if (value == null) return null;
+        final int comma = value.indexOf(',');
+        if (comma < 0) return null;
+        try {
+            final double latitude = Double.parseDouble(value.substring(0, comma).trim());
+            final double longitude = Double.parseDouble(value.substring(comma + 1).trim());
+            if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) return null;
+            return new double[]{latitude, longitude};
+        } catch (final NumberFormatException e) {
+            return null;
+        }
+    }
+
+}
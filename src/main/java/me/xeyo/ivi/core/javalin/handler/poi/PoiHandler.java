@@ -0,0 +1,153 @@
+package me.xeyo.ivi.core.javalin.handler.poi;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import lombok.Getter;
+import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.error.InternalExceptionTracker;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+import me.xeyo.ivi.core.javalin.RouteClass;
+import me.xeyo.ivi.core.poi.NearbySession;
+import me.xeyo.ivi.core.poi.PoiCategory;
+import me.xeyo.ivi.core.poi.PoiService;
+
+/**
+ * Points of interest from the local POI pack: nearest and area searches, plus a WebSocket that follows the vehicle
+ * position and pushes only what changed in the nearby set.
+ */
+public class PoiHandler extends JavalinHandler {
+
+    private static final String SESSION_ATTRIBUTE = "poiSession";
+    private static final int DEFAULT_NEAREST = 10;
+    private static final int DEFAULT_WITHIN = 500;
+
+    @Getter
+    private static final PoiService poiService = PoiService.fromSystemProperties();
+
+    @Override
+    public void addHandler(final Javalin javalin, final IVIDisplay rootApp) throws Exception {
+        javalin.get("/api/poi/stats", ctx -> this.getStats().writeTo(ctx));
+        javalin.get("/api/poi/categories", ctx -> this.getCategories().writeTo(ctx));
+        javalin.get("/api/poi/nearby", ctx -> this.nearby(ctx.queryParam("lat"), ctx.queryParam("lon"), ctx.queryParam("k"),
+                ctx.queryParam("radius"), ctx.queryParam("categories")).writeTo(ctx), RouteClass.CPU);
+        javalin.get("/api/poi/within", ctx -> this.within(ctx.queryParam("bbox"), ctx.queryParam("limit"),
+                ctx.queryParam("categories")).writeTo(ctx), RouteClass.CPU);
+
+        // Clients send {lat, lon, k, radius, categories} whenever the position changes.
+        javalin.ws("/api/poi/nearby/stream", ws -> {
+            ws.onConnect(ctx -> {
+                if (!poiService.isAvailable()) {
+                    ctx.closeSession(1011, "No POI pack installed");
+                    return;
+                }
+                ctx.enableAutomaticPings();
+                ctx.attribute(SESSION_ATTRIBUTE, poiService.openSession());
+            });
+            ws.onMessage(ctx -> {
+                final NearbySession session = ctx.attribute(SESSION_ATTRIBUTE);
+                if (session == null) return;
+                try {
+                    final JSONObject position = JSONObject.parseObject(ctx.message());
+                    if (position == null || !position.containsKey("lat") || !position.containsKey("lon")) return;
+                    final int mask = PoiCategory.parseMask(position.getString("categories"));
+                    if (mask < 0) return;
+                    final JSONObject update = session.update(position.getDoubleValue("lat"), position.getDoubleValue("lon"),
+                            position.getIntValue("k", DEFAULT_NEAREST), position.getDoubleValue("radius"), mask);
+                    if (update != null) ctx.send(update.toJSONString());
+                } catch (final Exception e) {
+                    InternalExceptionTracker.handleException(e);
+                }
+            });
+            ws.onClose(ctx -> {
+                final NearbySession session = ctx.attribute(SESSION_ATTRIBUTE);
+                if (session != null) session.close();
+            });
+        });
+    }
+
+    @Override
+    public void addBridgeRoutes(final BridgeRouter router) {
+        router.get("/api/poi/stats", request -> this.getStats());
+        router.get("/api/poi/categories", request -> this.getCategories());
+        router.get("/api/poi/nearby", request -> this.nearby(request.queryParam("lat"), request.queryParam("lon"),
+                request.queryParam("k"), request.queryParam("radius"), request.queryParam("categories")), RouteClass.CPU);
+        router.get("/api/poi/within", request -> this.within(request.queryParam("bbox"), request.queryParam("limit"),
+                request.queryParam("categories")), RouteClass.CPU);
+    }
+
+    private ApiResponse nearby(final String lat, final String lon, final String k, final String radius, final String categories) {
+        if (!poiService.isAvailable()) return ApiResponse.error(503, "No POI pack installed");
+        final double latitude = parseDouble(lat, Double.NaN);
+        final double longitude = parseDouble(lon, Double.NaN);
+        if (Double.isNaN(latitude) || Double.isNaN(longitude) || Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            return ApiResponse.error(400, "Missing or invalid lat and lon");
+        }
+        final int mask = PoiCategory.parseMask(categories);
+        if (mask < 0) return ApiResponse.error(400, "Unknown category in " + categories);
+
+        final int limit = (int) Math.max(1, Math.min(parseDouble(k, DEFAULT_NEAREST), PoiService.MAX_NEAREST));
+        final JSONArray results = poiService.nearest(latitude, longitude, limit, parseDouble(radius, 0), mask);
+
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("results", results);
+        return ApiResponse.ok(response);
+    }
+
+    /**
+     * Searches the box given as {@code minLat,minLon,maxLat,maxLon}.
+     */
+    private ApiResponse within(final String bbox, final String limitParam, final String categories) {
+        if (!poiService.isAvailable()) return ApiResponse.error(503, "No POI pack installed");
+        final String[] parts = bbox != null ? bbox.split(",") : new String[0];
+        if (parts.length != 4) return ApiResponse.error(400, "Expected bbox as minLat,minLon,maxLat,maxLon");
+        final double[] box = new double[4];
+        for (int i = 0; i < 4; i++) {
+            box[i] = parseDouble(parts[i], Double.NaN);
+            if (Double.isNaN(box[i])) return ApiResponse.error(400, "Expected bbox as minLat,minLon,maxLat,maxLon");
+        }
+        final int mask = PoiCategory.parseMask(categories);
+        if (mask < 0) return ApiResponse.error(400, "Unknown category in " + categories);
+
+        final int limit = (int) Math.max(1, Math.min(parseDouble(limitParam, DEFAULT_WITHIN), PoiService.MAX_WITHIN));
+        final JSONArray results = poiService.within(Math.min(box[0], box[2]), Math.min(box[1], box[3]),
+                Math.max(box[0], box[2]), Math.max(box[1], box[3]), limit, mask);
+
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("results", results);
+        response.put("truncated", results.size() == limit);
+        return ApiResponse.ok(response);
+    }
+
+    private ApiResponse getCategories() {
+        final var categories = new JSONArray();
+        for (final PoiCategory category : PoiCategory.values()) {
+            categories.add(category.getKey());
+        }
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("categories", categories);
+        return ApiResponse.ok(response);
+    }
+
+    private ApiResponse getStats() {
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("stats", poiService.getStats());
+        return ApiResponse.ok(response);
+    }
+
+    private static double parseDouble(final String value, final double fallback) {
+        if (value == null || value.isBlank()) return fallback;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (final NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+package me.xeyo.ivi.core.javalin.handler.radio;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import lombok.Getter;
+import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.error.InternalExceptionTracker;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+import me.xeyo.ivi.core.javalin.RouteClass;
+import me.xeyo.ivi.core.radio.RadioService;
+import me.xeyo.ivi.core.radio.RadioStation;
+
+/**
+ * Radio station search for the radio tile, queried on every keystroke, and the favorites that rank first.
+ */
+public class RadioHandler extends JavalinHandler {
+
+    private static final int DEFAULT_RESULTS = 20;
+
+    @Getter
+    private static final RadioService radioService = RadioService.fromSystemProperties();
+
+    @Override
+    public void addHandler(final Javalin javalin, final IVIDisplay rootApp) throws Exception {
+        javalin.get("/api/radio/search", ctx -> this.search(ctx.queryParam("q"), ctx.queryParam("limit")).writeTo(ctx), RouteClass.CPU);
+        javalin.get("/api/radio/favorites", ctx -> this.getFavorites().writeTo(ctx));
+        javalin.put("/api/radio/favorites/{id}", ctx -> this.setFavorite(ctx.pathParam("id"), ctx.body()).writeTo(ctx), RouteClass.IO);
+        javalin.get("/api/radio/stats", ctx -> this.getStats().writeTo(ctx));
+    }
+
+    @Override
+    public void addBridgeRoutes(final BridgeRouter router) {
+        router.get("/api/radio/search", request -> this.search(request.queryParam("q"), request.queryParam("limit")), RouteClass.CPU);
+        router.get("/api/radio/favorites", request -> this.getFavorites());
+        router.put("/api/radio/favorites/{id}", request -> this.setFavorite(request.pathParam("id"), request.getBody()), RouteClass.IO);
+        router.get("/api/radio/stats", request -> this.getStats());
+    }
+
+    private ApiResponse search(final String query, final String limitParam) {
+        if (!radioService.isReady()) return ApiResponse.error(503, "Station catalog is loading");
+        if (!radioService.isAvailable()) return ApiResponse.error(503, "No station catalog installed");
+        int limit = DEFAULT_RESULTS;
+        if (limitParam != null && !limitParam.isBlank()) {
+            try {
+                limit = Math.max(1, Math.min(Integer.parseInt(limitParam.trim()), RadioService.MAX_RESULTS));
+            } catch (final NumberFormatException e) {
+                return ApiResponse.error(400, "Invalid limit: " + limitParam);
+            }
+        }
+
+        final JSONArray results = radioService.search(query, limit);
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("query", query != null ? query : "");
+        response.put("results", results);
+        return ApiResponse.ok(response);
+    }
+
+    private ApiResponse getFavorites() {
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("favorites", radioService.getFavorites());
+        return ApiResponse.ok(response);
+    }
+
+    /**
+     * Expects {@code {"favorite": true}} or {@code {"favorite": false}}.
+     */
+    private ApiResponse setFavorite(final String id, final String body) {
+        final JSONObject request;
+        try {
+            request = JSONObject.parseObject(body);
+        } catch (final Exception e) {
+            return ApiResponse.error(400, "Invalid JSON body");
+        }
+        if (request == null || !(request.get("favorite") instanceof Boolean favorite)) {
+            return ApiResponse.error(400, "Expected {\"favorite\": true|false}");
+        }
+
+        final RadioStation station = radioService.getStation(id);
+        if (station == null) return ApiResponse.error(404, "Unknown station: " + id);
+        try {
+            radioService.setFavorite(id, favorite);
+        } catch (final Exception e) {
+            InternalExceptionTracker.handleException(e);
+            return ApiResponse.error(500, "Failed to save favorites");
+        }
+
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("station", station.toJson());
+        response.put("favorite", favorite);
+        return ApiResponse.ok(response);
+    }
+
+    private ApiResponse getStats() {
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("stats", radioService.getStats());
+        return ApiResponse.ok(response);
+    }
+
+}
@@ -3,219 +3,236 @@ package me.xeyo.ivi.core.javalin.handler.settings;
 import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
 import io.javalin.Javalin;
-import io.javalin.http.ContentType;
 import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.CachedResponse;
 import me.xeyo.ivi.core.javalin.JavalinHandler;
 import me.xeyo.ivi.core.error.InternalExceptionTracker;
+import me.xeyo.ivi.core.settings.SettingsStore;
 
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class AppSettingsHandler extends JavalinHandler {
 
-    private static final Map<String, Object> appSettings = new HashMap<>();
     private static final String[] AVAILABLE_THEMES = {
             "dark", "orange"
     };
 
-    private static final String SETTINGS_FILE = "ivi_settings.json";
+    private static final String SETTINGS_FILE = System.getProperty("ivi.settings.file", "ivi_settings.json");
+    private static final long SETTINGS_WRITE_DEBOUNCE_MS = Long.getLong("ivi.settings.debounceMs", 250L);
+
+    private static final SettingsStore settingsStore;
+
+    // Read on every page load and theme change; keyed by the settings version, so every write invalidates them.
+    private static final CachedResponse allSettingsResponse = new CachedResponse();
+    private static final CachedResponse themesResponse = new CachedResponse();
 
     private static IVIDisplay rootAppReference;
 
     public static String getCurrentTheme() {
-        return (String) appSettings.getOrDefault("theme", "dark");
+        return (String) settingsStore.snapshot().getOrDefault("theme", "dark");
+    }
+
+    public static SettingsStore getSettingsStore() {
+        return settingsStore;
     }
 
     static {
-        loadSettingsFromFile();
+        Map<String, Object> loadedSettings = SettingsStore.loadFromFile(Paths.get(SETTINGS_FILE), AppSettingsHandler::isValidSettingKey);
+        settingsStore = new SettingsStore(Paths.get(SETTINGS_FILE), SETTINGS_WRITE_DEBOUNCE_MS, loadedSettings);
+
+        Map<String, Object> defaults = new LinkedHashMap<>();
+        defaults.put("theme", "dark");
+        defaults.put("fullscreen", false);
+        defaults.put("notifications", true);
+        settingsStore.apply(snapshot -> {
+            Map<String, Object> missing = new LinkedHashMap<>();
+            defaults.forEach((key, value) -> {
+                if (!snapshot.containsKey(key)) {
+                    missing.put(key, value);
+                }
+            });
+            return missing;
+        });
 
-        if (appSettings.isEmpty()) {
-            appSettings.put("theme", "dark");
-            appSettings.put("fullscreen", false);
-            appSettings.put("notifications", true);
-            saveSettingsToFile();
-        }
+        System.out.println("[SETTINGS] Current theme: " + getCurrentTheme());
     }
 
     @Override
     public void addHandler(Javalin javalin, IVIDisplay rootApp) {
         rootAppReference = rootApp;
 
-        javalin.get("/api/app/settings", ctx -> {
+        // Fixed paths go before /{key}: the first matching route wins, here and on the bridge.
+        javalin.get("/api/app/settings", ctx -> getAllSettings().writeTo(ctx));
+        javalin.patch("/api/app/settings", ctx -> updateSettings(ctx.body()).writeTo(ctx));
+        javalin.get("/api/app/settings/stats", ctx -> getStats().writeTo(ctx));
+        javalin.get("/api/app/settings/themes", ctx -> getThemes().writeTo(ctx));
+        javalin.get("/api/app/settings/{key}", ctx -> getSetting(ctx.pathParam("key")).writeTo(ctx));
+        javalin.put("/api/app/settings/{key}", ctx -> updateSetting(ctx.pathParam("key"), ctx.body(), false).writeTo(ctx));
+        javalin.patch("/api/app/settings/{key}", ctx -> updateSetting(ctx.pathParam("key"), ctx.body(), true).writeTo(ctx));
+        javalin.post("/api/app/settings/fullscreen/toggle", ctx -> toggleFullscreen().writeTo(ctx));
+    }
+
+    @Override
+    public void addBridgeRoutes(BridgeRouter router) {
+        router.get("/api/app/settings", request -> getAllSettings());
+        router.patch("/api/app/settings", request -> updateSettings(request.getBody()));
+        router.get("/api/app/settings/stats", request -> getStats());
+        router.get("/api/app/settings/themes", request -> getThemes());
+        router.get("/api/app/settings/{key}", request -> getSetting(request.pathParam("key")));
+        router.put("/api/app/settings/{key}", request -> updateSetting(request.pathParam("key"), request.getBody(), false));
+        router.patch("/api/app/settings/{key}", request -> updateSetting(request.pathParam("key"), request.getBody(), true));
+        router.post("/api/app/settings/fullscreen/toggle", request -> toggleFullscreen());
+    }
+
+    private ApiResponse getAllSettings() {
+        SettingsStore.Snapshot snapshot = settingsStore.snapshot();
+        return allSettingsResponse.get(snapshot.getVersion(), () -> {
             JSONObject response = new JSONObject();
             response.put("success", true);
-            response.put("settings", new JSONObject(appSettings));
+            response.put("settings", new JSONObject(snapshot.getValues()));
             response.put("availableThemes", getAvailableThemes());
-
-            ctx.contentType(ContentType.JSON);
-            ctx.json(response);
+            return response;
         });
+    }
 
-        javalin.get("/api/app/settings/{key}", ctx -> {
-            String key = ctx.pathParam("key");
-            JSONObject response = new JSONObject();
+    private ApiResponse getStats() {
+        JSONObject cache = new JSONObject();
+        cache.put("settings", allSettingsResponse.getStats());
+        cache.put("themes", themesResponse.getStats());
 
-            if (appSettings.containsKey(key)) {
-                response.put("success", true);
-                response.put("key", key);
-                response.put("value", appSettings.get(key));
-            } else {
-                response.put("success", false);
-                response.put("error", "Setting not found: " + key);
-                ctx.status(404);
-            }
+        JSONObject response = new JSONObject();
+        response.put("success", true);
+        response.put("stats", settingsStore.getWriteStats());
+        response.put("responseCache", cache);
+        return ApiResponse.ok(response);
+    }
 
-            ctx.contentType(ContentType.JSON);
-            ctx.json(response);
-        });
+    private ApiResponse getSetting(String key) {
+        SettingsStore.Snapshot snapshot = settingsStore.snapshot();
 
-        javalin.put("/api/app/settings/{key}", ctx -> {
-            String key = ctx.pathParam("key");
-            JSONObject response = new JSONObject();
+        if (!snapshot.containsKey(key)) {
+            return ApiResponse.error(404, "Setting not found: " + key);
+        }
 
-            try {
-                String body = ctx.body();
-                JSONObject requestBody = JSONObject.parseObject(body);
-
-                if (!requestBody.containsKey("value")) {
-                    response.put("success", false);
-                    response.put("error", "Missing 'value' field in request body");
-                    ctx.status(400);
-                } else {
-                    Object value = requestBody.get("value");
-
-                    if (validateSetting(key, value)) {
-                        Object oldValue = appSettings.get(key);
-                        appSettings.put(key, value);
-
-                        saveSettingsToFile();
-
-                        if ("fullscreen".equals(key)) {
-                            updateFullscreenMode((Boolean) value);
-                        }
-
-                        response.put("success", true);
-                        response.put("key", key);
-                        response.put("oldValue", oldValue);
-                        response.put("newValue", value);
-                        response.put("message", "Setting updated successfully");
-                    } else {
-                        response.put("success", false);
-                        response.put("error", "Invalid value for setting: " + key);
-                        ctx.status(400);
-                    }
-                }
-            } catch (Exception e) {
-                response.put("success", false);
-                response.put("error", "Invalid JSON format: " + e.getMessage());
-                ctx.status(400);
-                InternalExceptionTracker.handleException(e);
-            }
+        JSONObject response = new JSONObject();
+        response.put("success", true);
+        response.put("key", key);
+        response.put("value", snapshot.get(key));
+        return ApiResponse.ok(response);
+    }
 
-            ctx.contentType(ContentType.JSON);
-            ctx.json(response);
-        });
+    private ApiResponse updateSetting(String key, String body, boolean requireExisting) {
+        if (requireExisting && !settingsStore.snapshot().containsKey(key)) {
+            return ApiResponse.error(404, "Setting not found: " + key);
+        }
 
-        javalin.patch("/api/app/settings/{key}", ctx -> {
-            String key = ctx.pathParam("key");
-            JSONObject response = new JSONObject();
+        try {
+            JSONObject requestBody = JSONObject.parseObject(body);
 
-            if (!appSettings.containsKey(key)) {
-                response.put("success", false);
-                response.put("error", "Setting not found: " + key);
-                ctx.status(404);
-                ctx.contentType(ContentType.JSON);
-                ctx.json(response);
-                return;
+            if (!requestBody.containsKey("value")) {
+                return ApiResponse.error(400, "Missing 'value' field in request body");
             }
 
-            try {
-                String body = ctx.body();
-                JSONObject requestBody = JSONObject.parseObject(body);
-
-                if (!requestBody.containsKey("value")) {
-                    response.put("success", false);
-                    response.put("error", "Missing 'value' field in request body");
-                    ctx.status(400);
-                } else {
-                    Object value = requestBody.get("value");
-
-                    if (validateSetting(key, value)) {
-                        Object oldValue = appSettings.get(key);
-                        appSettings.put(key, value);
-
-                        saveSettingsToFile();
-
-                        if ("fullscreen".equals(key)) {
-                            updateFullscreenMode((Boolean) value);
-                        }
-
-                        response.put("success", true);
-                        response.put("key", key);
-                        response.put("oldValue", oldValue);
-                        response.put("newValue", value);
-                        response.put("message", "Setting updated successfully");
-                    } else {
-                        response.put("success", false);
-                        response.put("error", "Invalid value for setting: " + key);
-                        ctx.status(400);
-                    }
-                }
-            } catch (Exception e) {
-                response.put("success", false);
-                response.put("error", "Invalid JSON format: " + e.getMessage());
-                ctx.status(400);
-                InternalExceptionTracker.handleException(e);
+            Object value = requestBody.get("value");
+            if (!validateSetting(key, value)) {
+                return ApiResponse.error(400, "Invalid value for setting: " + key);
             }
 
-            ctx.contentType(ContentType.JSON);
-            ctx.json(response);
-        });
+            SettingsStore.SettingsChange change = settingsStore.put(key, value);
+            Object oldValue = change.getPrevious().get(key);
 
-        javalin.get("/api/app/settings/themes", ctx -> {
-            JSONObject response = new JSONObject();
-            JSONArray themes = getAvailableThemes();
+            if ("fullscreen".equals(key) && change.isChanged()) {
+                updateFullscreenMode((Boolean) value);
+            }
 
+            JSONObject response = new JSONObject();
             response.put("success", true);
-            response.put("themes", themes);
-            response.put("current", appSettings.get("theme"));
+            response.put("key", key);
+            response.put("oldValue", oldValue);
+            response.put("newValue", value);
+            response.put("message", "Setting updated successfully");
+            return ApiResponse.ok(response);
+        } catch (Exception e) {
+            InternalExceptionTracker.handleException(e);
+            return ApiResponse.error(400, "Invalid JSON format: " + e.getMessage());
+        }
+    }
 
-            ctx.contentType(ContentType.JSON);
-            ctx.json(response);
-        });
+    private ApiResponse updateSettings(String body) {
+        try {
+            JSONObject requestBody = JSONObject.parseObject(body);
 
-        javalin.post("/api/app/settings/fullscreen/toggle", ctx -> {
-            JSONObject response = new JSONObject();
+            if (requestBody == null || requestBody.isEmpty()) {
+                return ApiResponse.error(400, "Request body must be a non-empty object of settings");
+            }
 
-            try {
-                boolean currentFullscreen = (Boolean) appSettings.getOrDefault("fullscreen", false);
-                boolean newFullscreen = !currentFullscreen;
+            JSONObject invalid = new JSONObject();
+            for (String key : requestBody.keySet()) {
+                if (!validateSetting(key, requestBody.get(key))) {
+                    invalid.put(key, requestBody.get(key));
+                }
+            }
 
-                appSettings.put("fullscreen", newFullscreen);
-                saveSettingsToFile();
+            if (!invalid.isEmpty()) {
+                ApiResponse response = ApiResponse.error(400, "Invalid value for settings: " + String.join(", ", invalid.keySet()));
+                response.getBody().put("invalid", invalid);
+                return response;
+            }
 
-                updateFullscreenMode(newFullscreen);
+            SettingsStore.SettingsChange change = settingsStore.putAll(requestBody);
 
-                response.put("success", true);
-                response.put("fullscreen", newFullscreen);
-                response.put("message", "Fullscreen mode toggled successfully");
-            } catch (Exception e) {
-                response.put("success", false);
-                response.put("error", "Failed to toggle fullscreen: " + e.getMessage());
-                ctx.status(500);
-                InternalExceptionTracker.handleException(e);
+            if (change.getChangedValues().containsKey("fullscreen")) {
+                updateFullscreenMode((Boolean) change.getCurrent().get("fullscreen"));
             }
 
-            ctx.contentType(ContentType.JSON);
-            ctx.json(response);
+            JSONObject response = new JSONObject();
+            response.put("success", true);
+            response.put("version", change.getCurrent().getVersion());
+            response.put("settings", new JSONObject(change.getCurrent().getValues()));
+            response.put("changed", new JSONObject(change.getChangedValues()));
+            response.put("message", "Settings updated successfully");
+            return ApiResponse.ok(response);
+        } catch (Exception e) {
+            InternalExceptionTracker.handleException(e);
+            return ApiResponse.error(400, "Invalid JSON format: " + e.getMessage());
+        }
+    }
+
+    private ApiResponse getThemes() {
+        SettingsStore.Snapshot snapshot = settingsStore.snapshot();
+        return themesResponse.get(snapshot.getVersion(), () -> {
+            JSONObject response = new JSONObject();
+            response.put("success", true);
+            response.put("themes", getAvailableThemes());
+            response.put("current", snapshot.get("theme"));
+            return response;
         });
     }
 
-    private JSONArray getAvailableThemes() {
+    private ApiResponse toggleFullscreen() {
+        try {
+            SettingsStore.SettingsChange change = settingsStore.apply(snapshot ->
+                    Map.of("fullscreen", !(Boolean) snapshot.getOrDefault("fullscreen", false)));
+            boolean newFullscreen = (Boolean) change.getCurrent().get("fullscreen");
+
+            updateFullscreenMode(newFullscreen);
+
+            JSONObject response = new JSONObject();
+            response.put("success", true);
+            response.put("fullscreen", newFullscreen);
+            response.put("message", "Fullscreen mode toggled successfully");
+            return ApiResponse.ok(response);
+        } catch (Exception e) {
+            InternalExceptionTracker.handleException(e);
+            return ApiResponse.error(500, "Failed to toggle fullscreen: " + e.getMessage());
+        }
+    }
+
+    static JSONArray getAvailableThemes() {
         JSONArray themes = new JSONArray();
         for (String theme : AVAILABLE_THEMES) {
             themes.add(theme);
@@ -263,45 +280,6 @@ public class AppSettingsHandler extends JavalinHandler {
         }
     }
 
-    private static void saveSettingsToFile() {
-        try {
-            JSONObject settingsJson = new JSONObject(appSettings);
-            Path filePath = Paths.get(SETTINGS_FILE);
-            Files.writeString(filePath, settingsJson.toJSONString());
-        } catch (IOException e) {
-            System.err.println("[SETTINGS] Failed to save settings: " + e.getMessage());
-            InternalExceptionTracker.handleException(e);
-        }
-    }
-
-    private static void loadSettingsFromFile() {
-        try {
-            Path filePath = Paths.get(SETTINGS_FILE);
-            if (Files.exists(filePath)) {
-                String content = Files.readString(filePath);
-                JSONObject settingsJson = JSONObject.parseObject(content);
-
-                appSettings.clear();
-                for (String key : settingsJson.keySet()) {
-                    if (isValidSettingKey(key)) {
-                        appSettings.put(key, settingsJson.get(key));
-                    }
-                }
-
-                System.out.println("[SETTINGS] Settings loaded from: " + SETTINGS_FILE);
-                System.out.println("[SETTINGS] Current theme: " + appSettings.get("theme"));
-            } else {
-                System.out.println("[SETTINGS] Settings file not found, using defaults");
-            }
-        } catch (IOException e) {
-            System.err.println("[SETTINGS] Failed to load settings: " + e.getMessage());
-            InternalExceptionTracker.handleException(e);
-        } catch (Exception e) {
-            System.err.println("[SETTINGS] Error parsing settings file: " + e.getMessage());
-            InternalExceptionTracker.handleException(e);
-        }
-    }
-
     private static boolean isValidSettingKey(String key) {
         return key.equals("theme") || key.equals("fullscreen") || key.equals("notifications");
     }
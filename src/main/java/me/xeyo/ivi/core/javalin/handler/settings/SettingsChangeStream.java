@@ -0,0 +1,148 @@
+package me.xeyo.ivi.core.javalin.handler.settings;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import me.xeyo.ivi.core.error.InternalExceptionTracker;
+import me.xeyo.ivi.core.settings.SettingsStore;
+
+/**
+ * Fans settings changes out to connected pages. Every subscriber tracks the last version it has seen and is
+ * brought up to date with a single message: a full snapshot on first connect (or when it is too far behind the
+ * change journal), otherwise one delta merging every change since its version. All sends happen on one
+ * dispatcher thread, so a sink is never called concurrently.
+ * <p>
+ * Versions restart with every boot, so messages carry the store's epoch and clients resume with a token of epoch and
+ * version ({@link #resumeToken}). A token from another epoch, or a bare version, gets a snapshot.
+ */
+public class SettingsChangeStream {
+
+    private final SettingsStore settingsStore;
+    private final Set<Subscription> subscriptions = ConcurrentHashMap.newKeySet();
+    private final ExecutorService dispatcher = Executors.newSingleThreadExecutor(runnable -> {
+        final var thread = new Thread(runnable, "ivi-settings-stream");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SettingsChangeStream(final SettingsStore settingsStore) {
+        this.settingsStore = settingsStore;
+    }
+
+    /**
+     * Starts forwarding the store's changes to subscribers.
+     */
+    public void start() {
+        this.settingsStore.addChangeListener(change -> this.dispatcher.execute(this::syncAll));
+    }
+
+    /**
+     * The token a client resumes from after having seen {@code version}.
+     */
+    public String resumeToken(final long version) {
+        return this.settingsStore.getEpoch() + "-" + version;
+    }
+
+    /**
+     * The version to resume from for a token sent back by a client, or {@code -1} (start with a snapshot) if it is
+     * missing, malformed or from another epoch.
+     */
+    public long resumeVersion(final String token) {
+        if (token == null) return -1;
+        final int separator = token.indexOf('-');
+        if (separator <= 0) return -1;
+        try {
+            final long epoch = Long.parseLong(token.substring(0, separator).trim());
+            final long version = Long.parseLong(token.substring(separator + 1).trim());
+            return epoch == this.settingsStore.getEpoch() ? version : -1;
+        } catch (final NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Subscribes {@code sink} to the stream. With {@code sinceVersion} set to a version the client already holds,
+     * only the changes made after it are sent; a negative value always starts with a snapshot.
+     */
+    public Subscription subscribe(final long sinceVersion, final Sink sink) {
+        final var subscription = new Subscription(sinceVersion, sink);
+        this.subscriptions.add(subscription);
+        this.dispatcher.execute(() -> this.sync(subscription));
+        return subscription;
+    }
+
+    public void unsubscribe(final Subscription subscription) {
+        this.subscriptions.remove(subscription);
+    }
+
+    public int getSubscriberCount() {
+        return this.subscriptions.size();
+    }
+
+    private void syncAll() {
+        this.subscriptions.forEach(this::sync);
+    }
+
+    private void sync(final Subscription subscription) {
+        if (!this.subscriptions.contains(subscription)) return;
+
+        final SettingsStore.Snapshot snapshot = this.settingsStore.snapshot();
+        if (subscription.version == snapshot.getVersion()) return;
+
+        final List<SettingsStore.SettingsChange> changes = subscription.version < 0
+                ? null
+                : this.settingsStore.changesSince(subscription.version);
+
+        final JSONObject message = new JSONObject();
+        message.put("epoch", this.settingsStore.getEpoch());
+        if (changes == null) {
+            message.put("type", "snapshot");
+            message.put("version", snapshot.getVersion());
+            message.put("settings", new JSONObject(snapshot.getValues()));
+            message.put("availableThemes", AppSettingsHandler.getAvailableThemes());
+        } else if (changes.isEmpty()) {
+            return;
+        } else {
+            final Map<String, Object> merged = new LinkedHashMap<>();
+            changes.forEach(change -> merged.putAll(change.getChangedValues()));
+            message.put("type", "delta");
+            message.put("from", subscription.version);
+            message.put("version", changes.get(changes.size() - 1).getCurrent().getVersion());
+            message.put("changes", new JSONObject(merged));
+        }
+
+        try {
+            final long version = message.getLongValue("version");
+            subscription.sink.send(this.resumeToken(version), message.toJSONString());
+            subscription.version = version;
+        } catch (final Exception e) {
+            System.err.println("[SETTINGS] Dropping settings stream subscriber: " + e.getMessage());
+            InternalExceptionTracker.handleException(e);
+            this.unsubscribe(subscription);
+        }
+    }
+
+    @FunctionalInterface
+    public interface Sink {
+
+        void send(String resumeToken, String message) throws Exception;
+
+    }
+
+    public static final class Subscription {
+
+        private final Sink sink;
+        private volatile long version;
+
+        private Subscription(final long version, final Sink sink) {
+            this.version = version;
+            this.sink = sink;
+        }
+    }
+
+}
@@ -0,0 +1,56 @@
+package me.xeyo.ivi.core.javalin.handler.settings;
+
+import io.javalin.Javalin;
+import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+
+public class SettingsStreamHandler extends JavalinHandler {
+
+    private static final String SUBSCRIPTION_ATTRIBUTE = "settingsSubscription";
+
+    private static final SettingsChangeStream changeStream = new SettingsChangeStream(AppSettingsHandler.getSettingsStore());
+
+    static {
+        changeStream.start();
+    }
+
+    public static SettingsChangeStream getChangeStream() {
+        return changeStream;
+    }
+
+    @Override
+    public void addHandler(final Javalin javalin, final IVIDisplay rootApp) {
+        javalin.ws("/api/app/settings/stream", ws -> {
+            ws.onConnect(ctx -> {
+                ctx.enableAutomaticPings();
+                final var subscription = changeStream.subscribe(changeStream.resumeVersion(ctx.queryParam("since")),
+                        (token, message) -> ctx.send(message));
+                ctx.attribute(SUBSCRIPTION_ATTRIBUTE, subscription);
+            });
+            ws.onClose(ctx -> {
+                final SettingsChangeStream.Subscription subscription = ctx.attribute(SUBSCRIPTION_ATTRIBUTE);
+                if (subscription != null) changeStream.unsubscribe(subscription);
+            });
+        });
+
+        javalin.sse("/api/app/settings/events", client -> {
+            client.keepAlive();
+            final var lastEventId = client.ctx().header("Last-Event-ID");
+            final var since = changeStream.resumeVersion(lastEventId != null ? lastEventId : client.ctx().queryParam("since"));
+
+            final var subscription = changeStream.subscribe(since, (token, message) -> client.sendEvent("settings", message, token));
+            client.onClose(() -> changeStream.unsubscribe(subscription));
+        });
+    }
+
+    @Override
+    public void addBridgeRoutes(final BridgeRouter router) {
+        router.stream("/api/app/settings/stream", (request, sink) -> {
+            final var subscription = changeStream.subscribe(changeStream.resumeVersion(request.queryParam("since")),
+                    (token, message) -> sink.send(message));
+            return () -> changeStream.unsubscribe(subscription);
+        });
+    }
+
+}
@@ -0,0 +1,91 @@
+package me.xeyo.ivi.core.javalin.handler.system;
+
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import lombok.Getter;
+import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.error.ExceptionJournal;
+import me.xeyo.ivi.core.error.InternalExceptionTracker;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+import me.xeyo.ivi.core.javalin.JavalinInternalServer;
+import me.xeyo.ivi.core.javalin.handler.settings.AppSettingsHandler;
+import me.xeyo.ivi.core.metrics.PrometheusWriter;
+import me.xeyo.ivi.core.metrics.RequestMetrics;
+import me.xeyo.ivi.core.metrics.RuntimeMetrics;
+import me.xeyo.ivi.core.settings.SettingsStore;
+
+/**
+ * Request latencies, JVM and process state and the application counters on {@code /api/metrics}: Prometheus text by
+ * default, JSON with {@code ?format=json} or {@code Accept: application/json} (and always over the bridge) for the
+ * diagnostics page on {@code /diagnostics}.
+ * <p>
+ * Request recording is switched off with {@code -Divi.metrics.enabled=false}; the endpoint stays available.
+ */
+public class MetricsHandler extends JavalinHandler {
+
+    @Getter
+    private static final boolean enabled = Boolean.parseBoolean(System.getProperty("ivi.metrics.enabled", "true"));
+
+    @Getter
+    private static final RequestMetrics requestMetrics = new RequestMetrics();
+
+    @Override
+    public void addHandler(final Javalin javalin, final IVIDisplay rootApp) {
+        javalin.get("/api/metrics", ctx -> {
+            if (wantsJson(ctx)) {
+                this.getMetrics().writeTo(ctx);
+            } else {
+                ctx.contentType(PrometheusWriter.CONTENT_TYPE);
+                ctx.result(prometheusText());
+            }
+        });
+        javalin.get("/diagnostics", ctx -> ctx.redirect(IVIDisplay.pageUrl("/web/diagnostics/diagnostics.html")));
+    }
+
+    @Override
+    public void addBridgeRoutes(final BridgeRouter router) {
+        router.get("/api/metrics", request -> this.getMetrics());
+    }
+
+    private static boolean wantsJson(final Context ctx) {
+        if ("json".equalsIgnoreCase(ctx.queryParam("format"))) return true;
+        final String accept = ctx.header("Accept");
+        return accept != null && accept.contains("application/json");
+    }
+
+    private ApiResponse getMetrics() {
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("recording", enabled);
+        response.put("requests", requestMetrics.toJson());
+        response.put("jvm", RuntimeMetrics.toJson());
+        response.put("server", JavalinInternalServer.getServerExecution().getStats());
+        response.put("settings", AppSettingsHandler.getSettingsStore().getWriteStats());
+        response.put("exceptions", InternalExceptionTracker.getExceptionJournal().getStats());
+        return ApiResponse.ok(response);
+    }
+
+    private static String prometheusText() {
+        final var writer = new PrometheusWriter();
+        requestMetrics.writePrometheus(writer);
+        RuntimeMetrics.writePrometheus(writer);
+        JavalinInternalServer.getServerExecution().writePrometheus(writer);
+
+        final SettingsStore settings = AppSettingsHandler.getSettingsStore();
+        writer.single("ivi_settings_mutations_total", "counter", "Settings changes applied.", settings.getMutationCount().get());
+        writer.single("ivi_settings_disk_writes_total", "counter", "Settings file writes.", settings.getDiskWriteCount().get());
+        writer.single("ivi_settings_failed_writes_total", "counter", "Settings file writes that failed.", settings.getFailedWriteCount().get());
+        writer.single("ivi_settings_last_write_seconds", "gauge", "Duration of the last settings file write.", settings.getLastWriteNanos() / 1e9);
+
+        final ExceptionJournal journal = InternalExceptionTracker.getExceptionJournal();
+        final JSONObject journalStats = journal.getStats();
+        writer.single("ivi_exceptions_total", "counter", "Exceptions handled by the tracker.", journal.getRecordedCount().get());
+        writer.single("ivi_exceptions_distinct", "gauge", "Distinct exceptions in the journal.", journalStats.getIntValue("size"));
+        writer.single("ivi_exceptions_evicted_total", "counter", "Distinct exceptions evicted from the journal.", journal.getEvictedCount().get());
+        return writer.toString();
+    }
+
+}
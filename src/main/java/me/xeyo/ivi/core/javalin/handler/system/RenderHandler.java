@@ -0,0 +1,70 @@
+package me.xeyo.ivi.core.javalin.handler.system;
+
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import javax.imageio.ImageIO;
+import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+import me.xeyo.ivi.core.javalin.RouteClass;
+import me.xeyo.ivi.jcef.OsrCompositor;
+
+/**
+ * Frame timing of the off-screen rendered browser and a capture of the current frame as PNG, for diagnostics and for
+ * benchmark runs on a virtual display. In windowed mode CEF draws straight to the window and there is nothing to report.
+ */
+public class RenderHandler extends JavalinHandler {
+
+    private IVIDisplay rootApp;
+
+    @Override
+    public void addHandler(final Javalin javalin, final IVIDisplay rootApp) {
+        this.rootApp = rootApp;
+        javalin.get("/api/app/render/stats", ctx -> this.getStats().writeTo(ctx));
+        javalin.get("/api/app/render/frame", this::frame, RouteClass.CPU);
+    }
+
+    @Override
+    public void addBridgeRoutes(final BridgeRouter router) {
+        router.get("/api/app/render/stats", request -> this.getStats());
+    }
+
+    private OsrCompositor compositor() {
+        return this.rootApp.getJcefFrame() != null ? this.rootApp.getJcefFrame().getOsrCompositor() : null;
+    }
+
+    private ApiResponse getStats() {
+        final OsrCompositor compositor = this.compositor();
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("offScreen", compositor != null);
+        if (compositor != null) response.put("render", compositor.getStats());
+        return ApiResponse.ok(response);
+    }
+
+    private void frame(final Context ctx) throws IOException {
+        final OsrCompositor compositor = this.compositor();
+        if (compositor == null) {
+            ApiResponse.error(404, "Not rendering off-screen").writeTo(ctx);
+            return;
+        }
+        final BufferedImage frame = compositor.capture();
+        if (frame == null) {
+            ApiResponse.error(404, "No frame painted yet").writeTo(ctx);
+            return;
+        }
+
+        final var png = new ByteArrayOutputStream(frame.getWidth() * frame.getHeight());
+        ImageIO.write(frame, "png", png);
+        ctx.header(Header.CACHE_CONTROL, "no-store");
+        ctx.contentType("image/png");
+        ctx.result(png.toByteArray());
+    }
+
+}
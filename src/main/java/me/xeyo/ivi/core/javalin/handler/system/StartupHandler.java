@@ -0,0 +1,56 @@
+package me.xeyo.ivi.core.javalin.handler.system;
+
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+
+public class StartupHandler extends JavalinHandler {
+
+    private IVIDisplay rootApp;
+
+    @Override
+    public void addHandler(final Javalin javalin, final IVIDisplay rootApp) {
+        this.rootApp = rootApp;
+        javalin.get("/api/app/startup", ctx -> this.getStartupTimings().writeTo(ctx));
+        javalin.post("/api/app/startup/paint", ctx -> this.reportPaint(ctx.body()).writeTo(ctx));
+    }
+
+    @Override
+    public void addBridgeRoutes(final BridgeRouter router) {
+        router.get("/api/app/startup", request -> this.getStartupTimings());
+        router.post("/api/app/startup/paint", request -> this.reportPaint(request.getBody()));
+    }
+
+    private ApiResponse getStartupTimings() {
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("startup", this.rootApp.getStartupPipeline().getTimings());
+        return ApiResponse.ok(response);
+    }
+
+    /**
+     * Takes the paint timings of a page as reported by the renderer, in milliseconds since its navigation start.
+     */
+    private ApiResponse reportPaint(final String body) {
+        final JSONObject paint;
+        try {
+            paint = JSONObject.parseObject(body);
+        } catch (final Exception e) {
+            return ApiResponse.error(400, "Invalid JSON body");
+        }
+        if (paint == null || paint.getString("page") == null) {
+            return ApiResponse.error(400, "Missing page");
+        }
+
+        paint.put("assetScheme", IVIDisplay.isAssetSchemeEnabled());
+        this.rootApp.getStartupPipeline().report("paint:" + paint.getString("page"), paint);
+
+        final var response = new JSONObject();
+        response.put("success", true);
+        return ApiResponse.ok(response);
+    }
+
+}
@@ -0,0 +1,105 @@
+package me.xeyo.ivi.core.javalin.handler.vehicle;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import lombok.Getter;
+import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+import me.xeyo.ivi.core.vehicle.SignalBus;
+import me.xeyo.ivi.core.vehicle.VehicleSignal;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+/**
+ * Live vehicle data. The page receives binary frames from {@link SignalBus} over a WebSocket and reports back how
+ * long samples took to reach the screen.
+ */
+public class VehicleHandler extends JavalinHandler {
+
+    private static final String SUBSCRIBER_ATTRIBUTE = "vehicleSubscriber";
+
+    @Getter
+    private static final SignalBus signalBus = SignalBus.fromSystemProperties();
+
+    @Override
+    public void addHandler(final Javalin javalin, final IVIDisplay rootApp) throws Exception {
+        javalin.get("/api/vehicle/signals", ctx -> this.getSignals().writeTo(ctx));
+        javalin.get("/api/vehicle/stats", ctx -> this.getStats().writeTo(ctx));
+        javalin.post("/api/vehicle/latency", ctx -> this.reportLatency(ctx.body()).writeTo(ctx));
+
+        javalin.ws("/api/vehicle/stream", ws -> {
+            ws.onConnect(ctx -> {
+                ctx.enableAutomaticPings();
+                // Written asynchronously: the frame thread serves every client and must never wait on one socket.
+                ctx.attribute(SUBSCRIBER_ATTRIBUTE, signalBus.subscribe((frame, written) ->
+                        ctx.session.getRemote().sendBytes(frame, new WriteCallback() {
+                            @Override
+                            public void writeFailed(final Throwable error) {
+                                written.accept(error);
+                            }
+
+                            @Override
+                            public void writeSuccess() {
+                                written.accept(null);
+                            }
+                        })));
+            });
+            ws.onClose(ctx -> {
+                final SignalBus.Subscriber subscriber = ctx.attribute(SUBSCRIBER_ATTRIBUTE);
+                if (subscriber != null) signalBus.unsubscribe(subscriber);
+            });
+        });
+    }
+
+    @Override
+    public void addBridgeRoutes(final BridgeRouter router) {
+        router.get("/api/vehicle/signals", request -> this.getSignals());
+        router.get("/api/vehicle/stats", request -> this.getStats());
+        router.post("/api/vehicle/latency", request -> this.reportLatency(request.getBody()));
+    }
+
+    /**
+     * The signal ids used in stream frames, with units and display resolution.
+     */
+    private ApiResponse getSignals() {
+        final var signals = new JSONArray();
+        for (final VehicleSignal signal : VehicleSignal.values()) {
+            final var entry = new JSONObject();
+            entry.put("id", signal.ordinal());
+            entry.put("key", signal.getKey());
+            entry.put("unit", signal.getUnit());
+            entry.put("resolution", signal.getResolution());
+            signals.add(entry);
+        }
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("signals", signals);
+        response.put("frameRate", signalBus.getFrameRate());
+        return ApiResponse.ok(response);
+    }
+
+    private ApiResponse reportLatency(final String body) {
+        final JSONObject report;
+        try {
+            report = JSONObject.parseObject(body);
+        } catch (final Exception e) {
+            return ApiResponse.error(400, "Invalid JSON body");
+        }
+        if (report == null) return ApiResponse.error(400, "Missing latency report");
+        signalBus.recordPageLatency(report);
+
+        final var response = new JSONObject();
+        response.put("success", true);
+        return ApiResponse.ok(response);
+    }
+
+    private ApiResponse getStats() {
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("stats", signalBus.getStats());
+        return ApiResponse.ok(response);
+    }
+
+}
@@ -0,0 +1,72 @@
+package me.xeyo.ivi.core.javalin.handler.weather;
+
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import java.util.Locale;
+import lombok.Getter;
+import me.xeyo.ivi.IVIDisplay;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import me.xeyo.ivi.core.javalin.JavalinHandler;
+import me.xeyo.ivi.core.weather.WeatherService;
+
+public class WeatherHandler extends JavalinHandler {
+
+    private static final double DEFAULT_LATITUDE = Double.parseDouble(System.getProperty("ivi.weather.lat", "52.5200"));
+    private static final double DEFAULT_LONGITUDE = Double.parseDouble(System.getProperty("ivi.weather.lon", "13.4050"));
+
+    @Getter
+    private static final WeatherService weatherService = WeatherService.fromSystemProperties();
+
+    @Override
+    public void addHandler(final Javalin javalin, final IVIDisplay rootApp) throws Exception {
+        // Registered before /api/weather so the stats path is not read as coordinates.
+        javalin.get("/api/weather/stats", ctx -> this.getStats().writeTo(ctx));
+        javalin.get("/api/weather", ctx -> this.getWeather(ctx.queryParam("lat"), ctx.queryParam("lon")).writeTo(ctx));
+    }
+
+    @Override
+    public void addBridgeRoutes(final BridgeRouter router) {
+        router.get("/api/weather/stats", request -> this.getStats());
+        router.get("/api/weather", request -> this.getWeather(request.queryParam("lat"), request.queryParam("lon")));
+    }
+
+    /**
+     * Answers from the cache only: 200 with fresh or stale data, or 202 while the first fetch for the area runs.
+     */
+    private ApiResponse getWeather(final String latitudeParam, final String longitudeParam) {
+        final double latitude;
+        final double longitude;
+        try {
+            latitude = latitudeParam != null ? Double.parseDouble(latitudeParam) : DEFAULT_LATITUDE;
+            longitude = longitudeParam != null ? Double.parseDouble(longitudeParam) : DEFAULT_LONGITUDE;
+        } catch (final NumberFormatException e) {
+            return ApiResponse.error(400, "Invalid coordinates");
+        }
+        if (Math.abs(latitude) > 90 || Math.abs(longitude) > 180) {
+            return ApiResponse.error(400, "Coordinates out of range");
+        }
+
+        final WeatherService.Lookup lookup = weatherService.lookup(latitude, longitude);
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("state", lookup.state().name().toLowerCase(Locale.ROOT));
+        response.put("geohash", lookup.geohash());
+        if (lookup.weather() != null) {
+            response.put("ageMillis", lookup.ageMillis());
+            response.put("weather", lookup.weather());
+        }
+        if (lookup.lastError() != null) {
+            response.put("lastError", lookup.lastError());
+        }
+        return ApiResponse.of(lookup.state() == WeatherService.State.PENDING ? 202 : 200, response);
+    }
+
+    private ApiResponse getStats() {
+        final var response = new JSONObject();
+        response.put("success", true);
+        response.put("stats", weatherService.getStats());
+        return ApiResponse.ok(response);
+    }
+
+}
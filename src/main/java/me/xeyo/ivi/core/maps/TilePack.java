@@ -0,0 +1,163 @@
+package me.xeyo.ivi.core.maps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import lombok.Getter;
+
+/**
+ * A read-only pack of map tiles, mapped into memory once when it is opened.
+ * <p>
+ * Layout: a 32 byte header {@code magic, version, tileCount, minZoom, maxZoom, format, dataStart:long}, then
+ * {@code tileCount} 16 byte index entries {@code key:long, location:long} sorted by key, then the tile data. The key
+ * is {@link #keyOf(int, int, int)}, so tiles of one zoom level and column are adjacent; the location holds the
+ * offset of the tile from {@code dataStart} in its upper 40 bits and its length in the lower 24. Identical tiles
+ * (open sea, empty land) are stored once and referenced by every key that shows them.
+ * <p>
+ * A lookup is a binary search over the mapped index and a slice of the mapped data; nothing is copied. The data is
+ * mapped in overlapping segments so a tile never straddles two mappings, whatever the size of the pack.
+ */
+public final class TilePack implements AutoCloseable {
+
+    static final int MAGIC = 0x4956494D;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 32;
+    static final int ENTRY_BYTES = 16;
+    static final int LENGTH_BITS = 24;
+    static final int MAX_TILE_BYTES = (1 << LENGTH_BITS) - 1;
+    static final int MAX_ZOOM = 24;
+
+    private static final long SEGMENT_BYTES = 1L << 30;
+
+    @Getter
+    public enum Format {
+        PNG("image/png", "png"),
+        JPEG("image/jpeg", "jpg"),
+        WEBP("image/webp", "webp"),
+        PBF("application/x-protobuf", "pbf");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(final String contentType, final String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public static Format ofExtension(final String extension) {
+            final var normalized = extension.toLowerCase(Locale.ROOT);
+            if (normalized.equals("jpeg")) return JPEG;
+            if (normalized.equals("mvt")) return PBF;
+            for (final Format format : values()) {
+                if (format.extension.equals(normalized)) return format;
+            }
+            return null;
+        }
+    }
+
+    @Getter
+    private final Path file;
+    private final FileChannel channel;
+    @Getter
+    private final int tileCount;
+    @Getter
+    private final int minZoom;
+    @Getter
+    private final int maxZoom;
+    @Getter
+    private final Format format;
+    @Getter
+    private final long lastModified;
+    private final MappedByteBuffer index;
+    private final MappedByteBuffer[] segments;
+
+    private TilePack(final Path file, final FileChannel channel) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.lastModified = Files.getLastModifiedTime(file).toMillis();
+
+        final long size = channel.size();
+        if (size < HEADER_BYTES) throw new IOException("Tile pack is truncated: " + file);
+        final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        if (header.getInt(0) != MAGIC) throw new IOException("Not a tile pack: " + file);
+        if (header.getInt(4) != VERSION) throw new IOException("Unsupported tile pack version " + header.getInt(4) + ": " + file);
+
+        this.tileCount = header.getInt(8);
+        this.minZoom = header.getInt(12);
+        this.maxZoom = header.getInt(16);
+        final int formatOrdinal = header.getInt(20);
+        final long dataStart = header.getLong(24);
+        if (this.tileCount < 0 || (long) this.tileCount * ENTRY_BYTES > Integer.MAX_VALUE
+                || formatOrdinal < 0 || formatOrdinal >= Format.values().length
+                || dataStart != HEADER_BYTES + (long) this.tileCount * ENTRY_BYTES || dataStart > size) {
+            throw new IOException("Tile pack header is not valid: " + file);
+        }
+        this.format = Format.values()[formatOrdinal];
+        this.index = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, (long) this.tileCount * ENTRY_BYTES);
+
+        final long dataBytes = size - dataStart;
+        final int segmentCount = (int) Math.max(1, (dataBytes + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+        this.segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            final long segmentStart = i * SEGMENT_BYTES;
+            final long segmentLength = Math.min(dataBytes - segmentStart, SEGMENT_BYTES + MAX_TILE_BYTES);
+            this.segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, dataStart + segmentStart, Math.max(0, segmentLength));
+        }
+    }
+
+    public static TilePack open(final Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new TilePack(file, channel);
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Key of a tile in the index: zoom in the top bits, then column, then row.
+     */
+    public static long keyOf(final int zoom, final int x, final int y) {
+        return ((long) zoom << 58) | ((long) x << 29) | y;
+    }
+
+    public static boolean isValid(final int zoom, final int x, final int y) {
+        return zoom >= 0 && zoom <= MAX_ZOOM && x >= 0 && y >= 0 && x < (1 << zoom) && y < (1 << zoom);
+    }
+
+    /**
+     * Returns a read-only view of the tile with {@code key}, or {@code null} if the pack does not contain it.
+     */
+    public ByteBuffer get(final long key) {
+        int low = 0;
+        int high = this.tileCount - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final long candidate = this.index.getLong(middle * ENTRY_BYTES);
+            if (candidate < key) {
+                low = middle + 1;
+            } else if (candidate > key) {
+                high = middle - 1;
+            } else {
+                final long location = this.index.getLong(middle * ENTRY_BYTES + 8);
+                final long offset = location >>> LENGTH_BITS;
+                final int length = (int) (location & MAX_TILE_BYTES);
+                final MappedByteBuffer segment = this.segments[(int) (offset / SEGMENT_BYTES)];
+                return segment.slice((int) (offset % SEGMENT_BYTES), length).asReadOnlyBuffer();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+}
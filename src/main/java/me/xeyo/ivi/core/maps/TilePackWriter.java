@@ -0,0 +1,139 @@
+package me.xeyo.ivi.core.maps;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Builds a {@link TilePack} from a {@code z/x/y.ext} tile directory, the layout most tile exporters write.
+ * <p>
+ * Usage: {@code java -cp ivi.jar me.xeyo.ivi.core.maps.TilePackWriter <tile directory> <pack file>}
+ */
+public final class TilePackWriter {
+
+    private TilePackWriter() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: TilePackWriter <tile directory> <pack file>");
+            System.exit(2);
+        }
+        final long start = System.nanoTime();
+        final int tiles = write(Paths.get(args[0]), Paths.get(args[1]));
+        System.out.println("[MAPS] Packed " + tiles + " tiles into " + args[1] + " in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    /**
+     * Writes every tile below {@code sourceDirectory} to {@code pack}, replacing it atomically, and returns the
+     * number of tiles. All tiles must have the same format.
+     */
+    public static int write(final Path sourceDirectory, final Path pack) throws IOException {
+        final List<SourceTile> tiles = new ArrayList<>();
+        TilePack.Format format = null;
+        try (final Stream<Path> files = Files.walk(sourceDirectory, 3)) {
+            for (final Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                final SourceTile tile = SourceTile.parse(sourceDirectory.relativize(file), file);
+                if (tile == null) continue;
+                if (format == null) {
+                    format = tile.format;
+                } else if (format != tile.format) {
+                    throw new IOException("Mixed tile formats: " + format.getExtension() + " and " + tile.format.getExtension());
+                }
+                tiles.add(tile);
+            }
+        }
+        if (format == null) throw new IOException("No tiles found in " + sourceDirectory);
+        tiles.sort(Comparator.comparingLong(tile -> tile.key));
+
+        final Path temporary = pack.resolveSibling(pack.getFileName() + ".tmp");
+        final long dataStart = TilePack.HEADER_BYTES + (long) tiles.size() * TilePack.ENTRY_BYTES;
+        final ByteBuffer index = ByteBuffer.allocate(tiles.size() * TilePack.ENTRY_BYTES);
+        final Map<String, Long> written = new HashMap<>();
+        int minZoom = Integer.MAX_VALUE;
+        int maxZoom = 0;
+
+        try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            long dataOffset = 0;
+            for (final SourceTile tile : tiles) {
+                final byte[] content = Files.readAllBytes(tile.file);
+                if (content.length > TilePack.MAX_TILE_BYTES) throw new IOException("Tile is too large: " + tile.file);
+
+                final String digest = sha256(content);
+                Long location = written.get(digest);
+                if (location == null) {
+                    location = (dataOffset << TilePack.LENGTH_BITS) | content.length;
+                    writeFully(channel, ByteBuffer.wrap(content), dataStart + dataOffset);
+                    dataOffset += content.length;
+                    written.put(digest, location);
+                }
+                index.putLong(tile.key).putLong(location);
+                minZoom = Math.min(minZoom, tile.zoom);
+                maxZoom = Math.max(maxZoom, tile.zoom);
+            }
+
+            final ByteBuffer header = ByteBuffer.allocate(TilePack.HEADER_BYTES);
+            header.putInt(TilePack.MAGIC).putInt(TilePack.VERSION).putInt(tiles.size()).putInt(minZoom).putInt(maxZoom)
+                    .putInt(format.ordinal()).putLong(dataStart);
+            writeFully(channel, header.flip(), 0);
+            writeFully(channel, index.flip(), TilePack.HEADER_BYTES);
+            channel.force(true);
+        }
+        Files.move(temporary, pack, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        System.out.println("[MAPS] " + tiles.size() + " tiles, " + written.size() + " distinct");
+        return tiles.size();
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            offset += channel.write(buffer, offset);
+        }
+    }
+
+    private static String sha256(final byte[] content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private record SourceTile(long key, int zoom, TilePack.Format format, Path file) {
+
+        static SourceTile parse(final Path relative, final Path file) {
+            if (relative.getNameCount() != 3) return null;
+            final String name = relative.getName(2).toString();
+            final int dot = name.lastIndexOf('.');
+            if (dot <= 0) return null;
+            final TilePack.Format format = TilePack.Format.ofExtension(name.substring(dot + 1));
+            if (format == null) return null;
+            try {
+                final int zoom = Integer.parseInt(relative.getName(0).toString());
+                final int x = Integer.parseInt(relative.getName(1).toString());
+                final int y = Integer.parseInt(name.substring(0, dot));
+                if (!TilePack.isValid(zoom, x, y)) return null;
+                return new SourceTile(TilePack.keyOf(zoom, x, y), zoom, format, file);
+            } catch (final NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+}
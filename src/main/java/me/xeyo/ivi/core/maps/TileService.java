@@ -0,0 +1,298 @@
+package me.xeyo.ivi.core.maps;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import lombok.Getter;
+import me.xeyo.ivi.core.utils.SampleStats;
+
+/**
+ * Tiles for the map view, read from a {@link TilePack}. Tiles the view is likely to ask for next are copied into a
+ * byte-bounded LRU of direct buffers ahead of time, so a pan does not wait on page faults from slow storage: when
+ * the page reports its viewport, the ring of tiles around it and the tiles ahead along the heading are warmed on a
+ * background thread. A newer viewport replaces one that has not been warmed yet, so a fast pan never queues up
+ * stale work. Tiles requested outside the warmed area are served straight from the mapping and promoted afterwards.
+ */
+public class TileService {
+
+    private static final int TILE_PIXELS = 256;
+
+    @Getter
+    private final TilePack pack;
+    private final long hotMaxBytes;
+    private final int ringTiles;
+    private final int aheadTiles;
+    private final int maxPrefetchTiles;
+
+    private final LinkedHashMap<Long, ByteBuffer> hot = new LinkedHashMap<>(256, 0.75f, true);
+    private long hotBytes;
+
+    private final AtomicReference<Viewport> pendingViewport = new AtomicReference<>();
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+        final var thread = new Thread(runnable, "ivi-maps-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hotHits = new AtomicLong();
+    private final AtomicLong packHits = new AtomicLong();
+    private final AtomicLong notFound = new AtomicLong();
+    private final AtomicLong viewports = new AtomicLong();
+    private final AtomicLong prefetched = new AtomicLong();
+    private final AtomicLong prefetchesSuperseded = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+    private final SampleStats serveNanos = new SampleStats();
+    private final SampleStats prefetchNanos = new SampleStats();
+
+    private long currentSecond;
+    private long currentSecondTiles;
+    private long lastSecondTiles;
+    private long peakTilesPerSecond;
+
+    public TileService(final TilePack pack, final long hotMaxBytes, final int ringTiles, final int aheadTiles,
+                       final int maxPrefetchTiles) {
+        this.pack = pack;
+        this.hotMaxBytes = hotMaxBytes;
+        this.ringTiles = ringTiles;
+        this.aheadTiles = aheadTiles;
+        this.maxPrefetchTiles = maxPrefetchTiles;
+    }
+
+    /**
+     * Opens the pack at {@code ivi.maps.pack} (default {@code maps/tiles.ivimap}). Without a pack the service
+     * answers every tile as missing.
+     */
+    public static TileService fromSystemProperties() {
+        final Path file = Paths.get(System.getProperty("ivi.maps.pack", "maps/tiles.ivimap"));
+        TilePack pack = null;
+        if (Files.isRegularFile(file)) {
+            try {
+                pack = TilePack.open(file);
+                System.out.println("[MAPS] Opened " + file + ": " + pack.getTileCount() + " " + pack.getFormat().getExtension()
+                        + " tiles, zoom " + pack.getMinZoom() + "-" + pack.getMaxZoom());
+            } catch (final IOException e) {
+                System.err.println("[MAPS] Cannot open tile pack " + file + ": " + e.getMessage());
+            }
+        } else {
+            System.out.println("[MAPS] No tile pack at " + file + ", maps are offline");
+        }
+        return new TileService(pack, Long.getLong("ivi.maps.hotBytes", 32L * 1024 * 1024),
+                Integer.getInteger("ivi.maps.prefetchRing", 1),
+                Integer.getInteger("ivi.maps.prefetchAhead", 2),
+                Integer.getInteger("ivi.maps.prefetchMaxTiles", 256));
+    }
+
+    public boolean isAvailable() {
+        return this.pack != null;
+    }
+
+    /**
+     * Returns a read-only view of the tile, or {@code null} if there is none.
+     */
+    public ByteBuffer getTile(final int zoom, final int x, final int y) {
+        this.requests.incrementAndGet();
+        if (this.pack == null || !TilePack.isValid(zoom, x, y)) {
+            this.notFound.incrementAndGet();
+            return null;
+        }
+
+        final long key = TilePack.keyOf(zoom, x, y);
+        final ByteBuffer cached;
+        synchronized (this.hot) {
+            cached = this.hot.get(key);
+        }
+        if (cached != null) {
+            this.hotHits.incrementAndGet();
+            return cached.duplicate();
+        }
+
+        final ByteBuffer tile = this.pack.get(key);
+        if (tile == null) {
+            this.notFound.incrementAndGet();
+            return null;
+        }
+        this.packHits.incrementAndGet();
+        this.prefetcher.execute(() -> this.warm(key));
+        return tile;
+    }
+
+    /**
+     * Records a tile response of {@code bytes} that took {@code nanos} from request to last byte.
+     */
+    public void recordServed(final long nanos, final long bytes) {
+        this.serveNanos.record(nanos);
+        this.bytesServed.addAndGet(bytes);
+
+        final long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        synchronized (this.serveNanos) {
+            if (second != this.currentSecond) {
+                this.lastSecondTiles = second == this.currentSecond + 1 ? this.currentSecondTiles : 0;
+                this.currentSecond = second;
+                this.currentSecondTiles = 0;
+            }
+            this.currentSecondTiles++;
+            this.peakTilesPerSecond = Math.max(this.peakTilesPerSecond, this.currentSecondTiles);
+        }
+    }
+
+    /**
+     * Called when the map view moved. {@code heading} is in degrees clockwise from north, or {@code NaN} when the
+     * vehicle is not moving.
+     */
+    public void onViewport(final double latitude, final double longitude, final int zoom, final double heading,
+                           final int widthPixels, final int heightPixels) {
+        if (this.pack == null) return;
+        this.viewports.incrementAndGet();
+        final var viewport = new Viewport(latitude, longitude, Math.max(0, Math.min(zoom, TilePack.MAX_ZOOM)),
+                heading, Math.max(1, widthPixels), Math.max(1, heightPixels));
+        if (this.pendingViewport.getAndSet(viewport) != null) {
+            this.prefetchesSuperseded.incrementAndGet();
+            return;
+        }
+        this.prefetcher.execute(this::prefetchPending);
+    }
+
+    private void prefetchPending() {
+        final Viewport viewport = this.pendingViewport.getAndSet(null);
+        if (viewport == null) return;
+
+        final long start = System.nanoTime();
+        for (final long key : this.tilesAround(viewport)) {
+            // Give up on this viewport as soon as a newer one arrives.
+            if (this.pendingViewport.get() != null) {
+                this.prefetchesSuperseded.incrementAndGet();
+                return;
+            }
+            if (this.warm(key)) this.prefetched.incrementAndGet();
+        }
+        this.prefetchNanos.record(System.nanoTime() - start);
+    }
+
+    /**
+     * Tile keys to warm for {@code viewport}, in order: the visible tiles, the viewport shifted ahead along the
+     * heading, then the surrounding ring.
+     */
+    Set<Long> tilesAround(final Viewport viewport) {
+        final int tilesPerSide = 1 << viewport.zoom;
+        final double centerX = (viewport.longitude + 180.0) / 360.0 * tilesPerSide;
+        final double latitude = Math.toRadians(Math.max(-85.0511, Math.min(85.0511, viewport.latitude)));
+        final double centerY = (1 - Math.log(Math.tan(latitude) + 1 / Math.cos(latitude)) / Math.PI) / 2 * tilesPerSide;
+        final double halfWidth = viewport.widthPixels / 2.0 / TILE_PIXELS;
+        final double halfHeight = viewport.heightPixels / 2.0 / TILE_PIXELS;
+
+        final Set<Long> keys = new LinkedHashSet<>();
+        this.addRect(keys, viewport.zoom, centerX, centerY, halfWidth, halfHeight);
+        if (!Double.isNaN(viewport.heading)) {
+            final double dx = Math.sin(Math.toRadians(viewport.heading));
+            final double dy = -Math.cos(Math.toRadians(viewport.heading));
+            for (int step = 1; step <= this.aheadTiles; step++) {
+                this.addRect(keys, viewport.zoom, centerX + dx * step, centerY + dy * step, halfWidth, halfHeight);
+            }
+        }
+        this.addRect(keys, viewport.zoom, centerX, centerY, halfWidth + this.ringTiles, halfHeight + this.ringTiles);
+        return keys;
+    }
+
+    private void addRect(final Set<Long> keys, final int zoom, final double centerX, final double centerY,
+                         final double halfWidth, final double halfHeight) {
+        final int tilesPerSide = 1 << zoom;
+        final int minY = Math.max(0, (int) Math.floor(centerY - halfHeight));
+        final int maxY = Math.min(tilesPerSide - 1, (int) Math.floor(centerY + halfHeight));
+        final int minX = (int) Math.floor(centerX - halfWidth);
+        final int maxX = (int) Math.floor(centerX + halfWidth);
+        for (int y = minY; y <= maxY; y++) {
+            for (int x = minX; x <= maxX && x - minX < tilesPerSide; x++) {
+                if (keys.size() >= this.maxPrefetchTiles) return;
+                keys.add(TilePack.keyOf(zoom, Math.floorMod(x, tilesPerSide), y));
+            }
+        }
+    }
+
+    /**
+     * Copies the tile with {@code key} into the hot set. Returns whether it was not there yet.
+     */
+    private boolean warm(final long key) {
+        synchronized (this.hot) {
+            if (this.hot.containsKey(key)) return false;
+        }
+        final ByteBuffer tile = this.pack.get(key);
+        if (tile == null) return false;
+
+        final ByteBuffer copy = ByteBuffer.allocateDirect(tile.remaining());
+        copy.put(tile).flip();
+        final ByteBuffer readOnly = copy.asReadOnlyBuffer();
+        synchronized (this.hot) {
+            final ByteBuffer previous = this.hot.put(key, readOnly);
+            if (previous != null) this.hotBytes -= previous.capacity();
+            this.hotBytes += readOnly.capacity();
+
+            final Iterator<ByteBuffer> eldest = this.hot.values().iterator();
+            while (this.hotBytes > this.hotMaxBytes && eldest.hasNext()) {
+                final ByteBuffer evicted = eldest.next();
+                if (evicted == readOnly) break;
+                this.hotBytes -= evicted.capacity();
+                eldest.remove();
+            }
+        }
+        return true;
+    }
+
+    public void close() {
+        this.prefetcher.shutdownNow();
+        if (this.pack != null) {
+            try {
+                this.pack.close();
+            } catch (final IOException e) {
+                System.err.println("[MAPS] Failed to close tile pack: " + e.getMessage());
+            }
+        }
+    }
+
+    public JSONObject getStats() {
+        final long hotHitCount = this.hotHits.get();
+        final long served = hotHitCount + this.packHits.get();
+
+        final var stats = new JSONObject();
+        stats.put("available", this.pack != null);
+        stats.put("requests", this.requests.get());
+        stats.put("hotHits", hotHitCount);
+        stats.put("packHits", this.packHits.get());
+        stats.put("notFound", this.notFound.get());
+        stats.put("hotHitRate", served == 0 ? 0 : (double) hotHitCount / served);
+        synchronized (this.hot) {
+            stats.put("hotEntries", this.hot.size());
+            stats.put("hotBytes", this.hotBytes);
+        }
+        stats.put("hotMaxBytes", this.hotMaxBytes);
+        stats.put("bytesServed", this.bytesServed.get());
+        stats.put("serveMicros", this.serveNanos.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+        synchronized (this.serveNanos) {
+            final long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+            stats.put("tilesLastSecond", second == this.currentSecond + 1 ? this.currentSecondTiles
+                    : second == this.currentSecond ? this.lastSecondTiles : 0);
+            stats.put("peakTilesPerSecond", this.peakTilesPerSecond);
+        }
+        stats.put("viewports", this.viewports.get());
+        stats.put("prefetchedTiles", this.prefetched.get());
+        stats.put("prefetchesSuperseded", this.prefetchesSuperseded.get());
+        stats.put("prefetchMicros", this.prefetchNanos.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+        return stats;
+    }
+
+    record Viewport(double latitude, double longitude, int zoom, double heading, int widthPixels, int heightPixels) {
+    }
+
+}
@@ -0,0 +1,485 @@
+package me.xeyo.ivi.core.media;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import me.xeyo.ivi.core.utils.AtomicFiles;
+
+/**
+ * Cover art thumbnails in the sizes the UI asks for. The source is the embedded picture of a track or, failing
+ * that, a cover image in its folder. Thumbnails are addressed by the SHA-256 of the source image plus the size, so
+ * every track of an album shares one thumbnail per size, and they live in two tiers: an LRU of encoded JPEG bytes
+ * bounded in memory, backed by a content-addressed directory on disk that is an LRU bounded in bytes as well.
+ * Decoding and scaling run on a small dedicated pool, and concurrent requests for the same thumbnail wait for one
+ * decode.
+ * <p>
+ * A track whose art was resolved before is looked up in memory without touching the file system; folder art of such
+ * a track is looked for again after {@value #FOLDER_ART_RECHECK_MILLIS} ms, so a replaced cover image shows up.
+ */
+public class AlbumArtService {
+
+    private static final List<String> FOLDER_ART_NAMES = List.of("cover.jpg", "cover.png", "folder.jpg", "folder.png", "front.jpg", "front.png");
+    private static final int MAX_SOURCE_BYTES = 16 * 1024 * 1024;
+    private static final int SOURCE_KEY_CACHE_SIZE = 4096;
+    private static final long FOLDER_ART_RECHECK_MILLIS = 60_000;
+
+    private final Set<Integer> sizes;
+    private final Path cacheDirectory;
+    private final long memoryMaxBytes;
+    private final long diskMaxBytes;
+
+    private final LinkedHashMap<String, Thumbnail> memory = new LinkedHashMap<>(64, 0.75f, true);
+    private long memoryBytes;
+
+    // Source identity (file, art offset, modification time) to content hash, so a cached thumbnail is found
+    // without reading the source image again.
+    private final LinkedHashMap<String, String> sourceHashes = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+            return this.size() > SOURCE_KEY_CACHE_SIZE;
+        }
+    };
+
+    // Track (file and modification time) to the content hash of its art, checked before anything touches the disk.
+    private final LinkedHashMap<String, TrackArt> trackArt = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, TrackArt> eldest) {
+            return this.size() > SOURCE_KEY_CACHE_SIZE;
+        }
+    };
+
+    // Thumbnail files to their size in least recently used order, read from the cache directory on first use.
+    private final LinkedHashMap<Path, Long> disk = new LinkedHashMap<>(256, 0.75f, true);
+    private boolean diskIndexed;
+    private long diskBytes;
+
+    private final Map<String, CompletableFuture<Thumbnail>> inFlight = new ConcurrentHashMap<>();
+    // Keyed by content hash and size: different tracks embedding the same picture still decode it once.
+    private final Map<String, CompletableFuture<Thumbnail>> decoding = new ConcurrentHashMap<>();
+    private final AtomicInteger threadCounter = new AtomicInteger();
+    private final ExecutorService decoder;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong decodes = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong noArt = new AtomicLong();
+    private final AtomicLong decodeNanos = new AtomicLong();
+    private final AtomicLong diskEvictions = new AtomicLong();
+
+    public AlbumArtService(final Set<Integer> sizes, final Path cacheDirectory, final long memoryMaxBytes,
+                           final long diskMaxBytes, final int threads) {
+        this.sizes = sizes;
+        this.cacheDirectory = cacheDirectory;
+        this.memoryMaxBytes = memoryMaxBytes;
+        this.diskMaxBytes = diskMaxBytes;
+        this.decoder = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            final var thread = new Thread(runnable, "ivi-art-" + this.threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+    }
+
+    /**
+     * Builds the service from {@code ivi.media.art.sizes} (comma separated, default {@code 64,160,320}),
+     * {@code ivi.media.art.cacheDir}, {@code ivi.media.art.memoryBytes}, {@code ivi.media.art.diskBytes} (default
+     * 128 MiB) and {@code ivi.media.art.threads}.
+     */
+    public static AlbumArtService fromSystemProperties() {
+        final Set<Integer> sizes = new TreeSet<>();
+        for (final String size : System.getProperty("ivi.media.art.sizes", "64,160,320").split(",")) {
+            if (!size.isBlank()) sizes.add(Integer.parseInt(size.trim()));
+        }
+        return new AlbumArtService(sizes, Paths.get(System.getProperty("ivi.media.art.cacheDir", "art-cache")),
+                Long.getLong("ivi.media.art.memoryBytes", 8L * 1024 * 1024),
+                Long.getLong("ivi.media.art.diskBytes", 128L * 1024 * 1024),
+                Integer.getInteger("ivi.media.art.threads", 2));
+    }
+
+    public Set<Integer> getSizes() {
+        return this.sizes;
+    }
+
+    /**
+     * Completes with the thumbnail of {@code track} scaled to fit {@code size}, or with {@code null} if the track has
+     * no cover art.
+     */
+    public CompletableFuture<Thumbnail> getThumbnail(final MediaTrack track, final int size) {
+        final var trackKey = track.path() + "@" + track.lastModified();
+        final TrackArt known;
+        synchronized (this.trackArt) {
+            known = this.trackArt.get(trackKey);
+        }
+        if (known != null && (known.embedded() || System.currentTimeMillis() - known.resolvedAtMillis() < FOLDER_ART_RECHECK_MILLIS)) {
+            final Thumbnail cached = this.fromMemory(known.hash() + "-" + size);
+            if (cached != null) return CompletableFuture.completedFuture(cached);
+        }
+
+        final ArtSource source = findSource(track);
+        if (source == null) {
+            this.noArt.incrementAndGet();
+            return CompletableFuture.completedFuture(null);
+        }
+
+        final String knownHash;
+        synchronized (this.sourceHashes) {
+            knownHash = this.sourceHashes.get(source.identity());
+        }
+        if (knownHash != null) {
+            final Thumbnail cached = this.fromMemory(knownHash + "-" + size);
+            if (cached != null) {
+                this.rememberTrack(trackKey, knownHash, source);
+                return CompletableFuture.completedFuture(cached);
+            }
+        }
+
+        final var requestKey = source.identity() + "|" + size;
+        final var started = new CompletableFuture<Thumbnail>();
+        final CompletableFuture<Thumbnail> existing = this.inFlight.putIfAbsent(requestKey, started);
+        if (existing != null) {
+            this.coalesced.incrementAndGet();
+            return existing;
+        }
+
+        this.decoder.execute(() -> {
+            try {
+                started.complete(this.load(trackKey, source, size));
+            } catch (final Exception e) {
+                started.completeExceptionally(e);
+            } finally {
+                this.inFlight.remove(requestKey, started);
+            }
+        });
+        return started;
+    }
+
+    private Thumbnail load(final String trackKey, final ArtSource source, final int size) throws IOException {
+        final byte[] sourceBytes = source.read();
+        final String hash = sha256(sourceBytes);
+        synchronized (this.sourceHashes) {
+            this.sourceHashes.put(source.identity(), hash);
+        }
+        this.rememberTrack(trackKey, hash, source);
+
+        final var key = hash + "-" + size;
+        final Thumbnail cached = this.fromMemory(key);
+        if (cached != null) return cached;
+
+        final var decode = new CompletableFuture<Thumbnail>();
+        final CompletableFuture<Thumbnail> running = this.decoding.putIfAbsent(key, decode);
+        if (running != null) {
+            this.coalesced.incrementAndGet();
+            return running.join();
+        }
+        try {
+            final Thumbnail thumbnail = this.loadContent(key, hash, sourceBytes, size);
+            decode.complete(thumbnail);
+            return thumbnail;
+        } catch (final IOException | RuntimeException e) {
+            decode.completeExceptionally(e);
+            throw e;
+        } finally {
+            this.decoding.remove(key, decode);
+        }
+    }
+
+    private void rememberTrack(final String trackKey, final String hash, final ArtSource source) {
+        synchronized (this.trackArt) {
+            this.trackArt.put(trackKey, new TrackArt(hash, source.embedded(), System.currentTimeMillis()));
+        }
+    }
+
+    private Thumbnail loadContent(final String key, final String hash, final byte[] sourceBytes, final int size) throws IOException {
+        final Path diskFile = this.cacheDirectory.resolve(hash.substring(0, 2)).resolve(key + ".jpg");
+        if (this.touchDisk(diskFile)) {
+            try {
+                final byte[] bytes = Files.readAllBytes(diskFile);
+                this.diskHits.incrementAndGet();
+                return this.remember(new Thumbnail(key, bytes));
+            } catch (final NoSuchFileException e) {
+                // Removed behind our back; decode it again.
+                this.forgetDisk(diskFile);
+            }
+        }
+
+        final long start = System.nanoTime();
+        final byte[] encoded = scale(sourceBytes, size);
+        this.decodeNanos.addAndGet(System.nanoTime() - start);
+        this.decodes.incrementAndGet();
+        if (encoded == null) return null;
+
+        Files.createDirectories(diskFile.getParent());
+        AtomicFiles.write(diskFile, encoded);
+        this.addToDisk(diskFile, encoded.length);
+        return this.remember(new Thumbnail(key, encoded));
+    }
+
+    /**
+     * Marks a cached file as just used; false if it is not in the cache. The modification time is bumped as well, so
+     * the order survives a restart.
+     */
+    private boolean touchDisk(final Path file) {
+        synchronized (this.disk) {
+            this.indexDisk();
+            if (this.disk.get(file) == null) return false;
+        }
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (final IOException ignored) {
+            // Only the order after a restart suffers.
+        }
+        return true;
+    }
+
+    private void addToDisk(final Path file, final long bytes) {
+        final List<Path> evicted = new ArrayList<>();
+        synchronized (this.disk) {
+            this.indexDisk();
+            final Long previous = this.disk.put(file, bytes);
+            this.diskBytes += bytes - (previous != null ? previous : 0);
+            final Iterator<Map.Entry<Path, Long>> eldest = this.disk.entrySet().iterator();
+            while (this.diskBytes > this.diskMaxBytes && eldest.hasNext()) {
+                final Map.Entry<Path, Long> entry = eldest.next();
+                if (entry.getKey().equals(file)) break;
+                this.diskBytes -= entry.getValue();
+                evicted.add(entry.getKey());
+                eldest.remove();
+            }
+        }
+        for (final Path path : evicted) {
+            try {
+                Files.deleteIfExists(path);
+                this.diskEvictions.incrementAndGet();
+            } catch (final IOException e) {
+                System.err.println("[ART] Cannot remove cached thumbnail " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private void forgetDisk(final Path file) {
+        synchronized (this.disk) {
+            final Long bytes = this.disk.remove(file);
+            if (bytes != null) this.diskBytes -= bytes;
+        }
+    }
+
+    /**
+     * Reads what is already cached on disk, oldest first, the first time the disk tier is used. Called with the
+     * disk lock held, on a decoder thread.
+     */
+    private void indexDisk() {
+        if (this.diskIndexed) return;
+        this.diskIndexed = true;
+        if (!Files.isDirectory(this.cacheDirectory)) return;
+
+        record CachedFile(Path path, long bytes, long lastModified) {
+        }
+        final List<CachedFile> files = new ArrayList<>();
+        try (final Stream<Path> paths = Files.walk(this.cacheDirectory, 2)) {
+            paths.filter(path -> path.getFileName().toString().endsWith(".jpg")).forEach(path -> {
+                try {
+                    final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (attributes.isRegularFile()) {
+                        files.add(new CachedFile(path, attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    }
+                } catch (final IOException ignored) {
+                    // Gone while listing.
+                }
+            });
+        } catch (final IOException | UncheckedIOException e) {
+            System.err.println("[ART] Cannot list thumbnail cache " + this.cacheDirectory + ": " + e.getMessage());
+        }
+        files.sort(Comparator.comparingLong(CachedFile::lastModified));
+        for (final CachedFile file : files) {
+            this.disk.put(file.path(), file.bytes());
+            this.diskBytes += file.bytes();
+        }
+    }
+
+    private Thumbnail fromMemory(final String key) {
+        synchronized (this.memory) {
+            final Thumbnail thumbnail = this.memory.get(key);
+            if (thumbnail != null) this.memoryHits.incrementAndGet();
+            return thumbnail;
+        }
+    }
+
+    private Thumbnail remember(final Thumbnail thumbnail) {
+        synchronized (this.memory) {
+            final Thumbnail previous = this.memory.put(thumbnail.key(), thumbnail);
+            if (previous != null) this.memoryBytes -= previous.bytes().length;
+            this.memoryBytes += thumbnail.bytes().length;
+
+            final Iterator<Thumbnail> eldest = this.memory.values().iterator();
+            while (this.memoryBytes > this.memoryMaxBytes && eldest.hasNext()) {
+                final Thumbnail evicted = eldest.next();
+                if (evicted == thumbnail) break;
+                this.memoryBytes -= evicted.bytes().length;
+                eldest.remove();
+            }
+        }
+        return thumbnail;
+    }
+
+    /**
+     * Decodes with source subsampling when the image is much larger than needed, which keeps both decode time and
+     * the decoded raster small, then scales to fit {@code size} and encodes as JPEG.
+     */
+    private static byte[] scale(final byte[] source, final int size) throws IOException {
+        final BufferedImage decoded;
+        try (final ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(source))) {
+            final Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+            if (!readers.hasNext()) return null;
+            final ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                final int sourceSide = Math.min(reader.getWidth(0), reader.getHeight(0));
+                final ImageReadParam param = reader.getDefaultReadParam();
+                final int subsampling = Math.max(1, sourceSide / (size * 2));
+                param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                decoded = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+
+        final double factor = Math.min(1.0, (double) size / Math.max(decoded.getWidth(), decoded.getHeight()));
+        final int width = Math.max(1, (int) Math.round(decoded.getWidth() * factor));
+        final int height = Math.max(1, (int) Math.round(decoded.getHeight() * factor));
+        final var scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        final Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+            graphics.drawImage(decoded, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        final var output = new ByteArrayOutputStream(width * height / 4);
+        ImageIO.write(scaled, "jpg", output);
+        return output.toByteArray();
+    }
+
+    private static ArtSource findSource(final MediaTrack track) {
+        if (track.artLength() > 0 && track.artLength() <= MAX_SOURCE_BYTES) {
+            return new ArtSource(Path.of(track.path()), track.artOffset(), track.artLength(),
+                    track.path() + "#" + track.artOffset() + "@" + track.lastModified(), true);
+        }
+
+        final Path directory = Path.of(track.path()).getParent();
+        if (directory == null) return null;
+        for (final String name : FOLDER_ART_NAMES) {
+            final Path candidate = directory.resolve(name);
+            try {
+                if (Files.isRegularFile(candidate) && Files.size(candidate) <= MAX_SOURCE_BYTES) {
+                    return new ArtSource(candidate, 0, (int) Files.size(candidate),
+                            candidate + "@" + Files.getLastModifiedTime(candidate).toMillis(), false);
+                }
+            } catch (final IOException ignored) {
+                // Try the next name.
+            }
+        }
+        return null;
+    }
+
+    private static String sha256(final byte[] bytes) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(bytes));
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public void close() {
+        this.decoder.shutdownNow();
+    }
+
+    public JSONObject getStats() {
+        final long memoryHitCount = this.memoryHits.get();
+        final long diskHitCount = this.diskHits.get();
+        final long decodeCount = this.decodes.get();
+        final long lookups = memoryHitCount + diskHitCount + decodeCount;
+
+        final var stats = new JSONObject();
+        stats.put("sizes", this.sizes);
+        synchronized (this.memory) {
+            stats.put("memoryEntries", this.memory.size());
+            stats.put("memoryBytes", this.memoryBytes);
+        }
+        stats.put("memoryMaxBytes", this.memoryMaxBytes);
+        synchronized (this.disk) {
+            stats.put("diskEntries", this.disk.size());
+            stats.put("diskBytes", this.diskBytes);
+        }
+        stats.put("diskMaxBytes", this.diskMaxBytes);
+        stats.put("diskEvictions", this.diskEvictions.get());
+        stats.put("memoryHits", memoryHitCount);
+        stats.put("diskHits", diskHitCount);
+        stats.put("decodes", decodeCount);
+        stats.put("coalesced", this.coalesced.get());
+        stats.put("noArt", this.noArt.get());
+        stats.put("memoryHitRate", lookups == 0 ? 0 : (double) memoryHitCount / lookups);
+        stats.put("diskHitRate", lookups == 0 ? 0 : (double) diskHitCount / lookups);
+        stats.put("averageDecodeMicros", decodeCount == 0 ? 0 : this.decodeNanos.get() / decodeCount / 1000);
+        stats.put("cacheDirectory", this.cacheDirectory.toAbsolutePath().toString());
+        return stats;
+    }
+
+    public record Thumbnail(String key, byte[] bytes) {
+    }
+
+    private record TrackArt(String hash, boolean embedded, long resolvedAtMillis) {
+    }
+
+    private record ArtSource(Path file, long offset, int length, String identity, boolean embedded) {
+
+        byte[] read() throws IOException {
+            final ByteBuffer buffer = ByteBuffer.allocate(this.length);
+            try (final FileChannel channel = FileChannel.open(this.file, StandardOpenOption.READ)) {
+                while (buffer.hasRemaining() && channel.read(buffer, this.offset + buffer.position()) >= 0) {
+                    // Keep reading until the picture is complete or the file ends.
+                }
+            }
+            return buffer.array();
+        }
+    }
+
+}
@@ -0,0 +1,137 @@
+package me.xeyo.ivi.core.media;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import me.xeyo.ivi.core.utils.AtomicFiles;
+
+/**
+ * Compact on-disk form of the library, read back with a single mapping at boot.
+ * <p>
+ * Layout: a 20 byte header {@code magic, version, trackCount, stringCount, crc32}, then {@code trackCount} fixed
+ * 64 byte records {@code id:long, size:long, lastModified:long, durationMillis:int, trackNumber:int} followed by
+ * five string table indices {@code path, title, artist, album, format} and {@code artOffset:long, artLength:int},
+ * then the string table as {@code length:int, utf8:byte[length]} entries. Strings are deduplicated, which matters
+ * for artists and albums shared by many tracks, and the CRC covers everything after the header. An index of an
+ * older version is not read; the next scan rebuilds it.
+ */
+final class MediaIndexFile {
+
+    private static final int MAGIC = 0x49564958;
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 20;
+    private static final int RECORD_BYTES = 64;
+
+    private MediaIndexFile() {
+    }
+
+    static void write(final Path file, final Collection<MediaTrack> tracks) throws IOException {
+        final Map<String, Integer> stringIndex = new HashMap<>();
+        final List<String> strings = new ArrayList<>();
+
+        final var records = new ByteArrayOutputStream(tracks.size() * RECORD_BYTES);
+        final var recordOutput = new DataOutputStream(records);
+        for (final MediaTrack track : tracks) {
+            recordOutput.writeLong(track.id());
+            recordOutput.writeLong(track.size());
+            recordOutput.writeLong(track.lastModified());
+            recordOutput.writeInt((int) Math.min(Integer.MAX_VALUE, track.durationMillis()));
+            recordOutput.writeInt(track.trackNumber());
+            for (final String value : new String[]{track.path(), track.title(), track.artist(), track.album(), track.format()}) {
+                recordOutput.writeInt(stringIndex.computeIfAbsent(value, key -> {
+                    strings.add(key);
+                    return strings.size() - 1;
+                }));
+            }
+            recordOutput.writeLong(track.artOffset());
+            recordOutput.writeInt(track.artLength());
+        }
+
+        final var body = new ByteArrayOutputStream(records.size() + strings.size() * 24);
+        records.writeTo(body);
+        final var stringOutput = new DataOutputStream(body);
+        for (final String value : strings) {
+            final byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            stringOutput.writeInt(utf8.length);
+            stringOutput.write(utf8);
+        }
+        final byte[] bodyBytes = body.toByteArray();
+
+        final var crc = new CRC32();
+        crc.update(bodyBytes);
+
+        final var content = new ByteArrayOutputStream(HEADER_BYTES + bodyBytes.length);
+        final var output = new DataOutputStream(content);
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeInt(tracks.size());
+        output.writeInt(strings.size());
+        output.writeInt((int) crc.getValue());
+        output.write(bodyBytes);
+        AtomicFiles.write(file, content.toByteArray());
+    }
+
+    /**
+     * Returns the tracks stored in {@code file}, or {@code null} if there is no index or it is not valid.
+     */
+    static List<MediaTrack> read(final Path file) throws IOException {
+        if (!Files.isRegularFile(file)) return null;
+
+        final MappedByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) return null;
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+
+        if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) return null;
+        final int trackCount = buffer.getInt(8);
+        final int stringCount = buffer.getInt(12);
+        final long stringsStart = HEADER_BYTES + (long) trackCount * RECORD_BYTES;
+        if (trackCount < 0 || stringCount < 0 || stringsStart > buffer.limit()) return null;
+
+        final var crc = new CRC32();
+        crc.update(buffer.slice(HEADER_BYTES, buffer.limit() - HEADER_BYTES));
+        if ((int) crc.getValue() != buffer.getInt(16)) return null;
+
+        final String[] strings = new String[stringCount];
+        int offset = (int) stringsStart;
+        for (int i = 0; i < stringCount; i++) {
+            final int length = buffer.getInt(offset);
+            final byte[] utf8 = new byte[length];
+            buffer.get(offset + 4, utf8);
+            strings[i] = new String(utf8, StandardCharsets.UTF_8);
+            offset += 4 + length;
+        }
+
+        final List<MediaTrack> tracks = new ArrayList<>(trackCount);
+        for (int i = 0; i < trackCount; i++) {
+            final int record = HEADER_BYTES + i * RECORD_BYTES;
+            tracks.add(new MediaTrack(buffer.getLong(record),
+                    strings[buffer.getInt(record + 32)],
+                    strings[buffer.getInt(record + 36)],
+                    strings[buffer.getInt(record + 40)],
+                    strings[buffer.getInt(record + 44)],
+                    buffer.getInt(record + 28),
+                    buffer.getInt(record + 24),
+                    strings[buffer.getInt(record + 48)],
+                    buffer.getLong(record + 8),
+                    buffer.getLong(record + 16),
+                    buffer.getLong(record + 52),
+                    buffer.getInt(record + 60)));
+        }
+        return tracks;
+    }
+
+}
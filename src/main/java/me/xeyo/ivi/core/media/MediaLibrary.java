@@ -0,0 +1,421 @@
+package me.xeyo.ivi.core.media;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import lombok.Getter;
+import me.xeyo.ivi.core.error.InternalExceptionTracker;
+
+/**
+ * The local music library. Boot maps the index file written by the previous run and publishes it right away,
+ * then a background scan walks the configured directories and re-reads only files whose size or modification
+ * time changed, with tag extraction spread over a fork-join pool. After that a {@link WatchService} keeps the
+ * library current: events are batched and only the affected paths are read again.
+ * <p>
+ * The track list is an immutable {@link Catalog} swapped on every change, so readers never lock. Sorted views
+ * are computed once per catalog and sort order.
+ */
+public class MediaLibrary {
+
+    private static final long WATCH_BATCH_MILLIS = 500;
+
+    private final List<Path> roots;
+    private final Path indexFile;
+    private final ForkJoinPool tagPool;
+
+    private volatile Catalog catalog = new Catalog(Map.of());
+    private final Map<WatchKey, Path> watchedDirectories = new ConcurrentHashMap<>();
+    private WatchService watchService;
+    private Thread worker;
+
+    @Getter
+    private volatile boolean ready;
+
+    private volatile long indexLoadMicros = -1;
+    private volatile int indexLoadedTracks;
+    private volatile long fullScanMillis = -1;
+    private volatile JSONObject lastFullScan = new JSONObject();
+    private final AtomicLong watchEvents = new AtomicLong();
+    private final AtomicLong incrementalBatches = new AtomicLong();
+    private final AtomicLong tagReadFailures = new AtomicLong();
+    private volatile long lastBatchMicros;
+    private volatile long lastIndexWriteMicros;
+
+    public MediaLibrary(final List<Path> roots, final Path indexFile, final int parallelism) {
+        this.roots = roots;
+        this.indexFile = indexFile;
+        this.tagPool = new ForkJoinPool(Math.max(1, parallelism), pool -> {
+            final var thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("ivi-media-tags-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Builds the library from {@code ivi.media.dirs} (separated by the platform path separator, default
+     * {@code music}), {@code ivi.media.index} and {@code ivi.media.parallelism}.
+     */
+    public static MediaLibrary fromSystemProperties() {
+        final List<Path> roots = new ArrayList<>();
+        for (final String directory : System.getProperty("ivi.media.dirs", "music").split(File.pathSeparator)) {
+            if (!directory.isBlank()) roots.add(Paths.get(directory.trim()).toAbsolutePath().normalize());
+        }
+        return new MediaLibrary(roots, Paths.get(System.getProperty("ivi.media.index", "media-index.bin")),
+                Integer.getInteger("ivi.media.parallelism", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Loads the index on the calling thread, then scans and starts watching in the background.
+     */
+    public void start() {
+        final long start = System.nanoTime();
+        try {
+            final List<MediaTrack> indexed = MediaIndexFile.read(this.indexFile);
+            if (indexed != null) {
+                final Map<Long, MediaTrack> tracks = new HashMap<>(indexed.size() * 2);
+                indexed.forEach(track -> tracks.put(track.id(), track));
+                this.catalog = new Catalog(tracks);
+                this.indexLoadedTracks = indexed.size();
+            } else if (Files.exists(this.indexFile)) {
+                System.err.println("[MEDIA] Media index " + this.indexFile + " is not valid, rebuilding it");
+            }
+        } catch (final IOException e) {
+            InternalExceptionTracker.handleException(e);
+        }
+        this.indexLoadMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        System.out.println("[MEDIA] Loaded " + this.indexLoadedTracks + " indexed tracks in " + this.indexLoadMicros / 1000 + " ms");
+
+        this.worker = new Thread(this::scanAndWatch, "ivi-media-scanner");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    public void close() {
+        try {
+            if (this.watchService != null) this.watchService.close();
+        } catch (final IOException e) {
+            InternalExceptionTracker.handleException(e);
+        }
+        this.tagPool.shutdownNow();
+    }
+
+    public MediaTrack getTrack(final long id) {
+        return this.catalog.tracks.get(id);
+    }
+
+    public int size() {
+        return this.catalog.tracks.size();
+    }
+
+    /**
+     * Returns {@code limit} tracks starting at {@code offset} of the library in {@code sort} order, optionally only
+     * those whose title, artist or album contains {@code query}.
+     */
+    public Page page(final SortOrder sort, final boolean descending, final int offset, final int limit, final String query) {
+        List<MediaTrack> view = this.catalog.sorted(sort);
+        if (query != null && !query.isBlank()) {
+            final var needle = query.toLowerCase(Locale.ROOT);
+            final Predicate<String> matches = value -> value.toLowerCase(Locale.ROOT).contains(needle);
+            view = view.stream().filter(track -> matches.test(track.title()) || matches.test(track.artist()) || matches.test(track.album())).toList();
+        }
+
+        final int total = view.size();
+        final int from = Math.min(offset, total);
+        final int to = Math.min(from + limit, total);
+        final List<MediaTrack> tracks = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            tracks.add(view.get(descending ? total - 1 - i : i));
+        }
+        return new Page(total, tracks);
+    }
+
+    private void scanAndWatch() {
+        try {
+            this.fullScan();
+            this.ready = true;
+            this.watch();
+        } catch (final ClosedWatchServiceException ignored) {
+            // Closed on shutdown.
+        } catch (final Exception e) {
+            InternalExceptionTracker.handleException(e);
+        }
+    }
+
+    private void fullScan() throws Exception {
+        final long start = System.nanoTime();
+        final Catalog previous = this.catalog;
+        final Map<Long, MediaTrack> tracks = new HashMap<>(Math.max(16, previous.tracks.size() * 2));
+        final List<FileState> changed = new ArrayList<>();
+        int filesSeen = 0;
+
+        for (final Path root : this.roots) {
+            if (!Files.isDirectory(root)) {
+                System.err.println("[MEDIA] Media directory not found: " + root);
+                continue;
+            }
+            for (final FileState file : listAudioFiles(root)) {
+                filesSeen++;
+                final MediaTrack known = previous.tracks.get(MediaTrack.idOf(file.path.toString()));
+                if (known != null && known.size() == file.size && known.lastModified() == file.lastModified) {
+                    tracks.put(known.id(), known);
+                } else {
+                    changed.add(file);
+                }
+            }
+        }
+
+        final long parseStart = System.nanoTime();
+        final List<MediaTrack> parsed = this.readTags(changed);
+        parsed.forEach(track -> tracks.put(track.id(), track));
+        final long parseMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - parseStart);
+
+        final int removed = (int) previous.tracks.keySet().stream().filter(id -> !tracks.containsKey(id)).count();
+        this.catalog = new Catalog(tracks);
+        if (!parsed.isEmpty() || removed > 0 || !Files.exists(this.indexFile)) {
+            this.writeIndex();
+        }
+
+        this.fullScanMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        final var scan = new JSONObject();
+        scan.put("millis", this.fullScanMillis);
+        scan.put("tagMillis", parseMillis);
+        scan.put("filesSeen", filesSeen);
+        scan.put("tagsRead", parsed.size());
+        scan.put("unchanged", filesSeen - changed.size());
+        scan.put("removed", removed);
+        scan.put("tracksPerSecond", parseMillis == 0 ? parsed.size() : parsed.size() * 1000L / parseMillis);
+        this.lastFullScan = scan;
+        System.out.println("[MEDIA] Scanned " + filesSeen + " files in " + this.fullScanMillis + " ms, read tags of "
+                + parsed.size() + " in " + parseMillis + " ms, removed " + removed);
+    }
+
+    private List<MediaTrack> readTags(final List<FileState> files) throws Exception {
+        if (files.isEmpty()) return List.of();
+        return this.tagPool.submit(() -> files.parallelStream().map(file -> {
+            try {
+                return TagReader.read(file.path, file.size, file.lastModified);
+            } catch (final Exception e) {
+                this.tagReadFailures.incrementAndGet();
+                System.err.println("[MEDIA] Failed to read tags of " + file.path + ": " + e.getMessage());
+                return null;
+            }
+        }).filter(track -> track != null).toList()).get();
+    }
+
+    private void writeIndex() {
+        final long start = System.nanoTime();
+        try {
+            MediaIndexFile.write(this.indexFile, this.catalog.tracks.values());
+        } catch (final IOException e) {
+            System.err.println("[MEDIA] Failed to write media index: " + e.getMessage());
+            InternalExceptionTracker.handleException(e);
+        }
+        this.lastIndexWriteMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+    }
+
+    private void watch() throws Exception {
+        this.watchService = FileSystems.getDefault().newWatchService();
+        for (final Path root : this.roots) {
+            if (Files.isDirectory(root)) this.registerTree(root);
+        }
+
+        while (true) {
+            final WatchKey first = this.watchService.take();
+            final Set<Path> pending = new LinkedHashSet<>();
+            boolean overflow = this.collect(first, pending);
+
+            // Copying an album produces a burst of events, handle it as one batch.
+            WatchKey next;
+            while ((next = this.watchService.poll(WATCH_BATCH_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+                overflow |= this.collect(next, pending);
+            }
+
+            if (overflow) {
+                System.out.println("[MEDIA] Watch events overflowed, rescanning");
+                this.fullScan();
+            } else if (!pending.isEmpty()) {
+                this.applyChanges(pending);
+            }
+        }
+    }
+
+    private boolean collect(final WatchKey key, final Set<Path> pending) {
+        boolean overflow = false;
+        final Path directory = this.watchedDirectories.get(key);
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            this.watchEvents.incrementAndGet();
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                overflow = true;
+            } else if (directory != null) {
+                pending.add(directory.resolve((Path) event.context()));
+            }
+        }
+        if (!key.reset()) {
+            this.watchedDirectories.remove(key);
+        }
+        return overflow;
+    }
+
+    private void applyChanges(final Set<Path> paths) throws Exception {
+        final long start = System.nanoTime();
+        final Map<Long, MediaTrack> tracks = new HashMap<>(this.catalog.tracks);
+        final List<FileState> toRead = new ArrayList<>();
+
+        for (final Path path : paths) {
+            if (Files.isDirectory(path)) {
+                this.registerTree(path);
+                toRead.addAll(listAudioFiles(path));
+            } else if (Files.isRegularFile(path)) {
+                if (TagReader.isSupported(path)) {
+                    toRead.add(new FileState(path, Files.size(path), Files.getLastModifiedTime(path).toMillis()));
+                }
+            } else {
+                // Gone: a single file or a whole directory.
+                final var removedPath = path.toString();
+                final var removedPrefix = removedPath + File.separator;
+                tracks.values().removeIf(track -> track.path().equals(removedPath) || track.path().startsWith(removedPrefix));
+            }
+        }
+
+        this.readTags(toRead).forEach(track -> tracks.put(track.id(), track));
+        this.catalog = new Catalog(tracks);
+        this.writeIndex();
+
+        this.incrementalBatches.incrementAndGet();
+        this.lastBatchMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start);
+        System.out.println("[MEDIA] Applied " + paths.size() + " changed paths in " + this.lastBatchMicros / 1000 + " ms, "
+                + tracks.size() + " tracks");
+    }
+
+    private void registerTree(final Path root) throws IOException {
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(final Path directory, final BasicFileAttributes attributes) throws IOException {
+                final WatchKey key = directory.register(MediaLibrary.this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+                MediaLibrary.this.watchedDirectories.put(key, directory);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static List<FileState> listAudioFiles(final Path root) throws IOException {
+        final List<FileState> files = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) {
+                if (attributes.isRegularFile() && TagReader.isSupported(file)) {
+                    files.add(new FileState(file.toAbsolutePath(), attributes.size(), attributes.lastModifiedTime().toMillis()));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+                System.err.println("[MEDIA] Cannot read " + file + ": " + e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    public JSONObject getStats() {
+        final var stats = new JSONObject();
+        stats.put("ready", this.ready);
+        stats.put("tracks", this.size());
+        stats.put("roots", this.roots.stream().map(Path::toString).toList());
+        stats.put("indexFile", this.indexFile.toAbsolutePath().toString());
+        stats.put("indexLoadMicros", this.indexLoadMicros);
+        stats.put("indexLoadedTracks", this.indexLoadedTracks);
+        stats.put("lastIndexWriteMicros", this.lastIndexWriteMicros);
+        stats.put("fullScan", this.lastFullScan);
+        stats.put("tagParallelism", this.tagPool.getParallelism());
+        stats.put("tagReadFailures", this.tagReadFailures.get());
+        stats.put("watchedDirectories", this.watchedDirectories.size());
+        stats.put("watchEvents", this.watchEvents.get());
+        stats.put("incrementalBatches", this.incrementalBatches.get());
+        stats.put("lastBatchMicros", this.lastBatchMicros);
+        return stats;
+    }
+
+    public enum SortOrder {
+        TITLE(Comparator.comparing(MediaTrack::title, String.CASE_INSENSITIVE_ORDER)),
+        ARTIST(Comparator.comparing(MediaTrack::artist, String.CASE_INSENSITIVE_ORDER)
+                .thenComparing(MediaTrack::album, String.CASE_INSENSITIVE_ORDER)
+                .thenComparingInt(MediaTrack::trackNumber)
+                .thenComparing(MediaTrack::title, String.CASE_INSENSITIVE_ORDER)),
+        ALBUM(Comparator.comparing(MediaTrack::album, String.CASE_INSENSITIVE_ORDER)
+                .thenComparingInt(MediaTrack::trackNumber)
+                .thenComparing(MediaTrack::title, String.CASE_INSENSITIVE_ORDER)),
+        DURATION(Comparator.comparingLong(MediaTrack::durationMillis)),
+        PATH(Comparator.comparing(MediaTrack::path));
+
+        private final Comparator<MediaTrack> comparator;
+
+        SortOrder(final Comparator<MediaTrack> comparator) {
+            // Ties are broken by id so pages stay stable between requests.
+            this.comparator = comparator.thenComparingLong(MediaTrack::id);
+        }
+
+        public static SortOrder parse(final String value) {
+            if (value == null) return ARTIST;
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (final IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    public record Page(int total, List<MediaTrack> tracks) {
+    }
+
+    private record FileState(Path path, long size, long lastModified) {
+    }
+
+    private static final class Catalog {
+
+        private final Map<Long, MediaTrack> tracks;
+        private final Map<SortOrder, List<MediaTrack>> sortedViews = new ConcurrentHashMap<>();
+
+        private Catalog(final Map<Long, MediaTrack> tracks) {
+            this.tracks = Collections.unmodifiableMap(tracks);
+        }
+
+        private List<MediaTrack> sorted(final SortOrder order) {
+            return this.sortedViews.computeIfAbsent(order, key -> {
+                final List<MediaTrack> sorted = new ArrayList<>(this.tracks.values());
+                sorted.sort(key.comparator);
+                return Collections.unmodifiableList(sorted);
+            });
+        }
+    }
+
+}
@@ -0,0 +1,43 @@
+package me.xeyo.ivi.core.media;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One indexed audio file. {@code size} and {@code lastModified} are what the file looked like when its tags were
+ * read; a file whose current values differ is read again. {@code artLength} is 0 when the file has no embedded
+ * cover art, otherwise the image bytes start at {@code artOffset}.
+ */
+public record MediaTrack(long id, String path, String title, String artist, String album, int trackNumber,
+                         long durationMillis, String format, long size, long lastModified, long artOffset, int artLength) {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Stable id derived from the absolute path, kept within 53 bits so the page can hold it as a number.
+     */
+    public static long idOf(final String path) {
+        long hash = FNV_OFFSET_BASIS;
+        for (final byte b : path.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash & 0x1F_FFFF_FFFF_FFFFL;
+    }
+
+    public JSONObject toJson() {
+        final var json = new JSONObject();
+        json.put("id", this.id);
+        json.put("title", this.title);
+        json.put("artist", this.artist);
+        json.put("album", this.album);
+        json.put("trackNumber", this.trackNumber);
+        json.put("durationMillis", this.durationMillis);
+        json.put("format", this.format);
+        json.put("size", this.size);
+        json.put("embeddedArt", this.artLength > 0);
+        return json;
+    }
+
+}
@@ -0,0 +1,255 @@
+package me.xeyo.ivi.core.media;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import me.xeyo.ivi.core.utils.SampleStats;
+
+/**
+ * The playback session: the queued tracks, the play order (shuffled or not), the repeat mode and the history of
+ * played tracks. The page only reports what the user did and how far playback got; the queue decides what comes
+ * next and, once the current track nears its end, has the head of the next one read ahead.
+ * <p>
+ * Track change latency is measured from the moment the queue switches tracks: to the first byte the stream route
+ * sends for the new track, and, as reported by the page, to the audio element's {@code playing} event.
+ */
+public class PlaybackQueue {
+
+    public enum RepeatMode {
+        OFF, ALL, ONE;
+
+        public static RepeatMode parse(final String value) {
+            try {
+                return valueOf(value.toUpperCase(Locale.ROOT));
+            } catch (final IllegalArgumentException | NullPointerException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final int HISTORY_SIZE = 100;
+    private static final int UPCOMING_PREVIEW = 5;
+
+    private final MediaLibrary library;
+    private final ReadAheadCache readAhead;
+    private final long prefetchLeadMillis;
+    private final Random random = new Random();
+
+    private List<Long> queued = List.of();
+    private List<Long> playOrder = List.of();
+    private int position = -1;
+    private boolean shuffle;
+    private RepeatMode repeat = RepeatMode.OFF;
+    private final ArrayDeque<Long> history = new ArrayDeque<>();
+    private long version;
+
+    private long changedAtNanos;
+    private long changedToTrack = -1;
+    private boolean changePrefetched;
+    private boolean firstByteRecorded;
+
+    private final SampleStats firstByteColdNanos = new SampleStats();
+    private final SampleStats firstBytePrefetchedNanos = new SampleStats();
+    private final SampleStats playingColdMillis = new SampleStats();
+    private final SampleStats playingPrefetchedMillis = new SampleStats();
+
+    public PlaybackQueue(final MediaLibrary library, final ReadAheadCache readAhead, final long prefetchLeadMillis) {
+        this.library = library;
+        this.readAhead = readAhead;
+        this.prefetchLeadMillis = prefetchLeadMillis;
+    }
+
+    /**
+     * Replaces the queue and starts at {@code index}. Ids the library does not know are dropped. If that track is
+     * already the current one it simply goes on, keeping its history.
+     */
+    public synchronized JSONObject setQueue(final List<Long> trackIds, final int index) {
+        final List<Long> known = new ArrayList<>(trackIds.size());
+        for (final Long id : trackIds) {
+            if (this.library.getTrack(id) != null) known.add(id);
+        }
+        final Long playing = this.currentTrackId();
+        this.queued = Collections.unmodifiableList(known);
+        final Long start = known.isEmpty() ? null : known.get(Math.max(0, Math.min(index, known.size() - 1)));
+        this.rebuildPlayOrder(start);
+        if (start != null && start.equals(playing)) {
+            // A new list around the playing track, as when the library grows during playback: nothing changes track.
+            this.version++;
+        } else {
+            this.history.clear();
+            this.changeTo(this.position);
+        }
+        return this.getState();
+    }
+
+    /**
+     * Advances the queue. {@code automatic} is set when the previous track ended on its own, which is the only
+     * case where {@link RepeatMode#ONE} repeats the track.
+     */
+    public synchronized JSONObject next(final boolean automatic) {
+        final int nextPosition = this.peekNextPosition(automatic);
+        if (nextPosition < 0) {
+            return this.getState();
+        }
+        this.pushHistory();
+        this.changeTo(nextPosition);
+        return this.getState();
+    }
+
+    public synchronized JSONObject previous() {
+        if (this.playOrder.isEmpty()) return this.getState();
+
+        int previousPosition = -1;
+        while (!this.history.isEmpty() && previousPosition < 0) {
+            previousPosition = this.playOrder.indexOf(this.history.pollLast());
+        }
+        if (previousPosition < 0) {
+            previousPosition = this.position > 0 ? this.position - 1
+                    : (this.repeat == RepeatMode.ALL ? this.playOrder.size() - 1 : 0);
+        }
+        this.changeTo(previousPosition);
+        return this.getState();
+    }
+
+    /**
+     * Plays the track at {@code index} of the queue as the user sees it, independent of shuffling.
+     */
+    public synchronized JSONObject jumpTo(final int index) {
+        if (index < 0 || index >= this.queued.size()) return null;
+        this.pushHistory();
+        this.changeTo(this.playOrder.indexOf(this.queued.get(index)));
+        return this.getState();
+    }
+
+    public synchronized JSONObject setMode(final Boolean shuffle, final RepeatMode repeat) {
+        if (repeat != null) this.repeat = repeat;
+        if (shuffle != null && shuffle != this.shuffle) {
+            this.shuffle = shuffle;
+            this.rebuildPlayOrder(this.currentTrackId());
+        }
+        this.version++;
+        this.prefetchNextIfDue(Long.MAX_VALUE);
+        return this.getState();
+    }
+
+    /**
+     * Called by the page while playing. Starts the read-ahead of the next track once less than the prefetch lead
+     * remains.
+     */
+    public synchronized void reportProgress(final long positionMillis, final long durationMillis) {
+        if (durationMillis <= 0) return;
+        this.prefetchNextIfDue(durationMillis - positionMillis);
+    }
+
+    /**
+     * Called by the stream route before it answers a request for {@code trackId}.
+     */
+    public synchronized void onStreamStarted(final long trackId, final boolean fromReadAhead) {
+        if (this.firstByteRecorded || trackId != this.changedToTrack) return;
+        this.firstByteRecorded = true;
+        (fromReadAhead ? this.firstBytePrefetchedNanos : this.firstByteColdNanos).record(System.nanoTime() - this.changedAtNanos);
+    }
+
+    /**
+     * Records the latency from a track change to the audio element playing, as measured by the page.
+     */
+    public synchronized void reportPlayingLatency(final long millis, final boolean prefetched) {
+        if (millis < 0) return;
+        (prefetched ? this.playingPrefetchedMillis : this.playingColdMillis).record(millis);
+    }
+
+    private void changeTo(final int newPosition) {
+        this.position = this.playOrder.isEmpty() ? -1 : newPosition;
+        this.version++;
+
+        final Long current = this.currentTrackId();
+        this.changedAtNanos = System.nanoTime();
+        this.changedToTrack = current != null ? current : -1;
+        this.changePrefetched = current != null && this.readAhead.contains(current);
+        this.firstByteRecorded = false;
+    }
+
+    private void prefetchNextIfDue(final long remainingMillis) {
+        if (remainingMillis > this.prefetchLeadMillis) return;
+        final int nextPosition = this.peekNextPosition(true);
+        if (nextPosition < 0) return;
+        final MediaTrack next = this.library.getTrack(this.playOrder.get(nextPosition));
+        if (next != null) this.readAhead.prefetch(next);
+    }
+
+    private int peekNextPosition(final boolean automatic) {
+        if (this.playOrder.isEmpty()) return -1;
+        if (automatic && this.repeat == RepeatMode.ONE) return this.position;
+        if (this.position + 1 < this.playOrder.size()) return this.position + 1;
+        return this.repeat == RepeatMode.OFF ? -1 : 0;
+    }
+
+    private void rebuildPlayOrder(final Long current) {
+        final List<Long> order = new ArrayList<>(this.queued);
+        if (this.shuffle) {
+            Collections.shuffle(order, this.random);
+            // The playing track stays where it is: first in the new order.
+            if (current != null && order.remove(current)) order.add(0, current);
+        }
+        this.playOrder = Collections.unmodifiableList(order);
+        this.position = current != null ? Math.max(0, this.playOrder.indexOf(current)) : (order.isEmpty() ? -1 : 0);
+    }
+
+    private void pushHistory() {
+        final Long current = this.currentTrackId();
+        if (current == null) return;
+        this.history.addLast(current);
+        while (this.history.size() > HISTORY_SIZE) this.history.pollFirst();
+    }
+
+    private Long currentTrackId() {
+        return this.position >= 0 && this.position < this.playOrder.size() ? this.playOrder.get(this.position) : null;
+    }
+
+    public synchronized JSONObject getState() {
+        final var state = new JSONObject();
+        state.put("version", this.version);
+        state.put("length", this.queued.size());
+        state.put("shuffle", this.shuffle);
+        state.put("repeat", this.repeat.name().toLowerCase(Locale.ROOT));
+        state.put("historySize", this.history.size());
+
+        final Long current = this.currentTrackId();
+        final MediaTrack track = current != null ? this.library.getTrack(current) : null;
+        state.put("current", track != null ? track.toJson() : null);
+        state.put("queueIndex", current != null ? this.queued.indexOf(current) : -1);
+        state.put("prefetched", this.changePrefetched);
+
+        final var upcoming = new JSONArray();
+        for (int i = 1; i <= UPCOMING_PREVIEW && this.position >= 0 && this.position + i < this.playOrder.size(); i++) {
+            upcoming.add(this.playOrder.get(this.position + i));
+        }
+        state.put("upcoming", upcoming);
+        return state;
+    }
+
+    public synchronized JSONObject getStats() {
+        final long micro = TimeUnit.MICROSECONDS.toNanos(1);
+        final var firstByte = new JSONObject();
+        firstByte.put("cold", this.firstByteColdNanos.toJson(micro));
+        firstByte.put("prefetched", this.firstBytePrefetchedNanos.toJson(micro));
+
+        final var playing = new JSONObject();
+        playing.put("cold", this.playingColdMillis.toJson(1));
+        playing.put("prefetched", this.playingPrefetchedMillis.toJson(1));
+
+        final var stats = new JSONObject();
+        stats.put("prefetchLeadMillis", this.prefetchLeadMillis);
+        stats.put("changeToFirstByteMicros", firstByte);
+        stats.put("changeToPlayingMillis", playing);
+        stats.put("readAhead", this.readAhead.getStats());
+        return stats;
+    }
+
+}
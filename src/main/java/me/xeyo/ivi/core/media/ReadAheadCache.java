@@ -0,0 +1,144 @@
+package me.xeyo.ivi.core.media;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the first bytes of upcoming tracks in direct buffers, so the request the audio element makes when the
+ * track changes is answered from memory instead of a cold file open and read. Bounded in total bytes with LRU
+ * eviction; an entry only counts as a hit while the file still has the size and modification time it was read at.
+ */
+public class ReadAheadCache {
+
+    private final int headBytes;
+    private final long maxBytes;
+
+    private final LinkedHashMap<Long, Head> heads = new LinkedHashMap<>(16, 0.75f, true);
+    private long usedBytes;
+
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+    private final ExecutorService prefetcher = Executors.newSingleThreadExecutor(runnable -> {
+        final var thread = new Thread(runnable, "ivi-media-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong prefetches = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong bytesServed = new AtomicLong();
+
+    public ReadAheadCache(final int headBytes, final long maxBytes) {
+        this.headBytes = headBytes;
+        this.maxBytes = maxBytes;
+    }
+
+    public static ReadAheadCache fromSystemProperties() {
+        return new ReadAheadCache(Integer.getInteger("ivi.media.readAheadHeadBytes", 1024 * 1024),
+                Long.getLong("ivi.media.readAheadBytes", 8L * 1024 * 1024));
+    }
+
+    /**
+     * Reads the head of {@code track} in the background unless it is cached or already being read.
+     */
+    public void prefetch(final MediaTrack track) {
+        synchronized (this.heads) {
+            if (this.heads.containsKey(track.id())) return;
+        }
+        if (!this.inFlight.add(track.id())) return;
+
+        this.prefetcher.execute(() -> {
+            try {
+                final Path file = Path.of(track.path());
+                final long size = Files.size(file);
+                final long lastModified = Files.getLastModifiedTime(file).toMillis();
+                final ByteBuffer buffer = ByteBuffer.allocateDirect((int) Math.min(this.headBytes, size));
+                try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                    while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+                        // Keep reading until the head is full or the file ends.
+                    }
+                }
+                buffer.flip();
+                this.put(track.id(), new Head(buffer.asReadOnlyBuffer(), size, lastModified));
+                this.prefetches.incrementAndGet();
+            } catch (final IOException e) {
+                System.err.println("[MEDIA] Failed to prefetch " + track.path() + ": " + e.getMessage());
+            } finally {
+                this.inFlight.remove(track.id());
+            }
+        });
+    }
+
+    /**
+     * Returns a view of the cached head of {@code trackId}, or {@code null} if it is not cached or the file changed.
+     */
+    public ByteBuffer get(final long trackId, final long size, final long lastModified) {
+        final Head head;
+        synchronized (this.heads) {
+            head = this.heads.get(trackId);
+        }
+        if (head == null || head.size != size || head.lastModified != lastModified) {
+            this.misses.incrementAndGet();
+            return null;
+        }
+        this.hits.incrementAndGet();
+        return head.content.duplicate();
+    }
+
+    public boolean contains(final long trackId) {
+        synchronized (this.heads) {
+            return this.heads.containsKey(trackId);
+        }
+    }
+
+    public void recordServed(final long bytes) {
+        this.bytesServed.addAndGet(bytes);
+    }
+
+    private void put(final long trackId, final Head head) {
+        synchronized (this.heads) {
+            final Head previous = this.heads.put(trackId, head);
+            if (previous != null) this.usedBytes -= previous.content.capacity();
+            this.usedBytes += head.content.capacity();
+
+            final Iterator<Head> eldest = this.heads.values().iterator();
+            while (this.usedBytes > this.maxBytes && eldest.hasNext()) {
+                final Head evicted = eldest.next();
+                if (evicted == head) break;
+                this.usedBytes -= evicted.content.capacity();
+                eldest.remove();
+            }
+        }
+    }
+
+    public JSONObject getStats() {
+        final var stats = new JSONObject();
+        synchronized (this.heads) {
+            stats.put("entries", this.heads.size());
+            stats.put("usedBytes", this.usedBytes);
+        }
+        stats.put("maxBytes", this.maxBytes);
+        stats.put("headBytes", this.headBytes);
+        stats.put("prefetches", this.prefetches.get());
+        stats.put("hits", this.hits.get());
+        stats.put("misses", this.misses.get());
+        stats.put("bytesServed", this.bytesServed.get());
+        return stats;
+    }
+
+    private record Head(ByteBuffer content, long size, long lastModified) {
+    }
+
+}
@@ -0,0 +1,475 @@
+package me.xeyo.ivi.core.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Reads title, artist, album, track number and duration from ID3v1/ID3v2 (MP3), Vorbis comments (FLAC, Ogg
+ * Vorbis, Opus) and iTunes metadata atoms (MP4/M4A). Only the headers are read, through positional channel
+ * reads, never the audio data. Anything missing falls back to the file name or stays empty.
+ * <p>
+ * Embedded cover art (ID3 {@code APIC}, FLAC {@code PICTURE}, MP4 {@code covr}) is not decoded here; only the
+ * file offset and length of the image bytes are recorded so they can be read later on demand.
+ */
+public final class TagReader {
+
+    public static final Set<String> SUPPORTED_EXTENSIONS = Set.of("mp3", "flac", "ogg", "oga", "opus", "m4a", "mp4", "aac");
+
+    private static final int MAX_ID3_BYTES = 512 * 1024;
+    private static final int MAX_FLAC_BLOCK_BYTES = 256 * 1024;
+    private static final int OGG_SCAN_BYTES = 64 * 1024;
+    private static final int MAX_MOOV_BYTES = 8 * 1024 * 1024;
+
+    private TagReader() {
+    }
+
+    public static boolean isSupported(final Path file) {
+        return SUPPORTED_EXTENSIONS.contains(extensionOf(file));
+    }
+
+    public static MediaTrack read(final Path file, final long size, final long lastModified) throws IOException {
+        final var tags = new Tags();
+        final var extension = extensionOf(file);
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            switch (extension) {
+                case "mp3" -> readMp3(channel, tags);
+                case "flac" -> readFlac(channel, tags);
+                case "ogg", "oga", "opus" -> readOgg(channel, tags);
+                case "m4a", "mp4", "aac" -> readMp4(channel, tags);
+                default -> {
+                }
+            }
+        }
+
+        final var absolutePath = file.toAbsolutePath().toString();
+        final var fileName = file.getFileName().toString();
+        final var title = tags.title != null ? tags.title : fileName.substring(0, Math.max(0, fileName.lastIndexOf('.')));
+        return new MediaTrack(MediaTrack.idOf(absolutePath), absolutePath, title,
+                tags.artist != null ? tags.artist : "", tags.album != null ? tags.album : "",
+                tags.trackNumber, tags.durationMillis, extension, size, lastModified, tags.artOffset, tags.artLength);
+    }
+
+    private static String extensionOf(final Path file) {
+        final var name = file.getFileName().toString();
+        final int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot + 1).toLowerCase(Locale.ROOT);
+    }
+
+    // ===== MP3 =====
+
+    private static void readMp3(final FileChannel channel, final Tags tags) throws IOException {
+        long audioStart = 0;
+        final ByteBuffer header = readAt(channel, 0, 10);
+        if (header.remaining() == 10 && header.get(0) == 'I' && header.get(1) == 'D' && header.get(2) == '3') {
+            final int major = header.get(3);
+            final int tagSize = syncsafe(header, 6);
+            audioStart = 10L + tagSize;
+            readId3v2(readAt(channel, 10, Math.min(tagSize, MAX_ID3_BYTES)), 10, major, tags);
+        }
+
+        if (tags.title == null && channel.size() >= 128) {
+            final ByteBuffer v1 = readAt(channel, channel.size() - 128, 128);
+            if (v1.get(0) == 'T' && v1.get(1) == 'A' && v1.get(2) == 'G') {
+                tags.title = latin1(v1, 3, 30);
+                tags.artist = tags.artist != null ? tags.artist : latin1(v1, 33, 30);
+                tags.album = tags.album != null ? tags.album : latin1(v1, 63, 30);
+                if (tags.trackNumber == 0 && v1.get(125) == 0) tags.trackNumber = v1.get(126) & 0xff;
+            }
+        }
+
+        if (tags.durationMillis == 0) {
+            tags.durationMillis = estimateMp3Duration(channel, audioStart);
+        }
+    }
+
+    private static void readId3v2(final ByteBuffer tag, final long tagFileOffset, final int major, final Tags tags) {
+        final int idLength = major == 2 ? 3 : 4;
+        final int headerLength = major == 2 ? 6 : 10;
+        int offset = 0;
+        while (offset + headerLength <= tag.limit()) {
+            if (tag.get(offset) == 0) break;
+
+            final var id = new String(bytes(tag, offset, idLength), StandardCharsets.ISO_8859_1);
+            final int frameSize = switch (major) {
+                case 2 -> ((tag.get(offset + 3) & 0xff) << 16) | ((tag.get(offset + 4) & 0xff) << 8) | (tag.get(offset + 5) & 0xff);
+                case 4 -> syncsafe(tag, offset + 4);
+                default -> tag.getInt(offset + 4);
+            };
+            final int dataStart = offset + headerLength;
+            if (frameSize <= 0) break;
+            if (dataStart + frameSize > tag.limit()) {
+                // Large pictures can reach past the part of the tag that was read; their header is enough.
+                if (("APIC".equals(id) || "PIC".equals(id)) && tags.artLength == 0) {
+                    readId3Picture(tag, dataStart, frameSize, tagFileOffset, major == 2, tags);
+                }
+                break;
+            }
+
+            switch (id) {
+                case "TIT2", "TT2" -> tags.title = id3Text(tag, dataStart, frameSize);
+                case "TPE1", "TP1" -> tags.artist = id3Text(tag, dataStart, frameSize);
+                case "TALB", "TAL" -> tags.album = id3Text(tag, dataStart, frameSize);
+                case "TRCK", "TRK" -> tags.trackNumber = parseTrackNumber(id3Text(tag, dataStart, frameSize));
+                case "TLEN", "TLE" -> tags.durationMillis = parseLong(id3Text(tag, dataStart, frameSize));
+                case "APIC", "PIC" -> {
+                    if (tags.artLength == 0) readId3Picture(tag, dataStart, frameSize, tagFileOffset, major == 2, tags);
+                }
+                default -> {
+                }
+            }
+            offset = dataStart + frameSize;
+        }
+    }
+
+    /**
+     * APIC: encoding, MIME type (v2.2: three character format), picture type, description, then the image data.
+     */
+    private static void readId3Picture(final ByteBuffer tag, final int start, final int frameSize, final long tagFileOffset,
+                                       final boolean version22, final Tags tags) {
+        final int limit = tag.limit();
+        int offset = start;
+        if (offset >= limit) return;
+        final int encoding = tag.get(offset++);
+        if (version22) {
+            offset += 3;
+        } else {
+            while (offset < limit && tag.get(offset) != 0) offset++;
+            offset++;
+        }
+        offset++;
+        final boolean wide = encoding == 1 || encoding == 2;
+        while (offset + (wide ? 1 : 0) < limit) {
+            if (wide ? tag.get(offset) == 0 && tag.get(offset + 1) == 0 : tag.get(offset) == 0) break;
+            offset += wide ? 2 : 1;
+        }
+        offset += wide ? 2 : 1;
+        if (offset > limit || offset >= start + frameSize) return;
+
+        tags.artOffset = tagFileOffset + offset;
+        tags.artLength = frameSize - (offset - start);
+    }
+
+    private static String id3Text(final ByteBuffer tag, final int start, final int length) {
+        if (length < 2) return null;
+        final Charset charset = switch (tag.get(start)) {
+            case 1 -> StandardCharsets.UTF_16;
+            case 2 -> StandardCharsets.UTF_16BE;
+            case 3 -> StandardCharsets.UTF_8;
+            default -> StandardCharsets.ISO_8859_1;
+        };
+        return clean(new String(bytes(tag, start + 1, length - 1), charset));
+    }
+
+    private static final int[][] MPEG1_BITRATES = {
+            {0, 32, 64, 96, 128, 160, 192, 224, 256, 288, 320, 352, 384, 416, 448},
+            {0, 32, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320, 384},
+            {0, 32, 40, 48, 56, 64, 80, 96, 112, 128, 160, 192, 224, 256, 320}
+    };
+    private static final int[] MPEG2_BITRATES = {0, 8, 16, 24, 32, 40, 48, 56, 64, 80, 96, 112, 128, 144, 160};
+    private static final int[][] SAMPLE_RATES = {{11025, 12000, 8000}, {0, 0, 0}, {22050, 24000, 16000}, {44100, 48000, 32000}};
+
+    /**
+     * Uses the frame count of a Xing/Info header when there is one, otherwise assumes a constant bitrate.
+     */
+    private static long estimateMp3Duration(final FileChannel channel, final long audioStart) throws IOException {
+        final ByteBuffer buffer = readAt(channel, audioStart, 4096);
+        for (int i = 0; i + 4 <= buffer.limit(); i++) {
+            if ((buffer.get(i) & 0xff) != 0xff || (buffer.get(i + 1) & 0xe0) != 0xe0) continue;
+
+            final int versionBits = (buffer.get(i + 1) >> 3) & 0x03;
+            final int layerBits = (buffer.get(i + 1) >> 1) & 0x03;
+            final int bitrateIndex = (buffer.get(i + 2) >> 4) & 0x0f;
+            final int sampleRateIndex = (buffer.get(i + 2) >> 2) & 0x03;
+            if (versionBits == 1 || layerBits == 0 || bitrateIndex == 0 || bitrateIndex == 15 || sampleRateIndex == 3) continue;
+
+            final boolean mpeg1 = versionBits == 3;
+            final int layer = 4 - layerBits;
+            final int bitrate = mpeg1 ? MPEG1_BITRATES[layer - 1][bitrateIndex] : MPEG2_BITRATES[bitrateIndex];
+            final int sampleRate = SAMPLE_RATES[versionBits][sampleRateIndex];
+            final boolean mono = ((buffer.get(i + 3) >> 6) & 0x03) == 3;
+
+            final int xingOffset = i + 4 + (mpeg1 ? (mono ? 17 : 32) : (mono ? 9 : 17));
+            if (xingOffset + 12 <= buffer.limit()) {
+                final var marker = new String(bytes(buffer, xingOffset, 4), StandardCharsets.ISO_8859_1);
+                if (("Xing".equals(marker) || "Info".equals(marker)) && (buffer.getInt(xingOffset + 4) & 0x01) != 0) {
+                    final long frames = buffer.getInt(xingOffset + 8) & 0xffffffffL;
+                    final int samplesPerFrame = layer == 1 ? 384 : (layer == 3 && !mpeg1 ? 576 : 1152);
+                    return frames * samplesPerFrame * 1000 / sampleRate;
+                }
+            }
+            return (channel.size() - audioStart - i) * 8 / bitrate;
+        }
+        return 0;
+    }
+
+    // ===== FLAC =====
+
+    private static void readFlac(final FileChannel channel, final Tags tags) throws IOException {
+        final ByteBuffer magic = readAt(channel, 0, 4);
+        if (magic.remaining() < 4 || magic.getInt(0) != 0x664C6143) return;
+
+        long offset = 4;
+        boolean last = false;
+        while (!last && offset + 4 <= channel.size()) {
+            final ByteBuffer blockHeader = readAt(channel, offset, 4);
+            if (blockHeader.remaining() < 4) break;
+            last = (blockHeader.get(0) & 0x80) != 0;
+            final int type = blockHeader.get(0) & 0x7f;
+            final int length = ((blockHeader.get(1) & 0xff) << 16) | ((blockHeader.get(2) & 0xff) << 8) | (blockHeader.get(3) & 0xff);
+
+            if (type == 0 && length >= 18) {
+                final ByteBuffer info = readAt(channel, offset + 4, 18);
+                final int sampleRate = ((info.get(10) & 0xff) << 12) | ((info.get(11) & 0xff) << 4) | ((info.get(12) & 0xf0) >> 4);
+                final long totalSamples = ((long) (info.get(13) & 0x0f) << 32) | (info.getInt(14) & 0xffffffffL);
+                if (sampleRate > 0) tags.durationMillis = totalSamples * 1000 / sampleRate;
+            } else if (type == 4 && length <= MAX_FLAC_BLOCK_BYTES) {
+                readVorbisComment(readAt(channel, offset + 4, length), 0, tags);
+            } else if (type == 6 && tags.artLength == 0) {
+                readFlacPicture(channel, offset + 4, tags);
+            }
+            offset += 4L + length;
+        }
+    }
+
+    /**
+     * PICTURE: type, MIME type, description, width, height, depth, colors, then the length and the image data.
+     */
+    private static void readFlacPicture(final FileChannel channel, final long blockStart, final Tags tags) throws IOException {
+        long offset = blockStart + 4;
+        final int mimeLength = readAt(channel, offset, 4).getInt();
+        offset += 4 + mimeLength;
+        final int descriptionLength = readAt(channel, offset, 4).getInt();
+        offset += 4 + descriptionLength + 16;
+        final int dataLength = readAt(channel, offset, 4).getInt();
+        if (mimeLength < 0 || descriptionLength < 0 || dataLength <= 0) return;
+        tags.artOffset = offset + 4;
+        tags.artLength = dataLength;
+    }
+
+    // ===== OGG =====
+
+    private static void readOgg(final FileChannel channel, final Tags tags) throws IOException {
+        final ByteBuffer head = readAt(channel, 0, OGG_SCAN_BYTES);
+        final ByteBuffer packets = ByteBuffer.allocate(head.limit());
+        int packetCount = 0;
+        int firstPacketEnd = -1;
+        int offset = 0;
+
+        // Reassemble the first two packets (identification and comment header) from the page payloads.
+        while (packetCount < 2 && offset + 27 <= head.limit() && head.getInt(offset) == 0x4F676753) {
+            final int segments = head.get(offset + 26) & 0xff;
+            int payload = offset + 27 + segments;
+            for (int s = 0; s < segments; s++) {
+                final int lacing = head.get(offset + 27 + s) & 0xff;
+                if (packetCount < 2) {
+                    if (payload + lacing > head.limit()) return;
+                    packets.put(bytes(head, payload, lacing));
+                    if (lacing < 255 && ++packetCount == 1) firstPacketEnd = packets.position();
+                }
+                payload += lacing;
+            }
+            offset = payload;
+        }
+        if (packetCount < 2) return;
+        packets.flip();
+
+        final boolean opus = startsWith(packets, 0, "OpusHead");
+        final int sampleRate = opus ? 48000 : (startsWith(packets, 1, "vorbis") ? packets.order(ByteOrder.LITTLE_ENDIAN).getInt(12) : 0);
+        packets.order(ByteOrder.BIG_ENDIAN);
+
+        final int commentStart = firstPacketEnd + (opus ? 8 : 7);
+        if (commentStart < packets.limit()) {
+            readVorbisComment(packets.slice(commentStart, packets.limit() - commentStart), 0, tags);
+        }
+
+        if (sampleRate > 0) {
+            final long tailStart = Math.max(0, channel.size() - OGG_SCAN_BYTES);
+            final ByteBuffer tail = readAt(channel, tailStart, (int) (channel.size() - tailStart));
+            for (int i = tail.limit() - 27; i >= 0; i--) {
+                if (tail.getInt(i) == 0x4F676753) {
+                    final long granule = tail.order(ByteOrder.LITTLE_ENDIAN).getLong(i + 6);
+                    tail.order(ByteOrder.BIG_ENDIAN);
+                    // Opus granules include the pre-skip, which is small enough to ignore here.
+                    if (granule > 0) tags.durationMillis = granule * 1000 / sampleRate;
+                    break;
+                }
+            }
+        }
+    }
+
+    private static void readVorbisComment(final ByteBuffer block, final int start, final Tags tags) {
+        final ByteBuffer comment = block.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int offset = start;
+        if (offset + 4 > comment.limit()) return;
+        offset += 4 + comment.getInt(offset);
+        if (offset + 4 > comment.limit() || offset < 0) return;
+        final int count = comment.getInt(offset);
+        offset += 4;
+
+        for (int i = 0; i < count && offset + 4 <= comment.limit(); i++) {
+            final int length = comment.getInt(offset);
+            offset += 4;
+            if (length < 0 || offset + length > comment.limit()) return;
+            final var entry = new String(bytes(comment, offset, length), StandardCharsets.UTF_8);
+            offset += length;
+
+            final int separator = entry.indexOf('=');
+            if (separator <= 0) continue;
+            final var value = clean(entry.substring(separator + 1));
+            switch (entry.substring(0, separator).toUpperCase(Locale.ROOT)) {
+                case "TITLE" -> tags.title = value;
+                case "ARTIST" -> tags.artist = value;
+                case "ALBUM" -> tags.album = value;
+                case "TRACKNUMBER" -> tags.trackNumber = parseTrackNumber(value);
+                default -> {
+                }
+            }
+        }
+    }
+
+    // ===== MP4 =====
+
+    private static void readMp4(final FileChannel channel, final Tags tags) throws IOException {
+        long offset = 0;
+        while (offset + 8 <= channel.size()) {
+            final ByteBuffer header = readAt(channel, offset, 16);
+            long size = header.getInt(0) & 0xffffffffL;
+            final var type = new String(bytes(header, 4, 4), StandardCharsets.ISO_8859_1);
+            int headerLength = 8;
+            if (size == 1 && header.limit() >= 16) {
+                size = header.getLong(8);
+                headerLength = 16;
+            } else if (size == 0) {
+                size = channel.size() - offset;
+            }
+            if (size < headerLength) return;
+
+            if ("moov".equals(type)) {
+                if (size - headerLength > MAX_MOOV_BYTES) return;
+                readMp4Box(readAt(channel, offset + headerLength, (int) (size - headerLength)), offset + headerLength, "moov", tags);
+                return;
+            }
+            offset += size;
+        }
+    }
+
+    private static void readMp4Box(final ByteBuffer box, final long boxFileOffset, final String parent, final Tags tags) {
+        int offset = "meta".equals(parent) ? 4 : 0;
+        while (offset + 8 <= box.limit()) {
+            final int size = box.getInt(offset);
+            if (size < 8 || offset + size > box.limit()) return;
+            final var type = new String(bytes(box, offset + 4, 4), StandardCharsets.ISO_8859_1);
+            final ByteBuffer content = box.slice(offset + 8, size - 8);
+
+            switch (type) {
+                case "udta", "meta", "ilst" -> readMp4Box(content, boxFileOffset + offset + 8, type, tags);
+                case "mvhd" -> {
+                    final boolean version1 = content.get(0) == 1;
+                    final long timescale = content.getInt(version1 ? 20 : 12) & 0xffffffffL;
+                    final long duration = version1 ? content.getLong(24) : content.getInt(16) & 0xffffffffL;
+                    if (timescale > 0) tags.durationMillis = duration * 1000 / timescale;
+                }
+                case "©nam" -> tags.title = mp4Text(content);
+                case "©ART" -> tags.artist = mp4Text(content);
+                case "©alb" -> tags.album = mp4Text(content);
+                case "covr" -> {
+                    // A data atom: size, "data", type, locale, then the image bytes.
+                    final int dataSize = content.limit() >= 16 ? content.getInt(0) : 0;
+                    if (dataSize > 16 && dataSize <= content.limit() && tags.artLength == 0) {
+                        tags.artOffset = boxFileOffset + offset + 8 + 16;
+                        tags.artLength = dataSize - 16;
+                    }
+                }
+                case "trkn" -> {
+                    if (content.limit() >= 20) tags.trackNumber = content.getShort(18) & 0xffff;
+                }
+                default -> {
+                }
+            }
+            offset += size;
+        }
+    }
+
+    /**
+     * Reads the UTF-8 payload of the {@code data} atom inside an ilst item.
+     */
+    private static String mp4Text(final ByteBuffer item) {
+        if (item.limit() < 16) return null;
+        final int size = item.getInt(0);
+        if (size < 16 || size > item.limit()) return null;
+        return clean(new String(bytes(item, 16, size - 16), StandardCharsets.UTF_8));
+    }
+
+    // ===== Helpers =====
+
+    private static ByteBuffer readAt(final FileChannel channel, final long position, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(length, channel.size() - position)));
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) break;
+        }
+        return buffer.flip();
+    }
+
+    private static byte[] bytes(final ByteBuffer buffer, final int offset, final int length) {
+        final byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return bytes;
+    }
+
+    private static boolean startsWith(final ByteBuffer buffer, final int offset, final String prefix) {
+        if (offset + prefix.length() > buffer.limit()) return false;
+        for (int i = 0; i < prefix.length(); i++) {
+            if (buffer.get(offset + i) != prefix.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private static int syncsafe(final ByteBuffer buffer, final int offset) {
+        return ((buffer.get(offset) & 0x7f) << 21) | ((buffer.get(offset + 1) & 0x7f) << 14)
+                | ((buffer.get(offset + 2) & 0x7f) << 7) | (buffer.get(offset + 3) & 0x7f);
+    }
+
+    private static String latin1(final ByteBuffer buffer, final int offset, final int length) {
+        return clean(new String(bytes(buffer, offset, length), StandardCharsets.ISO_8859_1));
+    }
+
+    private static String clean(final String value) {
+        final int nul = value.indexOf('\0');
+        final var trimmed = (nul >= 0 ? value.substring(0, nul) : value).trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static int parseTrackNumber(final String value) {
+        if (value == null) return 0;
+        final int slash = value.indexOf('/');
+        return (int) parseLong(slash >= 0 ? value.substring(0, slash) : value);
+    }
+
+    private static long parseLong(final String value) {
+        if (value == null) return 0;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    private static final class Tags {
+        private String title;
+        private String artist;
+        private String album;
+        private int trackNumber;
+        private long durationMillis;
+        private long artOffset;
+        private int artLength;
+    }
+
+}
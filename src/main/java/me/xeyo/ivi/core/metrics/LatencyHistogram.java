@@ -0,0 +1,101 @@
+package me.xeyo.ivi.core.metrics;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram with fixed bucket bounds, recorded without locks: a sample costs a short scan of the bounds and
+ * two atomic adds. The bounds are the ones exported to Prometheus, so the exported buckets are exact; percentiles are
+ * interpolated within a bucket the way Prometheus' {@code histogram_quantile} does.
+ */
+public final class LatencyHistogram {
+
+    /**
+     * Upper bounds of the buckets in microseconds; samples above the last bound fall into a final unbounded bucket.
+     */
+    private static final long[] BOUNDS_MICROS = {
+            50, 100, 250, 500, 1_000, 2_500, 5_000, 10_000, 25_000, 50_000, 100_000, 250_000, 500_000,
+            1_000_000, 2_500_000, 5_000_000, 10_000_000
+    };
+
+    /**
+     * The bounds in seconds as Prometheus {@code le} labels, {@code +Inf} for the last bucket.
+     */
+    static final String[] BOUND_LABELS = new String[BOUNDS_MICROS.length + 1];
+
+    private static final long[] BOUNDS_NANOS = new long[BOUNDS_MICROS.length];
+
+    static {
+        for (int i = 0; i < BOUNDS_MICROS.length; i++) {
+            BOUNDS_NANOS[i] = TimeUnit.MICROSECONDS.toNanos(BOUNDS_MICROS[i]);
+            BOUND_LABELS[i] = BigDecimal.valueOf(BOUNDS_MICROS[i], 6).stripTrailingZeros().toPlainString();
+        }
+        BOUND_LABELS[BOUNDS_MICROS.length] = "+Inf";
+    }
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BOUNDS_NANOS.length + 1);
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    public void record(final long nanos) {
+        int bucket = 0;
+        while (bucket < BOUNDS_NANOS.length && nanos > BOUNDS_NANOS[bucket]) bucket++;
+        this.buckets.incrementAndGet(bucket);
+        this.totalNanos.add(nanos);
+        // Only a new maximum pays for the CAS.
+        if (nanos > this.maxNanos.get()) this.maxNanos.accumulateAndGet(nanos, Math::max);
+    }
+
+    /**
+     * A copy of the counts; buckets recorded while copying may or may not be included.
+     */
+    public Snapshot snapshot() {
+        final long[] counts = new long[this.buckets.length()];
+        long count = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = this.buckets.get(i);
+            count += counts[i];
+        }
+        return new Snapshot(counts, count, this.totalNanos.sum(), this.maxNanos.get());
+    }
+
+    public record Snapshot(long[] counts, long count, long totalNanos, long maxNanos) {
+
+        /**
+         * The latency below which {@code percentile} percent of the samples fall, in nanoseconds.
+         */
+        public long percentileNanos(final double percentile) {
+            if (this.count == 0) return 0;
+            final double rank = this.count * percentile / 100.0;
+            long seen = 0;
+            for (int bucket = 0; bucket < this.counts.length; bucket++) {
+                if (this.counts[bucket] == 0 || seen + this.counts[bucket] < rank) {
+                    seen += this.counts[bucket];
+                    continue;
+                }
+                if (bucket == BOUNDS_NANOS.length) return this.maxNanos;
+                final long lower = bucket == 0 ? 0 : BOUNDS_NANOS[bucket - 1];
+                final long upper = Math.min(BOUNDS_NANOS[bucket], this.maxNanos);
+                final double fraction = (rank - seen) / this.counts[bucket];
+                return Math.max(lower, Math.min(upper, lower + Math.round((upper - lower) * fraction)));
+            }
+            return this.maxNanos;
+        }
+
+        public JSONObject toJson() {
+            final var json = new JSONObject();
+            json.put("count", this.count);
+            json.put("meanMicros", this.count == 0 ? 0 : this.totalNanos / this.count / 1000);
+            json.put("p50Micros", this.percentileNanos(50) / 1000);
+            json.put("p90Micros", this.percentileNanos(90) / 1000);
+            json.put("p99Micros", this.percentileNanos(99) / 1000);
+            json.put("maxMicros", this.maxNanos / 1000);
+            return json;
+        }
+    }
+
+}
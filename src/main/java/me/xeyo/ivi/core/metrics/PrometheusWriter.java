@@ -0,0 +1,65 @@
+package me.xeyo.ivi.core.metrics;
+
+/**
+ * Builds a response in the Prometheus text exposition format (version 0.0.4). Every metric family is opened with
+ * {@link #family} and followed by its samples; labels are passed as alternating names and values.
+ */
+public final class PrometheusWriter {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final StringBuilder text = new StringBuilder(16 * 1024);
+
+    public PrometheusWriter family(final String name, final String type, final String help) {
+        this.text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        this.text.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        return this;
+    }
+
+    public PrometheusWriter sample(final String name, final double value, final String... labels) {
+        this.text.append(name);
+        if (labels.length > 0) {
+            this.text.append('{');
+            for (int i = 0; i + 1 < labels.length; i += 2) {
+                if (i > 0) this.text.append(',');
+                this.text.append(labels[i]).append("=\"");
+                appendEscaped(labels[i + 1]);
+                this.text.append('"');
+            }
+            this.text.append('}');
+        }
+        this.text.append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            this.text.append((long) value);
+        } else {
+            this.text.append(value);
+        }
+        this.text.append('\n');
+        return this;
+    }
+
+    /**
+     * A family with a single unlabeled sample.
+     */
+    public PrometheusWriter single(final String name, final String type, final String help, final double value) {
+        return this.family(name, type, help).sample(name, value);
+    }
+
+    private void appendEscaped(final String value) {
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+                case '\\' -> this.text.append("\\\\");
+                case '"' -> this.text.append("\\\"");
+                case '\n' -> this.text.append("\\n");
+                default -> this.text.append(c);
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return this.text.toString();
+    }
+
+}
@@ -0,0 +1,186 @@
+package me.xeyo.ivi.core.metrics;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request latencies per transport, method, route and status. Routes are recorded by their pattern
+ * ({@code /api/app/settings/{key}}), never by the concrete path, so the number of series stays bounded.
+ * <p>
+ * Recording does not allocate once a series exists: the route map is read without locking and the few series of a
+ * route are kept in a copy-on-write array, so only the first request of a new method/status pair takes a lock.
+ */
+public final class RequestMetrics {
+
+    /**
+     * Route label of requests that matched no route.
+     */
+    public static final String UNMATCHED_ROUTE = "unmatched";
+
+    /**
+     * Method label of requests whose method is not a standard HTTP method.
+     */
+    public static final String OTHER_METHOD = "OTHER";
+
+    private static final Set<String> METHODS = Set.of("GET", "HEAD", "POST", "PUT", "PATCH", "DELETE", "OPTIONS");
+
+    private static final String START_ATTRIBUTE = "ivi.metrics.start";
+
+    public enum Transport {
+        HTTP("http"), BRIDGE("bridge");
+
+        private final String label;
+
+        Transport(final String label) {
+            this.label = label;
+        }
+    }
+
+    private final Map<Transport, ConcurrentHashMap<String, Route>> routes = new EnumMap<>(Transport.class);
+
+    public RequestMetrics() {
+        for (final Transport transport : Transport.values()) {
+            this.routes.put(transport, new ConcurrentHashMap<>());
+        }
+    }
+
+    /**
+     * Times every HTTP request from the first before-handler to the last after-handler.
+     */
+    public void install(final Javalin javalin) {
+        javalin.before(ctx -> ctx.attribute(START_ATTRIBUTE, System.nanoTime()));
+        javalin.after(ctx -> {
+            final Long start = ctx.attribute(START_ATTRIBUTE);
+            if (start == null) return;
+            this.record(Transport.HTTP, ctx.method().name(), routeOf(ctx), ctx.statusCode(), System.nanoTime() - start);
+        });
+    }
+
+    private static String routeOf(final Context ctx) {
+        try {
+            final String path = ctx.endpointHandlerPath();
+            return path == null || path.isEmpty() ? UNMATCHED_ROUTE : path;
+        } catch (final IllegalStateException e) {
+            // No endpoint handler ran for this request.
+            return UNMATCHED_ROUTE;
+        }
+    }
+
+    /**
+     * The method as a label: upper case if it is a standard HTTP method, {@link #OTHER_METHOD} otherwise, so a
+     * caller choosing arbitrary method names cannot add series.
+     */
+    public static String methodLabel(final String method) {
+        final String upper = method == null ? "" : method.toUpperCase(Locale.ROOT);
+        return METHODS.contains(upper) ? upper : OTHER_METHOD;
+    }
+
+    public void record(final Transport transport, final String method, final String route, final int status, final long nanos) {
+        final ConcurrentHashMap<String, Route> transportRoutes = this.routes.get(transport);
+        Route entry = transportRoutes.get(route);
+        if (entry == null) entry = transportRoutes.computeIfAbsent(route, Route::new);
+        entry.series(method, status).histogram.record(nanos);
+    }
+
+    /**
+     * Every series as JSON, busiest first.
+     */
+    public JSONArray toJson() {
+        final List<JSONObject> series = new ArrayList<>();
+        this.forEachSeries((transport, route, entry, snapshot) -> {
+            final JSONObject json = snapshot.toJson();
+            json.put("transport", transport.label);
+            json.put("method", entry.method);
+            json.put("route", route);
+            json.put("status", entry.status);
+            series.add(json);
+        });
+        series.sort(Comparator.comparingLong((JSONObject json) -> json.getLongValue("count")).reversed());
+        return new JSONArray(series);
+    }
+
+    public void writePrometheus(final PrometheusWriter writer) {
+        final String name = "ivi_request_duration_seconds";
+        writer.family(name, "histogram", "Latency of API requests by transport, method, route pattern and status.");
+        this.forEachSeries((transport, route, entry, snapshot) -> {
+            final String status = String.valueOf(entry.status);
+            long cumulative = 0;
+            for (int i = 0; i < snapshot.counts().length; i++) {
+                cumulative += snapshot.counts()[i];
+                writer.sample(name + "_bucket", cumulative, "transport", transport.label, "method", entry.method,
+                        "route", route, "status", status, "le", LatencyHistogram.BOUND_LABELS[i]);
+            }
+            writer.sample(name + "_sum", snapshot.totalNanos() / (double) TimeUnit.SECONDS.toNanos(1), "transport", transport.label,
+                    "method", entry.method, "route", route, "status", status);
+            writer.sample(name + "_count", snapshot.count(), "transport", transport.label, "method", entry.method,
+                    "route", route, "status", status);
+        });
+    }
+
+    private void forEachSeries(final SeriesVisitor visitor) {
+        for (final Map.Entry<Transport, ConcurrentHashMap<String, Route>> transport : this.routes.entrySet()) {
+            for (final Route route : transport.getValue().values()) {
+                for (final Series series : route.series) {
+                    visitor.visit(transport.getKey(), route.pattern, series, series.histogram.snapshot());
+                }
+            }
+        }
+    }
+
+    private interface SeriesVisitor {
+        void visit(Transport transport, String route, Series series, LatencyHistogram.Snapshot snapshot);
+    }
+
+    private static final class Route {
+
+        private final String pattern;
+        private volatile Series[] series = new Series[0];
+
+        private Route(final String pattern) {
+            this.pattern = pattern;
+        }
+
+        private Series series(final String method, final int status) {
+            for (final Series candidate : this.series) {
+                if (candidate.status == status && candidate.method.equals(method)) return candidate;
+            }
+            return this.addSeries(method, status);
+        }
+
+        private synchronized Series addSeries(final String method, final int status) {
+            for (final Series candidate : this.series) {
+                if (candidate.status == status && candidate.method.equals(method)) return candidate;
+            }
+            final var created = new Series(method, status);
+            final Series[] grown = Arrays.copyOf(this.series, this.series.length + 1);
+            grown[grown.length - 1] = created;
+            this.series = grown;
+            return created;
+        }
+    }
+
+    private static final class Series {
+
+        private final String method;
+        private final int status;
+        private final LatencyHistogram histogram = new LatencyHistogram();
+
+        private Series(final String method, final int status) {
+            this.method = method;
+            this.status = status;
+        }
+    }
+
+}
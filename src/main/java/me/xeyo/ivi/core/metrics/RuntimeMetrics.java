@@ -0,0 +1,204 @@
+package me.xeyo.ivi.core.metrics;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryUsage;
+import java.lang.management.PlatformManagedObject;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * JVM and process state read from the platform MXBeans when metrics are requested; nothing is sampled in between.
+ * <p>
+ * Virtual thread scheduler figures come from {@code jdk.management.VirtualThreadSchedulerMXBean}, which only exists
+ * from JDK 24 on; older runtimes report the scheduler as unavailable. Child processes are the CEF renderer, GPU and
+ * utility processes started by the browser.
+ */
+public final class RuntimeMetrics {
+
+    private static final VirtualThreadScheduler VIRTUAL_THREADS = VirtualThreadScheduler.lookup();
+
+    private RuntimeMetrics() {
+    }
+
+    public static JSONObject toJson() {
+        final var memory = ManagementFactory.getMemoryMXBean();
+        final var memoryJson = new JSONObject();
+        memoryJson.put("heap", usageJson(memory.getHeapMemoryUsage()));
+        memoryJson.put("nonHeap", usageJson(memory.getNonHeapMemoryUsage()));
+        final var pools = new JSONArray();
+        for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            final JSONObject poolJson = usageJson(pool.getUsage());
+            poolJson.put("name", pool.getName());
+            poolJson.put("type", pool.getType().name().toLowerCase());
+            pools.add(poolJson);
+        }
+        memoryJson.put("pools", pools);
+
+        final var gc = new JSONArray();
+        for (final GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            final var collectorJson = new JSONObject();
+            collectorJson.put("name", collector.getName());
+            collectorJson.put("collections", collector.getCollectionCount());
+            collectorJson.put("timeMillis", collector.getCollectionTime());
+            gc.add(collectorJson);
+        }
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        final var threadsJson = new JSONObject();
+        threadsJson.put("live", threads.getThreadCount());
+        threadsJson.put("daemon", threads.getDaemonThreadCount());
+        threadsJson.put("peak", threads.getPeakThreadCount());
+        threadsJson.put("started", threads.getTotalStartedThreadCount());
+
+        final var runtime = new JSONObject();
+        runtime.put("uptimeMillis", ManagementFactory.getRuntimeMXBean().getUptime());
+        runtime.put("availableProcessors", Runtime.getRuntime().availableProcessors());
+        runtime.put("systemLoadAverage", ManagementFactory.getOperatingSystemMXBean().getSystemLoadAverage());
+        runtime.put("processCpuMillis", processCpuNanos() / 1_000_000);
+        runtime.put("javaVersion", Runtime.version().toString());
+
+        final var json = new JSONObject();
+        json.put("runtime", runtime);
+        json.put("memory", memoryJson);
+        json.put("gc", gc);
+        json.put("threads", threadsJson);
+        json.put("virtualThreads", VIRTUAL_THREADS.toJson());
+        json.put("childProcesses", childProcessesJson());
+        return json;
+    }
+
+    public static void writePrometheus(final PrometheusWriter writer) {
+        final var memory = ManagementFactory.getMemoryMXBean();
+        final MemoryUsage heap = memory.getHeapMemoryUsage();
+        final MemoryUsage nonHeap = memory.getNonHeapMemoryUsage();
+        writer.family("jvm_memory_used_bytes", "gauge", "Used memory by area.")
+                .sample("jvm_memory_used_bytes", heap.getUsed(), "area", "heap")
+                .sample("jvm_memory_used_bytes", nonHeap.getUsed(), "area", "nonheap");
+        writer.family("jvm_memory_committed_bytes", "gauge", "Committed memory by area.")
+                .sample("jvm_memory_committed_bytes", heap.getCommitted(), "area", "heap")
+                .sample("jvm_memory_committed_bytes", nonHeap.getCommitted(), "area", "nonheap");
+        writer.family("jvm_memory_max_bytes", "gauge", "Maximum memory by area, -1 if undefined.")
+                .sample("jvm_memory_max_bytes", heap.getMax(), "area", "heap")
+                .sample("jvm_memory_max_bytes", nonHeap.getMax(), "area", "nonheap");
+
+        final List<MemoryPoolMXBean> pools = ManagementFactory.getMemoryPoolMXBeans();
+        writer.family("jvm_memory_pool_used_bytes", "gauge", "Used memory by pool.");
+        for (final MemoryPoolMXBean pool : pools) {
+            writer.sample("jvm_memory_pool_used_bytes", pool.getUsage().getUsed(), "pool", pool.getName());
+        }
+
+        final List<GarbageCollectorMXBean> collectors = ManagementFactory.getGarbageCollectorMXBeans();
+        writer.family("jvm_gc_collections_total", "counter", "Collections by collector.");
+        for (final GarbageCollectorMXBean collector : collectors) {
+            writer.sample("jvm_gc_collections_total", collector.getCollectionCount(), "gc", collector.getName());
+        }
+        writer.family("jvm_gc_collection_seconds_total", "counter", "Accumulated collection time by collector.");
+        for (final GarbageCollectorMXBean collector : collectors) {
+            writer.sample("jvm_gc_collection_seconds_total", collector.getCollectionTime() / 1000.0, "gc", collector.getName());
+        }
+
+        final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        writer.single("jvm_threads_live", "gauge", "Live platform threads.", threads.getThreadCount());
+        writer.single("jvm_threads_daemon", "gauge", "Live daemon threads.", threads.getDaemonThreadCount());
+        writer.single("jvm_threads_peak", "gauge", "Peak live platform threads.", threads.getPeakThreadCount());
+        writer.single("jvm_threads_started_total", "counter", "Platform threads started.", threads.getTotalStartedThreadCount());
+        VIRTUAL_THREADS.writePrometheus(writer);
+
+        writer.single("process_uptime_seconds", "gauge", "Time since the JVM started.",
+                ManagementFactory.getRuntimeMXBean().getUptime() / 1000.0);
+        writer.single("process_cpu_seconds_total", "counter", "CPU time of the JVM process.", processCpuNanos() / 1e9);
+
+        long children = 0;
+        long childCpuNanos = 0;
+        for (final ProcessHandle child : ProcessHandle.current().descendants().toList()) {
+            children++;
+            childCpuNanos += child.info().totalCpuDuration().map(Duration::toNanos).orElse(0L);
+        }
+        writer.single("process_children", "gauge", "Live child processes (CEF renderer, GPU and utility processes).", children);
+        writer.single("process_children_cpu_seconds", "gauge", "CPU time of the live child processes.", childCpuNanos / 1e9);
+    }
+
+    private static JSONObject usageJson(final MemoryUsage usage) {
+        final var json = new JSONObject();
+        json.put("used", usage.getUsed());
+        json.put("committed", usage.getCommitted());
+        json.put("max", usage.getMax());
+        return json;
+    }
+
+    private static JSONArray childProcessesJson() {
+        final var processes = new JSONArray();
+        for (final ProcessHandle child : ProcessHandle.current().descendants().toList()) {
+            final ProcessHandle.Info info = child.info();
+            final var json = new JSONObject();
+            json.put("pid", child.pid());
+            json.put("command", info.command().map(command -> Path.of(command).getFileName().toString()).orElse("?"));
+            json.put("cpuMillis", info.totalCpuDuration().map(Duration::toMillis).orElse(-1L));
+            json.put("alive", child.isAlive());
+            processes.add(json);
+        }
+        return processes;
+    }
+
+    private static long processCpuNanos() {
+        return ManagementFactory.getOperatingSystemMXBean() instanceof com.sun.management.OperatingSystemMXBean os
+                ? os.getProcessCpuTime()
+                : -1;
+    }
+
+    /**
+     * Reads {@code jdk.management.VirtualThreadSchedulerMXBean} reflectively, so the class also loads on runtimes
+     * without it.
+     */
+    private record VirtualThreadScheduler(PlatformManagedObject bean, Method parallelism, Method poolSize,
+                                          Method mounted, Method queued) {
+
+        private static VirtualThreadScheduler lookup() {
+            try {
+                final Class<? extends PlatformManagedObject> type =
+                        Class.forName("jdk.management.VirtualThreadSchedulerMXBean").asSubclass(PlatformManagedObject.class);
+                return new VirtualThreadScheduler(ManagementFactory.getPlatformMXBean(type),
+                        type.getMethod("getParallelism"), type.getMethod("getPoolSize"),
+                        type.getMethod("getMountedVirtualThreadCount"), type.getMethod("getQueuedVirtualThreadCount"));
+            } catch (final ReflectiveOperationException | RuntimeException e) {
+                return new VirtualThreadScheduler(null, null, null, null, null);
+            }
+        }
+
+        private long read(final Method getter) {
+            try {
+                return ((Number) getter.invoke(this.bean)).longValue();
+            } catch (final ReflectiveOperationException e) {
+                return -1;
+            }
+        }
+
+        private JSONObject toJson() {
+            final var json = new JSONObject();
+            json.put("available", this.bean != null);
+            if (this.bean != null) {
+                json.put("parallelism", this.read(this.parallelism));
+                json.put("poolSize", this.read(this.poolSize));
+                json.put("mounted", this.read(this.mounted));
+                json.put("queued", this.read(this.queued));
+            }
+            return json;
+        }
+
+        private void writePrometheus(final PrometheusWriter writer) {
+            if (this.bean == null) return;
+            writer.single("jvm_virtual_thread_scheduler_parallelism", "gauge", "Target parallelism of the virtual thread scheduler.", this.read(this.parallelism));
+            writer.single("jvm_virtual_thread_scheduler_pool_size", "gauge", "Carrier threads of the virtual thread scheduler.", this.read(this.poolSize));
+            writer.single("jvm_virtual_threads_mounted", "gauge", "Virtual threads mounted on a carrier.", this.read(this.mounted));
+            writer.single("jvm_virtual_threads_queued", "gauge", "Virtual threads queued to run.", this.read(this.queued));
+        }
+    }
+
+}
@@ -0,0 +1,283 @@
+package me.xeyo.ivi.core.nav;
+
+import java.util.Arrays;
+
+/**
+ * Builds the contraction hierarchy a {@link RoutingIndex} answers queries with.
+ * <p>
+ * Nodes are contracted one at a time, least important first, where importance is the edge difference (shortcuts
+ * added minus edges removed) plus the number of already contracted neighbours, which spreads contraction evenly
+ * over the map. Contracting a node adds a shortcut between two of its neighbours unless a local witness search
+ * finds a path at most as fast that avoids it; the search is bounded in settled nodes, which can only add
+ * superfluous shortcuts, never lose a shortest path. Priorities are updated lazily: a popped node whose priority
+ * has grown beyond the next one is put back.
+ * <p>
+ * When a node is contracted its remaining edges lead to more important nodes; they become its upward edges
+ * (outgoing) and downward edges (incoming) in the index.
+ */
+final class ContractionHierarchy {
+
+    // Simulated contractions only rank nodes, so they can afford a smaller search than real ones.
+    private static final int SIMULATED_WITNESS_LIMIT = 40;
+    private static final int WITNESS_SETTLED_LIMIT = 300;
+
+    private final int nodeCount;
+    private final int[] deletedNeighbors;
+
+    // Per-node edge lists of the shrinking graph as (node, weight, middle) triples; middle is -1 for road edges.
+    private final int[][] out;
+    private final int[] outSize;
+    private final int[][] in;
+    private final int[] inSize;
+
+    private final IndexedMinHeap witnessHeap;
+    private final int[] witnessDistance;
+    private final int[] witnessStamp;
+    private final int[] targetStamp;
+    private int stamp;
+
+    private final IntTriples up = new IntTriples();
+    private final IntTriples down = new IntTriples();
+
+    private ContractionHierarchy(final RoadGraph graph) {
+        this.nodeCount = graph.nodeCount;
+        this.deletedNeighbors = new int[this.nodeCount];
+        this.out = new int[this.nodeCount][];
+        this.outSize = new int[this.nodeCount];
+        this.in = new int[this.nodeCount][];
+        this.inSize = new int[this.nodeCount];
+        this.witnessHeap = new IndexedMinHeap(this.nodeCount);
+        this.witnessDistance = new int[this.nodeCount];
+        this.witnessStamp = new int[this.nodeCount];
+        this.targetStamp = new int[this.nodeCount];
+
+        for (int node = 0; node < this.nodeCount; node++) {
+            this.out[node] = new int[3 * 4];
+            this.in[node] = new int[3 * 4];
+        }
+        for (int node = 0; node < this.nodeCount; node++) {
+            for (int edge = graph.firstEdge[node]; edge < graph.firstEdge[node + 1]; edge++) {
+                this.addEdge(node, graph.edgeTarget[edge], graph.edgeWeight[edge], -1);
+            }
+        }
+    }
+
+    static RoutingIndex build(final RoadGraph graph) {
+        return new ContractionHierarchy(graph).contractAll(graph);
+    }
+
+    private RoutingIndex contractAll(final RoadGraph graph) {
+        final var queue = new IndexedMinHeap(this.nodeCount);
+        for (int node = 0; node < this.nodeCount; node++) {
+            queue.set(node, this.priority(node));
+        }
+
+        final int[] rank = new int[this.nodeCount];
+        int nextRank = 0;
+        while (!queue.isEmpty()) {
+            final int node = queue.pop();
+            final long priority = this.priority(node);
+            if (!queue.isEmpty() && priority > queue.peekKey()) {
+                queue.set(node, priority);
+                continue;
+            }
+
+            this.contract(node, false);
+            rank[node] = nextRank++;
+            for (int i = 0; i < this.outSize[node]; i += 3) {
+                final int neighbor = this.out[node][i];
+                this.deletedNeighbors[neighbor]++;
+                queue.set(neighbor, this.priority(neighbor));
+            }
+            for (int i = 0; i < this.inSize[node]; i += 3) {
+                final int neighbor = this.in[node][i];
+                this.deletedNeighbors[neighbor]++;
+                queue.set(neighbor, this.priority(neighbor));
+            }
+            this.detach(node);
+        }
+
+        return RoutingIndex.of(graph, rank, this.up, this.down);
+    }
+
+    private long priority(final int node) {
+        final int shortcuts = this.contract(node, true);
+        final int removed = (this.outSize[node] + this.inSize[node]) / 3;
+        return 2L * shortcuts - removed + this.deletedNeighbors[node];
+    }
+
+    /**
+     * Adds the shortcuts that contracting {@code node} needs and returns their number; with {@code simulate} set it
+     * only counts them.
+     */
+    private int contract(final int node, final boolean simulate) {
+        int maxOutWeight = 0;
+        for (int i = 0; i < this.outSize[node]; i += 3) {
+            maxOutWeight = Math.max(maxOutWeight, this.out[node][i + 1]);
+        }
+
+        int shortcuts = 0;
+        // Shortcuts only touch the lists of neighbours, so the node's own lists stay valid throughout.
+        final int[] incoming = this.in[node];
+        final int incomingSize = this.inSize[node];
+        final int[] outgoing = this.out[node];
+        final int outgoingSize = this.outSize[node];
+        for (int i = 0; i < incomingSize; i += 3) {
+            final int source = incoming[i];
+            final int sourceWeight = incoming[i + 1];
+            this.witnessSearch(source, node, sourceWeight + maxOutWeight, outgoing, outgoingSize,
+                    simulate ? SIMULATED_WITNESS_LIMIT : WITNESS_SETTLED_LIMIT);
+
+            for (int j = 0; j < outgoingSize; j += 3) {
+                final int target = outgoing[j];
+                if (target == source) continue;
+                final int viaWeight = sourceWeight + outgoing[j + 1];
+                if (this.witnessStamp[target] == this.stamp && this.witnessDistance[target] <= viaWeight) continue;
+                shortcuts++;
+                if (!simulate) this.addEdge(source, target, viaWeight, node);
+            }
+        }
+
+        if (!simulate) {
+            for (int i = 0; i < this.outSize[node]; i += 3) {
+                this.up.add(node, this.out[node][i], this.out[node][i + 1], this.out[node][i + 2]);
+            }
+            for (int i = 0; i < this.inSize[node]; i += 3) {
+                this.down.add(node, this.in[node][i], this.in[node][i + 1], this.in[node][i + 2]);
+            }
+        }
+        return shortcuts;
+    }
+
+    /**
+     * Dijkstra from {@code source} that avoids {@code excluded}, stopping past {@code maxWeight}, after the settled
+     * limit or once every target is settled. Distances are valid where {@code witnessStamp} equals {@code stamp}.
+     */
+    private void witnessSearch(final int source, final int excluded, final int maxWeight, final int[] targets,
+                               final int targetsSize, final int settledLimit) {
+        this.stamp++;
+        int remainingTargets = 0;
+        for (int j = 0; j < targetsSize; j += 3) {
+            if (this.targetStamp[targets[j]] != this.stamp) {
+                this.targetStamp[targets[j]] = this.stamp;
+                remainingTargets++;
+            }
+        }
+
+        this.witnessHeap.clear();
+        this.witnessDistance[source] = 0;
+        this.witnessStamp[source] = this.stamp;
+        this.witnessHeap.set(source, 0);
+        int settled = 0;
+        while (!this.witnessHeap.isEmpty() && remainingTargets > 0 && settled < settledLimit) {
+            final long distance = this.witnessHeap.peekKey();
+            if (distance > maxWeight) break;
+            final int node = this.witnessHeap.pop();
+            settled++;
+            if (this.targetStamp[node] == this.stamp) remainingTargets--;
+
+            for (int i = 0; i < this.outSize[node]; i += 3) {
+                final int next = this.out[node][i];
+                if (next == excluded) continue;
+                final int candidate = (int) distance + this.out[node][i + 1];
+                if (this.witnessStamp[next] != this.stamp || candidate < this.witnessDistance[next]) {
+                    this.witnessStamp[next] = this.stamp;
+                    this.witnessDistance[next] = candidate;
+                    this.witnessHeap.set(next, candidate);
+                }
+            }
+        }
+    }
+
+    private void addEdge(final int from, final int to, final int weight, final int middle) {
+        if (!this.updateExisting(this.out[from], this.outSize[from], to, weight, middle)) {
+            this.out[from] = append(this.out[from], this.outSize[from], to, weight, middle);
+            this.outSize[from] += 3;
+        }
+        if (!this.updateExisting(this.in[to], this.inSize[to], from, weight, middle)) {
+            this.in[to] = append(this.in[to], this.inSize[to], from, weight, middle);
+            this.inSize[to] += 3;
+        }
+    }
+
+    private boolean updateExisting(final int[] list, final int size, final int node, final int weight, final int middle) {
+        for (int i = 0; i < size; i += 3) {
+            if (list[i] == node) {
+                if (weight < list[i + 1]) {
+                    list[i + 1] = weight;
+                    list[i + 2] = middle;
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Removes {@code node} from the edge lists of its neighbours, so later searches only see uncontracted nodes.
+     */
+    private void detach(final int node) {
+        for (int i = 0; i < this.outSize[node]; i += 3) {
+            final int neighbor = this.out[node][i];
+            this.inSize[neighbor] = remove(this.in[neighbor], this.inSize[neighbor], node);
+        }
+        for (int i = 0; i < this.inSize[node]; i += 3) {
+            final int neighbor = this.in[node][i];
+            this.outSize[neighbor] = remove(this.out[neighbor], this.outSize[neighbor], node);
+        }
+        this.out[node] = null;
+        this.in[node] = null;
+        this.outSize[node] = 0;
+        this.inSize[node] = 0;
+    }
+
+    private static int remove(final int[] list, final int size, final int node) {
+        for (int i = 0; i < size; i += 3) {
+            if (list[i] == node) {
+                final int last = size - 3;
+                list[i] = list[last];
+                list[i + 1] = list[last + 1];
+                list[i + 2] = list[last + 2];
+                return last;
+            }
+        }
+        return size;
+    }
+
+    private static int[] append(int[] list, final int size, final int node, final int weight, final int middle) {
+        if (size + 3 > list.length) list = Arrays.copyOf(list, list.length * 2);
+        list[size] = node;
+        list[size + 1] = weight;
+        list[size + 2] = middle;
+        return list;
+    }
+
+    /**
+     * Growable list of (node, other, weight, middle) edges, collected while contracting and turned into CSR rows
+     * by {@link RoutingIndex#of}.
+     */
+    static final class IntTriples {
+
+        int[] node = new int[1024];
+        int[] other = new int[1024];
+        int[] weight = new int[1024];
+        int[] middle = new int[1024];
+        int size;
+
+        void add(final int node, final int other, final int weight, final int middle) {
+            if (this.size == this.node.length) {
+                final int capacity = this.size * 2;
+                this.node = Arrays.copyOf(this.node, capacity);
+                this.other = Arrays.copyOf(this.other, capacity);
+                this.weight = Arrays.copyOf(this.weight, capacity);
+                this.middle = Arrays.copyOf(this.middle, capacity);
+            }
+            this.node[this.size] = node;
+            this.other[this.size] = other;
+            this.weight[this.size] = weight;
+            this.middle[this.size] = middle;
+            this.size++;
+        }
+    }
+
+}
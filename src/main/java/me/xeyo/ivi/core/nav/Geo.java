@@ -0,0 +1,40 @@
+package me.xeyo.ivi.core.nav;
+
+/**
+ * Spherical distance and bearing on coordinates stored as degrees times 10<sup>7</sup>.
+ */
+public final class Geo {
+
+    public static final double E7 = 1e7;
+    private static final double EARTH_RADIUS_METERS = 6_371_008.8;
+
+    private Geo() {
+    }
+
+    public static int toE7(final double degrees) {
+        return (int) Math.round(degrees * E7);
+    }
+
+    public static double distanceMeters(final int latitudeA, final int longitudeA, final int latitudeB, final int longitudeB) {
+        final double phiA = Math.toRadians(latitudeA / E7);
+        final double phiB = Math.toRadians(latitudeB / E7);
+        final double deltaPhi = phiB - phiA;
+        final double deltaLambda = Math.toRadians((longitudeB - longitudeA) / E7);
+        final double a = Math.sin(deltaPhi / 2) * Math.sin(deltaPhi / 2)
+                + Math.cos(phiA) * Math.cos(phiB) * Math.sin(deltaLambda / 2) * Math.sin(deltaLambda / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    /**
+     * Initial bearing from A to B in degrees clockwise from north.
+     */
+    public static double bearing(final int latitudeA, final int longitudeA, final int latitudeB, final int longitudeB) {
+        final double phiA = Math.toRadians(latitudeA / E7);
+        final double phiB = Math.toRadians(latitudeB / E7);
+        final double deltaLambda = Math.toRadians((longitudeB - longitudeA) / E7);
+        final double y = Math.sin(deltaLambda) * Math.cos(phiB);
+        final double x = Math.cos(phiA) * Math.sin(phiB) - Math.sin(phiA) * Math.cos(phiB) * Math.cos(deltaLambda);
+        return (Math.toDegrees(Math.atan2(y, x)) + 360) % 360;
+    }
+
+}
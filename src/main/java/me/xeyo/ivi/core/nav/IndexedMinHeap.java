@@ -0,0 +1,124 @@
+package me.xeyo.ivi.core.nav;
+
+import java.util.Arrays;
+
+/**
+ * Binary min-heap of node ids with integer keys, backed by primitive arrays. Each node is in the heap at most
+ * once, and its key can be lowered or raised in place, which is what Dijkstra searches and node ordering need.
+ * {@link #clear()} costs the number of nodes in the heap, not its capacity, so one heap serves many small searches.
+ */
+final class IndexedMinHeap {
+
+    private final int[] nodes;
+    private final long[] keys;
+    private final int[] positions;
+    private int size;
+
+    IndexedMinHeap(final int capacity) {
+        this.nodes = new int[capacity];
+        this.keys = new long[capacity];
+        this.positions = new int[capacity];
+        Arrays.fill(this.positions, -1);
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    boolean contains(final int node) {
+        return this.positions[node] >= 0;
+    }
+
+    long peekKey() {
+        return this.keys[0];
+    }
+
+    int peekNode() {
+        return this.nodes[0];
+    }
+
+    /**
+     * Inserts {@code node}, or moves it to {@code key} if it is already in the heap.
+     */
+    void set(final int node, final long key) {
+        int position = this.positions[node];
+        if (position < 0) {
+            position = this.size++;
+            this.nodes[position] = node;
+            this.positions[node] = position;
+            this.keys[position] = key;
+            this.siftUp(position);
+            return;
+        }
+        final long previous = this.keys[position];
+        this.keys[position] = key;
+        if (key < previous) {
+            this.siftUp(position);
+        } else {
+            this.siftDown(position);
+        }
+    }
+
+    int pop() {
+        final int node = this.nodes[0];
+        this.positions[node] = -1;
+        this.size--;
+        if (this.size > 0) {
+            this.nodes[0] = this.nodes[this.size];
+            this.keys[0] = this.keys[this.size];
+            this.positions[this.nodes[0]] = 0;
+            this.siftDown(0);
+        }
+        return node;
+    }
+
+    void clear() {
+        for (int i = 0; i < this.size; i++) {
+            this.positions[this.nodes[i]] = -1;
+        }
+        this.size = 0;
+    }
+
+    private void siftUp(int position) {
+        final int node = this.nodes[position];
+        final long key = this.keys[position];
+        while (position > 0) {
+            final int parent = (position - 1) >>> 1;
+            if (this.keys[parent] <= key) break;
+            this.move(parent, position);
+            position = parent;
+        }
+        this.place(node, key, position);
+    }
+
+    private void siftDown(int position) {
+        final int node = this.nodes[position];
+        final long key = this.keys[position];
+        while (true) {
+            int child = 2 * position + 1;
+            if (child >= this.size) break;
+            if (child + 1 < this.size && this.keys[child + 1] < this.keys[child]) child++;
+            if (this.keys[child] >= key) break;
+            this.move(child, position);
+            position = child;
+        }
+        this.place(node, key, position);
+    }
+
+    private void move(final int from, final int to) {
+        this.nodes[to] = this.nodes[from];
+        this.keys[to] = this.keys[from];
+        this.positions[this.nodes[to]] = to;
+    }
+
+    private void place(final int node, final long key, final int position) {
+        this.nodes[position] = node;
+        this.keys[position] = key;
+        this.positions[node] = position;
+    }
+
+}
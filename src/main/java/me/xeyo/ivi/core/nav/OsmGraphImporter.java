@@ -0,0 +1,238 @@
+package me.xeyo.ivi.core.nav;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the drivable roads of an OpenStreetMap XML extract ({@code .osm}, optionally gzipped) into a
+ * {@link RoadGraph}. The file is streamed once: node coordinates go into primitive arrays keyed through an
+ * open-addressing id map, and each way tagged as a road adds one edge per segment, in both directions unless it is
+ * one-way. Only nodes that some road uses end up in the graph. Edge weights are the travel time at the way's
+ * {@code maxspeed}, or at a default speed for its road class.
+ */
+final class OsmGraphImporter {
+
+    private static final Map<String, Integer> DEFAULT_SPEEDS_KMH = Map.ofEntries(
+            Map.entry("motorway", 110), Map.entry("motorway_link", 60),
+            Map.entry("trunk", 90), Map.entry("trunk_link", 50),
+            Map.entry("primary", 70), Map.entry("primary_link", 40),
+            Map.entry("secondary", 60), Map.entry("secondary_link", 40),
+            Map.entry("tertiary", 50), Map.entry("tertiary_link", 30),
+            Map.entry("unclassified", 40), Map.entry("residential", 30),
+            Map.entry("living_street", 10), Map.entry("service", 20), Map.entry("road", 30)
+    );
+
+    private OsmGraphImporter() {
+    }
+
+    static RoadGraph read(final Path file) throws IOException {
+        try (final InputStream raw = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            final InputStream input = file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(raw, 1 << 16) : raw;
+            return read(input);
+        } catch (final XMLStreamException e) {
+            throw new IOException("Cannot parse " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static RoadGraph read(final InputStream input) throws XMLStreamException {
+        final XMLInputFactory factory = XMLInputFactory.newFactory();
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        final XMLStreamReader reader = factory.createXMLStreamReader(input);
+
+        final var osmIds = new LongIntMap(1 << 16);
+        var latitudes = new int[1 << 16];
+        var longitudes = new int[1 << 16];
+        int osmNodeCount = 0;
+
+        var sources = new int[1 << 16];
+        var targets = new int[1 << 16];
+        var weights = new int[1 << 16];
+        int edgeCount = 0;
+
+        var wayNodes = new int[256];
+        int wayLength = 0;
+        boolean inWay = false;
+        String highway = null;
+        String oneway = null;
+        String junction = null;
+        String maxspeed = null;
+
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                switch (reader.getLocalName()) {
+                    case "node" -> {
+                        if (osmNodeCount == latitudes.length) {
+                            latitudes = Arrays.copyOf(latitudes, osmNodeCount * 2);
+                            longitudes = Arrays.copyOf(longitudes, osmNodeCount * 2);
+                        }
+                        osmIds.put(Long.parseLong(reader.getAttributeValue(null, "id")), osmNodeCount);
+                        latitudes[osmNodeCount] = Geo.toE7(Double.parseDouble(reader.getAttributeValue(null, "lat")));
+                        longitudes[osmNodeCount] = Geo.toE7(Double.parseDouble(reader.getAttributeValue(null, "lon")));
+                        osmNodeCount++;
+                    }
+                    case "way" -> {
+                        inWay = true;
+                        wayLength = 0;
+                        highway = oneway = junction = maxspeed = null;
+                    }
+                    case "nd" -> {
+                        if (!inWay) break;
+                        final int node = osmIds.get(Long.parseLong(reader.getAttributeValue(null, "ref")));
+                        if (node < 0) break; // Clipped out of the extract.
+                        if (wayLength == wayNodes.length) wayNodes = Arrays.copyOf(wayNodes, wayLength * 2);
+                        wayNodes[wayLength++] = node;
+                    }
+                    case "tag" -> {
+                        if (!inWay) break;
+                        final String value = reader.getAttributeValue(null, "v");
+                        switch (reader.getAttributeValue(null, "k")) {
+                            case "highway" -> highway = value;
+                            case "oneway" -> oneway = value;
+                            case "junction" -> junction = value;
+                            case "maxspeed" -> maxspeed = value;
+                            default -> {
+                            }
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("way")) {
+                inWay = false;
+                if (highway == null || !DEFAULT_SPEEDS_KMH.containsKey(highway) || wayLength < 2) continue;
+
+                final int speed = parseSpeed(maxspeed, DEFAULT_SPEEDS_KMH.get(highway));
+                final boolean forwardOnly = "yes".equals(oneway) || "1".equals(oneway) || "true".equals(oneway)
+                        || (oneway == null && (highway.equals("motorway") || "roundabout".equals(junction)));
+                final boolean backwardOnly = "-1".equals(oneway);
+
+                final int needed = edgeCount + 2 * (wayLength - 1);
+                if (needed > sources.length) {
+                    final int capacity = Math.max(needed, sources.length * 2);
+                    sources = Arrays.copyOf(sources, capacity);
+                    targets = Arrays.copyOf(targets, capacity);
+                    weights = Arrays.copyOf(weights, capacity);
+                }
+                for (int i = 1; i < wayLength; i++) {
+                    final int from = wayNodes[i - 1];
+                    final int to = wayNodes[i];
+                    final double meters = Geo.distanceMeters(latitudes[from], longitudes[from], latitudes[to], longitudes[to]);
+                    final int millis = (int) Math.max(1, Math.round(meters / (speed / 3.6) * 1000));
+                    if (!backwardOnly) {
+                        sources[edgeCount] = from;
+                        targets[edgeCount] = to;
+                        weights[edgeCount++] = millis;
+                    }
+                    if (!forwardOnly) {
+                        sources[edgeCount] = to;
+                        targets[edgeCount] = from;
+                        weights[edgeCount++] = millis;
+                    }
+                }
+            }
+        }
+        reader.close();
+
+        // Renumber so only road nodes remain.
+        final int[] graphIds = new int[osmNodeCount];
+        Arrays.fill(graphIds, -1);
+        int nodeCount = 0;
+        for (int i = 0; i < edgeCount; i++) {
+            if (graphIds[sources[i]] < 0) graphIds[sources[i]] = nodeCount++;
+            if (graphIds[targets[i]] < 0) graphIds[targets[i]] = nodeCount++;
+        }
+        final int[] graphLatitudes = new int[nodeCount];
+        final int[] graphLongitudes = new int[nodeCount];
+        for (int osmNode = 0; osmNode < osmNodeCount; osmNode++) {
+            final int node = graphIds[osmNode];
+            if (node < 0) continue;
+            graphLatitudes[node] = latitudes[osmNode];
+            graphLongitudes[node] = longitudes[osmNode];
+        }
+        for (int i = 0; i < edgeCount; i++) {
+            sources[i] = graphIds[sources[i]];
+            targets[i] = graphIds[targets[i]];
+        }
+        return RoadGraph.of(nodeCount, graphLatitudes, graphLongitudes, sources, targets, weights, edgeCount);
+    }
+
+    /**
+     * Parses {@code maxspeed} values such as {@code 50}, {@code 30 mph} or {@code 50;30}; anything else, like
+     * {@code signals} or {@code none}, falls back to the road class default.
+     */
+    static int parseSpeed(final String maxspeed, final int fallback) {
+        if (maxspeed == null) return fallback;
+        final String value = maxspeed.toLowerCase(Locale.ROOT).split(";")[0].trim();
+        int end = 0;
+        while (end < value.length() && Character.isDigit(value.charAt(end))) end++;
+        if (end == 0) return fallback;
+        final int number = Integer.parseInt(value.substring(0, Math.min(end, 4)));
+        final int kmh = value.endsWith("mph") ? (int) Math.round(number * 1.609344) : number;
+        return kmh > 0 ? kmh : fallback;
+    }
+
+    /**
+     * Open-addressing map from OSM node ids to array indices, without boxing.
+     */
+    private static final class LongIntMap {
+
+        private long[] keys;
+        private int[] values;
+        private int size;
+
+        LongIntMap(final int capacity) {
+            this.keys = new long[capacity];
+            this.values = new int[capacity];
+            Arrays.fill(this.values, -1);
+        }
+
+        void put(final long key, final int value) {
+            if (this.size * 2 >= this.keys.length) this.resize();
+            int slot = slotOf(key, this.keys.length);
+            while (this.values[slot] >= 0 && this.keys[slot] != key) slot = (slot + 1) & (this.keys.length - 1);
+            if (this.values[slot] < 0) this.size++;
+            this.keys[slot] = key;
+            this.values[slot] = value;
+        }
+
+        int get(final long key) {
+            int slot = slotOf(key, this.keys.length);
+            while (this.values[slot] >= 0) {
+                if (this.keys[slot] == key) return this.values[slot];
+                slot = (slot + 1) & (this.keys.length - 1);
+            }
+            return -1;
+        }
+
+        private void resize() {
+            final long[] oldKeys = this.keys;
+            final int[] oldValues = this.values;
+            this.keys = new long[oldKeys.length * 2];
+            this.values = new int[oldKeys.length * 2];
+            Arrays.fill(this.values, -1);
+            this.size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] >= 0) this.put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static int slotOf(final long key, final int capacity) {
+            final long mixed = key * 0x9E3779B97F4A7C15L;
+            return (int) (mixed >>> 32) & (capacity - 1);
+        }
+    }
+
+}
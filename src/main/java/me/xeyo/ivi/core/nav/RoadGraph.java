@@ -0,0 +1,94 @@
+package me.xeyo.ivi.core.nav;
+
+import java.util.Arrays;
+
+/**
+ * Directed road graph in compressed sparse row form: the outgoing edges of node {@code n} are the indices
+ * {@code firstEdge[n]} to {@code firstEdge[n + 1] - 1} of {@code edgeTarget} and {@code edgeWeight}. Coordinates are
+ * stored as degrees times 10<sup>7</sup> and weights as travel time in milliseconds. There are no per-node or
+ * per-edge objects.
+ */
+final class RoadGraph {
+
+    final int nodeCount;
+    final int[] latitudeE7;
+    final int[] longitudeE7;
+    final int[] firstEdge;
+    final int[] edgeTarget;
+    final int[] edgeWeight;
+
+    private RoadGraph(final int nodeCount, final int[] latitudeE7, final int[] longitudeE7, final int[] firstEdge,
+                      final int[] edgeTarget, final int[] edgeWeight) {
+        this.nodeCount = nodeCount;
+        this.latitudeE7 = latitudeE7;
+        this.longitudeE7 = longitudeE7;
+        this.firstEdge = firstEdge;
+        this.edgeTarget = edgeTarget;
+        this.edgeWeight = edgeWeight;
+    }
+
+    /**
+     * Builds the graph from parallel edge arrays with a counting sort by source node. Self loops are dropped and
+     * of parallel edges only the fastest is kept.
+     */
+    static RoadGraph of(final int nodeCount, final int[] latitudeE7, final int[] longitudeE7, final int[] sources,
+                        final int[] targets, final int[] weights, final int edgeCount) {
+        final int[] firstEdge = new int[nodeCount + 1];
+        for (int i = 0; i < edgeCount; i++) {
+            firstEdge[sources[i] + 1]++;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            firstEdge[node + 1] += firstEdge[node];
+        }
+
+        final int[] next = firstEdge.clone();
+        final int[] target = new int[edgeCount];
+        final int[] weight = new int[edgeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            final int slot = next[sources[i]]++;
+            target[slot] = targets[i];
+            weight[slot] = weights[i];
+        }
+
+        // Compact each row in place, dropping self loops and slower duplicates.
+        final int[] compactFirst = new int[nodeCount + 1];
+        int write = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            compactFirst[node] = write;
+            final int rowStart = write;
+            for (int edge = firstEdge[node]; edge < firstEdge[node + 1]; edge++) {
+                if (target[edge] == node) continue;
+                int existing = -1;
+                for (int candidate = rowStart; candidate < write; candidate++) {
+                    if (target[candidate] == target[edge]) {
+                        existing = candidate;
+                        break;
+                    }
+                }
+                if (existing >= 0) {
+                    weight[existing] = Math.min(weight[existing], weight[edge]);
+                } else {
+                    target[write] = target[edge];
+                    weight[write] = weight[edge];
+                    write++;
+                }
+            }
+        }
+        compactFirst[nodeCount] = write;
+
+        return new RoadGraph(nodeCount, latitudeE7, longitudeE7, compactFirst,
+                Arrays.copyOf(target, write), Arrays.copyOf(weight, write));
+    }
+
+    int edgeCount() {
+        return this.edgeTarget.length;
+    }
+
+    /**
+     * Great-circle distance between two nodes in meters.
+     */
+    double distanceMeters(final int from, final int to) {
+        return Geo.distanceMeters(this.latitudeE7[from], this.longitudeE7[from], this.latitudeE7[to], this.longitudeE7[to]);
+    }
+
+}
@@ -0,0 +1,439 @@
+package me.xeyo.ivi.core.nav;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A contraction hierarchy over the road graph, ready to answer shortest-path queries, plus a grid for snapping
+ * positions to the nearest node. Everything is in primitive arrays: coordinates and ranks per node, and the upward
+ * and downward edges in CSR rows. Node {@code n}'s upward edges lead to more important nodes, its downward edges
+ * come from them; each is a road edge or a shortcut through a less important {@code middle} node.
+ * <p>
+ * File layout: a 32 byte header {@code magic, version, nodeCount, upCount, downCount, cellCount, reserved:long},
+ * then the arrays in field order, all big-endian. Loading maps the file and bulk-copies each array.
+ */
+final class RoutingIndex {
+
+    private static final int MAGIC = 0x49564952;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int CELL_E7 = 100_000;
+    private static final double CELL_METERS = 1_111.0;
+    private static final int MAX_SNAP_RINGS = 10;
+
+    final int nodeCount;
+    final int[] latitudeE7;
+    final int[] longitudeE7;
+    final int[] rank;
+
+    final int[] upFirst;
+    final int[] upTarget;
+    final int[] upWeight;
+    final int[] upMiddle;
+
+    final int[] downFirst;
+    final int[] downSource;
+    final int[] downWeight;
+    final int[] downMiddle;
+
+    // Nodes bucketed by grid cell: cellKeys is sorted, cell i holds cellNodes[cellFirst[i]..cellFirst[i + 1]).
+    final long[] cellKeys;
+    final int[] cellFirst;
+    final int[] cellNodes;
+
+    private RoutingIndex(final int nodeCount, final int[] latitudeE7, final int[] longitudeE7, final int[] rank,
+                         final int[] upFirst, final int[] upTarget, final int[] upWeight, final int[] upMiddle,
+                         final int[] downFirst, final int[] downSource, final int[] downWeight, final int[] downMiddle,
+                         final long[] cellKeys, final int[] cellFirst, final int[] cellNodes) {
+        this.nodeCount = nodeCount;
+        this.latitudeE7 = latitudeE7;
+        this.longitudeE7 = longitudeE7;
+        this.rank = rank;
+        this.upFirst = upFirst;
+        this.upTarget = upTarget;
+        this.upWeight = upWeight;
+        this.upMiddle = upMiddle;
+        this.downFirst = downFirst;
+        this.downSource = downSource;
+        this.downWeight = downWeight;
+        this.downMiddle = downMiddle;
+        this.cellKeys = cellKeys;
+        this.cellFirst = cellFirst;
+        this.cellNodes = cellNodes;
+    }
+
+    static RoutingIndex of(final RoadGraph graph, final int[] rank, final ContractionHierarchy.IntTriples up,
+                           final ContractionHierarchy.IntTriples down) {
+        final int nodeCount = graph.nodeCount;
+        final int[][] upRows = toRows(nodeCount, up);
+        final int[][] downRows = toRows(nodeCount, down);
+
+        // Grid: sort node ids by cell key, then collapse equal keys into cells.
+        final long[] nodeKeys = new long[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            nodeKeys[node] = cellKey(Math.floorDiv(graph.latitudeE7[node], CELL_E7), Math.floorDiv(graph.longitudeE7[node], CELL_E7));
+        }
+        final Integer[] order = new Integer[nodeCount];
+        for (int node = 0; node < nodeCount; node++) {
+            order[node] = node;
+        }
+        Arrays.sort(order, (a, b) -> Long.compare(nodeKeys[a], nodeKeys[b]));
+
+        final int[] cellNodes = new int[nodeCount];
+        final long[] cellKeys = new long[nodeCount];
+        final int[] cellFirst = new int[nodeCount + 1];
+        int cellCount = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            cellNodes[i] = order[i];
+            final long key = nodeKeys[order[i]];
+            if (cellCount == 0 || cellKeys[cellCount - 1] != key) {
+                cellKeys[cellCount] = key;
+                cellFirst[cellCount] = i;
+                cellCount++;
+            }
+        }
+        cellFirst[cellCount] = nodeCount;
+
+        return new RoutingIndex(nodeCount, graph.latitudeE7, graph.longitudeE7, rank,
+                upRows[0], upRows[1], upRows[2], upRows[3],
+                downRows[0], downRows[1], downRows[2], downRows[3],
+                Arrays.copyOf(cellKeys, cellCount), Arrays.copyOf(cellFirst, cellCount + 1), cellNodes);
+    }
+
+    private static int[][] toRows(final int nodeCount, final ContractionHierarchy.IntTriples edges) {
+        final int[] first = new int[nodeCount + 1];
+        for (int i = 0; i < edges.size; i++) {
+            first[edges.node[i] + 1]++;
+        }
+        for (int node = 0; node < nodeCount; node++) {
+            first[node + 1] += first[node];
+        }
+        final int[] next = first.clone();
+        final int[] other = new int[edges.size];
+        final int[] weight = new int[edges.size];
+        final int[] middle = new int[edges.size];
+        for (int i = 0; i < edges.size; i++) {
+            final int slot = next[edges.node[i]]++;
+            other[slot] = edges.other[i];
+            weight[slot] = edges.weight[i];
+            middle[slot] = edges.middle[i];
+        }
+        return new int[][]{first, other, weight, middle};
+    }
+
+    private static long cellKey(final int latitudeCell, final int longitudeCell) {
+        return ((long) latitudeCell << 32) | (longitudeCell & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the node nearest to the position, or -1 if there is none within about ten kilometres.
+     */
+    int nearestNode(final int latitudeE7, final int longitudeE7) {
+        final int latitudeCell = Math.floorDiv(latitudeE7, CELL_E7);
+        final int longitudeCell = Math.floorDiv(longitudeE7, CELL_E7);
+        final double cellMeters = CELL_METERS * Math.max(0.05, Math.cos(Math.toRadians(latitudeE7 / Geo.E7)));
+
+        int best = -1;
+        double bestMeters = Double.MAX_VALUE;
+        for (int ring = 0; ring <= MAX_SNAP_RINGS; ring++) {
+            for (int dy = -ring; dy <= ring; dy++) {
+                for (int dx = -ring; dx <= ring; dx++) {
+                    if (Math.max(Math.abs(dx), Math.abs(dy)) != ring) continue;
+                    final int cell = Arrays.binarySearch(this.cellKeys, cellKey(latitudeCell + dy, longitudeCell + dx));
+                    if (cell < 0) continue;
+                    for (int i = this.cellFirst[cell]; i < this.cellFirst[cell + 1]; i++) {
+                        final int node = this.cellNodes[i];
+                        final double meters = Geo.distanceMeters(latitudeE7, longitudeE7, this.latitudeE7[node], this.longitudeE7[node]);
+                        if (meters < bestMeters) {
+                            bestMeters = meters;
+                            best = node;
+                        }
+                    }
+                }
+            }
+            // Every node in a further ring is at least this far away.
+            if (best >= 0 && bestMeters <= ring * cellMeters) break;
+        }
+        return best;
+    }
+
+    /**
+     * Search state for one query at a time, sized to the graph once and reset by bumping a stamp.
+     */
+    final class Query {
+
+        private final IndexedMinHeap forwardHeap = new IndexedMinHeap(RoutingIndex.this.nodeCount);
+        private final IndexedMinHeap backwardHeap = new IndexedMinHeap(RoutingIndex.this.nodeCount);
+        private final int[] forwardDistance = new int[RoutingIndex.this.nodeCount];
+        private final int[] backwardDistance = new int[RoutingIndex.this.nodeCount];
+        private final int[] forwardParent = new int[RoutingIndex.this.nodeCount];
+        private final int[] backwardParent = new int[RoutingIndex.this.nodeCount];
+        private final int[] forwardStamp = new int[RoutingIndex.this.nodeCount];
+        private final int[] backwardStamp = new int[RoutingIndex.this.nodeCount];
+        private int stamp;
+        int settledNodes;
+
+        /**
+         * Returns the fastest path from {@code source} to {@code target}, or {@code null} if the target cannot be
+         * reached.
+         */
+        ShortestPath shortestPath(final int source, final int target) {
+            if (source == target) return new ShortestPath(new int[]{source}, 0);
+
+            this.stamp++;
+            this.settledNodes = 0;
+            this.forwardHeap.clear();
+            this.backwardHeap.clear();
+            this.reach(this.forwardHeap, this.forwardDistance, this.forwardParent, this.forwardStamp, source, 0, -1);
+            this.reach(this.backwardHeap, this.backwardDistance, this.backwardParent, this.backwardStamp, target, 0, -1);
+
+            long best = Long.MAX_VALUE;
+            int meeting = -1;
+            while (!this.forwardHeap.isEmpty() || !this.backwardHeap.isEmpty()) {
+                final long forwardMin = this.forwardHeap.isEmpty() ? Long.MAX_VALUE : this.forwardHeap.peekKey();
+                final long backwardMin = this.backwardHeap.isEmpty() ? Long.MAX_VALUE : this.backwardHeap.peekKey();
+                if (Math.min(forwardMin, backwardMin) >= best) break;
+
+                final boolean forward = forwardMin <= backwardMin;
+                final int node = forward ? this.forwardHeap.pop() : this.backwardHeap.pop();
+                this.settledNodes++;
+                final int distance = forward ? this.forwardDistance[node] : this.backwardDistance[node];
+                final boolean seenByOther = forward ? this.backwardStamp[node] == this.stamp : this.forwardStamp[node] == this.stamp;
+                if (seenByOther) {
+                    final long total = (long) distance + (forward ? this.backwardDistance[node] : this.forwardDistance[node]);
+                    if (total < best) {
+                        best = total;
+                        meeting = node;
+                    }
+                }
+
+                if (forward) {
+                    for (int edge = RoutingIndex.this.upFirst[node]; edge < RoutingIndex.this.upFirst[node + 1]; edge++) {
+                        this.reach(this.forwardHeap, this.forwardDistance, this.forwardParent, this.forwardStamp,
+                                RoutingIndex.this.upTarget[edge], distance + RoutingIndex.this.upWeight[edge], node);
+                    }
+                } else {
+                    for (int edge = RoutingIndex.this.downFirst[node]; edge < RoutingIndex.this.downFirst[node + 1]; edge++) {
+                        this.reach(this.backwardHeap, this.backwardDistance, this.backwardParent, this.backwardStamp,
+                                RoutingIndex.this.downSource[edge], distance + RoutingIndex.this.downWeight[edge], node);
+                    }
+                }
+            }
+            if (meeting < 0) return null;
+
+            // Hierarchy path: source .. meeting .. target, then every shortcut expanded into road edges.
+            final var hierarchyPath = new IntList();
+            for (int node = meeting; node >= 0; node = this.forwardParent[node]) {
+                hierarchyPath.add(node);
+            }
+            hierarchyPath.reverse();
+            for (int node = this.backwardParent[meeting]; node >= 0; node = this.backwardParent[node]) {
+                hierarchyPath.add(node);
+            }
+
+            final var path = new IntList();
+            path.add(hierarchyPath.get(0));
+            for (int i = 1; i < hierarchyPath.size(); i++) {
+                RoutingIndex.this.unpack(hierarchyPath.get(i - 1), hierarchyPath.get(i), path);
+            }
+            return new ShortestPath(path.toArray(), best);
+        }
+
+        private void reach(final IndexedMinHeap heap, final int[] distance, final int[] parent, final int[] stamps,
+                           final int node, final int candidate, final int from) {
+            if (stamps[node] == this.stamp && distance[node] <= candidate) return;
+            stamps[node] = this.stamp;
+            distance[node] = candidate;
+            parent[node] = from;
+            heap.set(node, candidate);
+        }
+    }
+
+    /**
+     * Road nodes of a route and its travel time in milliseconds.
+     */
+    record ShortestPath(int[] nodes, long travelMillis) {
+    }
+
+    /**
+     * Appends the road nodes of the edge {@code from -> to}, excluding {@code from}, to {@code path}.
+     */
+    private void unpack(final int from, final int to, final IntList path) {
+        final var stack = new IntList();
+        stack.add(from);
+        stack.add(to);
+        while (stack.size() > 0) {
+            final int b = stack.pop();
+            final int a = stack.pop();
+            final int middle = this.middleOf(a, b);
+            if (middle < 0) {
+                path.add(b);
+            } else {
+                // Second half pushed first so the first half is expanded first.
+                stack.add(middle);
+                stack.add(b);
+                stack.add(a);
+                stack.add(middle);
+            }
+        }
+    }
+
+    private int middleOf(final int from, final int to) {
+        if (this.rank[to] > this.rank[from]) {
+            for (int edge = this.upFirst[from]; edge < this.upFirst[from + 1]; edge++) {
+                if (this.upTarget[edge] == to) return this.upMiddle[edge];
+            }
+        } else {
+            for (int edge = this.downFirst[to]; edge < this.downFirst[to + 1]; edge++) {
+                if (this.downSource[edge] == from) return this.downMiddle[edge];
+            }
+        }
+        throw new IllegalStateException("Missing hierarchy edge " + from + " -> " + to);
+    }
+
+    void write(final Path file) throws IOException {
+        final Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(this.nodeCount).putInt(this.upTarget.length)
+                    .putInt(this.downSource.length).putInt(this.cellKeys.length).putLong(0);
+            writeFully(channel, header.flip());
+            for (final int[] array : this.intArrays()) {
+                final ByteBuffer bytes = ByteBuffer.allocate(array.length * Integer.BYTES);
+                bytes.asIntBuffer().put(array);
+                writeFully(channel, bytes);
+            }
+            final ByteBuffer keys = ByteBuffer.allocate(this.cellKeys.length * Long.BYTES);
+            keys.asLongBuffer().put(this.cellKeys);
+            writeFully(channel, keys);
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static RoutingIndex read(final Path file) throws IOException {
+        final MappedByteBuffer buffer;
+        try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_BYTES || channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Routing index has an invalid size: " + file);
+            }
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.getInt(0) != MAGIC) throw new IOException("Not a routing index: " + file);
+        if (buffer.getInt(4) != VERSION) throw new IOException("Unsupported routing index version " + buffer.getInt(4) + ": " + file);
+
+        final int nodeCount = buffer.getInt(8);
+        final int upCount = buffer.getInt(12);
+        final int downCount = buffer.getInt(16);
+        final int cellCount = buffer.getInt(20);
+        final long expected = HEADER_BYTES + 4L * (3L * nodeCount + 2L * (nodeCount + 1) + 3L * upCount + 3L * downCount
+                + (cellCount + 1) + nodeCount) + 8L * cellCount;
+        if (nodeCount < 0 || upCount < 0 || downCount < 0 || cellCount < 0 || expected != buffer.limit()) {
+            throw new IOException("Routing index is truncated or corrupt: " + file);
+        }
+
+        final IntBuffer ints = buffer.slice(HEADER_BYTES, buffer.limit() - HEADER_BYTES).asIntBuffer();
+        final int[] latitudeE7 = readInts(ints, nodeCount);
+        final int[] longitudeE7 = readInts(ints, nodeCount);
+        final int[] rank = readInts(ints, nodeCount);
+        final int[] upFirst = readInts(ints, nodeCount + 1);
+        final int[] upTarget = readInts(ints, upCount);
+        final int[] upWeight = readInts(ints, upCount);
+        final int[] upMiddle = readInts(ints, upCount);
+        final int[] downFirst = readInts(ints, nodeCount + 1);
+        final int[] downSource = readInts(ints, downCount);
+        final int[] downWeight = readInts(ints, downCount);
+        final int[] downMiddle = readInts(ints, downCount);
+        final int[] cellFirst = readInts(ints, cellCount + 1);
+        final int[] cellNodes = readInts(ints, nodeCount);
+
+        final LongBuffer longs = buffer.slice(HEADER_BYTES + ints.position() * Integer.BYTES, cellCount * Long.BYTES).asLongBuffer();
+        final long[] cellKeys = new long[cellCount];
+        longs.get(cellKeys);
+
+        return new RoutingIndex(nodeCount, latitudeE7, longitudeE7, rank, upFirst, upTarget, upWeight, upMiddle,
+                downFirst, downSource, downWeight, downMiddle, cellKeys, cellFirst, cellNodes);
+    }
+
+    private int[][] intArrays() {
+        return new int[][]{this.latitudeE7, this.longitudeE7, this.rank, this.upFirst, this.upTarget, this.upWeight,
+                this.upMiddle, this.downFirst, this.downSource, this.downWeight, this.downMiddle, this.cellFirst,
+                this.cellNodes};
+    }
+
+    private static int[] readInts(final IntBuffer buffer, final int count) {
+        final int[] array = new int[count];
+        buffer.get(array);
+        return array;
+    }
+
+    private static void writeFully(final FileChannel channel, final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    int edgeCount() {
+        return this.upTarget.length + this.downSource.length;
+    }
+
+    int shortcutCount() {
+        int shortcuts = 0;
+        for (final int middle : this.upMiddle) {
+            if (middle >= 0) shortcuts++;
+        }
+        for (final int middle : this.downMiddle) {
+            if (middle >= 0) shortcuts++;
+        }
+        return shortcuts;
+    }
+
+    /**
+     * Growable int array for paths and the unpacking stack.
+     */
+    static final class IntList {
+
+        private int[] values = new int[64];
+        private int size;
+
+        void add(final int value) {
+            if (this.size == this.values.length) this.values = Arrays.copyOf(this.values, this.size * 2);
+            this.values[this.size++] = value;
+        }
+
+        int pop() {
+            return this.values[--this.size];
+        }
+
+        int get(final int index) {
+            return this.values[index];
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        void reverse() {
+            for (int i = 0, j = this.size - 1; i < j; i++, j--) {
+                final int swap = this.values[i];
+                this.values[i] = this.values[j];
+                this.values[j] = swap;
+            }
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(this.values, this.size);
+        }
+    }
+
+}
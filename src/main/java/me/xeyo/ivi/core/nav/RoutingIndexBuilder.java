@@ -0,0 +1,51 @@
+package me.xeyo.ivi.core.nav;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds a routing index from an OpenStreetMap XML extract, offline.
+ * <p>
+ * Usage: {@code java -cp ivi.jar me.xeyo.ivi.core.nav.RoutingIndexBuilder <extract.osm[.gz]> <index file>}
+ */
+public final class RoutingIndexBuilder {
+
+    private RoutingIndexBuilder() {
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: RoutingIndexBuilder <extract.osm[.gz]> <index file>");
+            System.exit(2);
+        }
+        build(Paths.get(args[0]), Paths.get(args[1]));
+    }
+
+    /**
+     * Imports {@code extract}, contracts the graph and writes the index, reporting the time of each step.
+     */
+    static RoutingIndex build(final Path extract, final Path indexFile) throws IOException {
+        long start = System.nanoTime();
+        final RoadGraph graph = OsmGraphImporter.read(extract);
+        System.out.println("[NAV] Imported " + graph.nodeCount + " nodes and " + graph.edgeCount() + " road edges in "
+                + elapsedMillis(start) + " ms");
+
+        start = System.nanoTime();
+        final RoutingIndex index = ContractionHierarchy.build(graph);
+        System.out.println("[NAV] Contracted to " + index.edgeCount() + " hierarchy edges, " + index.shortcutCount()
+                + " of them shortcuts, in " + elapsedMillis(start) + " ms");
+
+        start = System.nanoTime();
+        index.write(indexFile);
+        System.out.println("[NAV] Wrote " + indexFile + " (" + Files.size(indexFile) + " bytes) in " + elapsedMillis(start) + " ms");
+        return index;
+    }
+
+    static long elapsedMillis(final long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+}
@@ -0,0 +1,205 @@
+package me.xeyo.ivi.core.nav;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import me.xeyo.ivi.core.javalin.ServerExecution;
+import me.xeyo.ivi.core.utils.SampleStats;
+import me.xeyo.ivi.core.utils.ScratchPool;
+
+/**
+ * Offline point-to-point routing over a prebuilt {@link RoutingIndex}. Start and destination are snapped to the
+ * nearest road node, the fastest path comes from a bidirectional search on the contraction hierarchy, and
+ * turn instructions are derived from the geometry of the unpacked path.
+ */
+public class RoutingService {
+
+    private static final double TURN_THRESHOLD_DEGREES = 30;
+    private static final double MIN_SEGMENT_METERS = 3;
+
+    private final RoutingIndex index;
+    private final Path file;
+    private final long loadMillis;
+    private final ScratchPool<RoutingIndex.Query> queries;
+
+    private final AtomicLong routed = new AtomicLong();
+    private final AtomicLong unreachable = new AtomicLong();
+    private final AtomicLong notSnapped = new AtomicLong();
+    private final SampleStats queryNanos = new SampleStats();
+    private final SampleStats settledNodes = new SampleStats();
+
+    RoutingService(final RoutingIndex index, final Path file, final long loadMillis) {
+        this.index = index;
+        this.file = file;
+        this.loadMillis = loadMillis;
+        this.queries = index != null ? new ScratchPool<>(ServerExecution.cpuConcurrency(), () -> index.new Query()) : null;
+    }
+
+    /**
+     * Loads the index at {@code ivi.nav.index} (default {@code maps/routing.ivirt}), built with
+     * {@link RoutingIndexBuilder}. Without an index every route request fails.
+     */
+    public static RoutingService fromSystemProperties() {
+        final Path file = Paths.get(System.getProperty("ivi.nav.index", "maps/routing.ivirt"));
+        if (!Files.isRegularFile(file)) {
+            System.out.println("[NAV] No routing index at " + file + ", routing is unavailable");
+            return new RoutingService(null, file, 0);
+        }
+        try {
+            final long start = System.nanoTime();
+            final RoutingIndex index = RoutingIndex.read(file);
+            final long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            System.out.println("[NAV] Loaded " + file + ": " + index.nodeCount + " nodes, " + index.edgeCount()
+                    + " hierarchy edges in " + millis + " ms");
+            return new RoutingService(index, file, millis);
+        } catch (final IOException e) {
+            System.err.println("[NAV] Cannot load routing index " + file + ": " + e.getMessage());
+            return new RoutingService(null, file, 0);
+        }
+    }
+
+    public boolean isAvailable() {
+        return this.index != null;
+    }
+
+    /**
+     * Returns the route as JSON. If there is none, the object only holds a {@code failure} reason: no index, an
+     * end that is not near a road, or a destination that cannot be reached from the start.
+     */
+    public JSONObject route(final double fromLatitude, final double fromLongitude, final double toLatitude,
+                            final double toLongitude) {
+        if (this.index == null) return failure("unavailable");
+
+        final long start = System.nanoTime();
+        final int source = this.index.nearestNode(Geo.toE7(fromLatitude), Geo.toE7(fromLongitude));
+        final int target = this.index.nearestNode(Geo.toE7(toLatitude), Geo.toE7(toLongitude));
+        if (source < 0 || target < 0) {
+            this.notSnapped.incrementAndGet();
+            return failure(source < 0 ? "start-not-near-road" : "destination-not-near-road");
+        }
+
+        final RoutingIndex.Query query = this.queries.borrow();
+        final RoutingIndex.ShortestPath path;
+        try {
+            path = query.shortestPath(source, target);
+            this.settledNodes.record(query.settledNodes);
+        } finally {
+            this.queries.release(query);
+        }
+        final long elapsed = System.nanoTime() - start;
+        this.queryNanos.record(elapsed);
+        if (path == null) {
+            this.unreachable.incrementAndGet();
+            return failure("unreachable");
+        }
+        this.routed.incrementAndGet();
+
+        final int[] nodes = path.nodes();
+        final var geometry = new JSONArray(nodes.length);
+        double meters = 0;
+        for (int i = 0; i < nodes.length; i++) {
+            geometry.add(new double[]{this.index.latitudeE7[nodes[i]] / Geo.E7, this.index.longitudeE7[nodes[i]] / Geo.E7});
+            if (i > 0) meters += this.distance(nodes[i - 1], nodes[i]);
+        }
+
+        final var route = new JSONObject();
+        route.put("distanceMeters", Math.round(meters));
+        route.put("durationSeconds", Math.round(path.travelMillis() / 1000.0));
+        route.put("geometry", geometry);
+        route.put("maneuvers", this.maneuvers(nodes));
+        route.put("queryMicros", TimeUnit.NANOSECONDS.toMicros(elapsed));
+        return route;
+    }
+
+    /**
+     * Turn instructions where the path bends by more than {@value #TURN_THRESHOLD_DEGREES} degrees.
+     */
+    private JSONArray maneuvers(final int[] nodes) {
+        final var maneuvers = new JSONArray();
+        maneuvers.add(this.maneuver("depart", nodes[0], 0));
+
+        double travelled = 0;
+        int previous = nodes[0];
+        for (int i = 1; i < nodes.length - 1; i++) {
+            final int node = nodes[i];
+            travelled += this.distance(previous, node);
+            final int next = nodes[i + 1];
+            if (this.distance(previous, node) < MIN_SEGMENT_METERS || this.distance(node, next) < MIN_SEGMENT_METERS) {
+                previous = node;
+                continue;
+            }
+
+            final double in = this.bearing(previous, node);
+            final double out = this.bearing(node, next);
+            final double delta = ((out - in + 540) % 360) - 180;
+            final double magnitude = Math.abs(delta);
+            if (magnitude >= TURN_THRESHOLD_DEGREES) {
+                final String direction = delta < 0 ? "left" : "right";
+                final String type = magnitude < 60 ? "slight-" + direction
+                        : magnitude < 135 ? "turn-" + direction
+                        : "sharp-" + direction;
+                maneuvers.add(this.maneuver(type, node, travelled));
+            }
+            previous = node;
+        }
+        if (nodes.length > 1) {
+            travelled += this.distance(previous, nodes[nodes.length - 1]);
+        }
+        maneuvers.add(this.maneuver("arrive", nodes[nodes.length - 1], travelled));
+        return maneuvers;
+    }
+
+    private JSONObject maneuver(final String type, final int node, final double distanceMeters) {
+        final var maneuver = new JSONObject();
+        maneuver.put("type", type);
+        maneuver.put("lat", this.index.latitudeE7[node] / Geo.E7);
+        maneuver.put("lon", this.index.longitudeE7[node] / Geo.E7);
+        maneuver.put("distanceMeters", Math.round(distanceMeters));
+        return maneuver;
+    }
+
+    private double distance(final int from, final int to) {
+        return Geo.distanceMeters(this.index.latitudeE7[from], this.index.longitudeE7[from],
+                this.index.latitudeE7[to], this.index.longitudeE7[to]);
+    }
+
+    private double bearing(final int from, final int to) {
+        return Geo.bearing(this.index.latitudeE7[from], this.index.longitudeE7[from],
+                this.index.latitudeE7[to], this.index.longitudeE7[to]);
+    }
+
+    private static JSONObject failure(final String reason) {
+        final var failure = new JSONObject();
+        failure.put("failure", reason);
+        return failure;
+    }
+
+    public JSONObject getStats() {
+        final var stats = new JSONObject();
+        stats.put("available", this.index != null);
+        stats.put("indexFile", this.file.toAbsolutePath().toString());
+        if (this.index != null) {
+            stats.put("nodes", this.index.nodeCount);
+            stats.put("hierarchyEdges", this.index.edgeCount());
+            stats.put("loadMillis", this.loadMillis);
+            try {
+                stats.put("indexBytes", Files.size(this.file));
+            } catch (final IOException e) {
+                stats.put("indexBytes", null);
+            }
+        }
+        stats.put("routed", this.routed.get());
+        stats.put("unreachable", this.unreachable.get());
+        stats.put("notSnapped", this.notSnapped.get());
+        stats.put("queryMicros", this.queryNanos.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+        stats.put("settledNodes", this.settledNodes.toJson(1));
+        stats.put("queryPool", this.queries != null ? this.queries.getStats() : null);
+        return stats;
+    }
+
+}
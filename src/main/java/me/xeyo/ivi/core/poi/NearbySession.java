@@ -0,0 +1,102 @@
+package me.xeyo.ivi.core.poi;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import java.util.Arrays;
+import me.xeyo.ivi.core.nav.Geo;
+
+/**
+ * Follows one moving position and reports how the set of nearest points changes. A position closer than
+ * {@link PoiService#getRefreshMeters()} to the last searched one is ignored; otherwise the search is repeated and only
+ * the difference is sent: points that came into range in full, the ids of points that left, and the new order with
+ * distances.
+ */
+public final class NearbySession implements AutoCloseable {
+
+    private final PoiService service;
+
+    private boolean searched;
+    private int latitudeE7;
+    private int longitudeE7;
+    private int limit;
+    private double radiusMeters;
+    private int mask;
+    private int[] current = new int[0];
+    private boolean closed;
+
+    NearbySession(final PoiService service) {
+        this.service = service;
+    }
+
+    /**
+     * Returns the update for the new position, or {@code null} if nothing needs to be sent.
+     */
+    public synchronized JSONObject update(final double latitude, final double longitude, final int limit,
+                                          final double radiusMeters, final int mask) {
+        final int latitudeE7 = Geo.toE7(latitude);
+        final int longitudeE7 = Geo.toE7(longitude);
+        final boolean sameSearch = this.searched && limit == this.limit && radiusMeters == this.radiusMeters && mask == this.mask;
+        if (sameSearch && Geo.distanceMeters(this.latitudeE7, this.longitudeE7, latitudeE7, longitudeE7) < this.service.getRefreshMeters()) {
+            this.service.onSessionUpdate(true);
+            return null;
+        }
+        this.searched = true;
+        this.latitudeE7 = latitudeE7;
+        this.longitudeE7 = longitudeE7;
+        this.limit = limit;
+        this.radiusMeters = radiusMeters;
+        this.mask = mask;
+
+        final PoiPack.Query query = this.service.borrowQuery();
+        final int[] next;
+        final var added = new JSONArray();
+        final JSONArray order;
+        try {
+            final long start = System.nanoTime();
+            this.service.getPack().nearest(query, latitudeE7, longitudeE7, Math.min(limit, PoiService.MAX_NEAREST), mask, radiusMeters);
+            this.service.recordNearest(System.nanoTime() - start);
+
+            next = new int[query.size()];
+            order = new JSONArray(next.length);
+            for (int i = 0; i < next.length; i++) {
+                next[i] = query.item(i);
+                if (!contains(this.current, next[i])) added.add(this.service.toJson(next[i], query.meters(i), true));
+                order.add(new long[]{next[i], Math.round(query.meters(i))});
+            }
+        } finally {
+            this.service.releaseQuery(query);
+        }
+        final var removed = new JSONArray();
+        for (final int item : this.current) {
+            if (!contains(next, item)) removed.add(item);
+        }
+        final boolean unchanged = sameSearch && Arrays.equals(this.current, next);
+        this.current = next;
+        this.service.onSessionUpdate(false);
+
+        final var update = new JSONObject();
+        update.put("type", "nearby");
+        update.put("lat", latitude);
+        update.put("lon", longitude);
+        update.put("added", added);
+        update.put("removed", removed);
+        update.put("order", order);
+        update.put("unchanged", unchanged);
+        return update;
+    }
+
+    private static boolean contains(final int[] items, final int item) {
+        for (final int candidate : items) {
+            if (candidate == item) return true;
+        }
+        return false;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (this.closed) return;
+        this.closed = true;
+        this.service.onSessionClosed();
+    }
+
+}
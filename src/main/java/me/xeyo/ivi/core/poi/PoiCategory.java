@@ -0,0 +1,79 @@
+package me.xeyo.ivi.core.poi;
+
+import java.util.Locale;
+import lombok.Getter;
+
+/**
+ * Kinds of points of interest the head unit can search for. The ordinal is stored in the pack and used as the bit in
+ * category masks, so new categories are only ever appended.
+ */
+@Getter
+public enum PoiCategory {
+    FUEL("fuel", "amenity", "fuel"),
+    CHARGING("charging", "amenity", "charging_station"),
+    PARKING("parking", "amenity", "parking"),
+    REST_AREA("rest-area", "highway", "rest_area"),
+    RESTAURANT("restaurant", "amenity", "restaurant"),
+    FAST_FOOD("fast-food", "amenity", "fast_food"),
+    CAFE("cafe", "amenity", "cafe"),
+    HOTEL("hotel", "tourism", "hotel"),
+    SUPERMARKET("supermarket", "shop", "supermarket"),
+    PHARMACY("pharmacy", "amenity", "pharmacy"),
+    HOSPITAL("hospital", "amenity", "hospital"),
+    TOILETS("toilets", "amenity", "toilets"),
+    ATM("atm", "amenity", "atm"),
+    CAR_WASH("car-wash", "amenity", "car_wash"),
+    CAR_REPAIR("car-repair", "shop", "car_repair");
+
+    private static final PoiCategory[] VALUES = values();
+    public static final int ALL = (1 << VALUES.length) - 1;
+
+    private final String key;
+    private final String osmKey;
+    private final String osmValue;
+
+    PoiCategory(final String key, final String osmKey, final String osmValue) {
+        this.key = key;
+        this.osmKey = osmKey;
+        this.osmValue = osmValue;
+    }
+
+    public int mask() {
+        return 1 << this.ordinal();
+    }
+
+    public static PoiCategory ofKey(final String key) {
+        final var normalized = key.trim().toLowerCase(Locale.ROOT).replace('_', '-');
+        for (final PoiCategory category : VALUES) {
+            if (category.key.equals(normalized)) return category;
+        }
+        return null;
+    }
+
+    public static PoiCategory ofOsmTag(final String osmKey, final String osmValue) {
+        for (final PoiCategory category : VALUES) {
+            if (category.osmKey.equals(osmKey) && category.osmValue.equals(osmValue)) return category;
+        }
+        return null;
+    }
+
+    /**
+     * Parses a comma separated list of category keys into a mask; blank means every category. Returns {@code -1} if
+     * a key is unknown.
+     */
+    public static int parseMask(final String keys) {
+        if (keys == null || keys.isBlank()) return ALL;
+        int mask = 0;
+        for (final String key : keys.split(",")) {
+            if (key.isBlank()) continue;
+            final PoiCategory category = ofKey(key);
+            if (category == null) return -1;
+            mask |= category.mask();
+        }
+        return mask == 0 ? ALL : mask;
+    }
+
+    public static PoiCategory ofOrdinal(final int ordinal) {
+        return ordinal >= 0 && ordinal < VALUES.length ? VALUES[ordinal] : null;
+    }
+}
@@ -0,0 +1,336 @@
+package me.xeyo.ivi.core.poi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import lombok.Getter;
+import me.xeyo.ivi.core.nav.Geo;
+
+/**
+ * A read-only, packed R-tree of points of interest, mapped into memory when it is opened so the whole index lives
+ * off the Java heap.
+ * <p>
+ * The tree is static and built bottom-up by {@link PoiPackWriter}: points are sorted along a Hilbert curve, every
+ * {@code nodeSize} consecutive entries of a level get one parent box, and the levels are stored one after another
+ * from the leaves to the root. Children are therefore found by position rather than by pointer chasing, and a node
+ * is a leaf exactly when its position is below {@code itemCount}. Every box also carries the union of the category
+ * bits below it, so a filtered search skips whole subtrees that hold no matching category.
+ * <p>
+ * Layout: a 96 byte header {@code magic, version, itemCount, nodeSize, boxCount, levelCount, namesBytes:long} plus
+ * up to 16 level bounds, then {@code boxCount} boxes {@code minLat, minLon, maxLat, maxLon} in degrees times
+ * 10<sup>7</sup>, {@code boxCount} child positions, {@code boxCount} category masks, {@code itemCount + 1} name
+ * offsets and the UTF-8 names.
+ */
+public final class PoiPack implements AutoCloseable {
+
+    static final int MAGIC = 0x49564950;
+    static final int VERSION = 1;
+    static final int HEADER_BYTES = 96;
+    static final int MAX_LEVELS = 16;
+    static final int DEFAULT_NODE_SIZE = 16;
+
+    // Distances use an equirectangular projection around the query point, which is well within a meter of the
+    // great-circle distance over the few kilometres a nearby search covers.
+    static final double METERS_PER_E7 = Math.PI * 6_371_008.8 / 180 / Geo.E7;
+
+    @Getter
+    private final Path file;
+    private final FileChannel channel;
+    @Getter
+    private final int itemCount;
+    private final int nodeSize;
+    private final int boxCount;
+    private final int[] levelBounds;
+    @Getter
+    private final long sizeBytes;
+
+    private final IntBuffer boxes;
+    private final IntBuffer children;
+    private final IntBuffer masks;
+    private final IntBuffer nameOffsets;
+    private final ByteBuffer names;
+
+    private PoiPack(final Path file, final FileChannel channel) throws IOException {
+        this.file = file;
+        this.channel = channel;
+        this.sizeBytes = channel.size();
+        if (this.sizeBytes < HEADER_BYTES) throw new IOException("POI pack is truncated: " + file);
+        if (this.sizeBytes > Integer.MAX_VALUE) throw new IOException("POI pack is too large: " + file);
+
+        final MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, this.sizeBytes);
+        if (mapped.getInt(0) != MAGIC) throw new IOException("Not a POI pack: " + file);
+        if (mapped.getInt(4) != VERSION) throw new IOException("Unsupported POI pack version " + mapped.getInt(4) + ": " + file);
+
+        this.itemCount = mapped.getInt(8);
+        this.nodeSize = mapped.getInt(12);
+        this.boxCount = mapped.getInt(16);
+        final int levelCount = mapped.getInt(20);
+        final long namesBytes = mapped.getLong(24);
+        if (this.itemCount < 0 || this.nodeSize < 2 || levelCount < 0 || levelCount > MAX_LEVELS
+                || this.boxCount < this.itemCount || namesBytes < 0
+                || sizeOf(this.itemCount, this.boxCount, namesBytes) != this.sizeBytes) {
+            throw new IOException("POI pack header is not valid: " + file);
+        }
+        this.levelBounds = new int[levelCount];
+        for (int level = 0; level < levelCount; level++) {
+            this.levelBounds[level] = mapped.getInt(32 + level * 4);
+        }
+        if (levelCount > 0 && this.levelBounds[levelCount - 1] != this.boxCount) {
+            throw new IOException("POI pack levels are not valid: " + file);
+        }
+
+        int offset = HEADER_BYTES;
+        this.boxes = mapped.slice(offset, this.boxCount * 16).asIntBuffer();
+        offset += this.boxCount * 16;
+        this.children = mapped.slice(offset, this.boxCount * 4).asIntBuffer();
+        offset += this.boxCount * 4;
+        this.masks = mapped.slice(offset, this.boxCount * 4).asIntBuffer();
+        offset += this.boxCount * 4;
+        this.nameOffsets = mapped.slice(offset, (this.itemCount + 1) * 4).asIntBuffer();
+        offset += (this.itemCount + 1) * 4;
+        this.names = mapped.slice(offset, (int) namesBytes);
+    }
+
+    public static PoiPack open(final Path file) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            return new PoiPack(file, channel);
+        } catch (final IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static long sizeOf(final int itemCount, final int boxCount, final long namesBytes) {
+        return HEADER_BYTES + boxCount * 24L + (itemCount + 1) * 4L + namesBytes;
+    }
+
+    public int latitudeE7(final int item) {
+        return this.boxes.get(item * 4);
+    }
+
+    public int longitudeE7(final int item) {
+        return this.boxes.get(item * 4 + 1);
+    }
+
+    public PoiCategory category(final int item) {
+        return PoiCategory.ofOrdinal(Integer.numberOfTrailingZeros(this.masks.get(item)));
+    }
+
+    public String name(final int item) {
+        final int start = this.nameOffsets.get(item);
+        final int length = this.nameOffsets.get(item + 1) - start;
+        if (length == 0) return "";
+        final byte[] bytes = new byte[length];
+        this.names.get(start, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds up to {@code limit} items in category {@code mask} closest to the given point and within
+     * {@code maxMeters} (no bound if zero or less), nearest first. Results are left in {@code query}.
+     */
+    public void nearest(final Query query, final int latitudeE7, final int longitudeE7, final int limit, final int mask,
+                        final double maxMeters) {
+        query.reset();
+        if (this.itemCount == 0 || limit <= 0) return;
+
+        final double scaleY = METERS_PER_E7;
+        final double scaleX = METERS_PER_E7 * Math.cos(Math.toRadians(latitudeE7 / Geo.E7));
+        final double maxSquared = maxMeters > 0 ? maxMeters * maxMeters : Double.POSITIVE_INFINITY;
+        final DistanceHeap heap = query.heap;
+
+        int node = this.boxCount - 1;
+        if ((this.masks.get(node) & mask) == 0) return;
+        while (true) {
+            final int first = this.children.get(node);
+            final int end = Math.min(first + this.nodeSize, this.levelEnd(first));
+            for (int position = first; position < end; position++) {
+                if ((this.masks.get(position) & mask) == 0) continue;
+                final double squared = this.squaredDistance(position, latitudeE7, longitudeE7, scaleX, scaleY);
+                if (squared <= maxSquared) heap.push(squared, position);
+            }
+
+            // A leaf on top of the heap is closer than any box still queued, so it is the next result.
+            while (!heap.isEmpty() && heap.peekValue() < this.itemCount) {
+                final double squared = heap.peekKey();
+                query.add(heap.pop(), Math.sqrt(squared));
+                if (query.size == limit) return;
+            }
+            if (heap.isEmpty()) return;
+            node = heap.pop();
+        }
+    }
+
+    /**
+     * Finds up to {@code limit} items in category {@code mask} inside the given box, in index order. Results are left
+     * in {@code query} with a distance of zero.
+     */
+    public void within(final Query query, final int minLatitudeE7, final int minLongitudeE7, final int maxLatitudeE7,
+                       final int maxLongitudeE7, final int limit, final int mask) {
+        query.reset();
+        if (this.itemCount == 0 || limit <= 0) return;
+
+        int[] stack = query.stack;
+        int depth = 0;
+        stack[depth++] = this.boxCount - 1;
+        while (depth > 0) {
+            final int node = stack[--depth];
+            if ((this.masks.get(node) & mask) == 0) continue;
+            final int base = node * 4;
+            if (this.boxes.get(base) > maxLatitudeE7 || this.boxes.get(base + 2) < minLatitudeE7
+                    || this.boxes.get(base + 1) > maxLongitudeE7 || this.boxes.get(base + 3) < minLongitudeE7) {
+                continue;
+            }
+            if (node < this.itemCount) {
+                query.add(node, 0);
+                if (query.size == limit) return;
+                continue;
+            }
+
+            final int first = this.children.get(node);
+            final int end = Math.min(first + this.nodeSize, this.levelEnd(first));
+            if (depth + (end - first) > stack.length) stack = query.stack = Arrays.copyOf(stack, stack.length * 2 + this.nodeSize);
+            for (int position = end - 1; position >= first; position--) {
+                stack[depth++] = position;
+            }
+        }
+    }
+
+    private int levelEnd(final int position) {
+        for (final int bound : this.levelBounds) {
+            if (position < bound) return bound;
+        }
+        return this.boxCount;
+    }
+
+    private double squaredDistance(final int position, final int latitudeE7, final int longitudeE7,
+                                   final double scaleX, final double scaleY) {
+        final int base = position * 4;
+        final int minLatitude = this.boxes.get(base);
+        final int minLongitude = this.boxes.get(base + 1);
+        final int maxLatitude = this.boxes.get(base + 2);
+        final int maxLongitude = this.boxes.get(base + 3);
+        final double dy = latitudeE7 < minLatitude ? minLatitude - (double) latitudeE7
+                : latitudeE7 > maxLatitude ? (double) latitudeE7 - maxLatitude : 0;
+        final double dx = longitudeE7 < minLongitude ? minLongitude - (double) longitudeE7
+                : longitudeE7 > maxLongitude ? (double) longitudeE7 - maxLongitude : 0;
+        return dx * dx * scaleX * scaleX + dy * dy * scaleY * scaleY;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+
+    /**
+     * Search state and results for one search at a time; reused across searches so a query allocates nothing.
+     */
+    public static final class Query {
+
+        private final DistanceHeap heap = new DistanceHeap();
+        private int[] stack = new int[256];
+        private int[] items = new int[64];
+        private double[] meters = new double[64];
+        private int size;
+
+        public int size() {
+            return this.size;
+        }
+
+        public int item(final int index) {
+            return this.items[index];
+        }
+
+        public double meters(final int index) {
+            return this.meters[index];
+        }
+
+        private void reset() {
+            this.size = 0;
+            this.heap.clear();
+        }
+
+        private void add(final int item, final double distance) {
+            if (this.size == this.items.length) {
+                this.items = Arrays.copyOf(this.items, this.size * 2);
+                this.meters = Arrays.copyOf(this.meters, this.size * 2);
+            }
+            this.items[this.size] = item;
+            this.meters[this.size] = distance;
+            this.size++;
+        }
+    }
+
+    /**
+     * Binary min-heap of positions keyed by squared distance, in two primitive arrays.
+     */
+    private static final class DistanceHeap {
+
+        private double[] keys = new double[256];
+        private int[] values = new int[256];
+        private int size;
+
+        boolean isEmpty() {
+            return this.size == 0;
+        }
+
+        void clear() {
+            this.size = 0;
+        }
+
+        double peekKey() {
+            return this.keys[0];
+        }
+
+        int peekValue() {
+            return this.values[0];
+        }
+
+        void push(final double key, final int value) {
+            if (this.size == this.keys.length) {
+                this.keys = Arrays.copyOf(this.keys, this.size * 2);
+                this.values = Arrays.copyOf(this.values, this.size * 2);
+            }
+            int index = this.size++;
+            while (index > 0) {
+                final int parent = (index - 1) >>> 1;
+                if (this.keys[parent] <= key) break;
+                this.keys[index] = this.keys[parent];
+                this.values[index] = this.values[parent];
+                index = parent;
+            }
+            this.keys[index] = key;
+            this.values[index] = value;
+        }
+
+        int pop() {
+            final int top = this.values[0];
+            final int last = --this.size;
+            if (last > 0) {
+                final double key = this.keys[last];
+                final int value = this.values[last];
+                int index = 0;
+                while (true) {
+                    int child = 2 * index + 1;
+                    if (child >= last) break;
+                    if (child + 1 < last && this.keys[child + 1] < this.keys[child]) child++;
+                    if (this.keys[child] >= key) break;
+                    this.keys[index] = this.keys[child];
+                    this.values[index] = this.values[child];
+                    index = child;
+                }
+                this.keys[index] = key;
+                this.values[index] = value;
+            }
+            return top;
+        }
+    }
+
+}
@@ -0,0 +1,310 @@
+package me.xeyo.ivi.core.poi;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import me.xeyo.ivi.core.nav.Geo;
+
+/**
+ * Builds a {@link PoiPack}. Points are collected into primitive arrays with {@link #add}, then {@link #write} sorts
+ * them along a Hilbert curve and packs the R-tree levels above them.
+ * <p>
+ * Usage: {@code java -cp ivi.jar me.xeyo.ivi.core.poi.PoiPackWriter <source> <pack file>}, where the source is an
+ * OpenStreetMap XML extract ({@code .osm} or {@code .osm.gz}, tagged nodes only) or a CSV file of
+ * {@code lat,lon,category,name} lines.
+ */
+public final class PoiPackWriter {
+
+    private int[] latitudes = new int[1 << 12];
+    private int[] longitudes = new int[1 << 12];
+    private byte[] categories = new byte[1 << 12];
+    private String[] names = new String[1 << 12];
+    private int size;
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: PoiPackWriter <extract.osm[.gz] | points.csv> <pack file>");
+            System.exit(2);
+        }
+        final long start = System.nanoTime();
+        final Path source = Paths.get(args[0]);
+        final var writer = new PoiPackWriter();
+        if (source.getFileName().toString().endsWith(".csv")) {
+            writer.readCsv(source);
+        } else {
+            writer.readOsm(source);
+        }
+        final long bytes = writer.write(Paths.get(args[1]), PoiPack.DEFAULT_NODE_SIZE);
+        System.out.println("[POI] Packed " + writer.size() + " points into " + args[1] + " (" + bytes + " bytes) in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    public void add(final double latitude, final double longitude, final PoiCategory category, final String name) {
+        if (this.size == this.latitudes.length) {
+            final int capacity = this.size * 2;
+            this.latitudes = Arrays.copyOf(this.latitudes, capacity);
+            this.longitudes = Arrays.copyOf(this.longitudes, capacity);
+            this.categories = Arrays.copyOf(this.categories, capacity);
+            this.names = Arrays.copyOf(this.names, capacity);
+        }
+        this.latitudes[this.size] = Geo.toE7(latitude);
+        this.longitudes[this.size] = Geo.toE7(longitude);
+        this.categories[this.size] = (byte) category.ordinal();
+        this.names[this.size] = name != null ? name : "";
+        this.size++;
+    }
+
+    /**
+     * Adds the lines of a {@code lat,lon,category,name} file. The name is the rest of the line and may contain
+     * commas; a header line and lines with an unknown category are skipped.
+     */
+    public void readCsv(final Path file) throws IOException {
+        try (final BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(",", 4);
+                if (fields.length < 3) continue;
+                final PoiCategory category = PoiCategory.ofKey(fields[2]);
+                if (category == null) continue;
+                try {
+                    this.add(Double.parseDouble(fields[0].trim()), Double.parseDouble(fields[1].trim()), category,
+                            fields.length > 3 ? fields[3].trim() : "");
+                } catch (final NumberFormatException e) {
+                    // Header or malformed line.
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds every node of an OpenStreetMap XML extract that is tagged with a known {@link PoiCategory}.
+     */
+    public void readOsm(final Path file) throws IOException {
+        try (final InputStream raw = new BufferedInputStream(Files.newInputStream(file), 1 << 16)) {
+            final InputStream input = file.getFileName().toString().endsWith(".gz") ? new GZIPInputStream(raw, 1 << 16) : raw;
+            final XMLInputFactory factory = XMLInputFactory.newFactory();
+            factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            final XMLStreamReader reader = factory.createXMLStreamReader(input);
+
+            boolean inNode = false;
+            double latitude = 0;
+            double longitude = 0;
+            PoiCategory category = null;
+            String name = null;
+            while (reader.hasNext()) {
+                final int event = reader.next();
+                if (event == XMLStreamConstants.START_ELEMENT) {
+                    switch (reader.getLocalName()) {
+                        case "node" -> {
+                            inNode = true;
+                            latitude = Double.parseDouble(reader.getAttributeValue(null, "lat"));
+                            longitude = Double.parseDouble(reader.getAttributeValue(null, "lon"));
+                            category = null;
+                            name = null;
+                        }
+                        case "tag" -> {
+                            if (!inNode) break;
+                            final String key = reader.getAttributeValue(null, "k");
+                            final String value = reader.getAttributeValue(null, "v");
+                            if (key.equals("name")) {
+                                name = value;
+                            } else if (category == null) {
+                                category = PoiCategory.ofOsmTag(key, value);
+                            }
+                        }
+                        case "way", "relation" -> inNode = false;
+                        default -> {
+                        }
+                    }
+                } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("node")) {
+                    inNode = false;
+                    if (category != null) this.add(latitude, longitude, category, name);
+                }
+            }
+            reader.close();
+        } catch (final XMLStreamException e) {
+            throw new IOException("Cannot parse " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes the collected points to {@code pack}, replacing it atomically, and returns its size in bytes.
+     */
+    public long write(final Path pack, final int nodeSize) throws IOException {
+        final int itemCount = this.size;
+        final int[] order = this.hilbertOrder();
+
+        // Level sizes from the leaves up to a single root.
+        final int[] levelBounds = new int[PoiPack.MAX_LEVELS];
+        int levelCount = 0;
+        int boxCount = itemCount;
+        if (itemCount > 0) {
+            int levelSize = itemCount;
+            levelBounds[levelCount++] = boxCount;
+            do {
+                levelSize = (levelSize + nodeSize - 1) / nodeSize;
+                boxCount += levelSize;
+                if (levelCount == PoiPack.MAX_LEVELS) throw new IOException("Too many points for node size " + nodeSize);
+                levelBounds[levelCount++] = boxCount;
+            } while (levelSize != 1);
+        }
+
+        final byte[][] encodedNames = new byte[itemCount][];
+        long namesBytes = 0;
+        for (int i = 0; i < itemCount; i++) {
+            encodedNames[i] = this.names[order[i]].getBytes(StandardCharsets.UTF_8);
+            namesBytes += encodedNames[i].length;
+        }
+        final long fileBytes = PoiPack.sizeOf(itemCount, boxCount, namesBytes);
+        if (fileBytes > Integer.MAX_VALUE) throw new IOException("Too many points for one pack: " + itemCount);
+
+        final Path temporary = pack.resolveSibling(pack.getFileName() + ".tmp");
+        Files.deleteIfExists(temporary);
+        try (final FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final MappedByteBuffer out = channel.map(FileChannel.MapMode.READ_WRITE, 0, fileBytes);
+            out.putInt(0, PoiPack.MAGIC);
+            out.putInt(4, PoiPack.VERSION);
+            out.putInt(8, itemCount);
+            out.putInt(12, nodeSize);
+            out.putInt(16, boxCount);
+            out.putInt(20, levelCount);
+            out.putLong(24, namesBytes);
+            for (int level = 0; level < levelCount; level++) {
+                out.putInt(32 + level * 4, levelBounds[level]);
+            }
+
+            final int boxesStart = PoiPack.HEADER_BYTES;
+            final int childrenStart = boxesStart + boxCount * 16;
+            final int masksStart = childrenStart + boxCount * 4;
+            final int namesIndexStart = masksStart + boxCount * 4;
+            final int namesStart = namesIndexStart + (itemCount + 1) * 4;
+
+            int nameOffset = 0;
+            for (int i = 0; i < itemCount; i++) {
+                final int source = order[i];
+                final int box = boxesStart + i * 16;
+                out.putInt(box, this.latitudes[source]);
+                out.putInt(box + 4, this.longitudes[source]);
+                out.putInt(box + 8, this.latitudes[source]);
+                out.putInt(box + 12, this.longitudes[source]);
+                out.putInt(childrenStart + i * 4, i);
+                out.putInt(masksStart + i * 4, 1 << this.categories[source]);
+                out.putInt(namesIndexStart + i * 4, nameOffset);
+                out.put(namesStart + nameOffset, encodedNames[i]);
+                nameOffset += encodedNames[i].length;
+            }
+            out.putInt(namesIndexStart + itemCount * 4, nameOffset);
+
+            // Each parent covers up to nodeSize consecutive boxes of the level below it.
+            int parent = itemCount;
+            int position = 0;
+            for (int level = 0; level < levelCount - 1; level++) {
+                final int end = levelBounds[level];
+                while (position < end) {
+                    final int first = position;
+                    int minLatitude = Integer.MAX_VALUE;
+                    int minLongitude = Integer.MAX_VALUE;
+                    int maxLatitude = Integer.MIN_VALUE;
+                    int maxLongitude = Integer.MIN_VALUE;
+                    int mask = 0;
+                    for (; position < Math.min(first + nodeSize, end); position++) {
+                        final int box = boxesStart + position * 16;
+                        minLatitude = Math.min(minLatitude, out.getInt(box));
+                        minLongitude = Math.min(minLongitude, out.getInt(box + 4));
+                        maxLatitude = Math.max(maxLatitude, out.getInt(box + 8));
+                        maxLongitude = Math.max(maxLongitude, out.getInt(box + 12));
+                        mask |= out.getInt(masksStart + position * 4);
+                    }
+                    final int box = boxesStart + parent * 16;
+                    out.putInt(box, minLatitude);
+                    out.putInt(box + 4, minLongitude);
+                    out.putInt(box + 8, maxLatitude);
+                    out.putInt(box + 12, maxLongitude);
+                    out.putInt(childrenStart + parent * 4, first);
+                    out.putInt(masksStart + parent * 4, mask);
+                    parent++;
+                }
+            }
+            out.force();
+        }
+        Files.move(temporary, pack, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return fileBytes;
+    }
+
+    /**
+     * Positions of the points in Hilbert curve order over their bounding box, so that neighbours in the pack are
+     * neighbours on the map and parent boxes stay small.
+     */
+    private int[] hilbertOrder() {
+        int minLatitude = Integer.MAX_VALUE;
+        int minLongitude = Integer.MAX_VALUE;
+        int maxLatitude = Integer.MIN_VALUE;
+        int maxLongitude = Integer.MIN_VALUE;
+        for (int i = 0; i < this.size; i++) {
+            minLatitude = Math.min(minLatitude, this.latitudes[i]);
+            minLongitude = Math.min(minLongitude, this.longitudes[i]);
+            maxLatitude = Math.max(maxLatitude, this.latitudes[i]);
+            maxLongitude = Math.max(maxLongitude, this.longitudes[i]);
+        }
+        final double scaleY = 65535.0 / Math.max(1, (long) maxLatitude - minLatitude);
+        final double scaleX = 65535.0 / Math.max(1, (long) maxLongitude - minLongitude);
+
+        final long[] keys = new long[this.size];
+        for (int i = 0; i < this.size; i++) {
+            final int x = (int) ((this.longitudes[i] - (long) minLongitude) * scaleX);
+            final int y = (int) ((this.latitudes[i] - (long) minLatitude) * scaleY);
+            keys[i] = (hilbert(x, y) << 31) | i;
+        }
+        Arrays.parallelSort(keys);
+
+        final int[] order = new int[this.size];
+        for (int i = 0; i < this.size; i++) {
+            order[i] = (int) (keys[i] & Integer.MAX_VALUE);
+        }
+        return order;
+    }
+
+    /**
+     * Distance of {@code (x, y)} along the Hilbert curve over a 65536 by 65536 grid.
+     */
+    static long hilbert(int x, int y) {
+        long distance = 0;
+        for (int s = 1 << 15; s > 0; s >>>= 1) {
+            final int rx = (x & s) != 0 ? 1 : 0;
+            final int ry = (y & s) != 0 ? 1 : 0;
+            distance += (long) s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = 65535 - x;
+                    y = 65535 - y;
+                }
+                final int swap = x;
+                x = y;
+                y = swap;
+            }
+        }
+        return distance;
+    }
+
+}
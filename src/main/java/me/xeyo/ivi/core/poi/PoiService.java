@@ -0,0 +1,187 @@
+package me.xeyo.ivi.core.poi;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import me.xeyo.ivi.core.nav.Geo;
+import me.xeyo.ivi.core.javalin.ServerExecution;
+import me.xeyo.ivi.core.utils.SampleStats;
+import me.xeyo.ivi.core.utils.ScratchPool;
+
+/**
+ * Nearby and area search over the installed {@link PoiPack}. Searches run on the caller's thread against the mapped
+ * pack with pooled search state, so they allocate only the JSON they return.
+ */
+public class PoiService {
+
+    public static final int MAX_NEAREST = 100;
+    public static final int MAX_WITHIN = 2000;
+
+    @Getter
+    private final PoiPack pack;
+    private final ScratchPool<PoiPack.Query> queries = new ScratchPool<>(ServerExecution.cpuConcurrency(), PoiPack.Query::new);
+    @Getter
+    private final double refreshMeters;
+
+    private final AtomicLong nearestQueries = new AtomicLong();
+    private final AtomicLong withinQueries = new AtomicLong();
+    private final AtomicInteger openSessions = new AtomicInteger();
+    private final AtomicLong sessionUpdates = new AtomicLong();
+    private final AtomicLong sessionUpdatesSkipped = new AtomicLong();
+    private final SampleStats nearestNanos = new SampleStats();
+    private final SampleStats withinNanos = new SampleStats();
+
+    public PoiService(final PoiPack pack, final double refreshMeters) {
+        this.pack = pack;
+        this.refreshMeters = refreshMeters;
+    }
+
+    /**
+     * Opens the pack at {@code ivi.poi.pack} (default {@code maps/poi.ivipoi}), built with {@link PoiPackWriter}.
+     * Without a pack every search fails.
+     */
+    public static PoiService fromSystemProperties() {
+        final Path file = Paths.get(System.getProperty("ivi.poi.pack", "maps/poi.ivipoi"));
+        PoiPack pack = null;
+        if (Files.isRegularFile(file)) {
+            try {
+                pack = PoiPack.open(file);
+                System.out.println("[POI] Opened " + file + ": " + pack.getItemCount() + " points, "
+                        + pack.getSizeBytes() + " bytes mapped");
+            } catch (final IOException e) {
+                System.err.println("[POI] Cannot open POI pack " + file + ": " + e.getMessage());
+            }
+        } else {
+            System.out.println("[POI] No POI pack at " + file + ", nearby search is unavailable");
+        }
+        return new PoiService(pack, Double.parseDouble(System.getProperty("ivi.poi.refreshMeters", "25")));
+    }
+
+    public boolean isAvailable() {
+        return this.pack != null;
+    }
+
+    /**
+     * The {@code limit} points in {@code mask} nearest to the position, optionally within {@code radiusMeters},
+     * nearest first.
+     */
+    public JSONArray nearest(final double latitude, final double longitude, final int limit, final double radiusMeters,
+                             final int mask) {
+        final PoiPack.Query query = this.queries.borrow();
+        try {
+            final long start = System.nanoTime();
+            this.pack.nearest(query, Geo.toE7(latitude), Geo.toE7(longitude), Math.min(limit, MAX_NEAREST), mask, radiusMeters);
+            this.recordNearest(System.nanoTime() - start);
+            return this.toJson(query, true);
+        } finally {
+            this.queries.release(query);
+        }
+    }
+
+    /**
+     * Up to {@code limit} points in {@code mask} inside the box.
+     */
+    public JSONArray within(final double minLatitude, final double minLongitude, final double maxLatitude,
+                            final double maxLongitude, final int limit, final int mask) {
+        final PoiPack.Query query = this.queries.borrow();
+        try {
+            final long start = System.nanoTime();
+            this.pack.within(query, Geo.toE7(minLatitude), Geo.toE7(minLongitude), Geo.toE7(maxLatitude), Geo.toE7(maxLongitude),
+                    Math.min(limit, MAX_WITHIN), mask);
+            this.withinNanos.record(System.nanoTime() - start);
+            this.withinQueries.incrementAndGet();
+            return this.toJson(query, false);
+        } finally {
+            this.queries.release(query);
+        }
+    }
+
+    /**
+     * Starts following a moving position; see {@link NearbySession}. Close the session when the client goes away.
+     */
+    public NearbySession openSession() {
+        this.openSessions.incrementAndGet();
+        return new NearbySession(this);
+    }
+
+    void onSessionClosed() {
+        this.openSessions.decrementAndGet();
+    }
+
+    void onSessionUpdate(final boolean skipped) {
+        (skipped ? this.sessionUpdatesSkipped : this.sessionUpdates).incrementAndGet();
+    }
+
+    JSONObject toJson(final int item, final double distanceMeters, final boolean withDistance) {
+        final var poi = new JSONObject();
+        poi.put("id", item);
+        poi.put("category", this.pack.category(item).getKey());
+        poi.put("name", this.pack.name(item));
+        poi.put("lat", this.pack.latitudeE7(item) / Geo.E7);
+        poi.put("lon", this.pack.longitudeE7(item) / Geo.E7);
+        if (withDistance) poi.put("distanceMeters", Math.round(distanceMeters));
+        return poi;
+    }
+
+    private JSONArray toJson(final PoiPack.Query query, final boolean withDistance) {
+        final var results = new JSONArray(query.size());
+        for (int i = 0; i < query.size(); i++) {
+            results.add(this.toJson(query.item(i), query.meters(i), withDistance));
+        }
+        return results;
+    }
+
+    /**
+     * Working state for one search; hand it back with {@link #releaseQuery} once the results are read.
+     */
+    PoiPack.Query borrowQuery() {
+        return this.queries.borrow();
+    }
+
+    void releaseQuery(final PoiPack.Query query) {
+        this.queries.release(query);
+    }
+
+    void recordNearest(final long nanos) {
+        this.nearestNanos.record(nanos);
+        this.nearestQueries.incrementAndGet();
+    }
+
+    public void close() {
+        if (this.pack != null) {
+            try {
+                this.pack.close();
+            } catch (final IOException e) {
+                System.err.println("[POI] Failed to close POI pack: " + e.getMessage());
+            }
+        }
+    }
+
+    public JSONObject getStats() {
+        final var stats = new JSONObject();
+        stats.put("available", this.pack != null);
+        if (this.pack != null) {
+            stats.put("packFile", this.pack.getFile().toAbsolutePath().toString());
+            stats.put("points", this.pack.getItemCount());
+            stats.put("mappedBytes", this.pack.getSizeBytes());
+        }
+        stats.put("nearestQueries", this.nearestQueries.get());
+        stats.put("nearestMicros", this.nearestNanos.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+        stats.put("withinQueries", this.withinQueries.get());
+        stats.put("withinMicros", this.withinNanos.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+        stats.put("openSessions", this.openSessions.get());
+        stats.put("sessionUpdates", this.sessionUpdates.get());
+        stats.put("sessionUpdatesSkipped", this.sessionUpdatesSkipped.get());
+        stats.put("refreshMeters", this.refreshMeters);
+        stats.put("queryPool", this.queries.getStats());
+        return stats;
+    }
+
+}
@@ -0,0 +1,116 @@
+package me.xeyo.ivi.core.radio;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Reads the station catalog, a CSV or tab separated file with a header row. Columns are matched by name, so exports
+ * from common station directories load as they are: {@code name}, {@code genre} (or {@code tags}), {@code country}
+ * (or {@code countrycode}), {@code frequency} in MHz, {@code url} (or {@code url_resolved}) and an optional {@code id}
+ * (or {@code stationuuid}). Fields may be quoted; rows without a name are skipped.
+ */
+public final class RadioCatalog {
+
+    private RadioCatalog() {
+    }
+
+    public static List<RadioStation> load(final Path file) throws IOException {
+        try (final BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            final String header = reader.readLine();
+            if (header == null) throw new IOException("Empty station catalog " + file);
+            final char separator = header.indexOf('\t') >= 0 ? '\t' : ',';
+            final List<String> columns = new ArrayList<>();
+            split(header.startsWith("﻿") ? header.substring(1) : header, separator, columns);
+
+            final int nameColumn = column(columns, "name");
+            if (nameColumn < 0) throw new IOException("No name column in station catalog " + file);
+            final int idColumn = column(columns, "id", "stationuuid");
+            final int genreColumn = column(columns, "genre", "genres", "tags");
+            final int countryColumn = column(columns, "country", "countrycode");
+            final int frequencyColumn = column(columns, "frequency", "frequencymhz", "freq");
+            final int urlColumn = column(columns, "url_resolved", "url", "stream", "streamurl");
+
+            final List<RadioStation> stations = new ArrayList<>();
+            final Set<String> ids = new HashSet<>();
+            final List<String> fields = new ArrayList<>(columns.size());
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isBlank()) continue;
+                split(line, separator, fields);
+                final String name = field(fields, nameColumn);
+                if (name.isEmpty()) continue;
+                final double frequency = parseFrequency(field(fields, frequencyColumn));
+                final String url = field(fields, urlColumn);
+                String id = field(fields, idColumn);
+                if (id.isEmpty()) id = RadioStation.idOf(name, frequency, url);
+                // Directories list some stations twice; the first entry wins.
+                if (!ids.add(id)) continue;
+                stations.add(new RadioStation(id, name, field(fields, genreColumn), field(fields, countryColumn), frequency, url));
+            }
+            return stations;
+        }
+    }
+
+    private static int column(final List<String> columns, final String... names) {
+        for (final String name : names) {
+            for (int i = 0; i < columns.size(); i++) {
+                if (columns.get(i).trim().toLowerCase(Locale.ROOT).equals(name)) return i;
+            }
+        }
+        return -1;
+    }
+
+    private static String field(final List<String> fields, final int column) {
+        return column >= 0 && column < fields.size() ? fields.get(column).trim() : "";
+    }
+
+    private static double parseFrequency(final String value) {
+        if (value.isEmpty()) return 0;
+        try {
+            final double frequency = Double.parseDouble(value.replace(',', '.'));
+            // Some catalogs give FM frequencies in kHz.
+            return frequency > 10_000 ? frequency / 1000 : Math.max(0, frequency);
+        } catch (final NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Splits one row; quoted fields may contain the separator and doubled quotes.
+     */
+    private static void split(final String line, final char separator, final List<String> fields) {
+        fields.clear();
+        final var field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            final char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == '"' && field.isEmpty()) {
+                quoted = true;
+            } else if (c == separator) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+    }
+
+}
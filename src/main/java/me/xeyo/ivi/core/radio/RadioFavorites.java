@@ -0,0 +1,71 @@
+package me.xeyo.ivi.core.radio;
+
+import com.alibaba.fastjson2.JSONArray;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import me.xeyo.ivi.core.error.InternalExceptionTracker;
+import me.xeyo.ivi.core.utils.AtomicFiles;
+
+/**
+ * Favorite station ids in the order they were added, stored as a JSON array. Favorites change rarely, so every
+ * change is written through right away. Ids of stations that left the catalog are kept, in case a later catalog
+ * brings them back.
+ */
+public class RadioFavorites {
+
+    private final Path file;
+    private final Set<String> ids = new LinkedHashSet<>();
+
+    public RadioFavorites(final Path file) {
+        this.file = file;
+    }
+
+    public synchronized void load() {
+        try {
+            AtomicFiles.deleteStaleTempFile(this.file);
+            if (!Files.exists(this.file)) return;
+            final JSONArray stored = JSONArray.parseArray(Files.readString(this.file, StandardCharsets.UTF_8));
+            if (stored == null) return;
+            for (int i = 0; i < stored.size(); i++) {
+                final String id = stored.getString(i);
+                if (id != null && !id.isEmpty()) this.ids.add(id);
+            }
+        } catch (final Exception e) {
+            System.err.println("[RADIO] Cannot read favorites " + this.file + ": " + e.getMessage());
+            InternalExceptionTracker.handleException(e);
+        }
+    }
+
+    /**
+     * Adds or removes {@code id}; returns whether anything changed.
+     */
+    public synchronized boolean set(final String id, final boolean favorite) throws IOException {
+        final boolean changed = favorite ? this.ids.add(id) : this.ids.remove(id);
+        if (!changed) return false;
+        try {
+            final Path parent = this.file.toAbsolutePath().getParent();
+            if (parent != null) Files.createDirectories(parent);
+            AtomicFiles.write(this.file, new JSONArray(new ArrayList<>(this.ids)).toJSONString().getBytes(StandardCharsets.UTF_8));
+        } catch (final IOException e) {
+            // Keep memory and disk in agreement.
+            if (favorite) {
+                this.ids.remove(id);
+            } else {
+                this.ids.add(id);
+            }
+            throw e;
+        }
+        return true;
+    }
+
+    public synchronized List<String> getIds() {
+        return new ArrayList<>(this.ids);
+    }
+
+}
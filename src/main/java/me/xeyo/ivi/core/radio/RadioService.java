@@ -0,0 +1,207 @@
+package me.xeyo.ivi.core.radio;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import me.xeyo.ivi.core.javalin.ServerExecution;
+import me.xeyo.ivi.core.utils.SampleStats;
+import me.xeyo.ivi.core.utils.ScratchPool;
+
+/**
+ * Station search and favorites over the local catalog. The catalog is loaded and indexed once by {@link #start()},
+ * which runs as a startup phase next to the rest of the boot; until it is done the service is not ready. Searches run
+ * on the caller's thread with pooled search state and allocate only the JSON they return.
+ */
+public class RadioService {
+
+    public static final int MAX_RESULTS = 50;
+
+    @Getter
+    private final Path catalogFile;
+    private final RadioFavorites favorites;
+
+    private volatile Catalog catalog;
+    @Getter
+    private volatile boolean ready;
+    private volatile long loadMillis;
+    private volatile long indexMillis;
+
+    private final AtomicLong searchCount = new AtomicLong();
+    private final SampleStats searchNanos = new SampleStats();
+
+    public RadioService(final Path catalogFile, final RadioFavorites favorites) {
+        this.catalogFile = catalogFile;
+        this.favorites = favorites;
+        this.catalog = new Catalog(List.of());
+    }
+
+    /**
+     * Reads the catalog from {@code ivi.radio.catalog} (default {@code radio/stations.csv}, see {@link RadioCatalog})
+     * and the favorites from {@code ivi.radio.favorites} (default {@code radio/favorites.json}) once started.
+     */
+    public static RadioService fromSystemProperties() {
+        return new RadioService(Paths.get(System.getProperty("ivi.radio.catalog", "radio/stations.csv")),
+                new RadioFavorites(Paths.get(System.getProperty("ivi.radio.favorites", "radio/favorites.json"))));
+    }
+
+    /**
+     * Loads the favorites and the catalog and builds the index on the calling thread. Without a catalog the service
+     * is ready but empty.
+     */
+    public void start() {
+        this.favorites.load();
+        List<RadioStation> stations = List.of();
+        final long loadStart = System.nanoTime();
+        if (Files.isRegularFile(this.catalogFile)) {
+            try {
+                stations = RadioCatalog.load(this.catalogFile);
+            } catch (final IOException e) {
+                System.err.println("[RADIO] Cannot read station catalog " + this.catalogFile + ": " + e.getMessage());
+            }
+        } else {
+            System.out.println("[RADIO] No station catalog at " + this.catalogFile + ", radio search is unavailable");
+        }
+        this.loadMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - loadStart);
+
+        final long indexStart = System.nanoTime();
+        final var loaded = new Catalog(stations);
+        this.indexMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - indexStart);
+        synchronized (this) {
+            loaded.favoriteStations = this.favoriteStationsOf(loaded);
+            this.catalog = loaded;
+        }
+        this.ready = true;
+        if (!stations.isEmpty()) {
+            System.out.println("[RADIO] Loaded " + stations.size() + " stations from " + this.catalogFile + " in "
+                    + this.loadMillis + " ms, indexed in " + this.indexMillis + " ms (" + loaded.index.getTermCount()
+                    + " terms, " + loaded.index.getIndexBytes() / 1024 + " KiB)");
+        }
+    }
+
+    public boolean isAvailable() {
+        return !this.catalog.stations.isEmpty();
+    }
+
+    /**
+     * The best matches for what has been typed so far, favorites boosted. An empty query lists the favorites.
+     */
+    public JSONArray search(final String query, final int limit) {
+        if (query == null || query.isBlank()) return this.getFavorites();
+
+        final Catalog current = this.catalog;
+        final StationIndex.Search search = current.searches.borrow();
+        try {
+            final BitSet favoriteStations = current.favoriteStations;
+            final long start = System.nanoTime();
+            current.index.search(search, query, Math.min(limit, MAX_RESULTS), favoriteStations);
+            this.searchNanos.record(System.nanoTime() - start);
+            this.searchCount.incrementAndGet();
+
+            final var results = new JSONArray(search.size());
+            for (int i = 0; i < search.size(); i++) {
+                final JSONObject json = current.toJson(search.station(i));
+                json.put("score", Math.round(search.score(i) * 1000) / 1000.0);
+                results.add(json);
+            }
+            return results;
+        } finally {
+            current.searches.release(search);
+        }
+    }
+
+    public RadioStation getStation(final String id) {
+        final Catalog current = this.catalog;
+        final Integer station = current.stationsById.get(id);
+        return station != null ? current.stations.get(station) : null;
+    }
+
+    /**
+     * The favorites that are in the current catalog, in the order they were added.
+     */
+    public JSONArray getFavorites() {
+        final Catalog current = this.catalog;
+        final var results = new JSONArray();
+        for (final String id : this.favorites.getIds()) {
+            final Integer station = current.stationsById.get(id);
+            if (station != null) results.add(current.toJson(station));
+        }
+        return results;
+    }
+
+    /**
+     * Marks or unmarks a station of the catalog as favorite; returns false for an unknown station.
+     */
+    public synchronized boolean setFavorite(final String id, final boolean favorite) throws IOException {
+        final Catalog current = this.catalog;
+        if (!current.stationsById.containsKey(id)) return false;
+        if (this.favorites.set(id, favorite)) current.favoriteStations = this.favoriteStationsOf(current);
+        return true;
+    }
+
+    private BitSet favoriteStationsOf(final Catalog catalog) {
+        final var favoriteStations = new BitSet(catalog.stations.size());
+        for (final String id : this.favorites.getIds()) {
+            final Integer station = catalog.stationsById.get(id);
+            if (station != null) favoriteStations.set(station);
+        }
+        return favoriteStations;
+    }
+
+    public JSONObject getStats() {
+        final Catalog current = this.catalog;
+        final var stats = new JSONObject();
+        stats.put("ready", this.ready);
+        stats.put("available", this.isAvailable());
+        stats.put("catalogFile", this.catalogFile.toAbsolutePath().toString());
+        stats.put("stations", current.stations.size());
+        stats.put("favorites", current.favoriteStations.cardinality());
+        stats.put("loadMillis", this.loadMillis);
+        stats.put("indexMillis", this.indexMillis);
+        stats.put("terms", current.index.getTermCount());
+        stats.put("postings", current.index.getPostingCount());
+        stats.put("trigrams", current.index.getTrigramCount());
+        stats.put("indexBytes", current.index.getIndexBytes());
+        stats.put("searchStateBytes", current.index.getSearchBytes());
+        stats.put("searches", this.searchCount.get());
+        stats.put("searchMicros", this.searchNanos.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+        stats.put("searchPool", current.searches.getStats());
+        return stats;
+    }
+
+    private static final class Catalog {
+
+        private final List<RadioStation> stations;
+        private final Map<String, Integer> stationsById;
+        private final StationIndex index;
+        private final ScratchPool<StationIndex.Search> searches;
+        // Ordinals of the favorite stations, replaced as a whole when favorites change.
+        private volatile BitSet favoriteStations = new BitSet();
+
+        private Catalog(final List<RadioStation> stations) {
+            this.stations = stations;
+            this.index = StationIndex.build(stations);
+            this.searches = new ScratchPool<>(ServerExecution.cpuConcurrency(), this.index::newSearch);
+            this.stationsById = new HashMap<>(stations.size() * 2);
+            for (int i = 0; i < stations.size(); i++) {
+                this.stationsById.put(stations.get(i).id(), i);
+            }
+        }
+
+        private JSONObject toJson(final int station) {
+            final JSONObject json = this.stations.get(station).toJson();
+            json.put("favorite", this.favoriteStations.get(station));
+            return json;
+        }
+    }
+
+}
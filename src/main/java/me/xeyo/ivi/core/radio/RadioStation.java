@@ -0,0 +1,38 @@
+package me.xeyo.ivi.core.radio;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * One station from the catalog. {@code frequencyMhz} is 0 for stations that are only streamed, {@code streamUrl} is
+ * empty for broadcast-only ones.
+ */
+public record RadioStation(String id, String name, String genre, String country, double frequencyMhz, String streamUrl) {
+
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Stable id for catalogs without an id column, derived from what identifies a station on air.
+     */
+    public static String idOf(final String name, final double frequencyMhz, final String streamUrl) {
+        long hash = FNV_OFFSET_BASIS;
+        for (final byte b : (name + '|' + frequencyMhz + '|' + streamUrl).getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return Long.toHexString(hash);
+    }
+
+    public JSONObject toJson() {
+        final var json = new JSONObject();
+        json.put("id", this.id);
+        json.put("name", this.name);
+        json.put("genre", this.genre);
+        json.put("country", this.country);
+        if (this.frequencyMhz > 0) json.put("frequencyMhz", this.frequencyMhz);
+        if (!this.streamUrl.isEmpty()) json.put("streamUrl", this.streamUrl);
+        return json;
+    }
+
+}
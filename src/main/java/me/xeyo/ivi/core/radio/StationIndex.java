@@ -0,0 +1,603 @@
+package me.xeyo.ivi.core.radio;
+
+import java.math.BigDecimal;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search-as-you-type index over the station catalog, held in a handful of primitive arrays instead of per-station
+ * objects.
+ * <p>
+ * Names, genres and countries are folded (lower case, accents and punctuation removed) and split into terms; the
+ * frequency is one more term, so "101.1" finds a station as well. The sorted term dictionary is stored as one char
+ * array with offsets, which makes a prefix lookup a binary search followed by a scan of the adjacent terms. Every term
+ * has a posting list of the stations and fields it occurs in. For typing mistakes each term is also listed under its
+ * trigrams: the terms sharing enough trigrams with a query token are checked with a bounded edit distance, against
+ * the whole term for completed words and against the term's prefix for the word being typed.
+ * <p>
+ * All query tokens have to match a station. A token scores its best match in that station, exact before prefix
+ * before fuzzy, weighted by the field and by whether it starts the name; favorites get a fixed boost on top. Search
+ * state lives in a {@link Search} used by one search at a time, so a query allocates only for folding the query
+ * string.
+ */
+public final class StationIndex {
+
+    public static final int MAX_TOKENS = 8;
+
+    static final int FIELD_NAME = 0;
+    static final int FIELD_GENRE = 1;
+    static final int FIELD_COUNTRY = 2;
+    static final int FIELD_FREQUENCY = 3;
+
+    private static final float[] FIELD_WEIGHTS = {1.0f, 0.6f, 0.5f, 0.9f};
+    private static final float LEADING_NAME_BONUS = 1.15f;
+    private static final float EXACT_SCORE = 1.0f;
+    private static final float PREFIX_SCORE = 0.6f;
+    private static final float PREFIX_COVERAGE_SCORE = 0.3f;
+    private static final float FUZZY_SCORE = 0.45f;
+    private static final float FUZZY_EDIT_PENALTY = 0.15f;
+    private static final float FAVORITE_BOOST = 0.5f;
+    private static final int MIN_FUZZY_LENGTH = 3;
+    private static final char GRAM_START = '\u0002';
+
+    private final int stationCount;
+    private final short[] nameLengths;
+
+    // Sorted term dictionary: term i is termChars[termOffsets[i], termOffsets[i + 1]).
+    private final char[] termChars;
+    private final int[] termOffsets;
+    private final int maxTermLength;
+
+    // Postings of term i are postings[postingOffsets[i], postingOffsets[i + 1]), each station << 3 | field << 1 | leading.
+    private final int[] postingOffsets;
+    private final int[] postings;
+
+    // Trigram gramKeys[i] occurs in the terms gramTerms[gramOffsets[i], gramOffsets[i + 1]).
+    private final long[] gramKeys;
+    private final int[] gramOffsets;
+    private final int[] gramTerms;
+
+    private StationIndex(final int stationCount, final short[] nameLengths, final char[] termChars, final int[] termOffsets,
+                         final int maxTermLength, final int[] postingOffsets, final int[] postings, final long[] gramKeys,
+                         final int[] gramOffsets, final int[] gramTerms) {
+        this.stationCount = stationCount;
+        this.nameLengths = nameLengths;
+        this.termChars = termChars;
+        this.termOffsets = termOffsets;
+        this.maxTermLength = maxTermLength;
+        this.postingOffsets = postingOffsets;
+        this.postings = postings;
+        this.gramKeys = gramKeys;
+        this.gramOffsets = gramOffsets;
+        this.gramTerms = gramTerms;
+    }
+
+    public static StationIndex build(final List<RadioStation> stations) {
+        final Map<String, IntList> termPostings = new HashMap<>();
+        final List<String> tokens = new ArrayList<>();
+        final short[] nameLengths = new short[stations.size()];
+        for (int i = 0; i < stations.size(); i++) {
+            final RadioStation station = stations.get(i);
+            nameLengths[i] = (short) Math.min(Short.MAX_VALUE, station.name().length());
+            addField(termPostings, tokens, i, FIELD_NAME, station.name());
+            addField(termPostings, tokens, i, FIELD_GENRE, station.genre());
+            addField(termPostings, tokens, i, FIELD_COUNTRY, station.country());
+            if (station.frequencyMhz() > 0) {
+                addPosting(termPostings, formatFrequency(station.frequencyMhz()), posting(i, FIELD_FREQUENCY, true));
+            }
+        }
+
+        final String[] terms = termPostings.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int charCount = 0;
+        int postingCount = 0;
+        for (final String term : terms) {
+            charCount += term.length();
+            postingCount += termPostings.get(term).size;
+        }
+        final char[] termChars = new char[charCount];
+        final int[] termOffsets = new int[terms.length + 1];
+        final int[] postingOffsets = new int[terms.length + 1];
+        final int[] postings = new int[postingCount];
+        final Map<Long, IntList> gramTermLists = new HashMap<>();
+        int maxTermLength = 0;
+        for (int t = 0; t < terms.length; t++) {
+            final String term = terms[t];
+            term.getChars(0, term.length(), termChars, termOffsets[t]);
+            termOffsets[t + 1] = termOffsets[t] + term.length();
+            maxTermLength = Math.max(maxTermLength, term.length());
+
+            final IntList list = termPostings.get(term);
+            System.arraycopy(list.values, 0, postings, postingOffsets[t], list.size);
+            postingOffsets[t + 1] = postingOffsets[t] + list.size;
+
+            for (int p = -1; p + 2 < term.length(); p++) {
+                final long key = gramKey(p < 0 ? GRAM_START : term.charAt(p), term.charAt(p + 1), term.charAt(p + 2));
+                final IntList termList = gramTermLists.computeIfAbsent(key, k -> new IntList());
+                // Terms are added in order, so a gram repeated within one term is always the last entry.
+                if (termList.size == 0 || termList.values[termList.size - 1] != t) termList.add(t);
+            }
+        }
+
+        final long[] gramKeys = new long[gramTermLists.size()];
+        int gramIndex = 0;
+        int gramTermCount = 0;
+        for (final Map.Entry<Long, IntList> entry : gramTermLists.entrySet()) {
+            gramKeys[gramIndex++] = entry.getKey();
+            gramTermCount += entry.getValue().size;
+        }
+        Arrays.sort(gramKeys);
+        final int[] gramOffsets = new int[gramKeys.length + 1];
+        final int[] gramTerms = new int[gramTermCount];
+        for (int g = 0; g < gramKeys.length; g++) {
+            final IntList list = gramTermLists.get(gramKeys[g]);
+            System.arraycopy(list.values, 0, gramTerms, gramOffsets[g], list.size);
+            gramOffsets[g + 1] = gramOffsets[g] + list.size;
+        }
+
+        return new StationIndex(stations.size(), nameLengths, termChars, termOffsets, maxTermLength, postingOffsets,
+                postings, gramKeys, gramOffsets, gramTerms);
+    }
+
+    private static void addField(final Map<String, IntList> termPostings, final List<String> tokens, final int station,
+                                 final int field, final String text) {
+        tokenize(fold(text), tokens);
+        for (int j = 0; j < tokens.size(); j++) {
+            addPosting(termPostings, tokens.get(j), posting(station, field, j == 0));
+        }
+    }
+
+    private static void addPosting(final Map<String, IntList> termPostings, final String term, final int posting) {
+        final IntList list = termPostings.computeIfAbsent(term, k -> new IntList());
+        // A term repeated in the same field keeps its first, possibly leading, posting.
+        if (list.size > 0 && list.values[list.size - 1] >>> 1 == posting >>> 1) return;
+        list.add(posting);
+    }
+
+    private static int posting(final int station, final int field, final boolean leading) {
+        return station << 3 | field << 1 | (leading ? 1 : 0);
+    }
+
+    private static long gramKey(final char first, final char second, final char third) {
+        return (long) first << 32 | (long) second << 16 | third;
+    }
+
+    static String formatFrequency(final double frequencyMhz) {
+        return BigDecimal.valueOf(Math.round(frequencyMhz * 100) / 100.0).stripTrailingZeros().toPlainString();
+    }
+
+    /**
+     * Lower case without accents, letters and digits only, words separated by single spaces. A dot between digits is
+     * kept for frequencies; apostrophes are dropped so "Europe's" folds to "europes".
+     */
+    public static String fold(final String text) {
+        if (text == null || text.isEmpty()) return "";
+        final String decomposed = isAscii(text) ? text : Normalizer.normalize(text, Normalizer.Form.NFKD);
+        final var folded = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            final char c = decomposed.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                folded.append(Character.toLowerCase(c));
+            } else if (c == '.' && !folded.isEmpty() && Character.isDigit(folded.charAt(folded.length() - 1))
+                    && i + 1 < decomposed.length() && Character.isDigit(decomposed.charAt(i + 1))) {
+                folded.append('.');
+            } else if (Character.getType(c) == Character.NON_SPACING_MARK || c == '\'' || c == '’') {
+                continue;
+            } else if (!folded.isEmpty() && folded.charAt(folded.length() - 1) != ' ') {
+                folded.append(' ');
+            }
+        }
+        final int end = folded.length();
+        if (end > 0 && folded.charAt(end - 1) == ' ') folded.setLength(end - 1);
+        return folded.toString();
+    }
+
+    private static boolean isAscii(final String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) return false;
+        }
+        return true;
+    }
+
+    static void tokenize(final String folded, final List<String> tokens) {
+        tokens.clear();
+        int start = 0;
+        while (start < folded.length()) {
+            int end = folded.indexOf(' ', start);
+            if (end < 0) end = folded.length();
+            if (end > start) tokens.add(folded.substring(start, end));
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Runs {@code query} and leaves the best {@code limit} stations in {@code search}, best first. The last word is
+     * matched as a prefix unless the query ends with a space. Stations set in {@code favorites} are boosted. Typing
+     * mistakes are only considered when the words as typed find fewer than {@code limit} stations, which keeps the
+     * common case to dictionary lookups.
+     */
+    public void search(final Search search, final String query, final int limit, final BitSet favorites) {
+        search.reset(limit);
+        final List<String> tokens = search.tokens;
+        tokenize(fold(query), tokens);
+        if (tokens.isEmpty()) return;
+        final boolean lastIsPrefix = !Character.isWhitespace(query.charAt(query.length() - 1));
+
+        this.run(search, lastIsPrefix, favorites, false);
+        if (search.size < limit && hasFuzzyToken(tokens)) {
+            search.reset(limit);
+            this.run(search, lastIsPrefix, favorites, true);
+        }
+    }
+
+    private void run(final Search search, final boolean lastIsPrefix, final BitSet favorites, final boolean fuzzy) {
+        final int tokenCount = Math.min(search.tokens.size(), MAX_TOKENS);
+        final int queryStamp = search.nextStamp();
+        for (int t = 0; t < tokenCount; t++) {
+            final int tokenStamp = search.nextStamp();
+            search.touchedCount = 0;
+            this.matchToken(search, search.tokens.get(t), lastIsPrefix && t == tokenCount - 1, fuzzy, tokenStamp);
+
+            int advanced = 0;
+            for (int i = 0; i < search.touchedCount; i++) {
+                final int station = search.touched[i];
+                if (t == 0) {
+                    search.matchedStamp[station] = queryStamp;
+                    search.matchedCount[station] = 1;
+                    search.total[station] = search.best[station];
+                    search.candidates[search.candidateCount++] = station;
+                    advanced++;
+                } else if (search.matchedStamp[station] == queryStamp && search.matchedCount[station] == t) {
+                    search.matchedCount[station] = (byte) (t + 1);
+                    search.total[station] += search.best[station];
+                    advanced++;
+                }
+            }
+            if (advanced == 0) return;
+        }
+
+        for (int i = 0; i < search.candidateCount; i++) {
+            final int station = search.candidates[i];
+            if (search.matchedCount[station] != tokenCount) continue;
+            float score = search.total[station] / tokenCount;
+            if (favorites != null && favorites.get(station)) score += FAVORITE_BOOST;
+            search.offer(station, score, this.nameLengths[station]);
+        }
+    }
+
+    private static boolean hasFuzzyToken(final List<String> tokens) {
+        for (int t = 0; t < Math.min(tokens.size(), MAX_TOKENS); t++) {
+            if (isFuzzyCandidate(tokens.get(t))) return true;
+        }
+        return false;
+    }
+
+    private static boolean isFuzzyCandidate(final String token) {
+        return token.length() >= MIN_FUZZY_LENGTH && !Character.isDigit(token.charAt(0));
+    }
+
+    private void matchToken(final Search search, final String token, final boolean prefix, final boolean fuzzy,
+                            final int stamp) {
+        final int termCount = this.termOffsets.length - 1;
+        int term = this.lowerBound(token);
+        if (prefix) {
+            for (; term < termCount && this.startsWith(term, token); term++) {
+                final int length = this.termLength(term);
+                final float score = length == token.length()
+                        ? EXACT_SCORE
+                        : PREFIX_SCORE + PREFIX_COVERAGE_SCORE * token.length() / length;
+                search.termStamp[term] = stamp;
+                this.collect(search, term, score, stamp);
+            }
+        } else if (term < termCount && this.termLength(term) == token.length() && this.startsWith(term, token)) {
+            search.termStamp[term] = stamp;
+            this.collect(search, term, EXACT_SCORE, stamp);
+        }
+        if (fuzzy && isFuzzyCandidate(token)) {
+            this.matchFuzzy(search, token, prefix, stamp);
+        }
+    }
+
+    /**
+     * Edit distance 1 up to four characters, 2 above. A term within k edits shares at least all but 3k of the
+     * query's trigrams, which is how the candidates are picked before the distance is computed.
+     */
+    private void matchFuzzy(final Search search, final String token, final boolean prefix, final int stamp) {
+        final int maxEdits = token.length() <= 4 ? 1 : 2;
+        search.hitTermCount = 0;
+        for (int p = -1; p + 2 < token.length(); p++) {
+            final int gram = Arrays.binarySearch(this.gramKeys,
+                    gramKey(p < 0 ? GRAM_START : token.charAt(p), token.charAt(p + 1), token.charAt(p + 2)));
+            if (gram < 0) continue;
+            for (int k = this.gramOffsets[gram]; k < this.gramOffsets[gram + 1]; k++) {
+                final int term = this.gramTerms[k];
+                if (search.gramHitStamp[term] != stamp) {
+                    search.gramHitStamp[term] = stamp;
+                    search.gramHits[term] = 0;
+                    search.hitTerms[search.hitTermCount++] = term;
+                }
+                search.gramHits[term]++;
+            }
+        }
+
+        final int minHits = Math.max(1, token.length() - 1 - 3 * maxEdits);
+        for (int i = 0; i < search.hitTermCount; i++) {
+            final int term = search.hitTerms[i];
+            if (search.gramHits[term] < minHits || search.termStamp[term] == stamp) continue;
+            final int length = this.termLength(term);
+            if (prefix ? length < token.length() - maxEdits : Math.abs(length - token.length()) > maxEdits) continue;
+            final int edits = this.distance(search, token, term, maxEdits, prefix);
+            if (edits > 0 && edits <= maxEdits) {
+                this.collect(search, term, FUZZY_SCORE - FUZZY_EDIT_PENALTY * edits, stamp);
+            }
+        }
+    }
+
+    /**
+     * Optimal string alignment distance between {@code token} and the term, or between {@code token} and the closest
+     * prefix of the term when {@code prefix} is set. Gives up with {@code maxEdits + 1} once a row exceeds the bound.
+     */
+    private int distance(final Search search, final String token, final int term, final int maxEdits, final boolean prefix) {
+        final int offset = this.termOffsets[term];
+        final int n = token.length();
+        final int m = prefix ? Math.min(this.termLength(term), n + maxEdits) : this.termLength(term);
+        int[] previous2 = search.row0;
+        int[] previous = search.row1;
+        int[] current = search.row2;
+        for (int j = 0; j <= m; j++) previous[j] = j;
+
+        for (int i = 1; i <= n; i++) {
+            final char q = token.charAt(i - 1);
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= m; j++) {
+                final char c = this.termChars[offset + j - 1];
+                int value = Math.min(Math.min(previous[j], current[j - 1]) + 1, previous[j - 1] + (q == c ? 0 : 1));
+                if (i > 1 && j > 1 && q == this.termChars[offset + j - 2] && token.charAt(i - 2) == c) {
+                    value = Math.min(value, previous2[j - 2] + 1);
+                }
+                current[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+            if (rowMin > maxEdits) return maxEdits + 1;
+            final int[] recycled = previous2;
+            previous2 = previous;
+            previous = current;
+            current = recycled;
+        }
+
+        if (!prefix) return previous[m];
+        int best = previous[0];
+        for (int j = 1; j <= m; j++) best = Math.min(best, previous[j]);
+        return best;
+    }
+
+    private void collect(final Search search, final int term, final float matchScore, final int stamp) {
+        for (int k = this.postingOffsets[term]; k < this.postingOffsets[term + 1]; k++) {
+            final int posting = this.postings[k];
+            final int station = posting >>> 3;
+            final int field = posting >>> 1 & 3;
+            float score = matchScore * FIELD_WEIGHTS[field];
+            if (field == FIELD_NAME && (posting & 1) != 0) score *= LEADING_NAME_BONUS;
+            if (search.bestStamp[station] != stamp) {
+                search.bestStamp[station] = stamp;
+                search.best[station] = score;
+                search.touched[search.touchedCount++] = station;
+            } else if (score > search.best[station]) {
+                search.best[station] = score;
+            }
+        }
+    }
+
+    private int lowerBound(final String token) {
+        int low = 0;
+        int high = this.termOffsets.length - 1;
+        while (low < high) {
+            final int mid = (low + high) >>> 1;
+            if (this.compare(mid, token) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int compare(final int term, final String token) {
+        final int offset = this.termOffsets[term];
+        final int length = this.termLength(term);
+        final int common = Math.min(length, token.length());
+        for (int i = 0; i < common; i++) {
+            final int difference = this.termChars[offset + i] - token.charAt(i);
+            if (difference != 0) return difference;
+        }
+        return length - token.length();
+    }
+
+    private boolean startsWith(final int term, final String token) {
+        if (this.termLength(term) < token.length()) return false;
+        final int offset = this.termOffsets[term];
+        for (int i = 0; i < token.length(); i++) {
+            if (this.termChars[offset + i] != token.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    private int termLength(final int term) {
+        return this.termOffsets[term + 1] - this.termOffsets[term];
+    }
+
+    public int getStationCount() {
+        return this.stationCount;
+    }
+
+    public int getTermCount() {
+        return this.termOffsets.length - 1;
+    }
+
+    public int getPostingCount() {
+        return this.postings.length;
+    }
+
+    public int getTrigramCount() {
+        return this.gramKeys.length;
+    }
+
+    /**
+     * Heap used by the index arrays, not counting the stations themselves or pooled search state.
+     */
+    public long getIndexBytes() {
+        return arrayBytes(2L * this.termChars.length) + arrayBytes(2L * this.nameLengths.length)
+                + arrayBytes(4L * this.termOffsets.length) + arrayBytes(4L * this.postingOffsets.length)
+                + arrayBytes(4L * this.postings.length) + arrayBytes(8L * this.gramKeys.length)
+                + arrayBytes(4L * this.gramOffsets.length) + arrayBytes(4L * this.gramTerms.length);
+    }
+
+    /**
+     * Heap used by one {@link Search}.
+     */
+    public long getSearchBytes() {
+        return arrayBytes(25L * this.stationCount) + arrayBytes(16L * this.getTermCount())
+                + 3 * arrayBytes(4L * (this.maxTermLength + 1));
+    }
+
+    private static long arrayBytes(final long payload) {
+        return 16 + (payload + 7 & ~7L);
+    }
+
+    public Search newSearch() {
+        return new Search(this.stationCount, this.getTermCount(), this.maxTermLength);
+    }
+
+    /**
+     * Reusable state for one search at a time, and the results of the last one.
+     */
+    public static final class Search {
+
+        private final List<String> tokens = new ArrayList<>(MAX_TOKENS);
+
+        // Per station, valid where the stamp matches the current token or query.
+        private final float[] best;
+        private final int[] bestStamp;
+        private final int[] touched;
+        private int touchedCount;
+        private final float[] total;
+        private final int[] matchedStamp;
+        private final byte[] matchedCount;
+        private final int[] candidates;
+        private int candidateCount;
+
+        // Per term.
+        private final int[] termStamp;
+        private final int[] gramHitStamp;
+        private final int[] gramHits;
+        private final int[] hitTerms;
+        private int hitTermCount;
+
+        private final int[] row0;
+        private final int[] row1;
+        private final int[] row2;
+        private int stamp;
+
+        private int[] resultStations = new int[0];
+        private float[] resultScores = new float[0];
+        private int[] resultLengths = new int[0];
+        private int limit;
+        private int size;
+
+        private Search(final int stationCount, final int termCount, final int maxTermLength) {
+            this.best = new float[stationCount];
+            this.bestStamp = new int[stationCount];
+            this.touched = new int[stationCount];
+            this.total = new float[stationCount];
+            this.matchedStamp = new int[stationCount];
+            this.matchedCount = new byte[stationCount];
+            this.candidates = new int[stationCount];
+            this.termStamp = new int[termCount];
+            this.gramHitStamp = new int[termCount];
+            this.gramHits = new int[termCount];
+            this.hitTerms = new int[termCount];
+            this.row0 = new int[maxTermLength + 1];
+            this.row1 = new int[maxTermLength + 1];
+            this.row2 = new int[maxTermLength + 1];
+        }
+
+        private void reset(final int limit) {
+            if (this.resultStations.length < limit) {
+                this.resultStations = new int[limit];
+                this.resultScores = new float[limit];
+                this.resultLengths = new int[limit];
+            }
+            this.limit = limit;
+            this.size = 0;
+            this.candidateCount = 0;
+        }
+
+        private int nextStamp() {
+            if (this.stamp == Integer.MAX_VALUE) {
+                Arrays.fill(this.bestStamp, 0);
+                Arrays.fill(this.matchedStamp, 0);
+                Arrays.fill(this.termStamp, 0);
+                Arrays.fill(this.gramHitStamp, 0);
+                this.stamp = 0;
+            }
+            return ++this.stamp;
+        }
+
+        /**
+         * Keeps the best {@code limit} stations by score, then shorter name, then catalog order.
+         */
+        private void offer(final int station, final float score, final int nameLength) {
+            if (this.limit == 0) return;
+            if (this.size == this.limit && !this.ranksBefore(score, nameLength, station, this.size - 1)) return;
+            int position = Math.min(this.size, this.limit - 1);
+            while (position > 0 && this.ranksBefore(score, nameLength, station, position - 1)) {
+                this.resultStations[position] = this.resultStations[position - 1];
+                this.resultScores[position] = this.resultScores[position - 1];
+                this.resultLengths[position] = this.resultLengths[position - 1];
+                position--;
+            }
+            this.resultStations[position] = station;
+            this.resultScores[position] = score;
+            this.resultLengths[position] = nameLength;
+            if (this.size < this.limit) this.size++;
+        }
+
+        private boolean ranksBefore(final float score, final int nameLength, final int station, final int position) {
+            if (score != this.resultScores[position]) return score > this.resultScores[position];
+            if (nameLength != this.resultLengths[position]) return nameLength < this.resultLengths[position];
+            return station < this.resultStations[position];
+        }
+
+        public int size() {
+            return this.size;
+        }
+
+        public int station(final int index) {
+            return this.resultStations[index];
+        }
+
+        public float score(final int index) {
+            return this.resultScores[index];
+        }
+
+    }
+
+    private static final class IntList {
+
+        private int[] values = new int[2];
+        private int size;
+
+        private void add(final int value) {
+            if (this.size == this.values.length) this.values = Arrays.copyOf(this.values, this.size * 2);
+            this.values[this.size++] = value;
+        }
+
+    }
+
+}
@@ -0,0 +1,355 @@
+package me.xeyo.ivi.core.settings;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import lombok.Getter;
+import me.xeyo.ivi.core.error.InternalExceptionTracker;
+import me.xeyo.ivi.core.utils.AtomicFiles;
+
+/**
+ * Settings held as immutable, versioned snapshots. Reads never lock; writers swap the snapshot with a CAS
+ * and leave persistence to a single background writer, which coalesces every mutation made within the
+ * debounce window into one atomic file replacement.
+ */
+public class SettingsStore {
+
+    private static final int CHANGE_JOURNAL_SIZE = 64;
+
+    private final Path filePath;
+    private final long debounceMillis;
+    private final AtomicReference<Snapshot> current;
+
+    /**
+     * When this store was created. Versions start at 1 in every process, so a version is only meaningful together
+     * with the epoch it was read in.
+     */
+    @Getter
+    private final long epoch = System.currentTimeMillis();
+
+    private final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final var thread = new Thread(runnable, "ivi-settings-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean writeScheduled = new AtomicBoolean();
+    private volatile long persistedVersion;
+
+    private final ArrayDeque<SettingsChange> changeJournal = new ArrayDeque<>();
+    private final List<Consumer<SettingsChange>> changeListeners = new CopyOnWriteArrayList<>();
+
+    @Getter
+    private final AtomicLong mutationCount = new AtomicLong();
+
+    @Getter
+    private final AtomicLong diskWriteCount = new AtomicLong();
+
+    @Getter
+    private final AtomicLong failedWriteCount = new AtomicLong();
+
+    @Getter
+    private volatile long lastWriteNanos;
+
+    public SettingsStore(final Path filePath, final long debounceMillis, final Map<String, Object> loadedSettings) {
+        this.filePath = filePath;
+        this.debounceMillis = debounceMillis;
+        this.current = new AtomicReference<>(new Snapshot(1, loadedSettings));
+        this.persistedVersion = 1;
+    }
+
+    /**
+     * Reads the settings file, keeping only keys accepted by {@code keyFilter}. A leftover temp file from an
+     * interrupted write is removed, and a file that cannot be parsed is moved aside instead of being overwritten.
+     */
+    public static Map<String, Object> loadFromFile(final Path filePath, final Predicate<String> keyFilter) {
+        final Map<String, Object> settings = new LinkedHashMap<>();
+        try {
+            AtomicFiles.deleteStaleTempFile(filePath);
+            if (!Files.exists(filePath)) {
+                System.out.println("[SETTINGS] Settings file not found, using defaults");
+                return settings;
+            }
+
+            final String content = Files.readString(filePath);
+            final JSONObject settingsJson = JSONObject.parseObject(content);
+            if (settingsJson == null) {
+                throw new IllegalStateException("Settings file is empty");
+            }
+
+            for (final String key : settingsJson.keySet()) {
+                final Object value = settingsJson.get(key);
+                if (keyFilter.test(key) && value != null) {
+                    settings.put(key, value);
+                }
+            }
+
+            System.out.println("[SETTINGS] Settings loaded from: " + filePath);
+        } catch (final Exception e) {
+            System.err.println("[SETTINGS] Error reading settings file: " + e.getMessage());
+            InternalExceptionTracker.handleException(e);
+            settings.clear();
+            quarantine(filePath);
+        }
+        return settings;
+    }
+
+    private static void quarantine(final Path filePath) {
+        try {
+            if (Files.exists(filePath)) {
+                final var corruptFile = filePath.resolveSibling(filePath.getFileName() + ".corrupt");
+                Files.move(filePath, corruptFile, StandardCopyOption.REPLACE_EXISTING);
+                System.err.println("[SETTINGS] Unreadable settings file moved to: " + corruptFile);
+            }
+        } catch (final Exception e) {
+            InternalExceptionTracker.handleException(e);
+        }
+    }
+
+    public Snapshot snapshot() {
+        return this.current.get();
+    }
+
+    public Object get(final String key) {
+        return this.current.get().get(key);
+    }
+
+    public SettingsChange put(final String key, final Object value) {
+        return this.apply(snapshot -> Map.of(key, value));
+    }
+
+    public SettingsChange putAll(final Map<String, Object> changes) {
+        return this.apply(snapshot -> changes);
+    }
+
+    /**
+     * Atomically derives the next snapshot from the current one. {@code changeFunction} may run more than once
+     * under contention, so it must not have side effects. Changes that leave every value as it was do not bump
+     * the version and are not persisted.
+     */
+    public SettingsChange apply(final Function<Snapshot, Map<String, Object>> changeFunction) {
+        while (true) {
+            final Snapshot previous = this.current.get();
+            final Map<String, Object> changes = changeFunction.apply(previous);
+            final Map<String, Object> effective = new LinkedHashMap<>();
+            changes.forEach((key, value) -> {
+                if (!value.equals(previous.get(key))) {
+                    effective.put(key, value);
+                }
+            });
+
+            if (effective.isEmpty()) {
+                return new SettingsChange(previous, previous, Map.of());
+            }
+
+            final Snapshot next = previous.with(effective);
+            if (this.current.compareAndSet(previous, next)) {
+                final SettingsChange change = new SettingsChange(previous, next, Collections.unmodifiableMap(effective));
+                this.mutationCount.incrementAndGet();
+                this.schedulePersist();
+                this.recordChange(change);
+                return change;
+            }
+        }
+    }
+
+    private void recordChange(final SettingsChange change) {
+        synchronized (this.changeJournal) {
+            // Concurrent writers can get here out of version order, keep the journal sorted.
+            final var reordered = new ArrayDeque<SettingsChange>();
+            while (!this.changeJournal.isEmpty() && this.changeJournal.peekLast().getCurrent().getVersion() > change.getCurrent().getVersion()) {
+                reordered.addFirst(this.changeJournal.pollLast());
+            }
+            this.changeJournal.addLast(change);
+            this.changeJournal.addAll(reordered);
+            while (this.changeJournal.size() > CHANGE_JOURNAL_SIZE) {
+                this.changeJournal.pollFirst();
+            }
+        }
+
+        for (final Consumer<SettingsChange> listener : this.changeListeners) {
+            try {
+                listener.accept(change);
+            } catch (final Exception e) {
+                InternalExceptionTracker.handleException(e);
+            }
+        }
+    }
+
+    /**
+     * Returns the changes made after {@code version} in version order, or {@code null} if the journal no longer
+     * reaches back that far and the caller has to start again from a full snapshot.
+     */
+    public List<SettingsChange> changesSince(final long version) {
+        synchronized (this.changeJournal) {
+            final long currentVersion = this.current.get().getVersion();
+            if (version > currentVersion) {
+                return null;
+            }
+
+            final List<SettingsChange> changes = new ArrayList<>();
+            final Iterator<SettingsChange> iterator = this.changeJournal.descendingIterator();
+            long expectedVersion = currentVersion;
+            while (expectedVersion > version) {
+                if (!iterator.hasNext()) {
+                    return null;
+                }
+                final SettingsChange change = iterator.next();
+                if (change.getCurrent().getVersion() != expectedVersion) {
+                    // A concurrent writer has swapped the snapshot but not journaled its change yet.
+                    return null;
+                }
+                changes.add(0, change);
+                expectedVersion = change.getPrevious().getVersion();
+            }
+            return changes;
+        }
+    }
+
+    /**
+     * Registers a listener that is called on the mutating thread after every effective change.
+     */
+    public void addChangeListener(final Consumer<SettingsChange> listener) {
+        this.changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(final Consumer<SettingsChange> listener) {
+        this.changeListeners.remove(listener);
+    }
+
+    private void schedulePersist() {
+        if (this.writeScheduled.compareAndSet(false, true)) {
+            this.writer.schedule(this::persistPending, this.debounceMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void persistPending() {
+        this.writeScheduled.set(false);
+        this.persistIfDirty();
+    }
+
+    private void persistIfDirty() {
+        final Snapshot snapshot = this.current.get();
+        if (snapshot.getVersion() == this.persistedVersion) {
+            return;
+        }
+
+        final long start = System.nanoTime();
+        try {
+            final byte[] content = new JSONObject(snapshot.getValues()).toJSONString().getBytes(StandardCharsets.UTF_8);
+            AtomicFiles.write(this.filePath, content);
+            this.persistedVersion = snapshot.getVersion();
+            this.diskWriteCount.incrementAndGet();
+        } catch (final Exception e) {
+            this.failedWriteCount.incrementAndGet();
+            System.err.println("[SETTINGS] Failed to save settings: " + e.getMessage());
+            InternalExceptionTracker.handleException(e);
+        } finally {
+            this.lastWriteNanos = System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Writes the current snapshot now if it has not been persisted yet, waiting for the writer to finish.
+     */
+    public void flush() {
+        try {
+            this.writer.submit(this::persistIfDirty).get(5, TimeUnit.SECONDS);
+        } catch (final Exception e) {
+            System.err.println("[SETTINGS] Failed to flush settings: " + e.getMessage());
+            InternalExceptionTracker.handleException(e);
+        }
+    }
+
+    public void close() {
+        if (this.writer.isShutdown()) return;
+        this.flush();
+        this.writer.shutdown();
+    }
+
+    public JSONObject getWriteStats() {
+        final JSONObject stats = new JSONObject();
+        stats.put("epoch", this.epoch);
+        stats.put("version", this.current.get().getVersion());
+        stats.put("persistedVersion", this.persistedVersion);
+        stats.put("mutations", this.mutationCount.get());
+        stats.put("diskWrites", this.diskWriteCount.get());
+        stats.put("failedWrites", this.failedWriteCount.get());
+        stats.put("lastWriteMicros", TimeUnit.NANOSECONDS.toMicros(this.lastWriteNanos));
+        stats.put("debounceMillis", this.debounceMillis);
+        return stats;
+    }
+
+    public static final class Snapshot {
+
+        @Getter
+        private final long version;
+
+        @Getter
+        private final Map<String, Object> values;
+
+        private Snapshot(final long version, final Map<String, Object> values) {
+            this.version = version;
+            this.values = Collections.unmodifiableMap(new LinkedHashMap<>(values));
+        }
+
+        public Object get(final String key) {
+            return this.values.get(key);
+        }
+
+        public Object getOrDefault(final String key, final Object defaultValue) {
+            return this.values.getOrDefault(key, defaultValue);
+        }
+
+        public boolean containsKey(final String key) {
+            return this.values.containsKey(key);
+        }
+
+        private Snapshot with(final Map<String, Object> changes) {
+            final Map<String, Object> merged = new LinkedHashMap<>(this.values);
+            merged.putAll(changes);
+            return new Snapshot(this.version + 1, merged);
+        }
+    }
+
+    public static final class SettingsChange {
+
+        @Getter
+        private final Snapshot previous;
+
+        @Getter
+        private final Snapshot current;
+
+        @Getter
+        private final Map<String, Object> changedValues;
+
+        private SettingsChange(final Snapshot previous, final Snapshot current, final Map<String, Object> changedValues) {
+            this.previous = previous;
+            this.current = current;
+            this.changedValues = changedValues;
+        }
+
+        public boolean isChanged() {
+            return !this.changedValues.isEmpty();
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+package me.xeyo.ivi.core.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+public final class AtomicFiles {
+
+    public static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Replaces {@code target} with {@code content} so that readers only ever see the old or the new file:
+     * the bytes go to a sibling temp file, are fsynced, and the temp file is renamed over the target.
+     */
+    public static void write(final Path target, final byte[] content) throws IOException {
+        final var absoluteTarget = target.toAbsolutePath();
+        final var tempFile = tempFileOf(absoluteTarget);
+
+        try (final var channel = FileChannel.open(tempFile,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final var buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        try {
+            Files.move(tempFile, absoluteTarget, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (final AtomicMoveNotSupportedException e) {
+            Files.move(tempFile, absoluteTarget, StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        syncDirectory(absoluteTarget.getParent());
+    }
+
+    /**
+     * Removes a temp file left behind by a write that was interrupted before its rename.
+     */
+    public static void deleteStaleTempFile(final Path target) throws IOException {
+        Files.deleteIfExists(tempFileOf(target.toAbsolutePath()));
+    }
+
+    private static Path tempFileOf(final Path target) {
+        return target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+    }
+
+    private static void syncDirectory(final Path directory) {
+        if (directory == null) return;
+        // Not every platform allows opening a directory as a channel (Windows does not), the rename is still atomic there.
+        try (final var channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (final IOException | UnsupportedOperationException ignored) {
+        }
+    }
+
+}
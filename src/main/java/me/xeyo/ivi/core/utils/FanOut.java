@@ -0,0 +1,120 @@
+package me.xeyo.ivi.core.utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Structured fan-out for handlers that gather several sources: every task runs on its own virtual thread, and no
+ * task outlives the call that started it. Tasks still running when the call gives up are interrupted and waited for
+ * before it returns, so a handler never leaves work running in the background.
+ * <p>
+ * This is what {@code StructuredTaskScope} offers, without depending on a preview API.
+ */
+public final class FanOut {
+
+    private FanOut() {
+    }
+
+    /**
+     * Runs all tasks at once and returns their results in task order. The first task to fail cancels the others and
+     * its exception is thrown; running past {@code timeout} cancels all of them and throws {@link TimeoutException}.
+     */
+    public static <T> List<T> all(final Duration timeout, final List<? extends Callable<? extends T>> tasks) throws Exception {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final var completion = new ExecutorCompletionService<T>(executor);
+            final List<Future<T>> futures = submitAll(completion, tasks);
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    final Future<T> done = completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (done == null) {
+                        throw new TimeoutException(tasks.size() + " tasks did not finish within " + timeout.toMillis() + " ms");
+                    }
+                    done.get();
+                }
+            } catch (final ExecutionException e) {
+                cancelAll(futures);
+                throw e.getCause() instanceof Exception cause ? cause : e;
+            } catch (final TimeoutException | InterruptedException e) {
+                cancelAll(futures);
+                throw e;
+            }
+
+            final List<T> results = new ArrayList<>(futures.size());
+            for (final Future<T> future : futures) {
+                results.add(future.resultNow());
+            }
+            return results;
+        }
+    }
+
+    /**
+     * Runs all tasks at once and waits until each has finished, failed or run past {@code timeout}; one task failing
+     * does not affect the others. The outcomes are in task order; late tasks are cancelled and fail with
+     * {@link TimeoutException}.
+     */
+    public static <T> List<Outcome<T>> settle(final Duration timeout, final List<? extends Callable<? extends T>> tasks) {
+        final long deadline = System.nanoTime() + timeout.toNanos();
+        try (final var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            final var completion = new ExecutorCompletionService<T>(executor);
+            final List<Future<T>> futures = submitAll(completion, tasks);
+            try {
+                for (int i = 0; i < futures.size(); i++) {
+                    if (completion.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) == null) break;
+                }
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            cancelAll(futures);
+
+            final List<Outcome<T>> outcomes = new ArrayList<>(futures.size());
+            for (final Future<T> future : futures) {
+                outcomes.add(outcomeOf(future));
+            }
+            return outcomes;
+        }
+    }
+
+    private static <T> List<Future<T>> submitAll(final ExecutorCompletionService<T> completion,
+                                                 final List<? extends Callable<? extends T>> tasks) {
+        final List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (final Callable<? extends T> task : tasks) {
+            futures.add(completion.submit(task::call));
+        }
+        return futures;
+    }
+
+    private static void cancelAll(final List<? extends Future<?>> futures) {
+        for (final Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    private static <T> Outcome<T> outcomeOf(final Future<T> future) {
+        return switch (future.state()) {
+            case SUCCESS -> new Outcome<>(future.resultNow(), null);
+            case FAILED -> new Outcome<>(null, future.exceptionNow());
+            default -> new Outcome<>(null, new TimeoutException("Cancelled after the fan-out timeout"));
+        };
+    }
+
+    /**
+     * The result of one task: its value, or the exception it failed with.
+     */
+    public record Outcome<T>(T value, Throwable error) {
+
+        public boolean isSuccess() {
+            return this.error == null;
+        }
+    }
+
+}
@@ -1,35 +1,285 @@
 package me.xeyo.ivi.core.utils;
 
+import com.alibaba.fastjson2.JSONArray;
 import com.alibaba.fastjson2.JSONObject;
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * GET helpers on one long-lived {@link HttpClient}, so connections are kept alive and reused (HTTP/2 where the
+ * server offers it) and responses are handled on virtual threads.
+ * <p>
+ * Concurrent requests for the same URL share one exchange. Successful responses are cached by URL in an LRU
+ * bounded by body size: a response is fresh for its {@code Cache-Control: max-age} (or {@code ivi.http.defaultTtlMs}),
+ * after that it is revalidated with {@code If-None-Match}/{@code If-Modified-Since} and a 304 renews it.
+ * {@code no-store} responses are never cached.
+ */
 public final class HttpUtils {
 
+    private static final Duration CONNECT_TIMEOUT = Duration.ofMillis(Long.getLong("ivi.http.connectTimeoutMs", 5000));
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMillis(Long.getLong("ivi.http.requestTimeoutMs", 10000));
+    private static final long DEFAULT_TTL_NANOS = TimeUnit.MILLISECONDS.toNanos(Long.getLong("ivi.http.defaultTtlMs", 0));
+    private static final long CACHE_MAX_BYTES = Long.getLong("ivi.http.cacheBytes", 4L * 1024 * 1024);
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .connectTimeout(CONNECT_TIMEOUT)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .version(HttpClient.Version.HTTP_2)
+            .build();
+
+    private static final Map<String, CompletableFuture<String>> IN_FLIGHT = new ConcurrentHashMap<>();
+    private static final ResponseCache CACHE = new ResponseCache(CACHE_MAX_BYTES);
+
+    private static final AtomicLong REQUESTS = new AtomicLong();
+    private static final AtomicLong CACHE_HITS = new AtomicLong();
+    private static final AtomicLong COALESCED = new AtomicLong();
+    private static final AtomicLong NETWORK_FETCHES = new AtomicLong();
+    private static final AtomicLong REVALIDATED = new AtomicLong();
+    private static final AtomicLong FAILURES = new AtomicLong();
+
+    private HttpUtils() {
+    }
+
     public static JSONObject getJsonObject(final String url) throws Exception {
-        try(final var client = HttpClient.newHttpClient()) {
-            final var request = HttpRequest.newBuilder().uri(URI.create(url)).build();
-            final var response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            return JSONObject.parseObject(response.body());
+        return JSONObject.parseObject(getRaw(url));
+    }
+
+    public static JSONArray getJsonArray(final String url) throws Exception {
+        return JSONArray.parseArray(getRaw(url));
+    }
+
+    public static String getRaw(final String url) throws Exception {
+        try {
+            return getRawAsync(url).get();
+        } catch (final ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
         }
     }
 
-    public static JSONObject getJsonArray(final String url) throws Exception {
-        try(final var client = HttpClient.newHttpClient()) {
-            final var request = HttpRequest.newBuilder().uri(URI.create(url)).build();
-            final var response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            return JSONObject.parse(response.body());
+    public static CompletableFuture<JSONObject> getJsonObjectAsync(final String url) {
+        return getRawAsync(url).thenApply(JSONObject::parseObject);
+    }
+
+    public static CompletableFuture<JSONArray> getJsonArrayAsync(final String url) {
+        return getRawAsync(url).thenApply(JSONArray::parseArray);
+    }
+
+    /**
+     * Answers from the cache when the entry is fresh, otherwise joins the exchange already running for
+     * {@code url} or starts one.
+     */
+    public static CompletableFuture<String> getRawAsync(final String url) {
+        REQUESTS.incrementAndGet();
+        final CachedResponse cached = CACHE.get(url);
+        if (cached != null && cached.isFresh(System.nanoTime())) {
+            CACHE_HITS.incrementAndGet();
+            return CompletableFuture.completedFuture(cached.body);
         }
+
+        final var started = new CompletableFuture<String>();
+        final CompletableFuture<String> existing = IN_FLIGHT.putIfAbsent(url, started);
+        if (existing != null) {
+            COALESCED.incrementAndGet();
+            return existing;
+        }
+
+        fetch(url, cached).whenComplete((body, error) -> {
+            IN_FLIGHT.remove(url, started);
+            if (error != null) {
+                FAILURES.incrementAndGet();
+                started.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            } else {
+                started.complete(body);
+            }
+        });
+        return started;
     }
 
-    public static String getRaw(final String url) throws Exception {
-        try(final var client = HttpClient.newHttpClient()) {
-            final var request = HttpRequest.newBuilder().uri(URI.create(url)).build();
-            final var response = client.send(request, HttpResponse.BodyHandlers.ofString());
+    /**
+     * Fetches all {@code urls} concurrently. The result keeps the order of {@code urls}; it fails if any fetch fails.
+     */
+    public static CompletableFuture<List<String>> getAllRaw(final List<String> urls) {
+        final List<CompletableFuture<String>> futures = new ArrayList<>(urls.size());
+        for (final String url : urls) {
+            futures.add(getRawAsync(url));
+        }
+        return CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).thenApply(ignored -> {
+            final List<String> bodies = new ArrayList<>(futures.size());
+            for (final CompletableFuture<String> future : futures) {
+                bodies.add(future.join());
+            }
+            return bodies;
+        });
+    }
+
+    public static CompletableFuture<List<JSONObject>> getAllJsonObjects(final List<String> urls) {
+        return getAllRaw(urls).thenApply(bodies -> {
+            final List<JSONObject> objects = new ArrayList<>(bodies.size());
+            for (final String body : bodies) {
+                objects.add(JSONObject.parseObject(body));
+            }
+            return objects;
+        });
+    }
+
+    /**
+     * Drops every cached response; mostly useful for tests and benchmarks.
+     */
+    public static void clearCache() {
+        CACHE.clear();
+    }
+
+    public static JSONObject getStats() {
+        final var stats = new JSONObject();
+        stats.put("requests", REQUESTS.get());
+        stats.put("cacheHits", CACHE_HITS.get());
+        stats.put("coalesced", COALESCED.get());
+        stats.put("networkFetches", NETWORK_FETCHES.get());
+        stats.put("revalidated", REVALIDATED.get());
+        stats.put("failures", FAILURES.get());
+        stats.put("cacheEntries", CACHE.size());
+        stats.put("cacheBytes", CACHE.bytes());
+        stats.put("cacheMaxBytes", CACHE_MAX_BYTES);
+        return stats;
+    }
+
+    private static CompletableFuture<String> fetch(final String url, final CachedResponse cached) {
+        final var builder = HttpRequest.newBuilder().uri(URI.create(url)).timeout(REQUEST_TIMEOUT).GET();
+        if (cached != null) {
+            if (cached.etag != null) builder.header("If-None-Match", cached.etag);
+            if (cached.lastModified != null) builder.header("If-Modified-Since", cached.lastModified);
+        }
+
+        NETWORK_FETCHES.incrementAndGet();
+        return CLIENT.sendAsync(builder.build(), HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8)).thenApply(response -> {
+            final long now = System.nanoTime();
+            if (response.statusCode() == 304 && cached != null) {
+                REVALIDATED.incrementAndGet();
+                CACHE.put(url, cached.renewed(freshUntil(response.headers(), now)));
+                return cached.body;
+            }
+            if (response.statusCode() < 200 || response.statusCode() >= 300) {
+                throw new CompletionException(new IOException("HTTP " + response.statusCode() + " for " + url));
+            }
+
+            final HttpHeaders headers = response.headers();
+            if (isCacheable(headers)) {
+                CACHE.put(url, new CachedResponse(response.body(),
+                        headers.firstValue("ETag").orElse(null),
+                        headers.firstValue("Last-Modified").orElse(null),
+                        freshUntil(headers, now)));
+            } else {
+                CACHE.remove(url);
+            }
             return response.body();
+        });
+    }
+
+    private static boolean isCacheable(final HttpHeaders headers) {
+        return headers.allValues("Cache-Control").stream().noneMatch(value -> value.toLowerCase().contains("no-store"));
+    }
+
+    private static long freshUntil(final HttpHeaders headers, final long now) {
+        for (final String value : headers.allValues("Cache-Control")) {
+            for (final String directive : value.toLowerCase().split(",")) {
+                final var trimmed = directive.trim();
+                if (trimmed.equals("no-cache")) return now;
+                if (trimmed.startsWith("max-age=")) {
+                    try {
+                        return now + TimeUnit.SECONDS.toNanos(Long.parseLong(trimmed.substring("max-age=".length())));
+                    } catch (final NumberFormatException ignored) {
+                        // Fall through to the default TTL.
+                    }
+                }
+            }
+        }
+        return now + DEFAULT_TTL_NANOS;
+    }
+
+    private record CachedResponse(String body, String etag, String lastModified, long freshUntilNanos) {
+
+        boolean isFresh(final long now) {
+            return now - this.freshUntilNanos < 0;
+        }
+
+        CachedResponse renewed(final long freshUntilNanos) {
+            return new CachedResponse(this.body, this.etag, this.lastModified, freshUntilNanos);
+        }
+
+        long footprintBytes() {
+            // UTF-16 upper bound for the body plus a little for the entry itself.
+            return 2L * this.body.length() + 128;
+        }
+    }
+
+    private static final class ResponseCache {
+
+        private final long maxBytes;
+        private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        ResponseCache(final long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized CachedResponse get(final String url) {
+            return this.entries.get(url);
+        }
+
+        synchronized void put(final String url, final CachedResponse response) {
+            final long size = response.footprintBytes();
+            if (size > this.maxBytes) {
+                this.remove(url);
+                return;
+            }
+
+            final CachedResponse previous = this.entries.put(url, response);
+            if (previous != null) this.bytes -= previous.footprintBytes();
+            this.bytes += size;
+
+            final Iterator<CachedResponse> eldest = this.entries.values().iterator();
+            while (this.bytes > this.maxBytes && eldest.hasNext()) {
+                this.bytes -= eldest.next().footprintBytes();
+                eldest.remove();
+            }
+        }
+
+        synchronized void remove(final String url) {
+            final CachedResponse previous = this.entries.remove(url);
+            if (previous != null) this.bytes -= previous.footprintBytes();
+        }
+
+        synchronized void clear() {
+            this.entries.clear();
+            this.bytes = 0;
+        }
+
+        synchronized int size() {
+            return this.entries.size();
+        }
+
+        synchronized long bytes() {
+            return this.bytes;
         }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,74 @@
+package me.xeyo.ivi.core.utils;
+
+import com.alibaba.fastjson2.JSONObject;
+
+/**
+ * Count, mean, maximum and percentiles of a stream of samples, such as latencies in nanoseconds. Percentiles come
+ * from a log-linear histogram with four buckets per power of two, so they are accurate to within 25% while the
+ * memory stays fixed no matter how many samples are recorded.
+ */
+public final class SampleStats {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private long count;
+    private long total;
+    private long max;
+    private final long[] histogram = new long[64 * SUB_BUCKETS];
+
+    public synchronized void record(final long value) {
+        this.count++;
+        this.total += value;
+        this.max = Math.max(this.max, value);
+        this.histogram[bucketOf(Math.max(0, value))]++;
+    }
+
+    public synchronized long getCount() {
+        return this.count;
+    }
+
+    /**
+     * Returns an upper bound of the value below which {@code percentile} percent of the samples fall.
+     */
+    public synchronized long percentile(final double percentile) {
+        if (this.count == 0) return 0;
+        final long rank = (long) Math.ceil(this.count * percentile / 100.0);
+        long seen = 0;
+        for (int bucket = 0; bucket < this.histogram.length; bucket++) {
+            seen += this.histogram[bucket];
+            if (seen >= Math.max(1, rank)) return Math.min(this.max, upperBoundOf(bucket));
+        }
+        return this.max;
+    }
+
+    /**
+     * @param divisor unit conversion applied to average, percentiles and maximum, e.g. 1000 to report nanoseconds
+     *                as microseconds
+     */
+    public synchronized JSONObject toJson(final long divisor) {
+        final var json = new JSONObject();
+        json.put("count", this.count);
+        json.put("average", this.count == 0 ? 0 : this.total / this.count / divisor);
+        json.put("p50", this.percentile(50) / divisor);
+        json.put("p99", this.percentile(99) / divisor);
+        json.put("max", this.max / divisor);
+        return json;
+    }
+
+    private static int bucketOf(final long value) {
+        if (value < SUB_BUCKETS) return (int) value;
+        final int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        final int subBucket = (int) (value >>> (magnitude - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (magnitude - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long upperBoundOf(final int bucket) {
+        if (bucket < SUB_BUCKETS) return bucket;
+        final int magnitude = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        final long subBucket = bucket % SUB_BUCKETS;
+        final long width = 1L << (magnitude - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + subBucket) << (magnitude - SUB_BUCKET_BITS)) + width - 1;
+    }
+
+}
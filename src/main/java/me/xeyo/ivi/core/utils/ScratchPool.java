@@ -0,0 +1,51 @@
+package me.xeyo.ivi.core.utils;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * A bounded set of reusable working state for searches that must not allocate per query, such as the arrays and
+ * heaps of a route search. A search borrows one instance for its duration and hands it back; the pool keeps at most
+ * {@code capacity} idle instances, sized to the number of searches that run at once, so the state neither follows
+ * threads (one per request thread, or a new one per virtual thread) nor grows past what is in use. A borrower that
+ * finds the pool empty gets a fresh instance, which is dropped on release if the pool is full again.
+ */
+public final class ScratchPool<T> {
+
+    private final int capacity;
+    private final ArrayBlockingQueue<T> idle;
+    private final Supplier<T> factory;
+
+    private final AtomicLong borrowed = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+
+    public ScratchPool(final int capacity, final Supplier<T> factory) {
+        this.capacity = Math.max(1, capacity);
+        this.idle = new ArrayBlockingQueue<>(this.capacity);
+        this.factory = factory;
+    }
+
+    public T borrow() {
+        this.borrowed.incrementAndGet();
+        final T scratch = this.idle.poll();
+        if (scratch != null) return scratch;
+        this.created.incrementAndGet();
+        return this.factory.get();
+    }
+
+    public void release(final T scratch) {
+        this.idle.offer(scratch);
+    }
+
+    public JSONObject getStats() {
+        final var stats = new JSONObject();
+        stats.put("capacity", this.capacity);
+        stats.put("idle", this.idle.size());
+        stats.put("borrowed", this.borrowed.get());
+        stats.put("created", this.created.get());
+        return stats;
+    }
+
+}
@@ -0,0 +1,36 @@
+package me.xeyo.ivi.core.vehicle;
+
+/**
+ * Running summary of the samples one signal received during the current display frame.
+ */
+final class FrameAggregate {
+
+    int count;
+    double sum;
+    double max;
+    double last;
+    long newestTimestamp;
+
+    void reset() {
+        this.count = 0;
+        this.sum = 0;
+        this.max = Double.NEGATIVE_INFINITY;
+    }
+
+    void add(final long timestampNanos, final double value) {
+        this.count++;
+        this.sum += value;
+        this.max = Math.max(this.max, value);
+        this.last = value;
+        this.newestTimestamp = timestampNanos;
+    }
+
+    double value(final VehicleSignal.Aggregation aggregation) {
+        return switch (aggregation) {
+            case LAST -> this.last;
+            case MEAN -> this.sum / this.count;
+            case MAX -> this.max;
+        };
+    }
+
+}
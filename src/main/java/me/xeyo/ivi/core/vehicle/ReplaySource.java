@@ -0,0 +1,212 @@
+package me.xeyo.ivi.core.vehicle;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Feeds the bus without a vehicle, for development and tests. It either replays a recording, a CSV file of
+ * {@code millis,signal,value} lines in time order, or, without one, simulates a repeating drive cycle with every
+ * signal sampled at a fixed rate. Both loop forever from one thread and publish without allocating.
+ */
+public class ReplaySource implements SignalSource {
+
+    private static final double CYCLE_SECONDS = 120;
+    private static final double BATTERY_KWH = 60;
+
+    private final Path recording;
+    private final int rateHz;
+    private final double speedFactor;
+
+    // A loaded recording, as parallel primitive arrays.
+    private long[] recordedMillis;
+    private byte[] recordedSignals;
+    private double[] recordedValues;
+    private int recordedCount;
+
+    private volatile Thread thread;
+    private volatile boolean running;
+    private volatile long published;
+    private volatile long allocationBaseline = -1;
+
+    public ReplaySource(final Path recording, final int rateHz, final double speedFactor) {
+        this.recording = recording;
+        this.rateHz = rateHz;
+        this.speedFactor = speedFactor;
+    }
+
+    /**
+     * Replays {@code ivi.vehicle.replay.file} if set, at {@code ivi.vehicle.replay.speed} times real time (default
+     * 1); otherwise simulates at {@code ivi.vehicle.replay.rate} samples per signal and second (default 200).
+     */
+    public static ReplaySource fromSystemProperties() {
+        final String file = System.getProperty("ivi.vehicle.replay.file");
+        return new ReplaySource(file != null ? Paths.get(file) : null,
+                Integer.getInteger("ivi.vehicle.replay.rate", 200),
+                Double.parseDouble(System.getProperty("ivi.vehicle.replay.speed", "1")));
+    }
+
+    @Override
+    public String getName() {
+        return this.recording != null ? "replay:" + this.recording.getFileName() : "replay:simulated@" + this.rateHz + "Hz";
+    }
+
+    @Override
+    public void start(final SignalBus bus) {
+        if (this.recording != null) {
+            try {
+                this.load(this.recording);
+            } catch (final IOException e) {
+                throw new IllegalStateException("Cannot read recording " + this.recording + ": " + e.getMessage(), e);
+            }
+        }
+        this.running = true;
+        final var replay = new Thread(() -> {
+            this.allocationBaseline = allocatedBytes(Thread.currentThread().threadId());
+            if (this.recording != null) {
+                this.replay(bus);
+            } else {
+                this.simulate(bus);
+            }
+        }, "ivi-vehicle-replay");
+        replay.setDaemon(true);
+        this.thread = replay;
+        replay.start();
+    }
+
+    private void load(final Path file) throws IOException {
+        this.recordedMillis = new long[1024];
+        this.recordedSignals = new byte[1024];
+        this.recordedValues = new double[1024];
+        try (final BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final String[] fields = line.split(",");
+                if (fields.length != 3) continue;
+                final VehicleSignal signal = VehicleSignal.ofKey(fields[1]);
+                if (signal == null) continue;
+                try {
+                    final long millis = Long.parseLong(fields[0].trim());
+                    final double value = Double.parseDouble(fields[2].trim());
+                    if (this.recordedCount == this.recordedMillis.length) {
+                        this.recordedMillis = Arrays.copyOf(this.recordedMillis, this.recordedCount * 2);
+                        this.recordedSignals = Arrays.copyOf(this.recordedSignals, this.recordedCount * 2);
+                        this.recordedValues = Arrays.copyOf(this.recordedValues, this.recordedCount * 2);
+                    }
+                    this.recordedMillis[this.recordedCount] = millis;
+                    this.recordedSignals[this.recordedCount] = (byte) signal.ordinal();
+                    this.recordedValues[this.recordedCount++] = value;
+                } catch (final NumberFormatException e) {
+                    // Header or malformed line.
+                }
+            }
+        }
+        if (this.recordedCount == 0) throw new IOException("No samples in " + file);
+    }
+
+    private void replay(final SignalBus bus) {
+        final long firstMillis = this.recordedMillis[0];
+        while (this.running) {
+            final long loopStart = System.nanoTime();
+            for (int i = 0; i < this.recordedCount && this.running; i++) {
+                final long due = loopStart + (long) ((this.recordedMillis[i] - firstMillis) * 1_000_000 / this.speedFactor);
+                waitUntil(due);
+                bus.publish(VehicleSignal.ofOrdinal(this.recordedSignals[i]), System.nanoTime(), this.recordedValues[i]);
+                this.published++;
+            }
+        }
+    }
+
+    private void simulate(final SignalBus bus) {
+        final long periodNanos = TimeUnit.SECONDS.toNanos(1) / this.rateHz;
+        final double dt = 1.0 / this.rateHz;
+        final long start = System.nanoTime();
+        long tick = 0;
+        double speed = 0;
+        double battery = 86;
+        double coolant = 40;
+        long noise = 0x9E3779B97F4A7C15L;
+
+        while (this.running) {
+            waitUntil(start + tick * periodNanos);
+            final double t = (tick * dt) % CYCLE_SECONDS;
+            tick++;
+
+            final double previousSpeed = speed;
+            speed += (targetSpeed(t) - speed) * Math.min(1, dt * 0.6);
+            final double acceleration = (speed - previousSpeed) / 3.6 / dt;
+            noise = noise * 6364136223846793005L + 1442695040888963407L;
+            final double jitter = ((noise >>> 40) / (double) (1L << 24)) - 0.5;
+
+            // A mid-size EV: rolling and air resistance plus inertia, recuperating down to -40 kW.
+            final double metersPerSecond = speed / 3.6;
+            final double power = Math.max(-40, (1800 * acceleration + 180 + 0.35 * metersPerSecond * metersPerSecond) * metersPerSecond / 1000);
+            battery = Math.max(0, battery - power * dt / 3600 / BATTERY_KWH * 100);
+            coolant += (Math.min(90, 40 + speed) - coolant) * dt * 0.02;
+
+            final long now = System.nanoTime();
+            bus.publish(VehicleSignal.SPEED, now, Math.max(0, speed + jitter * 0.4));
+            bus.publish(VehicleSignal.RPM, now, speed < 0.5 ? 0 : speed * 95 + jitter * 40);
+            bus.publish(VehicleSignal.POWER, now, power + jitter);
+            bus.publish(VehicleSignal.BATTERY, now, battery);
+            bus.publish(VehicleSignal.RANGE, now, battery * 4.3);
+            bus.publish(VehicleSignal.COOLANT_TEMPERATURE, now, coolant);
+            bus.publish(VehicleSignal.OUTSIDE_TEMPERATURE, now, 18 + jitter * 0.2);
+            this.published += 7;
+        }
+    }
+
+    /**
+     * Target speed of the drive cycle: town, country road, a stop, then motorway.
+     */
+    private static double targetSpeed(final double t) {
+        if (t < 5) return 0;
+        if (t < 30) return 50;
+        if (t < 55) return 90;
+        if (t < 65) return 0;
+        if (t < 110) return 125;
+        return 30;
+    }
+
+    private static void waitUntil(final long dueNanos) {
+        long remaining;
+        while ((remaining = dueNanos - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static long allocatedBytes(final long threadId) {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean threads) {
+            return threads.getThreadAllocatedBytes(threadId);
+        }
+        return -1;
+    }
+
+    @Override
+    public JSONObject getStats() {
+        final var stats = new JSONObject();
+        stats.put("published", this.published);
+        final Thread current = this.thread;
+        if (current != null && this.allocationBaseline >= 0) {
+            // Everything this thread allocated since it started replaying; zero when ingest does not allocate.
+            stats.put("allocatedBytes", allocatedBytes(current.threadId()) - this.allocationBaseline);
+        }
+        return stats;
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        final Thread current = this.thread;
+        if (current != null) current.interrupt();
+    }
+
+}
@@ -0,0 +1,348 @@
+package me.xeyo.ivi.core.vehicle;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import lombok.Getter;
+import me.xeyo.ivi.core.error.InternalExceptionTracker;
+import me.xeyo.ivi.core.utils.SampleStats;
+
+/**
+ * Carries vehicle samples from a {@link SignalSource} to the page.
+ * <p>
+ * Ingest is a store into the signal's {@link SignalRing}: no locks, no allocation, no waiting on the display. A frame
+ * thread runs at the display frame rate, drains every ring, reduces each signal's samples to one value with its
+ * {@link VehicleSignal.Aggregation}, and sends subscribers a binary frame with only the signals whose value changed
+ * by at least their resolution. New subscribers first get a key frame with every known value.
+ * <p>
+ * Sends never block the frame thread: a frame is handed to each {@link Sink} to write asynchronously, and a
+ * subscriber still busy with its previous frame skips this one and is caught up with a key frame once it is free, so
+ * one slow client neither delays the others nor misses a change for good.
+ * <p>
+ * Frame layout, big-endian: {@code type:u8} (1 delta, 2 key frame), {@code count:u8}, {@code sequence:u32},
+ * {@code newestSampleEpochMillis:f64}, then {@code count} entries of {@code signal:u8, value:f32}. The sample time
+ * lets the page measure the delay from sample to screen.
+ */
+public class SignalBus implements AutoCloseable {
+
+    static final byte DELTA_FRAME = 1;
+    static final byte KEY_FRAME = 2;
+    static final int HEADER_BYTES = 14;
+    static final int ENTRY_BYTES = 5;
+
+    private final SignalRing[] rings;
+    private final FrameAggregate[] aggregates;
+    private final double[] values;
+    private final double[] sentValues;
+    private final boolean[] known;
+    private final int[] changed;
+
+    @Getter
+    private final int frameRate;
+    private final long epochOffsetNanos = System.currentTimeMillis() * 1_000_000 - System.nanoTime();
+    private final ScheduledExecutorService frames = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final var thread = new Thread(runnable, "ivi-vehicle-frames");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    @Getter
+    private volatile SignalSource source;
+
+    private int sequence;
+    private long secondStart = System.nanoTime();
+    private long secondStartSamples;
+    private long samplesLastSecond;
+    private long peakSamplesPerSecond;
+
+    private final AtomicLong framesBuilt = new AtomicLong();
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong framesSkipped = new AtomicLong();
+    private final AtomicLong bytesSent = new AtomicLong();
+    private final SampleStats frameNanos = new SampleStats();
+    private final SampleStats sampleToSendNanos = new SampleStats();
+    private volatile JSONObject pageLatency;
+
+    public SignalBus(final int ringCapacity, final int frameRate) {
+        final int signals = VehicleSignal.count();
+        this.rings = new SignalRing[signals];
+        this.aggregates = new FrameAggregate[signals];
+        for (int i = 0; i < signals; i++) {
+            this.rings[i] = new SignalRing(ringCapacity);
+            this.aggregates[i] = new FrameAggregate();
+        }
+        this.values = new double[signals];
+        this.sentValues = new double[signals];
+        this.known = new boolean[signals];
+        this.changed = new int[signals];
+        this.frameRate = frameRate;
+        this.frames.scheduleAtFixedRate(this::frame, 0, TimeUnit.SECONDS.toNanos(1) / frameRate, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Creates the bus with {@code ivi.vehicle.ringCapacity} samples per signal (default 4096) and
+     * {@code ivi.vehicle.frameRate} frames per second (default 60), and starts the source named by
+     * {@code ivi.vehicle.source}: {@code replay} for a {@link ReplaySource}, the class name of a
+     * {@link SignalSource}, or {@code none} (default).
+     */
+    public static SignalBus fromSystemProperties() {
+        final var bus = new SignalBus(Integer.getInteger("ivi.vehicle.ringCapacity", 4096),
+                Integer.getInteger("ivi.vehicle.frameRate", 60));
+        final String sourceName = System.getProperty("ivi.vehicle.source", "none");
+        try {
+            final SignalSource source = switch (sourceName) {
+                case "none" -> null;
+                case "replay" -> ReplaySource.fromSystemProperties();
+                default -> (SignalSource) Class.forName(sourceName).getConstructor().newInstance();
+            };
+            if (source != null) {
+                bus.start(source);
+                System.out.println("[VEHICLE] Started signal source " + source.getName() + " at " + bus.frameRate + " frames per second");
+            }
+        } catch (final Exception e) {
+            System.err.println("[VEHICLE] Cannot start signal source " + sourceName + ": " + e.getMessage());
+            InternalExceptionTracker.handleException(e);
+        }
+        return bus;
+    }
+
+    public void start(final SignalSource source) {
+        if (this.source != null) throw new IllegalStateException("A signal source is already running: " + this.source.getName());
+        this.source = source;
+        source.start(this);
+    }
+
+    /**
+     * Records a sample. Allocation and lock free; every signal must be published from a single thread.
+     *
+     * @param timestampNanos when the sample was taken, on the {@link System#nanoTime()} clock
+     */
+    public void publish(final VehicleSignal signal, final long timestampNanos, final double value) {
+        this.rings[signal.ordinal()].publish(timestampNanos, value);
+    }
+
+    /**
+     * Starts sending frames to {@code sink}, beginning with a key frame. The sink is given the next frame only after
+     * it reported the previous one written. A sink that throws or reports a failure is unsubscribed.
+     */
+    public Subscriber subscribe(final Sink sink) {
+        final var subscriber = new Subscriber(sink);
+        this.subscribers.add(subscriber);
+        return subscriber;
+    }
+
+    public void unsubscribe(final Subscriber subscriber) {
+        this.subscribers.remove(subscriber);
+    }
+
+    /**
+     * The page's own measurement of sample-to-screen latency, as last reported.
+     */
+    public void recordPageLatency(final JSONObject report) {
+        this.pageLatency = report;
+    }
+
+    private void frame() {
+        try {
+            final long start = System.nanoTime();
+            long newestSample = Long.MIN_VALUE;
+            int changedCount = 0;
+            long publishedTotal = 0;
+            for (int signal = 0; signal < this.rings.length; signal++) {
+                final FrameAggregate aggregate = this.aggregates[signal];
+                aggregate.reset();
+                this.rings[signal].drainTo(aggregate);
+                publishedTotal += this.rings[signal].published();
+                if (aggregate.count == 0) continue;
+
+                final VehicleSignal vehicleSignal = VehicleSignal.ofOrdinal(signal);
+                this.values[signal] = aggregate.value(vehicleSignal.getAggregation());
+                newestSample = Math.max(newestSample, aggregate.newestTimestamp);
+                if (!this.known[signal] || Math.abs(this.values[signal] - this.sentValues[signal]) >= vehicleSignal.getResolution()) {
+                    this.known[signal] = true;
+                    this.sentValues[signal] = this.values[signal];
+                    this.changed[changedCount++] = signal;
+                }
+            }
+            this.updateIngestRate(start, publishedTotal);
+            if (this.subscribers.isEmpty()) return;
+
+            final double newestEpochMillis = newestSample == Long.MIN_VALUE ? 0 : (newestSample + this.epochOffsetNanos) / 1e6;
+            final int frameSequence = this.sequence++;
+            ByteBuffer delta = null;
+            ByteBuffer key = null;
+            for (final Subscriber subscriber : this.subscribers) {
+                final ByteBuffer frame;
+                if (subscriber.needsKeyFrame) {
+                    if (key == null) key = this.encodeKeyFrame(frameSequence, newestEpochMillis);
+                    // Nothing to show yet; the key frame waits for the first sample.
+                    if (key.get(1) == 0) continue;
+                    frame = key;
+                    subscriber.needsKeyFrame = false;
+                } else {
+                    if (changedCount == 0) continue;
+                    if (delta == null) delta = this.encode(DELTA_FRAME, frameSequence, newestEpochMillis, this.changed, changedCount);
+                    frame = delta;
+                }
+                this.send(subscriber, frame);
+            }
+            if (delta != null || key != null) {
+                this.framesBuilt.incrementAndGet();
+                this.frameNanos.record(System.nanoTime() - start);
+                if (newestSample != Long.MIN_VALUE) this.sampleToSendNanos.record(System.nanoTime() - newestSample);
+            }
+        } catch (final Exception e) {
+            InternalExceptionTracker.handleException(e);
+        }
+    }
+
+    private ByteBuffer encodeKeyFrame(final int frameSequence, final double newestEpochMillis) {
+        int count = 0;
+        final int[] all = new int[this.known.length];
+        for (int signal = 0; signal < this.known.length; signal++) {
+            if (this.known[signal]) all[count++] = signal;
+        }
+        return this.encode(KEY_FRAME, frameSequence, newestEpochMillis, all, count);
+    }
+
+    /**
+     * Encodes into a buffer of its own: sinks write asynchronously, so a frame must outlive the next one.
+     */
+    private ByteBuffer encode(final byte type, final int frameSequence, final double newestEpochMillis,
+                              final int[] signals, final int count) {
+        final ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + count * ENTRY_BYTES);
+        buffer.put(type);
+        buffer.put((byte) count);
+        buffer.putInt(frameSequence);
+        buffer.putDouble(newestEpochMillis);
+        for (int i = 0; i < count; i++) {
+            buffer.put((byte) signals[i]);
+            buffer.putFloat((float) this.sentValues[signals[i]]);
+        }
+        return buffer.flip();
+    }
+
+    private void send(final Subscriber subscriber, final ByteBuffer frame) {
+        if (!subscriber.writing.compareAndSet(false, true)) {
+            // The changes in this frame never reach that client, so it gets every value again once it is free.
+            subscriber.needsKeyFrame = true;
+            this.framesSkipped.incrementAndGet();
+            return;
+        }
+        final int length = frame.remaining();
+        try {
+            subscriber.sink.send(frame.duplicate(), error -> {
+                subscriber.writing.set(false);
+                if (error != null) {
+                    this.drop(subscriber, error);
+                    return;
+                }
+                this.framesSent.incrementAndGet();
+                this.bytesSent.addAndGet(length);
+            });
+        } catch (final Exception e) {
+            subscriber.writing.set(false);
+            this.drop(subscriber, e);
+        }
+    }
+
+    private void drop(final Subscriber subscriber, final Throwable error) {
+        if (this.subscribers.remove(subscriber)) {
+            System.err.println("[VEHICLE] Dropped a stream subscriber: " + error.getMessage());
+        }
+    }
+
+    private void updateIngestRate(final long now, final long publishedTotal) {
+        if (now - this.secondStart < TimeUnit.SECONDS.toNanos(1)) return;
+        final long samples = publishedTotal - this.secondStartSamples;
+        synchronized (this) {
+            this.samplesLastSecond = samples * TimeUnit.SECONDS.toNanos(1) / (now - this.secondStart);
+            this.peakSamplesPerSecond = Math.max(this.peakSamplesPerSecond, this.samplesLastSecond);
+        }
+        this.secondStart = now;
+        this.secondStartSamples = publishedTotal;
+    }
+
+    @Override
+    public void close() {
+        final SignalSource current = this.source;
+        if (current != null) current.close();
+        this.frames.shutdownNow();
+    }
+
+    public JSONObject getStats() {
+        long samples = 0;
+        for (final SignalRing ring : this.rings) {
+            samples += ring.published();
+        }
+        // Ring drop counters belong to the frame thread; read them there so they are consistent.
+        long dropped = 0;
+        try {
+            dropped = this.frames.submit(() -> {
+                long total = 0;
+                for (final SignalRing ring : this.rings) {
+                    total += ring.dropped();
+                }
+                return total;
+            }).get(1, TimeUnit.SECONDS);
+        } catch (final Exception e) {
+            dropped = -1;
+        }
+
+        final var stats = new JSONObject();
+        final SignalSource current = this.source;
+        stats.put("source", current != null ? current.getName() : "none");
+        if (current != null) stats.put("sourceStats", current.getStats());
+        stats.put("frameRate", this.frameRate);
+        stats.put("samples", samples);
+        stats.put("droppedSamples", dropped);
+        synchronized (this) {
+            stats.put("samplesLastSecond", this.samplesLastSecond);
+            stats.put("peakSamplesPerSecond", this.peakSamplesPerSecond);
+        }
+        stats.put("subscribers", this.subscribers.size());
+        stats.put("framesBuilt", this.framesBuilt.get());
+        stats.put("framesSent", this.framesSent.get());
+        stats.put("framesSkipped", this.framesSkipped.get());
+        stats.put("bytesSent", this.bytesSent.get());
+        stats.put("frameMicros", this.frameNanos.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+        stats.put("sampleToSendMicros", this.sampleToSendNanos.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+        stats.put("pageLatencyMillis", this.pageLatency);
+        return stats;
+    }
+
+    /**
+     * Where a subscriber's frames go.
+     */
+    @FunctionalInterface
+    public interface Sink {
+
+        /**
+         * Starts writing {@code frame} without blocking and calls {@code written} once done, with {@code null} or the
+         * failure. The frame is never reused, so the write may finish after this method returns.
+         */
+        void send(ByteBuffer frame, Consumer<Throwable> written) throws Exception;
+    }
+
+    /**
+     * One stream client; see {@link #subscribe}.
+     */
+    public static final class Subscriber {
+
+        private final Sink sink;
+        private final AtomicBoolean writing = new AtomicBoolean();
+        private volatile boolean needsKeyFrame = true;
+
+        private Subscriber(final Sink sink) {
+            this.sink = sink;
+        }
+    }
+
+}
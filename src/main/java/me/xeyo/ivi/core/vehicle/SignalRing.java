@@ -0,0 +1,85 @@
+package me.xeyo.ivi.core.vehicle;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed-size ring of {@code (timestamp, value)} samples in two primitive arrays, written by one producer thread and
+ * read by one consumer without locks.
+ * <p>
+ * The producer fills the slot and then publishes the new sample count with a release store; the consumer reads the
+ * count with an acquire load, so every slot below it is fully written. The producer never waits: when the consumer
+ * falls more than a ring behind, the oldest samples are overwritten. The consumer copies a range out, checks the
+ * count again and discards whatever the producer may have overwritten meanwhile, counting it as dropped.
+ */
+final class SignalRing {
+
+    private final long[] timestamps;
+    private final double[] values;
+    private final int mask;
+    private final AtomicLong published = new AtomicLong();
+
+    // Producer side only.
+    private long next;
+
+    // Consumer side only.
+    private final long[] copiedTimestamps;
+    private final double[] copiedValues;
+    private long read;
+    private long dropped;
+
+    SignalRing(final int capacity) {
+        if (Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacity must be a power of two: " + capacity);
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+        this.mask = capacity - 1;
+        this.copiedTimestamps = new long[capacity];
+        this.copiedValues = new double[capacity];
+    }
+
+    /**
+     * Appends a sample. Allocation free; must only be called from the ring's producer thread.
+     */
+    void publish(final long timestampNanos, final double value) {
+        final long sequence = this.next;
+        final int slot = (int) (sequence & this.mask);
+        this.timestamps[slot] = timestampNanos;
+        this.values[slot] = value;
+        this.next = sequence + 1;
+        this.published.lazySet(sequence + 1);
+    }
+
+    long published() {
+        return this.published.get();
+    }
+
+    long dropped() {
+        return this.dropped;
+    }
+
+    /**
+     * Feeds the samples published since the last drain into {@code aggregate}. Consumer thread only.
+     */
+    void drainTo(final FrameAggregate aggregate) {
+        final long end = this.published.get();
+        final int capacity = this.mask + 1;
+        final long start = Math.max(this.read, end - capacity);
+        int count = 0;
+        for (long sequence = start; sequence < end; sequence++) {
+            final int slot = (int) (sequence & this.mask);
+            this.copiedTimestamps[count] = this.timestamps[slot];
+            this.copiedValues[count++] = this.values[slot];
+        }
+
+        // The copies must be complete before the count is checked again. Sample s shares its slot with sample
+        // s + capacity, which the producer may be writing once it has published s + capacity.
+        VarHandle.acquireFence();
+        final long valid = Math.max(start, this.published.get() - capacity + 1);
+        for (int i = (int) (valid - start); i < count; i++) {
+            aggregate.add(this.copiedTimestamps[i], this.copiedValues[i]);
+        }
+        this.dropped += Math.min(valid, end) - this.read;
+        this.read = end;
+    }
+
+}
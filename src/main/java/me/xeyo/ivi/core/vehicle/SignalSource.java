@@ -0,0 +1,24 @@
+package me.xeyo.ivi.core.vehicle;
+
+import com.alibaba.fastjson2.JSONObject;
+
+/**
+ * Where vehicle samples come from: a CAN or vehicle HAL adapter on a real head unit, {@link ReplaySource} elsewhere.
+ * A source runs its own threads and hands every sample to {@link SignalBus#publish}; each signal must only ever be
+ * published from one thread. Implementations named in {@code ivi.vehicle.source} need a public no-argument
+ * constructor.
+ */
+public interface SignalSource extends AutoCloseable {
+
+    String getName();
+
+    void start(SignalBus bus);
+
+    default JSONObject getStats() {
+        return new JSONObject();
+    }
+
+    @Override
+    void close();
+
+}
@@ -0,0 +1,61 @@
+package me.xeyo.ivi.core.vehicle;
+
+import java.util.Locale;
+import lombok.Getter;
+
+/**
+ * Signals the display shows. The ordinal is the signal id in stream frames, so new signals are only ever appended.
+ * A frame carries a signal only when its value moved by at least the resolution since the last frame that did.
+ */
+@Getter
+public enum VehicleSignal {
+    SPEED("speed", "km/h", 0.5, Aggregation.MEAN),
+    RPM("rpm", "rpm", 10, Aggregation.MEAN),
+    BATTERY("battery", "%", 0.1, Aggregation.LAST),
+    RANGE("range", "km", 1, Aggregation.LAST),
+    POWER("power", "kW", 0.5, Aggregation.MEAN),
+    COOLANT_TEMPERATURE("coolant", "°C", 0.5, Aggregation.LAST),
+    OUTSIDE_TEMPERATURE("outside", "°C", 0.5, Aggregation.LAST);
+
+    private static final VehicleSignal[] VALUES = values();
+
+    private final String key;
+    private final String unit;
+    private final double resolution;
+    private final Aggregation aggregation;
+
+    VehicleSignal(final String key, final String unit, final double resolution, final Aggregation aggregation) {
+        this.key = key;
+        this.unit = unit;
+        this.resolution = resolution;
+        this.aggregation = aggregation;
+    }
+
+    public static VehicleSignal ofKey(final String key) {
+        final var normalized = key.trim().toLowerCase(Locale.ROOT);
+        for (final VehicleSignal signal : VALUES) {
+            if (signal.key.equals(normalized) || signal.name().toLowerCase(Locale.ROOT).equals(normalized)) return signal;
+        }
+        return null;
+    }
+
+    static VehicleSignal ofOrdinal(final int ordinal) {
+        return VALUES[ordinal];
+    }
+
+    static int count() {
+        return VALUES.length;
+    }
+
+    /**
+     * How the samples that arrived during one display frame become the value shown for it.
+     */
+    public enum Aggregation {
+        /** The newest sample; for slow signals where only the current state matters. */
+        LAST,
+        /** The mean of the frame's samples; smooths noisy high-rate signals such as engine speed. */
+        MEAN,
+        /** The largest sample; keeps short peaks visible. */
+        MAX
+    }
+}
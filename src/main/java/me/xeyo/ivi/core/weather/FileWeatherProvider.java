@@ -0,0 +1,40 @@
+package me.xeyo.ivi.core.weather;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Serves weather from a local JSON file in the normalized shape, for development and tests without network.
+ * The file is read on every fetch so it can be edited while the application runs.
+ */
+public class FileWeatherProvider implements WeatherProvider {
+
+    private final Path file;
+
+    public FileWeatherProvider(final Path file) {
+        this.file = file;
+    }
+
+    @Override
+    public String getName() {
+        return "file";
+    }
+
+    @Override
+    public CompletableFuture<JSONObject> fetch(final double latitude, final double longitude) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                final JSONObject weather = JSONObject.parseObject(Files.readString(this.file));
+                if (weather == null) {
+                    throw new IllegalStateException("Weather file is empty: " + this.file);
+                }
+                return weather;
+            } catch (final Exception e) {
+                throw new IllegalStateException("Failed to read weather file " + this.file, e);
+            }
+        });
+    }
+
+}
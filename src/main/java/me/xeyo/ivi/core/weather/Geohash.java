@@ -0,0 +1,52 @@
+package me.xeyo.ivi.core.weather;
+
+/**
+ * Standard base32 geohash encoding, used to bucket nearby positions into one cache entry.
+ */
+public final class Geohash {
+
+    private static final char[] BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    private Geohash() {
+    }
+
+    public static String encode(final double latitude, final double longitude, final int precision) {
+        final var hash = new StringBuilder(precision);
+        double minLatitude = -90, maxLatitude = 90;
+        double minLongitude = -180, maxLongitude = 180;
+        boolean evenBit = true;
+        int bit = 0;
+        int index = 0;
+
+        while (hash.length() < precision) {
+            if (evenBit) {
+                final double middle = (minLongitude + maxLongitude) / 2;
+                if (longitude >= middle) {
+                    index = (index << 1) | 1;
+                    minLongitude = middle;
+                } else {
+                    index <<= 1;
+                    maxLongitude = middle;
+                }
+            } else {
+                final double middle = (minLatitude + maxLatitude) / 2;
+                if (latitude >= middle) {
+                    index = (index << 1) | 1;
+                    minLatitude = middle;
+                } else {
+                    index <<= 1;
+                    maxLatitude = middle;
+                }
+            }
+            evenBit = !evenBit;
+
+            if (++bit == 5) {
+                hash.append(BASE32[index]);
+                bit = 0;
+                index = 0;
+            }
+        }
+        return hash.toString();
+    }
+
+}
@@ -0,0 +1,106 @@
+package me.xeyo.ivi.core.weather;
+
+import com.alibaba.fastjson2.JSONArray;
+import com.alibaba.fastjson2.JSONObject;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import me.xeyo.ivi.core.utils.HttpUtils;
+
+/**
+ * Current conditions and a daily forecast from the Open-Meteo forecast API, which needs no API key.
+ */
+public class OpenMeteoProvider implements WeatherProvider {
+
+    private static final String DEFAULT_BASE_URL = "https://api.open-meteo.com/v1/forecast";
+    private static final String QUERY = "?latitude=%.4f&longitude=%.4f"
+            + "&current=temperature_2m,relative_humidity_2m,weather_code,wind_speed_10m"
+            + "&daily=weather_code,temperature_2m_max,temperature_2m_min&forecast_days=5&timezone=auto";
+
+    private static final Map<Integer, String> DESCRIPTIONS = Map.ofEntries(
+            Map.entry(0, "Clear sky"),
+            Map.entry(1, "Mainly clear"),
+            Map.entry(2, "Partly cloudy"),
+            Map.entry(3, "Overcast"),
+            Map.entry(45, "Fog"),
+            Map.entry(48, "Rime fog"),
+            Map.entry(51, "Light drizzle"),
+            Map.entry(53, "Drizzle"),
+            Map.entry(55, "Dense drizzle"),
+            Map.entry(61, "Light rain"),
+            Map.entry(63, "Rain"),
+            Map.entry(65, "Heavy rain"),
+            Map.entry(66, "Freezing rain"),
+            Map.entry(67, "Heavy freezing rain"),
+            Map.entry(71, "Light snow"),
+            Map.entry(73, "Snow"),
+            Map.entry(75, "Heavy snow"),
+            Map.entry(77, "Snow grains"),
+            Map.entry(80, "Light showers"),
+            Map.entry(81, "Showers"),
+            Map.entry(82, "Violent showers"),
+            Map.entry(85, "Snow showers"),
+            Map.entry(86, "Heavy snow showers"),
+            Map.entry(95, "Thunderstorm"),
+            Map.entry(96, "Thunderstorm with hail"),
+            Map.entry(99, "Thunderstorm with heavy hail")
+    );
+
+    private final String baseUrl;
+
+    public OpenMeteoProvider(final String baseUrl) {
+        this.baseUrl = baseUrl != null ? baseUrl : DEFAULT_BASE_URL;
+    }
+
+    @Override
+    public String getName() {
+        return "open-meteo";
+    }
+
+    @Override
+    public CompletableFuture<JSONObject> fetch(final double latitude, final double longitude) {
+        final var url = this.baseUrl + String.format(Locale.ROOT, QUERY, latitude, longitude);
+        return HttpUtils.getJsonObjectAsync(url).thenApply(OpenMeteoProvider::normalize);
+    }
+
+    private static JSONObject normalize(final JSONObject response) {
+        final JSONObject current = response.getJSONObject("current");
+        if (current == null) {
+            throw new IllegalStateException("Open-Meteo response has no current conditions");
+        }
+
+        final var weather = new JSONObject();
+        final int code = current.getIntValue("weather_code");
+        weather.put("temperature", current.getDouble("temperature_2m"));
+        weather.put("humidity", current.getInteger("relative_humidity_2m"));
+        weather.put("windSpeed", current.getDouble("wind_speed_10m"));
+        weather.put("weatherCode", code);
+        weather.put("description", describe(code));
+        weather.put("observedAt", current.getString("time"));
+
+        final var daily = new JSONArray();
+        final JSONObject days = response.getJSONObject("daily");
+        if (days != null) {
+            final JSONArray dates = days.getJSONArray("time");
+            final JSONArray codes = days.getJSONArray("weather_code");
+            final JSONArray maxima = days.getJSONArray("temperature_2m_max");
+            final JSONArray minima = days.getJSONArray("temperature_2m_min");
+            for (int i = 0; dates != null && i < dates.size(); i++) {
+                final var day = new JSONObject();
+                day.put("date", dates.getString(i));
+                day.put("weatherCode", codes.getInteger(i));
+                day.put("description", describe(codes.getIntValue(i)));
+                day.put("max", maxima.getDouble(i));
+                day.put("min", minima.getDouble(i));
+                daily.add(day);
+            }
+        }
+        weather.put("daily", daily);
+        return weather;
+    }
+
+    static String describe(final int weatherCode) {
+        return DESCRIPTIONS.getOrDefault(weatherCode, "Unknown");
+    }
+
+}
@@ -0,0 +1,16 @@
+package me.xeyo.ivi.core.weather;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Source of weather data for a position. Implementations return the normalized shape:
+ * {@code temperature, weatherCode, description, windSpeed, humidity, daily[{date, min, max, weatherCode}]}.
+ */
+public interface WeatherProvider {
+
+    String getName();
+
+    CompletableFuture<JSONObject> fetch(double latitude, double longitude);
+
+}
@@ -0,0 +1,241 @@
+package me.xeyo.ivi.core.weather;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.Getter;
+import me.xeyo.ivi.core.error.InternalExceptionTracker;
+
+/**
+ * Weather by position, answered from a bounded cache keyed by geohash so a lookup never waits on the provider.
+ * <p>
+ * A fresh entry is returned as is. A stale entry is returned immediately while a refresh runs in the background,
+ * and a missing one reports {@link State#PENDING} until its first fetch completes. Each cell has at most one
+ * fetch in flight, failed fetches back off exponentially, and a scheduler refreshes cells that were looked at
+ * recently before they go stale. Provider load therefore depends on the number of cells in use and the refresh
+ * interval, not on how often screens ask.
+ */
+public class WeatherService {
+
+    public enum State {
+        FRESH, STALE, PENDING
+    }
+
+    private static final long MIN_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    @Getter
+    private final WeatherProvider provider;
+
+    private final int precision;
+    private final int capacity;
+    private final long freshNanos;
+    private final long maxBackoffNanos;
+    private final long activeWindowNanos;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final var thread = new Thread(runnable, "ivi-weather-refresh");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong freshHits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong pendingMisses = new AtomicLong();
+    private final AtomicLong providerCalls = new AtomicLong();
+    private final AtomicLong providerFailures = new AtomicLong();
+    private final AtomicLong coalescedRefreshes = new AtomicLong();
+
+    public WeatherService(final WeatherProvider provider, final int precision, final int capacity, final long freshMillis,
+                          final long refreshIntervalMillis, final long maxBackoffMillis) {
+        this.provider = provider;
+        this.precision = precision;
+        this.capacity = capacity;
+        this.freshNanos = TimeUnit.MILLISECONDS.toNanos(freshMillis);
+        this.maxBackoffNanos = Math.max(MIN_BACKOFF_NANOS, TimeUnit.MILLISECONDS.toNanos(maxBackoffMillis));
+        // Cells nobody looked at for a few refresh rounds are left to go stale.
+        this.activeWindowNanos = TimeUnit.MILLISECONDS.toNanos(refreshIntervalMillis) * 3;
+
+        this.scheduler.scheduleWithFixedDelay(this::refreshActiveCells, refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Builds the service from {@code ivi.weather.*} system properties. {@code ivi.weather.provider=file} reads
+     * {@code ivi.weather.file} instead of calling Open-Meteo.
+     */
+    public static WeatherService fromSystemProperties() {
+        final WeatherProvider provider = "file".equals(System.getProperty("ivi.weather.provider"))
+                ? new FileWeatherProvider(Path.of(System.getProperty("ivi.weather.file", "weather.json")))
+                : new OpenMeteoProvider(System.getProperty("ivi.weather.url"));
+        return new WeatherService(provider,
+                Integer.getInteger("ivi.weather.geohashPrecision", 5),
+                Integer.getInteger("ivi.weather.cacheSize", 64),
+                Long.getLong("ivi.weather.freshMs", TimeUnit.MINUTES.toMillis(10)),
+                Long.getLong("ivi.weather.refreshMs", TimeUnit.MINUTES.toMillis(5)),
+                Long.getLong("ivi.weather.maxBackoffMs", TimeUnit.MINUTES.toMillis(10)));
+    }
+
+    public Lookup lookup(final double latitude, final double longitude) {
+        this.lookups.incrementAndGet();
+        final var geohash = Geohash.encode(latitude, longitude, this.precision);
+        final long now = System.nanoTime();
+
+        final Entry entry;
+        synchronized (this.entries) {
+            Entry existing = this.entries.get(geohash);
+            if (existing == null) {
+                existing = new Entry(geohash, latitude, longitude);
+                this.entries.put(geohash, existing);
+                if (this.entries.size() > this.capacity) {
+                    final var eldest = this.entries.keySet().iterator();
+                    eldest.next();
+                    eldest.remove();
+                }
+            }
+            existing.lastLookupNanos = now;
+            entry = existing;
+        }
+
+        final JSONObject weather = entry.weather;
+        if (weather == null) {
+            this.pendingMisses.incrementAndGet();
+            this.refresh(entry, now);
+            return new Lookup(State.PENDING, geohash, null, -1, entry.lastError);
+        }
+
+        final long ageNanos = now - entry.fetchedNanos;
+        if (ageNanos < this.freshNanos) {
+            this.freshHits.incrementAndGet();
+            return new Lookup(State.FRESH, geohash, weather, TimeUnit.NANOSECONDS.toMillis(ageNanos), null);
+        }
+
+        this.staleHits.incrementAndGet();
+        this.refresh(entry, now);
+        return new Lookup(State.STALE, geohash, weather, TimeUnit.NANOSECONDS.toMillis(ageNanos), entry.lastError);
+    }
+
+    /**
+     * Starts a fetch for {@code entry} unless one is already running or the entry is backing off after failures.
+     */
+    private void refresh(final Entry entry, final long now) {
+        final CompletableFuture<JSONObject> fetch;
+        synchronized (entry) {
+            if (entry.inFlight != null) {
+                this.coalescedRefreshes.incrementAndGet();
+                return;
+            }
+            if (now - entry.retryAfterNanos < 0) return;
+
+            this.providerCalls.incrementAndGet();
+            try {
+                fetch = this.provider.fetch(entry.latitude, entry.longitude);
+            } catch (final Exception e) {
+                this.onFetchFailed(entry, e);
+                return;
+            }
+            entry.inFlight = fetch;
+        }
+
+        fetch.whenComplete((weather, error) -> {
+            synchronized (entry) {
+                entry.inFlight = null;
+                if (error != null || weather == null) {
+                    this.onFetchFailed(entry, error != null ? error : new IllegalStateException("Provider returned no data"));
+                    return;
+                }
+                weather.put("provider", this.provider.getName());
+                entry.fetchedNanos = System.nanoTime();
+                entry.weather = weather;
+                entry.failures = 0;
+                entry.retryAfterNanos = entry.fetchedNanos;
+                entry.lastError = null;
+            }
+        });
+    }
+
+    private void onFetchFailed(final Entry entry, final Throwable error) {
+        this.providerFailures.incrementAndGet();
+        entry.failures++;
+        final long backoff = Math.min(this.maxBackoffNanos, MIN_BACKOFF_NANOS << Math.min(entry.failures - 1, 20));
+        entry.retryAfterNanos = System.nanoTime() + backoff;
+
+        final Throwable cause = error.getCause() != null ? error.getCause() : error;
+        entry.lastError = cause.getMessage();
+        System.err.println("[WEATHER] Fetch for " + entry.geohash + " failed (" + entry.failures + " in a row), retrying in "
+                + TimeUnit.NANOSECONDS.toSeconds(backoff) + " s: " + cause.getMessage());
+        if (entry.failures == 1 && cause instanceof Exception) {
+            InternalExceptionTracker.handleException((Exception) cause);
+        }
+    }
+
+    private void refreshActiveCells() {
+        final long now = System.nanoTime();
+        final List<Entry> active = new ArrayList<>();
+        synchronized (this.entries) {
+            for (final Entry entry : this.entries.values()) {
+                if (now - entry.lastLookupNanos < this.activeWindowNanos) active.add(entry);
+            }
+        }
+        for (final Entry entry : active) {
+            this.refresh(entry, now);
+        }
+    }
+
+    public void close() {
+        this.scheduler.shutdownNow();
+    }
+
+    public JSONObject getStats() {
+        final var stats = new JSONObject();
+        stats.put("provider", this.provider.getName());
+        synchronized (this.entries) {
+            stats.put("cells", this.entries.size());
+        }
+        stats.put("capacity", this.capacity);
+        stats.put("freshMillis", TimeUnit.NANOSECONDS.toMillis(this.freshNanos));
+        stats.put("lookups", this.lookups.get());
+        stats.put("freshHits", this.freshHits.get());
+        stats.put("staleHits", this.staleHits.get());
+        stats.put("pendingMisses", this.pendingMisses.get());
+        stats.put("providerCalls", this.providerCalls.get());
+        stats.put("providerFailures", this.providerFailures.get());
+        stats.put("coalescedRefreshes", this.coalescedRefreshes.get());
+        return stats;
+    }
+
+    public record Lookup(State state, String geohash, JSONObject weather, long ageMillis, String lastError) {
+    }
+
+    private static final class Entry {
+
+        private final String geohash;
+        private final double latitude;
+        private final double longitude;
+
+        private volatile JSONObject weather;
+        private volatile long fetchedNanos;
+        private volatile long lastLookupNanos;
+        private volatile String lastError;
+
+        // Guarded by the entry itself.
+        private CompletableFuture<JSONObject> inFlight;
+        private int failures;
+        private long retryAfterNanos;
+
+        private Entry(final String geohash, final double latitude, final double longitude) {
+            this.geohash = geohash;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.retryAfterNanos = System.nanoTime();
+        }
+    }
+
+}
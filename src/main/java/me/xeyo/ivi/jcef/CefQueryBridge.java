@@ -0,0 +1,125 @@
+package me.xeyo.ivi.jcef;
+
+import com.alibaba.fastjson2.JSON;
+import com.alibaba.fastjson2.JSONObject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import me.xeyo.ivi.core.bridge.BridgeRouter;
+import me.xeyo.ivi.core.bridge.BridgeStream;
+import me.xeyo.ivi.core.error.InternalExceptionTracker;
+import me.xeyo.ivi.core.javalin.ApiResponse;
+import org.cef.browser.CefBrowser;
+import org.cef.browser.CefFrame;
+import org.cef.callback.CefQueryCallback;
+import org.cef.handler.CefMessageRouterHandlerAdapter;
+
+/**
+ * Answers {@code window.cefQuery} calls from the page in-process, dispatching them to the same route logic
+ * the Javalin handlers serve over HTTP. A query is a JSON object {@code {method, path, query, body}} and is
+ * answered with {@code {status, body}}; persistent queries subscribe to a bridge stream and receive every
+ * pushed message as another success callback until the page cancels them.
+ * <p>
+ * The CEF UI thread only parses the query: each request is dispatched on its own virtual thread, where classed
+ * routes wait for a slot like their HTTP twins (see {@link me.xeyo.ivi.core.javalin.ServerExecution}), and the
+ * callback is answered from there, which CEF hands back to the UI thread itself. Subscribing only registers a sink
+ * and stays on the UI thread, so a cancel can never overtake it.
+ */
+public class CefQueryBridge extends CefMessageRouterHandlerAdapter {
+
+    private final BridgeRouter router;
+    private final Map<Long, BridgeStream.Subscription> persistentQueries = new ConcurrentHashMap<>();
+    private final ExecutorService dispatcher = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ivi-bridge-", 0).factory());
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicLong queryCount = new AtomicLong();
+    private final AtomicLong queryNanos = new AtomicLong();
+
+    public CefQueryBridge(final BridgeRouter router) {
+        this.router = router;
+    }
+
+    @Override
+    public boolean onQuery(final CefBrowser browser, final CefFrame frame, final long queryId, final String request,
+                           final boolean persistent, final CefQueryCallback callback) {
+        final JSONObject query;
+        try {
+            query = JSONObject.parseObject(request);
+        } catch (final Exception e) {
+            return false;
+        }
+        if (query == null || query.getString("path") == null) return false;
+
+        final String path = query.getString("path");
+        if (persistent) {
+            try {
+                final var subscription = this.router.subscribe(path, query.getJSONObject("query"), callback::success);
+                if (subscription == null) {
+                    callback.failure(404, "No bridge stream for " + path);
+                } else {
+                    this.persistentQueries.put(queryId, subscription);
+                }
+            } catch (final Exception e) {
+                InternalExceptionTracker.handleException(e);
+                callback.failure(500, String.valueOf(e.getMessage()));
+            }
+            return true;
+        }
+
+        this.inFlight.incrementAndGet();
+        try {
+            this.dispatcher.execute(() -> this.dispatch(path, query, callback));
+        } catch (final RejectedExecutionException e) {
+            this.inFlight.decrementAndGet();
+            callback.failure(503, "Shutting down");
+        }
+        return true;
+    }
+
+    private void dispatch(final String path, final JSONObject query, final CefQueryCallback callback) {
+        final long start = System.nanoTime();
+        try {
+            final String method = query.getString("method") != null ? query.getString("method") : "GET";
+            final Object body = query.get("body");
+            final ApiResponse response = this.router.dispatch(method, path,
+                    body == null || body instanceof String ? (String) body : JSON.toJSONString(body),
+                    query.getJSONObject("query"));
+
+            // Spliced rather than serialized again, so pre-encoded bodies are reused as they are.
+            callback.success("{\"status\":" + response.getStatus() + ",\"body\":" + response.bodyJson() + '}');
+        } catch (final Exception e) {
+            InternalExceptionTracker.handleException(e);
+            callback.failure(500, String.valueOf(e.getMessage()));
+        } finally {
+            this.inFlight.decrementAndGet();
+            this.queryCount.incrementAndGet();
+            this.queryNanos.addAndGet(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public void onQueryCanceled(final CefBrowser browser, final CefFrame frame, final long queryId) {
+        final var subscription = this.persistentQueries.remove(queryId);
+        if (subscription != null) subscription.cancel();
+    }
+
+    public JSONObject getStats() {
+        final long count = this.queryCount.get();
+        final var stats = new JSONObject();
+        stats.put("queries", count);
+        stats.put("inFlight", this.inFlight.get());
+        stats.put("persistentQueries", this.persistentQueries.size());
+        stats.put("averageDispatchMicros", count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(this.queryNanos.get() / count));
+        return stats;
+    }
+
+    public void close() {
+        this.dispatcher.shutdownNow();
+    }
+
+}
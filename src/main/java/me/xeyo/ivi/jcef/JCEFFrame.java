@@ -6,6 +6,9 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.File;
 import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiConsumer;
 import javax.swing.JFrame;
 import lombok.Getter;
 import me.friwi.jcefmaven.CefAppBuilder;
@@ -13,14 +16,22 @@ import me.friwi.jcefmaven.CefInitializationException;
 import me.friwi.jcefmaven.MavenCefAppHandlerAdapter;
 import me.friwi.jcefmaven.UnsupportedPlatformException;
 import me.friwi.jcefmaven.impl.progress.ConsoleProgressHandler;
+import me.xeyo.ivi.jcef.scheme.AssetBundle;
+import me.xeyo.ivi.jcef.scheme.AssetSchemeHandlerFactory;
 import org.cef.CefApp;
 import org.cef.CefClient;
 import org.cef.browser.CefBrowser;
+import org.cef.browser.CefFrame;
 import org.cef.browser.CefMessageRouter;
+import org.cef.callback.CefSchemeRegistrar;
 import org.cef.handler.CefFocusHandlerAdapter;
+import org.cef.handler.CefLoadHandlerAdapter;
 
 public class JCEFFrame extends JFrame {
 
+    private static final int OSR_MAX_FPS = Integer.getInteger("ivi.osr.maxFps", 30);
+    private static final boolean SOFTWARE_RENDERING = Boolean.parseBoolean(System.getProperty("ivi.cef.softwareRendering", "false"));
+
     @Getter
     private final CefApp cefApp;
 
@@ -29,47 +40,102 @@ public class JCEFFrame extends JFrame {
 
     @Getter
     private final CefBrowser browser;
+
+    @Getter
+    private final CefMessageRouter messageRouter;
+
+    /**
+     * The composited page in off-screen rendering mode, {@code null} in windowed mode.
+     */
+    @Getter
+    private final OsrCompositor osrCompositor;
     private boolean browserFocus = true;
 
+    private final List<BiConsumer<String, Integer>> pageLoadListeners = new CopyOnWriteArrayList<>();
+
     private int normalWidth = 1280;
     private int normalHeight = 720;
     private int normalX;
     private int normalY;
 
-    public static void initializeCefApp(){
+    /**
+     * Builds the one {@link CefApp} of the process: extracts the native bundle into {@code jcef-bundle} on first
+     * run and initializes CEF with the persistent cache. This is the slowest part of a cold boot and does not
+     * depend on anything else, so it can run while the rest of the application starts.
+     * <p>
+     * With {@code useOSR} the page is rendered off-screen at no more than {@code ivi.osr.maxFps} frames per second
+     * (default 30). {@code -Divi.cef.softwareRendering=true} keeps Chromium off the GPU, which is what a display without
+     * one needs, for instance a CI run under Xvfb:
+     * {@code LIBGL_ALWAYS_SOFTWARE=1 xvfb-run -s "-screen 0 1280x720x24" java -Divi.cef.osr=true -Divi.cef.softwareRendering=true ...}
+     * and then {@code GET /api/app/render/stats}.
+     */
+    public static CefApp initializeCefApp(final boolean useOSR) throws UnsupportedPlatformException, CefInitializationException, IOException, InterruptedException {
         final var installDir = new File("jcef-bundle");
         final CefAppBuilder cefBuilder = new CefAppBuilder();
         cefBuilder.setInstallDir(installDir);
         cefBuilder.setProgressHandler(new ConsoleProgressHandler());
-        cefBuilder.getCefSettings().windowless_rendering_enabled = true;
+        cefBuilder.getCefSettings().windowless_rendering_enabled = useOSR;
+        if (useOSR) {
+            cefBuilder.addJcefArgs("--off-screen-frame-rate=" + OSR_MAX_FPS);
+        }
+        if (SOFTWARE_RENDERING) {
+            cefBuilder.addJcefArgs("--disable-gpu", "--disable-gpu-compositing");
+        }
         final var cache = new File(installDir,"cache");
-        if(!cache.exists()) cache.mkdir();
+        if(!cache.exists()) cache.mkdirs();
         cefBuilder.getCefSettings().cache_path = cache.getAbsolutePath();
         cefBuilder.getCefSettings().root_cache_path = cache.getAbsolutePath();
         cefBuilder.getCefSettings().persist_session_cookies = true;
-    }
-
-    public JCEFFrame(final String startURL, final boolean useOSR, final boolean isTransparent, final boolean startFullscreen) throws UnsupportedPlatformException, CefInitializationException, IOException, InterruptedException {
-        if (startFullscreen) {
-            this.setUndecorated(true);
-        }
-
-        final CefAppBuilder builder = new CefAppBuilder();
-        builder.getCefSettings().windowless_rendering_enabled = useOSR;
-        builder.setAppHandler(new MavenCefAppHandlerAdapter() {
+        cefBuilder.setAppHandler(new MavenCefAppHandlerAdapter() {
             @Override
             public void stateHasChanged(final org.cef.CefApp.CefAppState state) {
                 if (state == CefApp.CefAppState.TERMINATED || state == CefApp.CefAppState.SHUTTING_DOWN) System.exit(0);
             }
+
+            @Override
+            public void onRegisterCustomSchemes(final CefSchemeRegistrar registrar) {
+                // Standard and secure, so pages get a real origin, relative URLs resolve and fetch/CORS work.
+                registrar.addCustomScheme(AssetSchemeHandlerFactory.SCHEME, true, false, false, true, true, false, true);
+            }
         });
+        return cefBuilder.build();
+    }
+
+    /**
+     * @param assets served under {@code ivi://app/} when not {@code null}
+     */
+    public JCEFFrame(final CefApp cefApp, final AssetBundle assets, final String startURL, final boolean useOSR, final boolean isTransparent, final boolean startFullscreen) {
+        if (startFullscreen) {
+            this.setUndecorated(true);
+        }
 
-        this.cefApp = builder.build();
+        this.cefApp = cefApp;
+        if (assets != null) {
+            // JCEF only takes scheme handler factories on the CefApp; it has to be there before the browser loads.
+            this.cefApp.registerSchemeHandlerFactory(AssetSchemeHandlerFactory.SCHEME, AssetSchemeHandlerFactory.DOMAIN,
+                    new AssetSchemeHandlerFactory(assets));
+        }
         this.client = this.cefApp.createClient();
-        final CefMessageRouter msgRouter = CefMessageRouter.create(new CefMessageRouter.
+        this.messageRouter = CefMessageRouter.create(new CefMessageRouter.
                 CefMessageRouterConfig("cefQuery", "cefQueryCancel"));
 
-        this.client.addMessageRouter(msgRouter);
+        this.client.addMessageRouter(this.messageRouter);
+        this.client.addLoadHandler(new CefLoadHandlerAdapter() {
+            @Override
+            public void onLoadEnd(final CefBrowser browser, final CefFrame frame, final int httpStatusCode) {
+                if (!frame.isMain()) return;
+                final var url = frame.getURL();
+                JCEFFrame.this.pageLoadListeners.forEach(listener -> listener.accept(url, httpStatusCode));
+            }
+        });
         this.browser = this.client.createBrowser(startURL, useOSR, isTransparent);
+        if (useOSR) {
+            this.osrCompositor = new OsrCompositor(OSR_MAX_FPS);
+            this.browser.getRenderHandler().addOnPaintListener(this.osrCompositor::onPaint);
+            System.out.println("[JCEF] Off-screen rendering, at most " + OSR_MAX_FPS + " fps");
+        } else {
+            this.osrCompositor = null;
+        }
         this.browser.createImmediately();
         final var browserUI = this.browser.getUIComponent();
         this.client.addFocusHandler(new CefFocusHandlerAdapter() {
@@ -146,6 +212,17 @@ public class JCEFFrame extends JFrame {
         });
     }
 
+    /**
+     * Registers a listener called with the URL and HTTP status whenever the main frame finishes loading.
+     */
+    public void addPageLoadListener(final BiConsumer<String, Integer> listener) {
+        this.pageLoadListeners.add(listener);
+    }
+
+    public void removePageLoadListener(final BiConsumer<String, Integer> listener) {
+        this.pageLoadListeners.remove(listener);
+    }
+
     public void setFullscreen(boolean fullscreen) {
         if (fullscreen == this.isUndecorated()) {
             return;
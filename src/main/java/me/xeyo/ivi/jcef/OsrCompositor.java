@@ -0,0 +1,234 @@
+package me.xeyo.ivi.jcef;
+
+import com.alibaba.fastjson2.JSONObject;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import me.xeyo.ivi.core.utils.SampleStats;
+import org.cef.browser.CefPaintEvent;
+
+/**
+ * Keeps the off-screen rendered page as one ARGB image for consumers outside the browser view: an external
+ * compositor, or a frame capture for diagnostics.
+ * <p>
+ * CEF paints on its UI thread with a BGRA buffer that is only valid during the callback. Only the dirty rectangles
+ * are copied, into an image that is reused until the view is resized; read as little-endian ints, CEF's premultiplied
+ * BGRA bytes already are the pixels of a {@link BufferedImage#TYPE_INT_ARGB_PRE} image, so a copy is a plain int copy
+ * and a paint allocates nothing.
+ * <p>
+ * Frames are handed to listeners ("presented") by one thread at no more than {@code maxFps} per second. Paints that
+ * arrive in between are merged into the next present; each merged paint counts as a dropped frame, and the time from
+ * the oldest merged paint to its present is the paint-to-present latency. Popup widgets (open {@code <select>}s) are
+ * painted by CEF separately and are not part of the image.
+ */
+public final class OsrCompositor implements AutoCloseable {
+
+    private static final int FPS_WINDOW = 128;
+
+    private final long minPresentIntervalNanos;
+    private final List<FrameListener> listeners = new CopyOnWriteArrayList<>();
+    private final Thread presenter;
+
+    // Guarded by this: the image, the dirty area and the pending paint not yet presented.
+    private BufferedImage image;
+    private int[] pixels;
+    private int dirtyMinX;
+    private int dirtyMinY;
+    private int dirtyMaxX;
+    private int dirtyMaxY;
+    private long oldestPendingPaintNanos;
+    private int pendingPaints;
+    private boolean closed;
+
+    private final AtomicLong paintCount = new AtomicLong();
+    private final AtomicLong presentCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong uploadedPixels = new AtomicLong();
+    private final SampleStats uploadNanos = new SampleStats();
+    private final SampleStats paintToPresentNanos = new SampleStats();
+    private final long[] presentTimes = new long[FPS_WINDOW];
+    private int presentCursor;
+
+    public OsrCompositor(final int maxFps) {
+        this.minPresentIntervalNanos = maxFps > 0 ? TimeUnit.SECONDS.toNanos(1) / maxFps : 0;
+        this.presenter = Thread.ofPlatform().daemon().name("ivi-osr-present").start(this::presentLoop);
+    }
+
+    /**
+     * Called for every paint of the browser; copies the dirty rectangles of the main view.
+     */
+    public void onPaint(final CefPaintEvent event) {
+        if (event.getPopup()) return;
+        final long paintedAt = System.nanoTime();
+        final ByteBuffer frame = event.getRenderedFrame().order(ByteOrder.LITTLE_ENDIAN);
+        final int width = event.getWidth();
+        final int height = event.getHeight();
+
+        synchronized (this) {
+            if (this.closed) return;
+            Rectangle[] dirtyRects = event.getDirtyRects();
+            if (this.image == null || this.image.getWidth() != width || this.image.getHeight() != height) {
+                this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+                this.pixels = ((DataBufferInt) this.image.getRaster().getDataBuffer()).getData();
+                dirtyRects = new Rectangle[]{new Rectangle(0, 0, width, height)};
+            }
+
+            long copied = 0;
+            for (final Rectangle rect : dirtyRects) {
+                final int minX = Math.max(0, rect.x);
+                final int minY = Math.max(0, rect.y);
+                final int maxX = Math.min(width, rect.x + rect.width);
+                final int maxY = Math.min(height, rect.y + rect.height);
+                if (minX >= maxX || minY >= maxY) continue;
+
+                for (int y = minY; y < maxY; y++) {
+                    final int row = y * width;
+                    for (int x = minX; x < maxX; x++) {
+                        this.pixels[row + x] = frame.getInt((row + x) << 2);
+                    }
+                }
+                copied += (long) (maxX - minX) * (maxY - minY);
+                this.markDirty(minX, minY, maxX, maxY);
+            }
+
+            if (this.pendingPaints++ == 0) {
+                this.oldestPendingPaintNanos = paintedAt;
+                this.notifyAll();
+            }
+            this.uploadedPixels.addAndGet(copied);
+        }
+        this.paintCount.incrementAndGet();
+        this.uploadNanos.record(System.nanoTime() - paintedAt);
+    }
+
+    private void markDirty(final int minX, final int minY, final int maxX, final int maxY) {
+        if (this.dirtyMaxX <= this.dirtyMinX || this.dirtyMaxY <= this.dirtyMinY) {
+            this.dirtyMinX = minX;
+            this.dirtyMinY = minY;
+            this.dirtyMaxX = maxX;
+            this.dirtyMaxY = maxY;
+        } else {
+            this.dirtyMinX = Math.min(this.dirtyMinX, minX);
+            this.dirtyMinY = Math.min(this.dirtyMinY, minY);
+            this.dirtyMaxX = Math.max(this.dirtyMaxX, maxX);
+            this.dirtyMaxY = Math.max(this.dirtyMaxY, maxY);
+        }
+    }
+
+    private void presentLoop() {
+        long lastPresent = 0;
+        try {
+            while (true) {
+                synchronized (this) {
+                    while (this.pendingPaints == 0 && !this.closed) this.wait();
+                    if (this.closed) return;
+                }
+
+                // Pace before presenting, so paints arriving meanwhile are merged into this present.
+                final long wait = lastPresent + this.minPresentIntervalNanos - System.nanoTime();
+                if (wait > 0) TimeUnit.NANOSECONDS.sleep(wait);
+
+                synchronized (this) {
+                    if (this.closed) return;
+                    final long now = System.nanoTime();
+                    this.paintToPresentNanos.record(now - this.oldestPendingPaintNanos);
+                    this.droppedCount.addAndGet(this.pendingPaints - 1);
+                    this.pendingPaints = 0;
+
+                    final var dirty = new Rectangle(this.dirtyMinX, this.dirtyMinY,
+                            this.dirtyMaxX - this.dirtyMinX, this.dirtyMaxY - this.dirtyMinY);
+                    this.dirtyMaxX = this.dirtyMinX;
+                    for (final FrameListener listener : this.listeners) {
+                        try {
+                            listener.onFrame(this.image, dirty);
+                        } catch (final RuntimeException e) {
+                            System.err.println("[OSR] Frame listener failed: " + e.getMessage());
+                        }
+                    }
+
+                    lastPresent = now;
+                    this.presentTimes[this.presentCursor++ % FPS_WINDOW] = now;
+                    this.presentCount.incrementAndGet();
+                }
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Listeners run on the presenter thread while the image is locked, so they should copy what they need and return;
+     * the browser cannot paint meanwhile.
+     */
+    public void addFrameListener(final FrameListener listener) {
+        this.listeners.add(listener);
+    }
+
+    public void removeFrameListener(final FrameListener listener) {
+        this.listeners.remove(listener);
+    }
+
+    /**
+     * A copy of the current frame, or {@code null} before the first paint.
+     */
+    public synchronized BufferedImage capture() {
+        if (this.image == null) return null;
+        final var copy = new BufferedImage(this.image.getWidth(), this.image.getHeight(), BufferedImage.TYPE_INT_ARGB_PRE);
+        System.arraycopy(this.pixels, 0, ((DataBufferInt) copy.getRaster().getDataBuffer()).getData(), 0, this.pixels.length);
+        return copy;
+    }
+
+    public JSONObject getStats() {
+        final var stats = new JSONObject();
+        synchronized (this) {
+            stats.put("width", this.image != null ? this.image.getWidth() : 0);
+            stats.put("height", this.image != null ? this.image.getHeight() : 0);
+            stats.put("effectiveFps", this.effectiveFps(System.nanoTime()));
+        }
+        stats.put("maxFps", this.minPresentIntervalNanos > 0 ? TimeUnit.SECONDS.toNanos(1) / this.minPresentIntervalNanos : 0);
+        stats.put("paints", this.paintCount.get());
+        stats.put("presents", this.presentCount.get());
+        stats.put("dropped", this.droppedCount.get());
+        stats.put("uploadedPixels", this.uploadedPixels.get());
+        stats.put("uploadMicros", this.uploadNanos.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+        stats.put("paintToPresentMicros", this.paintToPresentNanos.toJson(TimeUnit.MICROSECONDS.toNanos(1)));
+        return stats;
+    }
+
+    /**
+     * Presents during the last second, counted from the recorded present times.
+     */
+    private int effectiveFps(final long now) {
+        final int recorded = (int) Math.min(this.presentCount.get(), FPS_WINDOW);
+        int frames = 0;
+        for (int i = 0; i < recorded; i++) {
+            if (now - this.presentTimes[i] <= TimeUnit.SECONDS.toNanos(1)) frames++;
+        }
+        return frames;
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            this.closed = true;
+            this.notifyAll();
+        }
+        this.presenter.interrupt();
+    }
+
+    @FunctionalInterface
+    public interface FrameListener {
+        /**
+         * @param frame the composited page; only valid during the call
+         * @param dirty the area changed since the previous present
+         */
+        void onFrame(BufferedImage frame, Rectangle dirty);
+    }
+
+}
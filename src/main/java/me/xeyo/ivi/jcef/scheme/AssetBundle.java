@@ -0,0 +1,157 @@
+package me.xeyo.ivi.jcef.scheme;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.stream.Stream;
+import lombok.Getter;
+
+/**
+ * In-memory copy of the {@code web/} tree plus the vendored icon font, built once at startup. Every asset sits
+ * in its own read-only direct buffer; handlers read through {@link ByteBuffer#duplicate()} views, so serving
+ * an asset never copies it on the Java heap.
+ * <p>
+ * The icon font only exists in the webjar on the classpath. When pages are loaded from the filesystem instead,
+ * {@link #extractVendored} writes it to {@code web/vendor/} so the same relative links resolve.
+ */
+public class AssetBundle {
+
+    public static final String FONT_AWESOME_VERSION = "7.0.1";
+    private static final String FONT_AWESOME_PREFIX = "vendor/font-awesome/";
+    private static final String FONT_AWESOME_CLASSPATH_ROOT = "META-INF/resources/webjars/font-awesome/" + FONT_AWESOME_VERSION + "/";
+    private static final String[] FONT_AWESOME_FILES = {
+            "css/all.min.css",
+            "webfonts/fa-solid-900.woff2",
+            "webfonts/fa-regular-400.woff2",
+            "webfonts/fa-brands-400.woff2",
+            "webfonts/fa-v4compatibility.woff2"
+    };
+
+    private static final Map<String, String> MIME_TYPES = Map.ofEntries(
+            Map.entry("html", "text/html"),
+            Map.entry("js", "text/javascript"),
+            Map.entry("css", "text/css"),
+            Map.entry("json", "application/json"),
+            Map.entry("png", "image/png"),
+            Map.entry("jpg", "image/jpeg"),
+            Map.entry("jpeg", "image/jpeg"),
+            Map.entry("gif", "image/gif"),
+            Map.entry("svg", "image/svg+xml"),
+            Map.entry("ico", "image/x-icon"),
+            Map.entry("webp", "image/webp"),
+            Map.entry("woff", "font/woff"),
+            Map.entry("woff2", "font/woff2"),
+            Map.entry("ttf", "font/ttf"),
+            Map.entry("mp3", "audio/mpeg")
+    );
+
+    private final Map<String, Asset> assets = new HashMap<>();
+
+    @Getter
+    private long totalBytes;
+
+    @Getter
+    private long buildNanos;
+
+    public static AssetBundle build(final Path webRoot) throws IOException {
+        final long start = System.nanoTime();
+        final var bundle = new AssetBundle();
+
+        try (final Stream<Path> files = Files.walk(webRoot)) {
+            for (final Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                final var relativePath = webRoot.relativize(file).toString().replace('\\', '/');
+                // A copy left by a filesystem-mode run; the classpath copy below is the one served.
+                if (relativePath.startsWith(FONT_AWESOME_PREFIX)) continue;
+                bundle.add(relativePath, Files.readAllBytes(file));
+            }
+        }
+
+        for (final Map.Entry<String, byte[]> vendored : readVendored().entrySet()) {
+            bundle.add(vendored.getKey(), vendored.getValue());
+        }
+
+        bundle.buildNanos = System.nanoTime() - start;
+        System.out.println("[ASSETS] Bundled " + bundle.assets.size() + " assets (" + bundle.totalBytes / 1024 + " KiB) in "
+                + bundle.buildNanos / 1_000_000 + " ms");
+        return bundle;
+    }
+
+    /**
+     * Writes the vendored assets under {@code webRoot}, at the paths they have in the bundle. Files that are already
+     * there with the same content are left alone, so only the first start after an upgrade writes anything.
+     */
+    public static void extractVendored(final Path webRoot) throws IOException {
+        int written = 0;
+        for (final Map.Entry<String, byte[]> vendored : readVendored().entrySet()) {
+            final Path target = webRoot.resolve(vendored.getKey());
+            if (Files.isRegularFile(target) && Arrays.equals(Files.readAllBytes(target), vendored.getValue())) continue;
+
+            Files.createDirectories(target.getParent());
+            final Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+            Files.write(temp, vendored.getValue());
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            written++;
+        }
+        if (written > 0) System.out.println("[ASSETS] Extracted " + written + " vendored assets to " + webRoot.resolve("vendor"));
+    }
+
+    private static Map<String, byte[]> readVendored() throws IOException {
+        final Map<String, byte[]> vendored = new LinkedHashMap<>();
+        final var classLoader = AssetBundle.class.getClassLoader();
+        for (final String file : FONT_AWESOME_FILES) {
+            try (final InputStream input = classLoader.getResourceAsStream(FONT_AWESOME_CLASSPATH_ROOT + file)) {
+                if (input == null) {
+                    System.err.println("[ASSETS] Vendored asset missing from classpath: " + file);
+                    continue;
+                }
+                vendored.put(FONT_AWESOME_PREFIX + file, input.readAllBytes());
+            }
+        }
+        return vendored;
+    }
+
+    private void add(final String path, final byte[] content) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+        buffer.put(content).flip();
+        this.assets.put(path, new Asset(buffer.asReadOnlyBuffer(), mimeTypeOf(path)));
+        this.totalBytes += content.length;
+    }
+
+    /**
+     * Looks up an asset by its path relative to {@code web/}, for example {@code home/index.html}.
+     */
+    public Asset get(final String path) {
+        var normalized = path.startsWith("/") ? path.substring(1) : path;
+        if (normalized.isEmpty() || normalized.endsWith("/")) normalized += "index.html";
+        return this.assets.get(normalized);
+    }
+
+    public int size() {
+        return this.assets.size();
+    }
+
+    private static String mimeTypeOf(final String path) {
+        final int dot = path.lastIndexOf('.');
+        final var extension = dot < 0 ? "" : path.substring(dot + 1).toLowerCase(Locale.ROOT);
+        return MIME_TYPES.getOrDefault(extension, "application/octet-stream");
+    }
+
+    public record Asset(ByteBuffer content, String mimeType) {
+
+        /**
+         * A fresh read position over the shared content.
+         */
+        public ByteBuffer view() {
+            return this.content.duplicate();
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+package me.xeyo.ivi.jcef.scheme;
+
+import java.nio.ByteBuffer;
+import org.cef.callback.CefCallback;
+import org.cef.handler.CefResourceHandlerAdapter;
+import org.cef.misc.IntRef;
+import org.cef.misc.StringRef;
+import org.cef.network.CefRequest;
+import org.cef.network.CefResponse;
+
+/**
+ * Streams one bundled asset to CEF. The only copy is the one into the array CEF hands in for each chunk.
+ */
+class AssetResourceHandler extends CefResourceHandlerAdapter {
+
+    private final AssetBundle.Asset asset;
+    private ByteBuffer remaining;
+
+    AssetResourceHandler(final AssetBundle.Asset asset) {
+        this.asset = asset;
+    }
+
+    @Override
+    public boolean processRequest(final CefRequest request, final CefCallback callback) {
+        if (this.asset != null) {
+            this.remaining = this.asset.view();
+        }
+        callback.Continue();
+        return true;
+    }
+
+    @Override
+    public void getResponseHeaders(final CefResponse response, final IntRef responseLength, final StringRef redirectUrl) {
+        if (this.asset == null) {
+            response.setStatus(404);
+            response.setStatusText("Not Found");
+            response.setMimeType("text/plain");
+            responseLength.set(0);
+            return;
+        }
+
+        response.setStatus(200);
+        response.setStatusText("OK");
+        response.setMimeType(this.asset.mimeType());
+        response.setHeaderByName("Cache-Control", "no-cache", true);
+        responseLength.set(this.remaining.remaining());
+    }
+
+    @Override
+    public boolean readResponse(final byte[] dataOut, final int bytesToRead, final IntRef bytesRead, final CefCallback callback) {
+        if (this.remaining == null || !this.remaining.hasRemaining()) {
+            bytesRead.set(0);
+            return false;
+        }
+
+        final int length = Math.min(bytesToRead, this.remaining.remaining());
+        this.remaining.get(dataOut, 0, length);
+        bytesRead.set(length);
+        return true;
+    }
+
+    @Override
+    public void cancel() {
+        this.remaining = null;
+    }
+
+}
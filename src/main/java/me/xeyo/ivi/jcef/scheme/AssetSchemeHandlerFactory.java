@@ -0,0 +1,37 @@
+package me.xeyo.ivi.jcef.scheme;
+
+import java.net.URI;
+import org.cef.browser.CefBrowser;
+import org.cef.browser.CefFrame;
+import org.cef.callback.CefSchemeHandlerFactory;
+import org.cef.handler.CefResourceHandler;
+import org.cef.network.CefRequest;
+
+/**
+ * Serves {@code ivi://app/<path>} from the {@link AssetBundle}, so pages load without touching the
+ * filesystem or the network.
+ */
+public class AssetSchemeHandlerFactory implements CefSchemeHandlerFactory {
+
+    public static final String SCHEME = "ivi";
+    public static final String DOMAIN = "app";
+    public static final String ORIGIN = SCHEME + "://" + DOMAIN;
+
+    private final AssetBundle bundle;
+
+    public AssetSchemeHandlerFactory(final AssetBundle bundle) {
+        this.bundle = bundle;
+    }
+
+    @Override
+    public CefResourceHandler create(final CefBrowser browser, final CefFrame frame, final String schemeName, final CefRequest request) {
+        String path;
+        try {
+            path = URI.create(request.getURL()).getPath();
+        } catch (final IllegalArgumentException e) {
+            path = null;
+        }
+        return new AssetResourceHandler(path == null ? null : this.bundle.get(path));
+    }
+
+}
@@ -0,0 +1,154 @@
+// Client for the IVI backend. Inside the CEF window requests go through window.cefQuery and are answered
+// in-process by the Java side; anywhere else (or if the bridge is missing) they fall back to HTTP on the
+// embedded Javalin server. Both paths resolve to the same { status, body } shape.
+(function (global) {
+  const HTTP_BASE_URL = 'http://localhost:7070';
+  const DEFAULT_TIMEOUT_MS = 5000;
+  const LATENCY_SAMPLES = 256;
+
+  const latencySamples = {
+    cef: [],
+    http: []
+  };
+
+  function hasBridge() {
+    return typeof global.cefQuery === 'function';
+  }
+
+  function recordLatency(transport, startedAt) {
+    const samples = latencySamples[transport];
+    samples.push(performance.now() - startedAt);
+    if (samples.length > LATENCY_SAMPLES) {
+      samples.shift();
+    }
+  }
+
+  function bridgeRequest(method, path, body, timeout) {
+    return new Promise((resolve, reject) => {
+      const startedAt = performance.now();
+      let settled = false;
+      const timer = setTimeout(() => {
+        if (!settled) {
+          settled = true;
+          global.cefQueryCancel(queryId);
+          reject(new Error('Bridge request timed out'));
+        }
+      }, timeout);
+
+      const queryId = global.cefQuery({
+        request: JSON.stringify({ method, path, body }),
+        persistent: false,
+        onSuccess: response => {
+          if (settled) return;
+          settled = true;
+          clearTimeout(timer);
+          recordLatency('cef', startedAt);
+          resolve(JSON.parse(response));
+        },
+        onFailure: (errorCode, errorMessage) => {
+          if (settled) return;
+          settled = true;
+          clearTimeout(timer);
+          reject(new Error(`Bridge error ${errorCode}: ${errorMessage}`));
+        }
+      });
+    });
+  }
+
+  async function httpRequest(method, path, body, timeout) {
+    const controller = new AbortController();
+    const timer = setTimeout(() => controller.abort(), timeout);
+    const startedAt = performance.now();
+
+    try {
+      const options = { method, signal: controller.signal };
+      if (body !== undefined) {
+        options.headers = { 'Content-Type': 'application/json' };
+        options.body = JSON.stringify(body);
+      }
+
+      const response = await fetch(HTTP_BASE_URL + path, options);
+      const responseBody = await response.json();
+      recordLatency('http', startedAt);
+      return { status: response.status, body: responseBody };
+    } finally {
+      clearTimeout(timer);
+    }
+  }
+
+  function request(method, path, body, { transport, timeout = DEFAULT_TIMEOUT_MS } = {}) {
+    const useBridge = transport ? transport === 'cef' : hasBridge();
+    return useBridge ? bridgeRequest(method, path, body, timeout) : httpRequest(method, path, body, timeout);
+  }
+
+  // Opens a persistent query that receives every message the server pushes for `path`.
+  // Returns a cancel function, or null when the bridge is not available and the caller has to use HTTP streaming.
+  function subscribe(path, query, onMessage, onError) {
+    if (!hasBridge()) {
+      return null;
+    }
+
+    const queryId = global.cefQuery({
+      request: JSON.stringify({ method: 'SUBSCRIBE', path, query }),
+      persistent: true,
+      onSuccess: message => onMessage(JSON.parse(message)),
+      onFailure: (errorCode, errorMessage) => {
+        if (onError) {
+          onError(new Error(`Bridge error ${errorCode}: ${errorMessage}`));
+        }
+      }
+    });
+
+    return () => global.cefQueryCancel(queryId);
+  }
+
+  // Absolute HTTP URL of a server path, for elements such as <audio> that load by URL.
+  function url(path) {
+    return HTTP_BASE_URL + path;
+  }
+
+  function percentile(sorted, fraction) {
+    if (sorted.length === 0) return null;
+    return sorted[Math.min(sorted.length - 1, Math.floor(sorted.length * fraction))];
+  }
+
+  function latencyStats() {
+    const stats = {};
+    Object.entries(latencySamples).forEach(([transport, samples]) => {
+      const sorted = [...samples].sort((a, b) => a - b);
+      stats[transport] = {
+        count: sorted.length,
+        p50: percentile(sorted, 0.5),
+        p95: percentile(sorted, 0.95),
+        max: sorted.length > 0 ? sorted[sorted.length - 1] : null
+      };
+    });
+    return stats;
+  }
+
+  // Fires `iterations` identical GETs over each available transport and reports the round-trip percentiles.
+  async function measureRoundTrip(path = '/api/app/settings', iterations = 100) {
+    latencySamples.cef.length = 0;
+    latencySamples.http.length = 0;
+
+    const transports = hasBridge() ? ['cef', 'http'] : ['http'];
+    for (const transport of transports) {
+      for (let i = 0; i < iterations; i++) {
+        await request('GET', path, undefined, { transport });
+      }
+    }
+
+    const stats = latencyStats();
+    console.log('[API] Round-trip latency (ms):', JSON.stringify(stats));
+    return stats;
+  }
+
+  global.IVIApi = {
+    request,
+    subscribe,
+    hasBridge,
+    url,
+    latencyStats,
+    measureRoundTrip
+  };
+})(window);
@@ -0,0 +1,167 @@
+// Keeps a local copy of the app settings in sync with the server.
+// The first message is a full snapshot, every later one only carries the changed keys.
+// Reconnects resume from the last seen epoch and version, so nothing is re-fetched unless the server asks for it.
+// The epoch changes with every server boot, and versions start over with it, so after a restart the server answers
+// with a snapshot.
+// Inside the CEF window the stream is a persistent cefQuery, elsewhere a WebSocket with an SSE fallback.
+// While on SSE the WebSocket is retried with a growing delay, and the stream moves back as soon as one opens.
+(function (global) {
+  const STREAM_WS_URL = 'ws://localhost:7070/api/app/settings/stream';
+  const STREAM_SSE_URL = 'http://localhost:7070/api/app/settings/events';
+  const RECONNECT_DELAY_MS = 1000;
+  const WEBSOCKET_ATTEMPTS_BEFORE_SSE = 2;
+  const WEBSOCKET_RETRY_MIN_MS = 5000;
+  const WEBSOCKET_RETRY_MAX_MS = 60000;
+
+  function subscribe(onState) {
+    const state = {
+      epoch: null,
+      version: null,
+      settings: {},
+      availableThemes: []
+    };
+    let useEventSource = typeof WebSocket === 'undefined';
+    let failedWebSocketAttempts = 0;
+    let eventSource = null;
+    let reconnectTimer = null;
+    let webSocketRetryTimer = null;
+    let webSocketRetryDelay = WEBSOCKET_RETRY_MIN_MS;
+
+    function handleMessage(message) {
+      if (message.type === 'snapshot') {
+        state.settings = { ...message.settings };
+        state.availableThemes = message.availableThemes || state.availableThemes;
+      } else if (message.type === 'delta') {
+        // Deltas only apply on top of a snapshot from the same boot.
+        if (message.epoch !== state.epoch) return;
+        Object.assign(state.settings, message.changes);
+      } else {
+        return;
+      }
+
+      state.epoch = message.epoch;
+      state.version = message.version;
+      onState({
+        type: message.type,
+        version: state.version,
+        settings: { ...state.settings },
+        changes: message.type === 'delta' ? message.changes : message.settings,
+        availableThemes: state.availableThemes
+      });
+    }
+
+    function resumeToken() {
+      return `${state.epoch}-${state.version}`;
+    }
+
+    function resumeQuery() {
+      return state.version === null ? '' : `?since=${resumeToken()}`;
+    }
+
+    function scheduleReconnect() {
+      reconnectTimer = setTimeout(() => {
+        reconnectTimer = null;
+        connect();
+      }, RECONNECT_DELAY_MS);
+    }
+
+    function connectWebSocket() {
+      watchWebSocket(new WebSocket(STREAM_WS_URL + resumeQuery()));
+    }
+
+    function watchWebSocket(socket) {
+      let opened = socket.readyState === WebSocket.OPEN;
+
+      socket.onopen = () => {
+        opened = true;
+        failedWebSocketAttempts = 0;
+      };
+      socket.onmessage = event => handleMessage(JSON.parse(event.data));
+      socket.onclose = () => {
+        if (!opened && ++failedWebSocketAttempts >= WEBSOCKET_ATTEMPTS_BEFORE_SSE) {
+          console.warn('[SETTINGS] WebSocket unavailable, falling back to SSE');
+          useEventSource = true;
+          scheduleWebSocketRetry();
+        }
+        scheduleReconnect();
+      };
+    }
+
+    // Probes for the WebSocket while the stream runs over SSE. The socket that opens becomes the stream; it resumes
+    // from the version seen when it was opened, and a delta that also arrived over SSE just applies again.
+    function scheduleWebSocketRetry() {
+      if (webSocketRetryTimer !== null || typeof WebSocket === 'undefined') return;
+      webSocketRetryTimer = setTimeout(() => {
+        webSocketRetryTimer = null;
+        const probe = new WebSocket(STREAM_WS_URL + resumeQuery());
+        probe.onopen = () => {
+          console.info('[SETTINGS] WebSocket available again, leaving SSE');
+          useEventSource = false;
+          failedWebSocketAttempts = 0;
+          webSocketRetryDelay = WEBSOCKET_RETRY_MIN_MS;
+          if (eventSource !== null) {
+            eventSource.close();
+            eventSource = null;
+          }
+          if (reconnectTimer !== null) {
+            clearTimeout(reconnectTimer);
+            reconnectTimer = null;
+          }
+          watchWebSocket(probe);
+        };
+        probe.onclose = () => {
+          webSocketRetryDelay = Math.min(webSocketRetryDelay * 2, WEBSOCKET_RETRY_MAX_MS);
+          scheduleWebSocketRetry();
+        };
+      }, webSocketRetryDelay);
+    }
+
+    function connectEventSource() {
+      const source = new EventSource(STREAM_SSE_URL + resumeQuery());
+      eventSource = source;
+      source.addEventListener('settings', event => handleMessage(JSON.parse(event.data)));
+      source.onerror = () => {
+        source.close();
+        if (eventSource === source) eventSource = null;
+        scheduleReconnect();
+      };
+    }
+
+    function connectBridge() {
+      const cancel = global.IVIApi.subscribe('/api/app/settings/stream',
+        state.version === null ? {} : { since: resumeToken() },
+        handleMessage,
+        error => {
+          console.warn('[SETTINGS] Bridge stream failed:', error);
+          cancel();
+          scheduleReconnect();
+        });
+    }
+
+    function connect() {
+      if (global.IVIApi && global.IVIApi.hasBridge()) {
+        connectBridge();
+      } else if (useEventSource) {
+        connectEventSource();
+      } else {
+        connectWebSocket();
+      }
+    }
+
+    connect();
+
+    return {
+      get settings() {
+        return state.version === null ? null : { ...state.settings };
+      },
+      get availableThemes() {
+        return state.availableThemes;
+      },
+      get version() {
+        return state.version;
+      }
+    };
+  }
+
+  global.IVISettingsStream = { subscribe };
+})(window);
@@ -7,6 +7,7 @@ const backwardButton = document.querySelector(".controls button.backward");
 const songName = document.querySelector(".now-playing h1");
 const artistName = document.querySelector(".now-playing p");
 const albumCover = document.querySelector(".placeholder-cover i");
+const albumArt = document.querySelector(".placeholder-cover .album-art");
 const playlistContainer = document.querySelector(".playlist-items");
 const currentTrack = document.querySelector(".current-track");
 const totalTracks = document.querySelector(".total-tracks");
@@ -40,39 +41,62 @@ let isPlaying = false;
 let progressInterval;
 let isSettingsModalOpen = false;
 let areNotificationsEnabled = true;
+let settingsStream = null;
 
 // ===== API CONFIGURATION =====
-const API_BASE_URL = 'http://localhost:7070/api';
 const API_ENDPOINTS = {
-  SETTINGS: `${API_BASE_URL}/app/settings`,
-  THEMES: `${API_BASE_URL}/app/settings/themes`
+  SETTINGS: '/api/app/settings',
+  THEMES: '/api/app/settings/themes',
+  STARTUP_PAINT: '/api/app/startup/paint',
+  WEATHER: '/api/weather',
+  MEDIA_TRACKS: '/api/media/tracks',
+  MEDIA_STREAM: '/api/media/stream',
+  MEDIA_QUEUE: '/api/media/queue',
+  MEDIA_ART: '/api/media/art',
+  MAPS_INFO: '/api/maps/tiles/info',
+  MAPS_TILES: '/api/maps/tiles',
+  MAPS_VIEWPORT: '/api/maps/viewport',
+  NAV_ROUTE: '/api/nav/route',
+  POI_NEARBY_STREAM: '/api/poi/nearby/stream',
+  VEHICLE_SIGNALS: '/api/vehicle/signals',
+  VEHICLE_STREAM: '/api/vehicle/stream',
+  VEHICLE_LATENCY: '/api/vehicle/latency',
+  RADIO_SEARCH: '/api/radio/search',
+  RADIO_FAVORITES: '/api/radio/favorites'
 };
 
-async function fetchWithTimeout(url, options = {}, timeout = 5000) {
-  const controller = new AbortController();
-  const id = setTimeout(() => controller.abort(), timeout);
-
-  try {
-    const response = await fetch(url, {
-      ...options,
-      signal: controller.signal
-    });
-    clearTimeout(id);
-    return response;
-  } catch (error) {
-    clearTimeout(id);
-    throw error;
+const LIBRARY_PAGE_SIZE = 200;
+// Must be sizes the server renders (ivi.media.art.sizes).
+const ALBUM_ART_SIZE = 320;
+const PLAYLIST_ART_SIZE = 64;
+const LIBRARY_RETRY_DELAY = 3000;
+const PROGRESS_REPORT_INTERVAL = 5000;
+
+// Set once the playlist comes from the library; track changes then go through the server-side queue.
+let queueActive = false;
+let queueVersion = -1;
+let trackChangeStartedAt = null;
+let trackChangePrefetched = false;
+let lastProgressReport = 0;
+
+// The server answers weather from its cache, so polling it is cheap and never waits on the provider.
+const WEATHER_POLL_INTERVAL = 60000;
+const WEATHER_PENDING_RETRY = 2000;
+let latestWeather = null;
+let weatherPollTimer = null;
+
+// Goes through the in-process CEF bridge when available, HTTP otherwise (see web/common/ivi-api.js).
+async function apiRequest(method, path, body) {
+  const response = await IVIApi.request(method, path, body);
+  if (response.status < 200 || response.status >= 300) {
+    throw new Error((response.body && response.body.error) || `HTTP ${response.status}`);
   }
+  return response.body;
 }
 
 async function getSettings() {
   try {
-    const response = await fetchWithTimeout(API_ENDPOINTS.SETTINGS);
-    if (!response.ok) {
-      throw new Error(`HTTP ${response.status}`);
-    }
-
-    const data = await response.json();
+    const data = await apiRequest('GET', API_ENDPOINTS.SETTINGS);
     if (data.success) {
       return data.settings;
     } else {
@@ -87,12 +111,7 @@ async function getSettings() {
 
 async function getSetting(key) {
   try {
-    const response = await fetchWithTimeout(`${API_ENDPOINTS.SETTINGS}/${key}`);
-    if (!response.ok) {
-      throw new Error(`HTTP ${response.status}`);
-    }
-
-    const data = await response.json();
+    const data = await apiRequest('GET', `${API_ENDPOINTS.SETTINGS}/${key}`);
     if (data.success) {
       return data.value;
     } else {
@@ -106,19 +125,7 @@ async function getSetting(key) {
 
 async function updateSetting(key, value) {
   try {
-    const response = await fetchWithTimeout(`${API_ENDPOINTS.SETTINGS}/${key}`, {
-      method: 'PUT',
-      headers: {
-        'Content-Type': 'application/json',
-      },
-      body: JSON.stringify({ value })
-    });
-
-    if (!response.ok) {
-      throw new Error(`HTTP ${response.status}`);
-    }
-
-    const data = await response.json();
+    const data = await apiRequest('PUT', `${API_ENDPOINTS.SETTINGS}/${key}`, { value });
     if (data.success) {
       return data;
     } else {
@@ -131,14 +138,24 @@ async function updateSetting(key, value) {
   }
 }
 
-async function getAvailableThemes() {
+async function updateSettings(values) {
   try {
-    const response = await fetchWithTimeout(API_ENDPOINTS.THEMES);
-    if (!response.ok) {
-      throw new Error(`HTTP ${response.status}`);
+    const data = await apiRequest('PATCH', API_ENDPOINTS.SETTINGS, values);
+    if (data.success) {
+      return data;
+    } else {
+      throw new Error(data.error || 'Failed to update settings');
     }
+  } catch (error) {
+    console.error('[API] Failed to update settings:', error);
+    showSystemNotification('Settings Error', `Cannot update settings: ${error.message}`);
+    return null;
+  }
+}
 
-    const data = await response.json();
+async function getAvailableThemes() {
+  try {
+    const data = await apiRequest('GET', API_ENDPOINTS.THEMES);
     if (data.success) {
       return {
         themes: data.themes,
@@ -162,20 +179,42 @@ document.addEventListener("DOMContentLoaded", () => {
   setupEventListeners();
   loadPlaylist();
 
-  loadAndApplySettings();
+  settingsStream = IVISettingsStream.subscribe(applySettingsState);
+  refreshWeather();
+  loadLibrary();
+  connectVehicleStream();
 });
 
+window.addEventListener("load", reportPaintTimings);
+
+// Sends first paint / first contentful paint to the startup timings (GET /api/app/startup).
+function reportPaintTimings() {
+  const paint = { page: 'home', url: location.href };
+  performance.getEntriesByType('paint').forEach(entry => {
+    paint[entry.name === 'first-contentful-paint' ? 'firstContentfulPaintMillis' : 'firstPaintMillis'] = Math.round(entry.startTime);
+  });
+  const navigation = performance.getEntriesByType('navigation')[0];
+  if (navigation) {
+    paint.domContentLoadedMillis = Math.round(navigation.domContentLoadedEventEnd);
+  }
+
+  apiRequest('POST', API_ENDPOINTS.STARTUP_PAINT, paint).catch(error => {
+    console.warn('Failed to report paint timings:', error);
+  });
+}
+
 // ===== SETTINGS FUNCTIONS =====
-async function loadAndApplySettings() {
-  try {
-    const settings = await getSettings();
-    if (settings) {
-      applyTheme(settings.theme);
-      applyFullscreen(settings.fullscreen);
-      updateNotificationsSetting(settings.notifications);
-    }
-  } catch (error) {
-    console.warn('[APP] Could not load settings:', error);
+function applySettingsState(state) {
+  const changes = state.changes;
+
+  if (changes.theme !== undefined) {
+    applyTheme(changes.theme);
+  }
+  if (changes.fullscreen !== undefined) {
+    applyFullscreen(changes.fullscreen);
+  }
+  if (changes.notifications !== undefined) {
+    updateNotificationsSetting(changes.notifications);
   }
 }
 
@@ -214,8 +253,10 @@ async function showSettingsModal() {
   const modal = document.createElement('div');
   modal.className = 'settings-modal';
 
-  const settings = await getSettings();
-  const themesData = await getAvailableThemes();
+  const settings = settingsStream.settings || await getSettings();
+  const themesData = settingsStream.availableThemes.length > 0
+    ? { themes: settingsStream.availableThemes, current: settings && settings.theme }
+    : await getAvailableThemes();
 
   if (!settings) {
     showSystemNotification('Error', 'Cannot load settings');
@@ -305,13 +346,14 @@ async function showSettingsModal() {
     const fullscreen = modal.querySelector('#fullscreen-toggle').checked;
     const notifications = modal.querySelector('#notifications-toggle').checked;
 
-    await updateSetting('theme', theme);
-    await updateSetting('fullscreen', fullscreen);
-    await updateSetting('notifications', notifications);
+    const result = await updateSettings({ theme, fullscreen, notifications });
+    if (!result) {
+      return;
+    }
 
-    applyTheme(theme);
-    applyFullscreen(fullscreen);
-    updateNotificationsSetting(notifications);
+    applyTheme(result.settings.theme);
+    applyFullscreen(result.settings.fullscreen);
+    updateNotificationsSetting(result.settings.notifications);
 
     showSystemNotification('Settings', 'Settings saved successfully');
     closeModal();
@@ -391,15 +433,15 @@ function handleTileKeydown(e) {
 function executeTileFunction(tileId) {
   switch(tileId) {
     case 'maps-tile':
-      showSystemNotification('Navigation', 'Service not available yet');
+      showMap();
       break;
 
     case 'radio-tile':
-      showSystemNotification('Radio', 'Service not available yet');
+      showRadio();
       break;
 
     case 'weather-tile':
-      showSystemNotification('Weather', 'Service not available yet');
+      showWeather();
       break;
 
     case 'settings-tile':
@@ -408,6 +450,457 @@ function executeTileFunction(tileId) {
   }
 }
 
+// ===== MAP FUNCTIONS =====
+const MAP_TILE_SIZE = 256;
+const MAP_DEFAULT_ZOOM = 13;
+const MAP_VIEWPORT_REPORT_INTERVAL = 150;
+const MAP_NEARBY_CATEGORIES = 'fuel,charging,parking';
+const MAP_NEARBY_COUNT = 15;
+const POI_ICONS = { fuel: 'fa-gas-pump', charging: 'fa-charging-station', parking: 'fa-parking' };
+let isMapOpen = false;
+
+// Pannable view over the offline tile pack. The viewport and the direction of the last pan are reported to the
+// server, which warms the tiles ahead before they are requested. Double-tapping plans a route from the home
+// position to that point. The nearest fuel, charging and parking points follow the map centre over a WebSocket
+// that only sends what changed.
+async function showMap() {
+  if (isMapOpen) return;
+
+  let info;
+  try {
+    info = (await apiRequest('GET', API_ENDPOINTS.MAPS_INFO)).info;
+  } catch (error) {
+    showSystemNotification('Navigation', 'Cannot load maps');
+    return;
+  }
+  if (!info.available) {
+    showSystemNotification('Navigation', 'No offline maps installed');
+    return;
+  }
+  isMapOpen = true;
+
+  const modal = document.createElement('div');
+  modal.className = 'settings-modal';
+  modal.innerHTML = `
+    <div class="modal-content map-modal">
+      <div class="modal-header">
+        <h2><i class="fas fa-map-marked-alt"></i> Maps</h2>
+        <button class="close-modal">&times;</button>
+      </div>
+      <div class="map-view">
+        <svg class="map-route"><polyline points=""></polyline></svg>
+      </div>
+      <div class="map-route-summary"></div>
+    </div>
+  `;
+  document.body.appendChild(modal);
+
+  const view = modal.querySelector('.map-view');
+  const routeLine = modal.querySelector('.map-route polyline');
+  const routeSummary = modal.querySelector('.map-route-summary');
+  const tiles = new Map();
+  const pois = new Map();
+  let route = null;
+  const nearbySocket = new WebSocket(IVIApi.url(API_ENDPOINTS.POI_NEARBY_STREAM).replace(/^http/, 'ws'));
+  const sendNearbyPosition = () => {
+    if (nearbySocket.readyState !== WebSocket.OPEN) return;
+    nearbySocket.send(JSON.stringify({
+      ...unprojectFromPixels(center.x, center.y, zoom),
+      k: MAP_NEARBY_COUNT,
+      categories: MAP_NEARBY_CATEGORIES
+    }));
+  };
+  nearbySocket.onopen = sendNearbyPosition;
+  nearbySocket.onmessage = (event) => {
+    const update = JSON.parse(event.data);
+    update.removed.forEach(id => {
+      const poi = pois.get(id);
+      if (poi) poi.element.remove();
+      pois.delete(id);
+    });
+    update.added.forEach(poi => {
+      const element = document.createElement('div');
+      element.className = `map-poi map-poi-${poi.category}`;
+      element.innerHTML = `<i class="fas ${POI_ICONS[poi.category] || 'fa-map-marker-alt'}"></i>`;
+      view.appendChild(element);
+      pois.set(poi.id, { ...poi, element });
+    });
+    update.order.forEach(([id, distanceMeters]) => {
+      const poi = pois.get(id);
+      if (poi) poi.element.title = `${poi.name || poi.category} · ${(distanceMeters / 1000).toFixed(1)} km`;
+    });
+    render();
+  };
+  let zoom = Math.max(info.minZoom, Math.min(info.maxZoom, MAP_DEFAULT_ZOOM));
+  let center = projectToPixels(info.defaultLat, info.defaultLon, zoom);
+  let heading = null;
+  let lastReport = 0;
+
+  const render = () => {
+    const width = view.clientWidth;
+    const height = view.clientHeight;
+    const originX = center.x - width / 2;
+    const originY = center.y - height / 2;
+    const tilesPerSide = 2 ** zoom;
+    const visible = new Set();
+
+    for (let ty = Math.floor(originY / MAP_TILE_SIZE); ty * MAP_TILE_SIZE < originY + height; ty++) {
+      if (ty < 0 || ty >= tilesPerSide) continue;
+      for (let tx = Math.floor(originX / MAP_TILE_SIZE); tx * MAP_TILE_SIZE < originX + width; tx++) {
+        const key = `${zoom}/${tx}/${ty}`;
+        visible.add(key);
+        let img = tiles.get(key);
+        if (!img) {
+          img = document.createElement('img');
+          img.className = 'map-tile';
+          img.alt = '';
+          img.src = IVIApi.url(`${API_ENDPOINTS.MAPS_TILES}/${zoom}/${((tx % tilesPerSide) + tilesPerSide) % tilesPerSide}/${ty}`);
+          img.onerror = () => img.classList.add('missing');
+          tiles.set(key, img);
+          view.insertBefore(img, routeLine.parentNode);
+        }
+        img.style.transform = `translate(${tx * MAP_TILE_SIZE - originX}px, ${ty * MAP_TILE_SIZE - originY}px)`;
+      }
+    }
+    tiles.forEach((img, key) => {
+      if (!visible.has(key)) {
+        img.remove();
+        tiles.delete(key);
+      }
+    });
+    pois.forEach(poi => {
+      const point = projectToPixels(poi.lat, poi.lon, zoom);
+      poi.element.style.transform = `translate(${point.x - originX}px, ${point.y - originY}px)`;
+    });
+    routeLine.setAttribute('points', route ? route.geometry.map(([lat, lon]) => {
+      const point = projectToPixels(lat, lon, zoom);
+      return `${(point.x - originX).toFixed(1)},${(point.y - originY).toFixed(1)}`;
+    }).join(' ') : '');
+
+    const now = performance.now();
+    if (now - lastReport >= MAP_VIEWPORT_REPORT_INTERVAL) {
+      lastReport = now;
+      const position = unprojectFromPixels(center.x, center.y, zoom);
+      apiRequest('POST', API_ENDPOINTS.MAPS_VIEWPORT, { ...position, zoom, heading, width, height })
+        .catch(error => console.warn('Failed to report map viewport:', error));
+      sendNearbyPosition();
+    }
+  };
+
+  let drag = null;
+  view.addEventListener('pointerdown', (e) => {
+    drag = { x: e.clientX, y: e.clientY };
+    view.setPointerCapture(e.pointerId);
+  });
+  view.addEventListener('pointermove', (e) => {
+    if (!drag) return;
+    const dx = e.clientX - drag.x;
+    const dy = e.clientY - drag.y;
+    drag = { x: e.clientX, y: e.clientY };
+    if (dx === 0 && dy === 0) return;
+    center = { x: center.x - dx, y: center.y - dy };
+    // The map moves opposite to the drag, so the view travels towards -dx/-dy.
+    heading = (Math.atan2(-dx, dy) * 180 / Math.PI + 360) % 360;
+    render();
+  });
+  view.addEventListener('pointerup', () => { drag = null; });
+  view.addEventListener('dblclick', async (e) => {
+    const bounds = view.getBoundingClientRect();
+    const target = unprojectFromPixels(center.x - bounds.width / 2 + e.clientX - bounds.left,
+      center.y - bounds.height / 2 + e.clientY - bounds.top, zoom);
+    routeSummary.textContent = 'Planning route…';
+    try {
+      const response = await IVIApi.request('GET',
+        `${API_ENDPOINTS.NAV_ROUTE}?from=${info.defaultLat},${info.defaultLon}&to=${target.lat},${target.lon}`);
+      if (response.status !== 200) {
+        route = null;
+        routeSummary.textContent = response.body.error || 'No route found';
+      } else {
+        route = response.body.route;
+        routeSummary.textContent = `${(route.distanceMeters / 1000).toFixed(1)} km · ${Math.round(route.durationSeconds / 60)} min`
+          + ` · ${route.maneuvers.length - 2} turns`;
+      }
+    } catch (error) {
+      route = null;
+      routeSummary.textContent = 'Routing is unavailable';
+    }
+    render();
+  });
+  view.addEventListener('wheel', (e) => {
+    e.preventDefault();
+    const nextZoom = Math.max(info.minZoom, Math.min(info.maxZoom, zoom + (e.deltaY < 0 ? 1 : -1)));
+    if (nextZoom === zoom) return;
+    center = { x: center.x * 2 ** (nextZoom - zoom), y: center.y * 2 ** (nextZoom - zoom) };
+    zoom = nextZoom;
+    heading = null;
+    render();
+  }, { passive: false });
+
+  const closeModal = () => {
+    nearbySocket.close();
+    modal.remove();
+    isMapOpen = false;
+    document.removeEventListener('keydown', handleEscapeKey);
+  };
+  const handleEscapeKey = (e) => {
+    if (e.key === 'Escape') closeModal();
+  };
+  modal.querySelector('.close-modal').addEventListener('click', closeModal);
+  modal.addEventListener('click', (e) => {
+    if (e.target === modal) closeModal();
+  });
+  document.addEventListener('keydown', handleEscapeKey);
+
+  render();
+}
+
+function projectToPixels(lat, lon, zoom) {
+  const scale = MAP_TILE_SIZE * 2 ** zoom;
+  const sin = Math.sin(Math.max(-85.0511, Math.min(85.0511, lat)) * Math.PI / 180);
+  return {
+    x: (lon + 180) / 360 * scale,
+    y: (0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI)) * scale
+  };
+}
+
+function unprojectFromPixels(x, y, zoom) {
+  const scale = MAP_TILE_SIZE * 2 ** zoom;
+  const n = Math.PI - 2 * Math.PI * y / scale;
+  return {
+    lat: Math.atan(Math.sinh(n)) * 180 / Math.PI,
+    lon: x / scale * 360 - 180
+  };
+}
+
+// ===== RADIO FUNCTIONS =====
+const RADIO_RESULT_LIMIT = 20;
+let isRadioOpen = false;
+let radioAudio = null;
+
+// Station search as you type: every keystroke asks the server, and answers to earlier keystrokes that arrive late
+// are dropped. With an empty query the favorites are listed. Selecting a station plays its stream; the star keeps
+// it at the top of later searches.
+function showRadio() {
+  if (isRadioOpen) return;
+  isRadioOpen = true;
+
+  const modal = document.createElement('div');
+  modal.className = 'settings-modal';
+  modal.innerHTML = `
+    <div class="modal-content radio-modal">
+      <div class="modal-header">
+        <h2><i class="fas fa-broadcast-tower"></i> Radio</h2>
+        <button class="close-modal">&times;</button>
+      </div>
+      <div class="radio-search">
+        <input type="search" class="radio-query" placeholder="Station, genre, country or frequency" autocomplete="off" spellcheck="false">
+      </div>
+      <ul class="radio-results"></ul>
+    </div>
+  `;
+  document.body.appendChild(modal);
+
+  const input = modal.querySelector('.radio-query');
+  const list = modal.querySelector('.radio-results');
+  let latestSearch = 0;
+
+  const showMessage = (message) => {
+    const item = document.createElement('li');
+    item.className = 'radio-message';
+    item.textContent = message;
+    list.replaceChildren(item);
+  };
+
+  const renderStations = (stations) => {
+    if (stations.length === 0) {
+      showMessage(input.value.trim() ? 'No stations found' : 'Search for a station, or star one to keep it here');
+      return;
+    }
+    list.replaceChildren(...stations.map(station => {
+      const item = document.createElement('li');
+      item.className = 'radio-station';
+      item.tabIndex = 0;
+      const details = [station.genre, station.country, station.frequencyMhz ? `${station.frequencyMhz} MHz` : '']
+        .filter(Boolean).join(' · ');
+      item.innerHTML = `
+        <div class="radio-station-text">
+          <div class="radio-station-name"></div>
+          <div class="radio-station-details"></div>
+        </div>
+        <button class="radio-favorite" aria-label="Favorite"><i class="${station.favorite ? 'fas' : 'far'} fa-star"></i></button>
+      `;
+      item.querySelector('.radio-station-name').textContent = station.name;
+      item.querySelector('.radio-station-details').textContent = details;
+      item.addEventListener('click', () => playRadioStation(station));
+      item.addEventListener('keydown', (e) => {
+        if (e.key === 'Enter') playRadioStation(station);
+      });
+      item.querySelector('.radio-favorite').addEventListener('click', async (e) => {
+        e.stopPropagation();
+        try {
+          await apiRequest('PUT', `${API_ENDPOINTS.RADIO_FAVORITES}/${encodeURIComponent(station.id)}`, { favorite: !station.favorite });
+          search();
+        } catch (error) {
+          showSystemNotification('Radio', `Cannot update favorites: ${error.message}`);
+        }
+      });
+      return item;
+    }));
+  };
+
+  const search = async () => {
+    const searchId = ++latestSearch;
+    let data;
+    try {
+      data = await apiRequest('GET',
+        `${API_ENDPOINTS.RADIO_SEARCH}?q=${encodeURIComponent(input.value)}&limit=${RADIO_RESULT_LIMIT}`);
+    } catch (error) {
+      if (searchId === latestSearch) showMessage(error.message);
+      return;
+    }
+    if (searchId === latestSearch) renderStations(data.results);
+  };
+  input.addEventListener('input', search);
+
+  const closeModal = () => {
+    modal.remove();
+    isRadioOpen = false;
+    document.removeEventListener('keydown', handleEscapeKey);
+  };
+  const handleEscapeKey = (e) => {
+    if (e.key === 'Escape') closeModal();
+  };
+  modal.querySelector('.close-modal').addEventListener('click', closeModal);
+  modal.addEventListener('click', (e) => {
+    if (e.target === modal) closeModal();
+  });
+  document.addEventListener('keydown', handleEscapeKey);
+
+  input.focus();
+  search();
+}
+
+function playRadioStation(station) {
+  if (!station.streamUrl) {
+    showSystemNotification('Radio', station.frequencyMhz
+      ? `${station.name} is broadcast on ${station.frequencyMhz} MHz only`
+      : `${station.name} has no stream`);
+    return;
+  }
+  if (isPlaying) pauseSong();
+  if (!radioAudio) radioAudio = new Audio();
+  radioAudio.src = station.streamUrl;
+  radioAudio.volume = song.volume;
+  radioAudio.play()
+    .then(() => showSystemNotification('Now Playing', station.name))
+    .catch(error => {
+      console.error('Radio playback error:', error);
+      showSystemNotification('Radio', `Cannot play ${station.name}`);
+    });
+}
+
+// ===== VEHICLE FUNCTIONS =====
+const VEHICLE_RECONNECT_DELAY = 3000;
+const VEHICLE_LATENCY_REPORT_INTERVAL = 10000;
+const VEHICLE_DECIMALS = { speed: 0, rpm: 0, battery: 0, range: 0 };
+let vehicleLatencySamples = [];
+let vehicleLatencyTimer = null;
+
+// Binary frames from the signal bus: type, count, sequence, newest sample time, then (signal id, float32 value)
+// entries for the signals that changed. After the readouts are updated the delay since the sample is recorded.
+async function connectVehicleStream() {
+  let signals;
+  try {
+    signals = (await apiRequest('GET', API_ENDPOINTS.VEHICLE_SIGNALS)).signals;
+  } catch (error) {
+    console.warn('Vehicle signals unavailable:', error);
+    return;
+  }
+  const readouts = new Map();
+  signals.forEach(signal => {
+    const element = document.querySelector(`.vehicle-readout[data-signal="${signal.key}"] .vehicle-value`);
+    if (element) readouts.set(signal.id, { key: signal.key, element });
+  });
+
+  const bar = document.querySelector('.vehicle-bar');
+  const socket = new WebSocket(IVIApi.url(API_ENDPOINTS.VEHICLE_STREAM).replace(/^http/, 'ws'));
+  socket.binaryType = 'arraybuffer';
+  socket.onmessage = (event) => {
+    const frame = new DataView(event.data);
+    const count = frame.getUint8(1);
+    const newestSampleMillis = frame.getFloat64(6);
+    for (let i = 0, offset = 14; i < count; i++, offset += 5) {
+      const readout = readouts.get(frame.getUint8(offset));
+      if (readout) readout.element.textContent = frame.getFloat32(offset + 1).toFixed(VEHICLE_DECIMALS[readout.key] ?? 1);
+    }
+    bar.hidden = false;
+    if (newestSampleMillis > 0) {
+      vehicleLatencySamples.push(performance.timeOrigin + performance.now() - newestSampleMillis);
+    }
+  };
+  socket.onclose = () => {
+    clearInterval(vehicleLatencyTimer);
+    setTimeout(connectVehicleStream, VEHICLE_RECONNECT_DELAY);
+  };
+
+  clearInterval(vehicleLatencyTimer);
+  vehicleLatencyTimer = setInterval(reportVehicleLatency, VEHICLE_LATENCY_REPORT_INTERVAL);
+}
+
+function reportVehicleLatency() {
+  if (vehicleLatencySamples.length === 0) return;
+  const sorted = vehicleLatencySamples.sort((a, b) => a - b);
+  vehicleLatencySamples = [];
+  const at = (fraction) => Math.round(sorted[Math.min(sorted.length - 1, Math.floor(sorted.length * fraction))] * 100) / 100;
+  apiRequest('POST', API_ENDPOINTS.VEHICLE_LATENCY, {
+    count: sorted.length,
+    p50: at(0.5),
+    p95: at(0.95),
+    p99: at(0.99),
+    max: at(1)
+  }).catch(error => console.warn('Failed to report vehicle latency:', error));
+}
+
+// ===== WEATHER FUNCTIONS =====
+async function refreshWeather() {
+  clearTimeout(weatherPollTimer);
+  let nextPoll = WEATHER_POLL_INTERVAL;
+
+  try {
+    const response = await IVIApi.request('GET', API_ENDPOINTS.WEATHER);
+    if (response.status === 200 && response.body.weather) {
+      latestWeather = response.body.weather;
+      updateWeatherTile(latestWeather);
+    } else if (response.status === 202) {
+      nextPoll = WEATHER_PENDING_RETRY;
+    }
+  } catch (error) {
+    console.warn('Failed to load weather:', error);
+  }
+
+  weatherPollTimer = setTimeout(refreshWeather, nextPoll);
+}
+
+function updateWeatherTile(weather) {
+  const subtitle = document.querySelector('#weather-tile p');
+  if (subtitle) {
+    subtitle.textContent = `${Math.round(weather.temperature)}°C · ${weather.description}`;
+  }
+}
+
+function showWeather() {
+  if (!latestWeather) {
+    showSystemNotification('Weather', 'Loading current conditions...');
+    refreshWeather();
+    return;
+  }
+
+  const today = latestWeather.daily && latestWeather.daily[0];
+  const range = today ? ` (${Math.round(today.min)}° / ${Math.round(today.max)}°)` : '';
+  showSystemNotification('Weather',
+    `${Math.round(latestWeather.temperature)}°C, ${latestWeather.description}${range}, wind ${Math.round(latestWeather.windSpeed)} km/h`);
+}
+
 // ===== MUSIC PLAYER FUNCTIONALITY =====
 function setupEventListeners() {
   // Play/Pause
@@ -417,8 +910,8 @@ function setupEventListeners() {
   albumCover.parentElement.addEventListener("click", togglePlayPause);
 
   // Navigation buttons
-  forwardButton.addEventListener("click", playNextSong);
-  backwardButton.addEventListener("click", playPreviousSong);
+  forwardButton.addEventListener("click", () => playNextSong());
+  backwardButton.addEventListener("click", () => playPreviousSong());
 
   // Volume control
   progress.addEventListener("input", updateVolume);
@@ -427,7 +920,8 @@ function setupEventListeners() {
   document.addEventListener('keydown', handleKeyboardShortcuts);
 
   // Song events
-  song.addEventListener("ended", playNextSong);
+  song.addEventListener("ended", () => playNextSong(true));
+  song.addEventListener("playing", reportTrackChangeLatency);
   song.addEventListener("loadedmetadata", updateDurationDisplay);
 }
 
@@ -435,6 +929,7 @@ function updateSongInfo() {
   const currentSong = songs[currentSongIndex];
   songName.textContent = currentSong.title;
   artistName.textContent = currentSong.name;
+  updateAlbumArt(currentSong);
 
   if (isPlaying) {
     albumCover.style.animation = 'spin 4s linear infinite';
@@ -460,6 +955,7 @@ function togglePlayPause() {
 }
 
 function playSong() {
+  if (radioAudio) radioAudio.pause();
   song.play().then(() => {
     isPlaying = true;
     controlIcon.classList.remove("fa-play");
@@ -484,7 +980,12 @@ function pauseSong() {
   albumCover.style.animation = 'none';
 }
 
-function playNextSong() {
+function playNextSong(automatic = false) {
+  if (queueActive) {
+    changeTrack(`${API_ENDPOINTS.MEDIA_QUEUE}/next`, { automatic });
+    return;
+  }
+
   currentSongIndex = (currentSongIndex + 1) % songs.length;
   song.src = songs[currentSongIndex].source;
 
@@ -497,6 +998,11 @@ function playNextSong() {
 }
 
 function playPreviousSong() {
+  if (queueActive) {
+    changeTrack(`${API_ENDPOINTS.MEDIA_QUEUE}/previous`, {});
+    return;
+  }
+
   currentSongIndex = (currentSongIndex - 1 + songs.length) % songs.length;
   song.src = songs[currentSongIndex].source;
 
@@ -534,6 +1040,15 @@ function stopProgressUpdates() {
 }
 
 function updateProgressBar() {
+  if (queueActive && song.duration && Date.now() - lastProgressReport >= PROGRESS_REPORT_INTERVAL) {
+    // Lets the server read the head of the next track ahead before this one ends.
+    lastProgressReport = Date.now();
+    apiRequest('POST', `${API_ENDPOINTS.MEDIA_QUEUE}/progress`, {
+      positionMillis: Math.round(song.currentTime * 1000),
+      durationMillis: Math.round(song.duration * 1000)
+    }).catch(error => console.warn('Failed to report playback progress:', error));
+  }
+
   if (song.duration) {
     const percentage = (song.currentTime / song.duration) * 100;
   }
@@ -543,6 +1058,120 @@ function updateDurationDisplay() {
 }
 
 // ===== PLAYLIST FUNCTIONALITY =====
+// Replaces the placeholder playlist with the first page of the media library, sorted by artist and album.
+async function loadLibrary() {
+  try {
+    const data = await apiRequest('GET', `${API_ENDPOINTS.MEDIA_TRACKS}?sort=artist&limit=${LIBRARY_PAGE_SIZE}`);
+    if (data.tracks.length > 0) {
+      const playing = isPlaying ? songs[currentSongIndex] : null;
+      songs = data.tracks.map(track => ({
+        id: track.id,
+        title: track.title,
+        name: track.artist || 'Unknown Artist',
+        source: IVIApi.url(`${API_ENDPOINTS.MEDIA_STREAM}/${track.id}`),
+        art: IVIApi.url(`${API_ENDPOINTS.MEDIA_ART}/${track.id}`),
+        duration: formatDuration(track.durationMillis)
+      }));
+      if (playing) {
+        // The playing track stays in the list even if this page of the library no longer has it.
+        currentSongIndex = songs.findIndex(item => item.id === playing.id);
+        if (currentSongIndex < 0) {
+          songs.unshift(playing);
+          currentSongIndex = 0;
+        }
+      } else {
+        currentSongIndex = 0;
+        song.src = songs[currentSongIndex].source;
+        song.preload = 'metadata';
+      }
+      loadPlaylist();
+      updateSongInfo();
+
+      // The queue must hold the same list as the page, or jumps by index land on other tracks.
+      const queue = await apiRequest('PUT', API_ENDPOINTS.MEDIA_QUEUE, {
+        trackIds: songs.map(item => item.id),
+        index: currentSongIndex
+      });
+      queueActive = queue.queue.length > 0;
+      queueVersion = queue.queue.version;
+    }
+    if (!data.ready) {
+      // The first scan of a large library is still running.
+      setTimeout(loadLibrary, LIBRARY_RETRY_DELAY);
+    }
+  } catch (error) {
+    console.warn('Failed to load media library:', error);
+  }
+}
+
+// Asks the queue for the next track and switches the audio element to whatever it answers.
+async function changeTrack(path, body) {
+  const startedAt = performance.now();
+  try {
+    const data = await apiRequest('POST', path, body);
+    const current = data.queue.current;
+    if (data.queue.version === queueVersion || !current) {
+      // End of the queue with repeat off.
+      if (body.automatic) pauseSong();
+      return;
+    }
+    queueVersion = data.queue.version;
+
+    const index = songs.findIndex(item => item.id === current.id);
+    if (index < 0) return;
+    currentSongIndex = index;
+
+    trackChangeStartedAt = startedAt;
+    trackChangePrefetched = data.queue.prefetched;
+    lastProgressReport = 0;
+    song.src = songs[currentSongIndex].source;
+
+    if (isPlaying || body.automatic) {
+      playSong();
+    } else {
+      updateSongInfo();
+      song.load();
+    }
+  } catch (error) {
+    console.warn('Failed to change track:', error);
+    showSystemNotification('Music', 'Cannot change track');
+  }
+}
+
+function reportTrackChangeLatency() {
+  if (trackChangeStartedAt === null) return;
+  const millis = Math.round(performance.now() - trackChangeStartedAt);
+  trackChangeStartedAt = null;
+
+  apiRequest('POST', `${API_ENDPOINTS.MEDIA_QUEUE}/latency`, { millis, prefetched: trackChangePrefetched })
+    .catch(error => console.warn('Failed to report track change latency:', error));
+}
+
+// Shows the cover of the current track over the placeholder icon; tracks without art keep the icon.
+function updateAlbumArt(currentSong) {
+  const url = currentSong.art ? `${currentSong.art}?size=${ALBUM_ART_SIZE}` : null;
+  if (albumArt.dataset.src === url) return;
+  albumArt.dataset.src = url || '';
+  albumArt.hidden = true;
+  albumCover.hidden = false;
+  if (!url) return;
+  albumArt.onload = () => {
+    albumArt.hidden = false;
+    albumCover.hidden = true;
+  };
+  albumArt.onerror = () => {
+    albumArt.hidden = true;
+    albumCover.hidden = false;
+  };
+  albumArt.src = url;
+}
+
+function formatDuration(millis) {
+  if (!millis) return '--:--';
+  const totalSeconds = Math.round(millis / 1000);
+  return `${Math.floor(totalSeconds / 60)}:${String(totalSeconds % 60).padStart(2, '0')}`;
+}
+
 function loadPlaylist() {
   playlistContainer.innerHTML = '';
 
@@ -550,11 +1179,20 @@ function loadPlaylist() {
     const item = document.createElement('div');
     item.className = `playlist-item ${index === currentSongIndex ? 'active' : ''}`;
     item.innerHTML = `
+      ${song.art
+        ? `<img class="playlist-art" loading="lazy" alt="" src="${song.art}?size=${PLAYLIST_ART_SIZE}">`
+        : ''}
       <i class="fas fa-music"></i>
       <span>${song.title}</span>
       <span style="margin-left: auto; opacity: 0.6;">${song.duration}</span>
     `;
 
+    const thumbnail = item.querySelector('.playlist-art');
+    if (thumbnail) {
+      thumbnail.addEventListener('load', () => item.querySelector('i').remove());
+      thumbnail.addEventListener('error', () => thumbnail.remove());
+    }
+
     item.addEventListener('click', () => {
       selectSongFromPlaylist(index);
     });
@@ -564,6 +1202,11 @@ function loadPlaylist() {
 }
 
 function selectSongFromPlaylist(index) {
+  if (queueActive) {
+    changeTrack(`${API_ENDPOINTS.MEDIA_QUEUE}/jump`, { index });
+    return;
+  }
+
   currentSongIndex = index;
   song.src = songs[currentSongIndex].source;
 